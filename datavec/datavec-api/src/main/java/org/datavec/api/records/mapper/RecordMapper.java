@@ -30,6 +30,7 @@ import org.datavec.api.split.partition.NumberOfRecordsPartitioner;
 import org.datavec.api.split.partition.Partitioner;
 import org.datavec.api.writable.Writable;
 
+import java.io.OutputStream;
 import java.util.List;
 
 @Builder
@@ -128,21 +129,26 @@ public class RecordMapper {
             while (recordReader.hasNext()) {
                 List<List<Writable>> next = recordReader.next(batchSize);
                 //ensure we can write a file for either the current or next iterations
+                //the previous stream is closed after the next write, so the writer can still finish the previous file
+                OutputStream previous = null;
                 if (partitioner.needsNewPartition()) {
-                    partitioner.currentOutputStream().flush();
-                    partitioner.currentOutputStream().close();
+                    previous = partitioner.currentOutputStream();
+                    previous.flush();
                     partitioner.openNewStream();
                 }
                 //update records written
                 partitioner.updatePartitionInfo(recordWriter.writeBatch(next));
+                if (previous != null) {
+                    previous.close();
+                }
 
             }
 
             partitioner.currentOutputStream().flush();
             recordReader.close();
             if (closeWriter) {
-                partitioner.currentOutputStream().close();
                 recordWriter.close();
+                partitioner.currentOutputStream().close();
             }
         }
 
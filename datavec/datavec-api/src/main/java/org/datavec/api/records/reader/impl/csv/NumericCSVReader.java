@@ -0,0 +1,537 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.api.records.reader.impl.csv;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Fast path for numeric CSV files: values are parsed from the file bytes directly into float or double arrays,
+ * without creating a String or Writable per value as {@link CSVRecordReader} does.<br>
+ * All values must be numbers, in any format accepted by {@link Double#parseDouble(String)}, optionally surrounded by
+ * whitespace or quotes. Blank lines are skipped. Quoted delimiters and multi-line values are not supported:
+ * use {@link CSVRecordReader} for such files.
+ * <p>
+ * Lines are addressed by byte offsets in the file. The file is read with positional reads into a per-thread buffer,
+ * so a single reader can be used by multiple threads, each parsing a different range of lines: see
+ * {@link #nextLines(long, long)} and {@link #split(int)}. {@link #readAll(DataType, int)} uses this to parse a whole
+ * file with multiple threads. Note that interrupting a thread during a read closes the file channel, and with it
+ * the reader.
+ */
+public class NumericCSVReader implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private static final int MAX_FAST_DIGITS = 18;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    @Getter
+    private final File file;
+    @Getter
+    private final char delimiter;
+    /** Offset of the first record, after the skipped lines */
+    @Getter
+    private final long dataStart;
+    /** Size of the file in bytes */
+    @Getter
+    private final long size;
+    /** Number of values per line, determined from the first record */
+    @Getter
+    private final int numColumns;
+    private final int bufferSize;
+    private final FileChannel channel;
+    private final ThreadLocal<byte[]> buffers = new ThreadLocal<>();
+
+    public NumericCSVReader(File file) throws IOException {
+        this(file, 0, CSVRecordReader.DEFAULT_DELIMITER);
+    }
+
+    /**
+     * @param file         CSV file to read
+     * @param skipNumLines Number of lines to skip at the start of the file (headers)
+     * @param delimiter    Delimiter character. Must be an ASCII character
+     */
+    public NumericCSVReader(File file, int skipNumLines, char delimiter) throws IOException {
+        this(file, skipNumLines, delimiter, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param file         CSV file to read
+     * @param skipNumLines Number of lines to skip at the start of the file (headers)
+     * @param delimiter    Delimiter character. Must be an ASCII character
+     * @param bufferSize   Initial size of the read buffer of each thread, in bytes. Grows as needed for longer lines
+     */
+    public NumericCSVReader(@NonNull File file, int skipNumLines, char delimiter, int bufferSize) throws IOException {
+        Preconditions.checkArgument(skipNumLines >= 0, "Number of lines to skip can't be negative, got %s", skipNumLines);
+        Preconditions.checkArgument(delimiter < 128 && delimiter != '\n' && delimiter != '\r' && delimiter != '"',
+                "Delimiter must be an ASCII character other than a quote or line break, got '%s'", delimiter);
+        Preconditions.checkArgument(bufferSize > 0, "Buffer size must be positive, got %s", bufferSize);
+        this.file = file;
+        this.delimiter = delimiter;
+        this.bufferSize = bufferSize;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            long afterHeader = skipNumLines == 0 ? 0 : scan(0, size, new LineCounter(skipNumLines, false));
+            this.dataStart = nextRecord(afterHeader);
+            final int[] columns = new int[1];
+            scan(dataStart, size, (buf, from, to, offset) -> {
+                columns[0] = countValues(buf, from, to);
+                return false;
+            });
+            this.numColumns = columns[0];
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Offset of the start of the first record (non-blank line) at or after the given offset,
+     * or the file size if there are no more records. The offset must be at the start of a line
+     */
+    public long nextRecord(long offset) throws IOException {
+        final long[] ret = {size};
+        scan(offset, size, (buf, from, to, lineOffset) -> {
+            if (isBlank(buf, from, to))
+                return true;
+            ret[0] = lineOffset;
+            return false;
+        });
+        return ret[0];
+    }
+
+    /**
+     * @return Offset of the end of the given number of records (non-blank lines) starting at the given offset, or the
+     * file size if there are fewer records left. The offset must be at the start of a line
+     */
+    public long nextLines(long offset, long numRecords) throws IOException {
+        if (numRecords <= 0)
+            return offset;
+        return scan(offset, size, new LineCounter(numRecords, true));
+    }
+
+    /**
+     * @return Number of records (non-blank lines) in the range {@code [start, end)}, which must be delimited by
+     * line boundaries
+     */
+    public long countRecords(long start, long end) throws IOException {
+        LineCounter counter = new LineCounter(Long.MAX_VALUE, true);
+        scan(start, end, counter);
+        return counter.count;
+    }
+
+    /**
+     * Splits the records of the file into (at most) the given number of ranges of similar size in bytes, at line
+     * boundaries
+     *
+     * @return Offsets of the ranges: range i is {@code [ret[i], ret[i+1])}
+     */
+    public long[] split(int numRanges) throws IOException {
+        Preconditions.checkArgument(numRanges > 0, "Number of ranges must be positive, got %s", numRanges);
+        long[] bounds = new long[numRanges + 1];
+        bounds[0] = dataStart;
+        int n = 1;
+        for (int i = 1; i < numRanges; i++) {
+            long nominal = Math.max(dataStart + (size - dataStart) * i / numRanges, bounds[n - 1]);
+            if (nominal <= dataStart)
+                continue;
+            //Move to the start of the next line
+            long aligned = scan(nominal - 1, size, (buf, from, to, offset) -> false);
+            if (aligned > bounds[n - 1] && aligned < size)
+                bounds[n++] = aligned;
+        }
+        bounds[n++] = size;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    /**
+     * Parses the records in the range {@code [start, end)} into the given array, in row-major order
+     * (numColumns values per record)
+     *
+     * @param start      Start of the range. Must be at the start of a line
+     * @param end        End of the range. Must be at the start of a line, or the file size
+     * @param dest       Array to parse values into
+     * @param destOffset Index in dest of the first value
+     * @return Number of records read
+     */
+    public int read(long start, long end, @NonNull float[] dest, int destOffset) throws IOException {
+        Parser p = new Parser(dest, null, destOffset);
+        scan(start, end, p);
+        return p.rows;
+    }
+
+    /**
+     * As per {@link #read(long, long, float[], int)}, for double values
+     */
+    public int read(long start, long end, @NonNull double[] dest, int destOffset) throws IOException {
+        Parser p = new Parser(null, dest, destOffset);
+        scan(start, end, p);
+        return p.rows;
+    }
+
+    /**
+     * Reads the whole file into a [numRecords, numColumns] array, parsing ranges of the file on multiple threads.
+     * The file is read twice: records are counted first (which is much cheaper than parsing them), so that each
+     * thread can parse its range directly into its part of the output.
+     *
+     * @param dataType   Output data type: FLOAT or DOUBLE
+     * @param numThreads Number of threads to use
+     */
+    public INDArray readAll(@NonNull DataType dataType, int numThreads) throws IOException {
+        Preconditions.checkArgument(dataType == DataType.FLOAT || dataType == DataType.DOUBLE,
+                "Only FLOAT and DOUBLE data types are supported, got %s", dataType);
+        Preconditions.checkArgument(numThreads > 0, "Number of threads must be positive, got %s", numThreads);
+        final long[] bounds = split(numThreads);
+        final int numRanges = bounds.length - 1;
+        ExecutorService executor = numRanges > 1 ? Executors.newFixedThreadPool(numRanges, r -> {
+            Thread t = Executors.defaultThreadFactory().newThread(r);
+            t.setName("NumericCSVReader parsing thread");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        try {
+            long[] counts = new long[numRanges];
+            List<Callable<Long>> countTasks = new ArrayList<>(numRanges);
+            for (int i = 0; i < numRanges; i++) {
+                final int range = i;
+                countTasks.add(() -> countRecords(bounds[range], bounds[range + 1]));
+            }
+            List<Long> countResults = invokeAll(executor, countTasks);
+            long numRecords = 0;
+            for (int i = 0; i < numRanges; i++) {
+                counts[i] = countResults.get(i);
+                numRecords += counts[i];
+            }
+            Preconditions.checkState(numRecords * numColumns <= Integer.MAX_VALUE - 8, "File has too many values " +
+                    "(%s records of %s values) to be read into a single array", numRecords, numColumns);
+
+            final int length = (int) (numRecords * numColumns);
+            final float[] floats = dataType == DataType.FLOAT ? new float[length] : null;
+            final double[] doubles = dataType == DataType.DOUBLE ? new double[length] : null;
+            List<Callable<Long>> parseTasks = new ArrayList<>(numRanges);
+            long row = 0;
+            for (int i = 0; i < numRanges; i++) {
+                final int range = i;
+                final int offset = (int) (row * numColumns);
+                parseTasks.add(() -> (long) (floats != null ? read(bounds[range], bounds[range + 1], floats, offset)
+                        : read(bounds[range], bounds[range + 1], doubles, offset)));
+                row += counts[i];
+            }
+            invokeAll(executor, parseTasks);
+
+            long[] shape = {numRecords, numColumns};
+            return floats != null ? Nd4j.create(floats, shape, 'c') : Nd4j.create(doubles, shape, 'c');
+        } finally {
+            if (executor != null)
+                executor.shutdown();
+        }
+    }
+
+    private static List<Long> invokeAll(ExecutorService executor, List<Callable<Long>> tasks) throws IOException {
+        List<Long> ret = new ArrayList<>(tasks.size());
+        try {
+            if (executor == null) {
+                for (Callable<Long> c : tasks)
+                    ret.add(c.call());
+                return ret;
+            }
+            for (Future<Long> f : executor.invokeAll(tasks))
+                ret.add(f.get());
+            return ret;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Receives the lines of a range of the file. Line bounds exclude the line terminator
+     */
+    private interface LineVisitor {
+        /**
+         * @return False to stop after this line
+         */
+        boolean line(byte[] buf, int from, int to, long offset);
+    }
+
+    /**
+     * Calls the visitor for each line in {@code [start, end)}, and returns the offset after the last visited line
+     */
+    private long scan(long start, long end, LineVisitor visitor) throws IOException {
+        byte[] buf = buffers.get();
+        if (buf == null) {
+            buf = new byte[bufferSize];
+            buffers.set(buf);
+        }
+        long bufStart = start;      //File offset of buf[0]
+        long pos = start;           //File offset of buf[len]
+        int len = 0;
+        int lineStart = 0;
+        int searchFrom = 0;
+        while (true) {
+            for (int i = searchFrom; i < len; i++) {
+                if (buf[i] == '\n') {
+                    if (!visitor.line(buf, lineStart, i, bufStart + lineStart))
+                        return bufStart + i + 1;
+                    lineStart = i + 1;
+                }
+            }
+            if (pos >= end) {
+                //Last line, without terminator
+                if (lineStart < len)
+                    visitor.line(buf, lineStart, len, bufStart + lineStart);
+                return end;
+            }
+
+            //Keep the partial line at the start of the buffer, and read more data after it
+            if (lineStart > 0) {
+                System.arraycopy(buf, lineStart, buf, 0, len - lineStart);
+                len -= lineStart;
+                bufStart += lineStart;
+                lineStart = 0;
+            } else if (len == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+                buffers.set(buf);
+            }
+            searchFrom = len;
+            int read = channel.read(ByteBuffer.wrap(buf, len, (int) Math.min(buf.length - len, end - pos)), pos);
+            if (read < 0) {
+                end = pos;
+            } else {
+                len += read;
+                pos += read;
+            }
+        }
+    }
+
+    private static boolean isBlank(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buf[i];
+            if (b != ' ' && b != '\t' && b != '\r')
+                return false;
+        }
+        return true;
+    }
+
+    private int countValues(byte[] buf, int from, int to) {
+        int n = 1;
+        for (int i = from; i < to; i++) {
+            if (buf[i] == delimiter)
+                n++;
+        }
+        return n;
+    }
+
+    private static class LineCounter implements LineVisitor {
+        private final long max;
+        private final boolean skipBlank;
+        private long count;
+
+        private LineCounter(long max, boolean skipBlank) {
+            this.max = max;
+            this.skipBlank = skipBlank;
+        }
+
+        @Override
+        public boolean line(byte[] buf, int from, int to, long offset) {
+            if (!skipBlank || !isBlank(buf, from, to))
+                count++;
+            return count < max;
+        }
+    }
+
+    private class Parser implements LineVisitor {
+        private final float[] floats;
+        private final double[] doubles;
+        private int idx;
+        private int rows;
+
+        private Parser(float[] floats, double[] doubles, int destOffset) {
+            this.floats = floats;
+            this.doubles = doubles;
+            this.idx = destOffset;
+        }
+
+        @Override
+        public boolean line(byte[] buf, int from, int to, long offset) {
+            if (isBlank(buf, from, to))
+                return true;
+            int capacity = floats != null ? floats.length : doubles.length;
+            if (idx + numColumns > capacity)
+                throw new IllegalStateException("Destination array is too small: can't read record " + rows
+                        + " at offset " + idx + " into array of length " + capacity);
+
+            int valueStart = from;
+            int col = 0;
+            for (int i = from; i <= to; i++) {
+                if (i == to || buf[i] == delimiter) {
+                    if (col == numColumns)
+                        break;
+                    double value;
+                    try {
+                        value = parseDouble(buf, valueStart, i);
+                    } catch (NumberFormatException e) {
+                        throw new NumberFormatException("Invalid value \"" + new String(buf, valueStart, i - valueStart,
+                                StandardCharsets.UTF_8) + "\" in column " + col + " of the line at byte offset " + offset
+                                + " of file " + file);
+                    }
+                    if (floats != null)
+                        floats[idx + col] = (float) value;
+                    else
+                        doubles[idx + col] = value;
+                    col++;
+                    valueStart = i + 1;
+                }
+            }
+            if (col != numColumns || valueStart <= to) {
+                throw new IllegalStateException("Invalid number of values in the line at byte offset " + offset
+                        + " of file " + file + ": expected " + numColumns + ", got " + countValues(buf, from, to));
+            }
+            idx += numColumns;
+            rows++;
+            return true;
+        }
+    }
+
+    /**
+     * Parses a decimal number from ASCII bytes, without allocating. The result is identical to
+     * {@link Double#parseDouble(String)}: values whose significant digits fit in 53 bits and with a small exponent (the
+     * vast majority of values in CSV files) are computed exactly with a single floating point operation, other values
+     * are parsed with {@link Double#parseDouble(String)}
+     */
+    static double parseDouble(byte[] b, int from, int to) {
+        while (from < to && (b[from] == ' ' || b[from] == '\t'))
+            from++;
+        while (to > from && (b[to - 1] == ' ' || b[to - 1] == '\t' || b[to - 1] == '\r'))
+            to--;
+        if (to - from >= 2 && b[from] == '"' && b[to - 1] == '"') {
+            from++;
+            to--;
+        }
+
+        int i = from;
+        boolean negative = false;
+        if (i < to && (b[i] == '-' || b[i] == '+')) {
+            negative = b[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        boolean fraction = false;
+        for (; i < to; i++) {
+            int d = b[i] - '0';
+            if (d >= 0 && d <= 9) {
+                anyDigits = true;
+                mantissa = mantissa * 10 + d;
+                if (mantissa != 0 && ++digits > MAX_FAST_DIGITS)
+                    return parseFallback(b, from, to);
+                if (fraction)
+                    exponent--;
+            } else if (b[i] == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (!anyDigits)
+            return parseFallback(b, from, to);
+
+        if (i < to && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (b[i] == '-' || b[i] == '+')) {
+                negativeExponent = b[i] == '-';
+                i++;
+            }
+            int e = 0;
+            boolean anyExponentDigits = false;
+            for (; i < to; i++) {
+                int d = b[i] - '0';
+                if (d < 0 || d > 9)
+                    break;
+                anyExponentDigits = true;
+                if (e < 10000)
+                    e = e * 10 + d;
+            }
+            if (!anyExponentDigits)
+                return parseFallback(b, from, to);
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != to)
+            return parseFallback(b, from, to);
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            //Both operands are exact, so the single rounding of the result gives the correctly rounded value
+            value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return parseFallback(b, from, to);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double parseFallback(byte[] b, int from, int to) {
+        return Double.parseDouble(new String(b, from, to - from, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.api.records.reader.impl.packed;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.datavec.api.records.writer.impl.packed.PackedRecordWriter;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.metadata.CategoricalMetaData;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A file in the packed binary record format written by {@link PackedRecordWriter}: typed records, stored in blocks,
+ * with the {@link Schema} in the file header and an index of the blocks in the footer. All values are big endian.
+ * <pre>
+ * File:   header, then one or more segments: blocks, footer, footer offset (long), magic (int)
+ * Header: magic (int), version (int), compression (byte), schema JSON length (int), schema JSON (UTF-8)
+ * Block:  number of records n (int), record offsets relative to the end of the offsets (int[n]), records.
+ *         Compressed blocks are stored deflated
+ * Record: null bitmap (one bit per column, set for missing values), then the non-null values in column order:
+ *         Integer: int, Long and Time: long, Double: double, Float: float, Boolean: byte,
+ *         Categorical: state index (int), String: UTF-8 length (int) and bytes, Bytes: length (int) and bytes,
+ *         NDArray: length (int) and bytes of {@link Nd4j#toByteArray(org.nd4j.linalg.api.ndarray.INDArray)}
+ * Footer: offset of the previous footer (long, -1 for the first segment), number of blocks in the segment (int),
+ *         then for each block: offset (long), stored length (int), uncompressed length (int),
+ *         index of the first record (long), number of records (int)
+ * </pre>
+ * The writer ends a segment whenever it checkpoints the file, so the file is readable after every checkpoint:
+ * the last footer offset at the end of the file leads to the chain of all footers.
+ * Blocks are compressed independently, so any record can be located from the block index without reading the
+ * preceding blocks, and a file can be split at block boundaries (see {@link #getBlockFirstRecord(int)}).
+ * <p>
+ * The file is memory mapped. Uncompressed blocks are decoded directly from the mapped file, without parsing or
+ * intermediate copies, so repeated passes over the data are limited by disk (or page cache) bandwidth only.
+ * Compressed blocks are inflated when first accessed, and the most recently used block is cached.<br>
+ * Instances are not thread-safe.
+ */
+public class PackedRecordFile implements Closeable {
+
+    public static final int MAGIC = 0x4456504B;
+    public static final int VERSION = 1;
+    /** Size of the footer offset and magic at the end of the file */
+    public static final int TRAILER_SIZE = 12;
+    /** Size of the previous footer offset and number of blocks at the start of each footer */
+    public static final int FOOTER_PREFIX_SIZE = 12;
+    /** Size of each block entry in the footer */
+    public static final int BLOCK_ENTRY_SIZE = 28;
+
+    /** Size of the header, excluding the schema JSON */
+    public static final int HEADER_PREFIX_SIZE = 13;
+    private static final long MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+    public enum Compression {
+        NONE, DEFLATE
+    }
+
+    @Getter
+    private final File file;
+    @Getter
+    private final Schema schema;
+    @Getter
+    private final Compression compression;
+    @Getter
+    private final long numRecords;
+
+    private final FileChannel channel;
+    private final ColumnType[] types;
+    private final String[][] categoricalStates;
+
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockUncompressedLengths;
+    private final long[] blockFirstRecords;
+    private final int[] blockNumRecords;
+
+    //Blocks are mapped in regions of at most 2GB: the maximum size of a single mapping
+    private final int[] blockRegions;
+    private final long[] regionStarts;
+    private final long[] regionEnds;
+    private final MappedByteBuffer[] regions;
+
+    private int cachedBlock = -1;
+    private ByteBuffer cached;
+    private byte[] compressed;
+    private byte[] inflated;
+    private Inflater inflater;
+
+    public PackedRecordFile(@NonNull File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_PREFIX_SIZE + FOOTER_PREFIX_SIZE + TRAILER_SIZE)
+                throw new IOException("Not a packed record file: " + file + " (" + size + " bytes)");
+
+            ByteBuffer trailer = read(size - TRAILER_SIZE, TRAILER_SIZE);
+            long footerOffset = trailer.getLong();
+            ByteBuffer header = read(0, HEADER_PREFIX_SIZE);
+            if (trailer.getInt() != MAGIC || header.getInt() != MAGIC)
+                throw new IOException("Not a packed record file, or file is incomplete: " + file);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported packed record file version " + version + ": " + file);
+            int compressionIdx = header.get();
+            if (compressionIdx < 0 || compressionIdx >= Compression.values().length)
+                throw new IOException("Unknown compression " + compressionIdx + " in file " + file);
+            this.compression = Compression.values()[compressionIdx];
+            int schemaLength = header.getInt();
+            ByteBuffer json = read(HEADER_PREFIX_SIZE, schemaLength);
+            this.schema = Schema.fromJson(new String(json.array(), 0, schemaLength, StandardCharsets.UTF_8));
+
+            int numColumns = schema.numColumns();
+            types = new ColumnType[numColumns];
+            categoricalStates = new String[numColumns][];
+            for (int i = 0; i < numColumns; i++) {
+                types[i] = schema.getType(i);
+                if (types[i] == ColumnType.Categorical) {
+                    List<String> states = ((CategoricalMetaData) schema.getMetaData(i)).getStateNames();
+                    categoricalStates[i] = states.toArray(new String[0]);
+                }
+            }
+
+            //Footers are chained from the last one: collect them, then read the blocks in file order
+            long dataStart = HEADER_PREFIX_SIZE + schemaLength;
+            List<ByteBuffer> footers = new ArrayList<>();
+            List<Long> footerOffsets = new ArrayList<>();
+            int numBlocks = 0;
+            long limit = size - TRAILER_SIZE;
+            while (footerOffset >= 0) {
+                if (footerOffset < dataStart || footerOffset + FOOTER_PREFIX_SIZE > limit)
+                    throw new IOException("Corrupt footer in packed record file " + file);
+                ByteBuffer prefix = read(footerOffset, FOOTER_PREFIX_SIZE);
+                long previous = prefix.getLong();
+                int n = prefix.getInt();
+                if (n < 0 || previous >= footerOffset || footerOffset + FOOTER_PREFIX_SIZE + (long) n * BLOCK_ENTRY_SIZE > limit)
+                    throw new IOException("Corrupt footer in packed record file " + file);
+                footers.add(read(footerOffset + FOOTER_PREFIX_SIZE, n * BLOCK_ENTRY_SIZE));
+                footerOffsets.add(footerOffset);
+                numBlocks += n;
+                limit = footerOffset;
+                footerOffset = previous;
+            }
+
+            blockOffsets = new long[numBlocks];
+            blockLengths = new int[numBlocks];
+            blockUncompressedLengths = new int[numBlocks];
+            blockFirstRecords = new long[numBlocks];
+            blockNumRecords = new int[numBlocks];
+            long count = 0;
+            long blockEnd = dataStart;
+            int b = 0;
+            for (int f = footers.size() - 1; f >= 0; f--) {
+                ByteBuffer footer = footers.get(f);
+                while (footer.hasRemaining()) {
+                    blockOffsets[b] = footer.getLong();
+                    blockLengths[b] = footer.getInt();
+                    blockUncompressedLengths[b] = footer.getInt();
+                    blockFirstRecords[b] = footer.getLong();
+                    blockNumRecords[b] = footer.getInt();
+                    if (blockFirstRecords[b] != count || blockOffsets[b] < blockEnd
+                            || blockOffsets[b] + blockLengths[b] > footerOffsets.get(f))
+                        throw new IOException("Corrupt block index in packed record file " + file);
+                    count += blockNumRecords[b];
+                    blockEnd = blockOffsets[b] + blockLengths[b];
+                    b++;
+                }
+            }
+            this.numRecords = count;
+
+            blockRegions = new int[numBlocks];
+            List<long[]> r = new ArrayList<>();
+            for (int i = 0; i < numBlocks; i++) {
+                long end = blockOffsets[i] + blockLengths[i];
+                long[] last = r.isEmpty() ? null : r.get(r.size() - 1);
+                if (last == null || end - last[0] > MAX_REGION_SIZE) {
+                    r.add(new long[]{blockOffsets[i], end});
+                } else {
+                    last[1] = end;
+                }
+                blockRegions[i] = r.size() - 1;
+            }
+            regionStarts = new long[r.size()];
+            regionEnds = new long[r.size()];
+            for (int i = 0; i < r.size(); i++) {
+                regionStarts[i] = r.get(i)[0];
+                regionEnds[i] = r.get(i)[1];
+            }
+            regions = new MappedByteBuffer[r.size()];
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Number of blocks in the file
+     */
+    public int numBlocks() {
+        return blockOffsets.length;
+    }
+
+    /**
+     * @return Index of the first record of the given block. Records of a block are contiguous: block {@code i}
+     * contains records {@code [getBlockFirstRecord(i), getBlockFirstRecord(i) + getBlockNumRecords(i))}
+     */
+    public long getBlockFirstRecord(int block) {
+        return blockFirstRecords[block];
+    }
+
+    /**
+     * @return Number of records in the given block
+     */
+    public int getBlockNumRecords(int block) {
+        return blockNumRecords[block];
+    }
+
+    /**
+     * Read a record by index
+     *
+     * @param index Index of the record in the file, 0 to {@link #getNumRecords()} - 1
+     * @return The record. Missing values are returned as {@link NullWritable}
+     */
+    public List<Writable> get(long index) throws IOException {
+        Preconditions.checkArgument(index >= 0 && index < numRecords, "Invalid record index %s: file %s has %s records",
+                index, file, numRecords);
+        int b = Arrays.binarySearch(blockFirstRecords, index);
+        if (b < 0)
+            b = -b - 2;
+        ByteBuffer data = block(b);
+        int n = blockNumRecords[b];
+        int pos = 4 + 4 * n + data.getInt(4 + 4 * (int) (index - blockFirstRecords[b]));
+        return decode(data, pos);
+    }
+
+    private List<Writable> decode(ByteBuffer data, int pos) {
+        int bitmap = pos;
+        pos += (types.length + 7) / 8;
+        List<Writable> ret = new ArrayList<>(types.length);
+        for (int i = 0; i < types.length; i++) {
+            if ((data.get(bitmap + (i >> 3)) & (1 << (i & 7))) != 0) {
+                ret.add(NullWritable.INSTANCE);
+                continue;
+            }
+            switch (types[i]) {
+                case Integer:
+                    ret.add(new IntWritable(data.getInt(pos)));
+                    pos += 4;
+                    break;
+                case Long:
+                case Time:
+                    ret.add(new LongWritable(data.getLong(pos)));
+                    pos += 8;
+                    break;
+                case Double:
+                    ret.add(new DoubleWritable(data.getDouble(pos)));
+                    pos += 8;
+                    break;
+                case Float:
+                    ret.add(new FloatWritable(data.getFloat(pos)));
+                    pos += 4;
+                    break;
+                case Boolean:
+                    ret.add(new BooleanWritable(data.get(pos) != 0));
+                    pos += 1;
+                    break;
+                case Categorical:
+                    ret.add(new Text(categoricalStates[i][data.getInt(pos)]));
+                    pos += 4;
+                    break;
+                case String:
+                case Bytes:
+                case NDArray:
+                    int length = data.getInt(pos);
+                    byte[] bytes = new byte[length];
+                    ByteBuffer src = data.duplicate();
+                    src.position(pos + 4);
+                    src.get(bytes);
+                    pos += 4 + length;
+                    if (types[i] == ColumnType.String) {
+                        ret.add(new Text(bytes));
+                    } else if (types[i] == ColumnType.Bytes) {
+                        ret.add(new BytesWritable(bytes));
+                    } else {
+                        ret.add(new NDArrayWritable(Nd4j.fromByteArray(bytes)));
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported column type: " + types[i]);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the uncompressed contents of a block, indexed from 0
+     */
+    private ByteBuffer block(int b) throws IOException {
+        if (b == cachedBlock)
+            return cached;
+
+        int r = blockRegions[b];
+        if (regions[r] == null)
+            regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, regionStarts[r], regionEnds[r] - regionStarts[r]);
+        ByteBuffer stored = regions[r].duplicate();
+        int start = (int) (blockOffsets[b] - regionStarts[r]);
+        stored.position(start);
+        stored.limit(start + blockLengths[b]);
+
+        if (compression == Compression.NONE) {
+            cached = stored.slice();
+        } else {
+            int length = blockLengths[b];
+            int uncompressedLength = blockUncompressedLengths[b];
+            if (compressed == null || compressed.length < length)
+                compressed = new byte[length];
+            if (inflated == null || inflated.length < uncompressedLength)
+                inflated = new byte[uncompressedLength];
+            if (inflater == null)
+                inflater = new Inflater();
+            stored.get(compressed, 0, length);
+            inflater.reset();
+            inflater.setInput(compressed, 0, length);
+            int n = 0;
+            try {
+                while (n < uncompressedLength && !inflater.finished()) {
+                    int read = inflater.inflate(inflated, n, uncompressedLength - n);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    n += read;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt block " + b + " in packed record file " + file, e);
+            }
+            if (n != uncompressedLength)
+                throw new IOException("Corrupt block " + b + " in packed record file " + file + ": expected "
+                        + uncompressedLength + " bytes after decompression, got " + n);
+            cached = ByteBuffer.wrap(inflated, 0, uncompressedLength);
+        }
+        cachedBlock = b;
+        return cached;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(length);
+        while (b.hasRemaining()) {
+            if (channel.read(b, position + b.position()) < 0)
+                throw new EOFException("Unexpected end of packed record file " + file);
+        }
+        b.flip();
+        return b;
+    }
+
+    /**
+     * Closes the file. Mapped regions are released when garbage collected
+     */
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(regions, null);
+        cached = null;
+        cachedBlock = -1;
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+        channel.close();
+    }
+}
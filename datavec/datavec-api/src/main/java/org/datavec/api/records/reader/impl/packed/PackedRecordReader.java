@@ -0,0 +1,237 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.api.records.reader.impl.packed;
+
+import lombok.Getter;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.metadata.RecordMetaDataIndex;
+import org.datavec.api.records.reader.BaseRecordReader;
+import org.datavec.api.records.writer.impl.packed.PackedRecordWriter;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.Writable;
+import org.nd4j.common.base.Preconditions;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Record reader for files written by {@link PackedRecordWriter}. The records of all files of the input split are
+ * indexed in order, and can be read sequentially, or in any order by index with {@link #get(long)}.
+ * All files must have the same schema.<br>
+ * To read a subset of the records (for example, one split of the data per worker), use {@link #seek(long)} and
+ * {@link #getNumRecords()}.
+ * <p>
+ * Files are memory mapped, and values are stored in binary form: see {@link PackedRecordFile}. Reading the data again,
+ * after {@link #reset()}, requires no parsing.
+ */
+public class PackedRecordReader extends BaseRecordReader {
+
+    private Configuration conf;
+    private List<PackedRecordFile> files = Collections.emptyList();
+    private long[] fileStarts = new long[0];
+    @Getter
+    private Schema schema;
+    /** Total number of records, in all files */
+    @Getter
+    private long numRecords;
+    private long position;
+
+    @Override
+    public void initialize(InputSplit split) throws IOException, InterruptedException {
+        super.initialize(split);
+        close();
+        List<PackedRecordFile> list = new ArrayList<>();
+        try {
+            for (URI uri : split.locations()) {
+                PackedRecordFile f = new PackedRecordFile(new File(uri));
+                list.add(f);
+                if (schema == null) {
+                    schema = f.getSchema();
+                } else if (!schema.equals(f.getSchema())) {
+                    throw new IllegalStateException("Schema of file " + uri + " does not match the schema of file "
+                            + list.get(0).getFile() + ": " + f.getSchema() + " vs. " + schema);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (PackedRecordFile f : list)
+                f.close();
+            schema = null;
+            throw e;
+        }
+
+        files = list;
+        fileStarts = new long[list.size()];
+        numRecords = 0;
+        for (int i = 0; i < list.size(); i++) {
+            fileStarts[i] = numRecords;
+            numRecords += list.get(i).getNumRecords();
+        }
+        position = 0;
+    }
+
+    @Override
+    public void initialize(Configuration conf, InputSplit split) throws IOException, InterruptedException {
+        setConf(conf);
+        initialize(split);
+    }
+
+    /**
+     * Read a record by index. Does not change the position of sequential reads with {@link #next()}
+     *
+     * @param index Index of the record, over all files of the input split, in order
+     */
+    public List<Writable> get(long index) throws IOException {
+        Preconditions.checkArgument(index >= 0 && index < numRecords, "Invalid record index %s: reader has %s records",
+                index, numRecords);
+        int f = fileOf(index);
+        return files.get(f).get(index - fileStarts[f]);
+    }
+
+    private int fileOf(long index) {
+        //Files without records share their start index with the next file
+        int f = Arrays.binarySearch(fileStarts, index);
+        if (f < 0)
+            return -f - 2;
+        while (f < fileStarts.length - 1 && fileStarts[f + 1] == index)
+            f++;
+        return f;
+    }
+
+    /**
+     * Set the index of the next record returned by {@link #next()}
+     */
+    public void seek(long index) {
+        Preconditions.checkArgument(index >= 0 && index <= numRecords, "Invalid record index %s: reader has %s records",
+                index, numRecords);
+        position = index;
+    }
+
+    @Override
+    public List<Writable> next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+        List<Writable> ret;
+        try {
+            ret = get(position++);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        invokeListeners(ret);
+        return ret;
+    }
+
+    @Override
+    public boolean batchesSupported() {
+        return true;
+    }
+
+    @Override
+    public List<List<Writable>> next(int num) {
+        Preconditions.checkArgument(num > 0, "Number of records must be positive, got %s", num);
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+        List<List<Writable>> ret = new ArrayList<>((int) Math.min(num, numRecords - position));
+        while (ret.size() < num && hasNext())
+            ret.add(next());
+        return ret;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < numRecords;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void reset() {
+        position = 0;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public List<Writable> record(URI uri, DataInputStream dataInputStream) throws IOException {
+        throw new UnsupportedOperationException(
+                "Generating records from DataInputStream not supported for PackedRecordReader");
+    }
+
+    @Override
+    public Record nextRecord() {
+        long index = position;
+        List<Writable> next = next();
+        return new org.datavec.api.records.impl.Record(next, metaData(index));
+    }
+
+    private RecordMetaDataIndex metaData(long index) {
+        return new RecordMetaDataIndex(index, files.get(fileOf(index)).getFile().toURI(), PackedRecordReader.class);
+    }
+
+    @Override
+    public Record loadFromMetaData(RecordMetaData recordMetaData) throws IOException {
+        return loadFromMetaData(Collections.singletonList(recordMetaData)).get(0);
+    }
+
+    @Override
+    public List<Record> loadFromMetaData(List<RecordMetaData> recordMetaDatas) throws IOException {
+        List<Record> out = new ArrayList<>(recordMetaDatas.size());
+        for (RecordMetaData recordMetaData : recordMetaDatas) {
+            if (!(recordMetaData instanceof RecordMetaDataIndex))
+                throw new IllegalArgumentException("Expected RecordMetaDataIndex; got: " + recordMetaData);
+            long index = ((RecordMetaDataIndex) recordMetaData).getIndex();
+            out.add(new org.datavec.api.records.impl.Record(get(index), metaData(index)));
+        }
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (PackedRecordFile f : files)
+            f.close();
+        files = Collections.emptyList();
+        fileStarts = new long[0];
+        schema = null;
+        numRecords = 0;
+        position = 0;
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+}
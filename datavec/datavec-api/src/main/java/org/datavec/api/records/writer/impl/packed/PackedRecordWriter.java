@@ -0,0 +1,348 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.api.records.writer.impl.packed;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.datavec.api.records.reader.impl.packed.PackedRecordFile;
+import org.datavec.api.records.reader.impl.packed.PackedRecordFile.Compression;
+import org.datavec.api.records.reader.impl.packed.PackedRecordReader;
+import org.datavec.api.records.writer.impl.FileRecordWriter;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.split.partition.PartitionMetaData;
+import org.datavec.api.split.partition.Partitioner;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.metadata.CategoricalMetaData;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * Writes records in the packed binary format read by {@link PackedRecordReader}: see {@link PackedRecordFile} for
+ * the file layout. Values are stored in binary form according to the column types of the schema, so reading them
+ * back requires no parsing.<br>
+ * Records are buffered in memory and written in blocks of approximately {@code blockSize} bytes, optionally
+ * compressed.<br>
+ * All data is written to {@link Partitioner#currentOutputStream()}: when the partitioner switches to a new stream
+ * (whether opened by this writer, or by a caller such as {@link org.datavec.api.records.mapper.RecordMapper}),
+ * the previous file is finished and a header is written to the new one, so callers must not close the previous
+ * stream before the next write. Each full block is followed by a checkpoint footer indexing the blocks written since
+ * the previous one, so the file can be read up to the last full block while it's being written. The last records
+ * and the final footer are written when the partition changes, or by {@link #close()}.
+ */
+public class PackedRecordWriter extends FileRecordWriter {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    @Getter
+    private final Schema schema;
+    @Getter
+    private final Compression compression;
+    @Getter
+    private final int blockSize;
+
+    private final ColumnType[] types;
+    private final Map<String, Integer>[] categoricalIndices;
+    private final byte[] nullBitmap;
+
+    private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+    private final DataOutputStream blockOut = new DataOutputStream(blockBytes);
+    private int[] recordOffsets = new int[1024];
+    private int blockRecords;
+
+    private Deflater deflater;
+    private byte[] deflateBuffer;
+
+    //State of the current file
+    private OutputStream stream;
+    private long position;
+    private long fileRecords;
+    //Blocks written since the last footer, and offset of the last footer (-1 if none)
+    private final List<long[]> blockIndex = new ArrayList<>();
+    private long previousFooter;
+    private boolean finished;
+
+    public PackedRecordWriter(@NonNull Schema schema) {
+        this(schema, Compression.NONE, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param schema      Schema of the records to write
+     * @param compression Compression of the blocks. Uncompressed files are the fastest to read,
+     *                    compressed files are smaller
+     * @param blockSize   Approximate uncompressed size of each block, in bytes
+     */
+    public PackedRecordWriter(@NonNull Schema schema, @NonNull Compression compression, int blockSize) {
+        Preconditions.checkArgument(blockSize > 0, "Block size must be positive, got %s", blockSize);
+        this.schema = schema;
+        this.compression = compression;
+        this.blockSize = blockSize;
+
+        int numColumns = schema.numColumns();
+        types = new ColumnType[numColumns];
+        categoricalIndices = new Map[numColumns];
+        for (int i = 0; i < numColumns; i++) {
+            types[i] = schema.getType(i);
+            if (types[i] == ColumnType.Categorical) {
+                List<String> states = ((CategoricalMetaData) schema.getMetaData(i)).getStateNames();
+                categoricalIndices[i] = new HashMap<>();
+                for (int j = 0; j < states.size(); j++)
+                    categoricalIndices[i].put(states.get(j), j);
+            }
+        }
+        nullBitmap = new byte[(numColumns + 7) / 8];
+    }
+
+    @Override
+    public void initialize(InputSplit inputSplit, Partitioner partitioner) throws Exception {
+        super.initialize(inputSplit, partitioner);
+        stream = partitioner.currentOutputStream();
+        writeHeader();
+    }
+
+    @Override
+    public boolean supportsBatch() {
+        return true;
+    }
+
+    @Override
+    public PartitionMetaData writeBatch(List<List<Writable>> batch) throws IOException {
+        for (List<Writable> record : batch)
+            write(record);
+        return PartitionMetaData.builder().numRecordsUpdated(batch.size()).build();
+    }
+
+    @Override
+    public PartitionMetaData write(List<Writable> record) throws IOException {
+        Preconditions.checkArgument(record.size() == types.length, "Invalid record: expected %s values for schema, got %s",
+                types.length, record.size());
+        Preconditions.checkState(partitioner != null, "Writer is closed or has not been initialized");
+        syncStream();
+        if (partitioner.needsNewPartition()) {
+            finishFile();
+            partitioner.openNewStream();
+            syncStream();
+        }
+        finished = false;
+
+        if (blockRecords == recordOffsets.length)
+            recordOffsets = Arrays.copyOf(recordOffsets, 2 * recordOffsets.length);
+        recordOffsets[blockRecords++] = blockBytes.size();
+
+        Arrays.fill(nullBitmap, (byte) 0);
+        for (int i = 0; i < types.length; i++) {
+            if (record.get(i) instanceof NullWritable)
+                nullBitmap[i >> 3] |= (byte) (1 << (i & 7));
+        }
+        blockOut.write(nullBitmap);
+        for (int i = 0; i < types.length; i++) {
+            Writable w = record.get(i);
+            if (w instanceof NullWritable)
+                continue;
+            switch (types[i]) {
+                case Integer:
+                    blockOut.writeInt(w.toInt());
+                    break;
+                case Long:
+                case Time:
+                    blockOut.writeLong(w.toLong());
+                    break;
+                case Double:
+                    blockOut.writeDouble(w.toDouble());
+                    break;
+                case Float:
+                    blockOut.writeFloat(w.toFloat());
+                    break;
+                case Boolean:
+                    boolean b = w instanceof BooleanWritable ? ((BooleanWritable) w).get() : Boolean.parseBoolean(w.toString());
+                    blockOut.writeByte(b ? 1 : 0);
+                    break;
+                case Categorical:
+                    Integer idx = categoricalIndices[i].get(w.toString());
+                    if (idx == null)
+                        throw new IllegalStateException("Invalid value \"" + w + "\" for categorical column \""
+                                + schema.getName(i) + "\": valid states are "
+                                + ((CategoricalMetaData) schema.getMetaData(i)).getStateNames());
+                    blockOut.writeInt(idx);
+                    break;
+                case String:
+                    writeBytes(w.toString().getBytes(StandardCharsets.UTF_8));
+                    break;
+                case Bytes:
+                    writeBytes(((BytesWritable) w).getContent());
+                    break;
+                case NDArray:
+                    writeBytes(Nd4j.toByteArray(((NDArrayWritable) w).get()));
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported column type: " + types[i]);
+            }
+        }
+
+        if (blockBytes.size() >= blockSize)
+            checkpoint();
+        return PartitionMetaData.builder().numRecordsUpdated(1).build();
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        blockOut.writeInt(bytes.length);
+        blockOut.write(bytes);
+    }
+
+    /**
+     * Switches to the current stream of the partitioner if it has changed: finishes the previous file,
+     * and starts the new one
+     */
+    private void syncStream() throws IOException {
+        OutputStream current = partitioner.currentOutputStream();
+        if (current == stream)
+            return;
+        finishFile();
+        stream = current;
+        out = new DataOutputStream(current);
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        byte[] json = schema.toJson().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(PackedRecordFile.MAGIC);
+        out.writeInt(PackedRecordFile.VERSION);
+        out.writeByte(compression.ordinal());
+        out.writeInt(json.length);
+        out.write(json);
+        position = PackedRecordFile.HEADER_PREFIX_SIZE + json.length;
+        fileRecords = 0;
+        blockIndex.clear();
+        previousFooter = -1;
+        finished = false;
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockRecords == 0)
+            return;
+        //Output stream may be unbuffered: record count and offsets are written at once
+        ByteBuffer offsets = ByteBuffer.allocate(4 + 4 * blockRecords);
+        offsets.putInt(blockRecords);
+        for (int i = 0; i < blockRecords; i++)
+            offsets.putInt(recordOffsets[i]);
+        int uncompressedLength = offsets.capacity() + blockBytes.size();
+        int length;
+        if (compression == Compression.NONE) {
+            out.write(offsets.array());
+            blockBytes.writeTo(out);
+            length = uncompressedLength;
+        } else {
+            if (deflater == null) {
+                deflater = new Deflater();
+                deflateBuffer = new byte[64 * 1024];
+            }
+            deflater.reset();
+            deflater.setInput(offsets.array());
+            length = deflate(false);
+            deflater.setInput(blockBytes.toByteArray());
+            deflater.finish();
+            length += deflate(true);
+        }
+
+        blockIndex.add(new long[]{position, length, uncompressedLength, fileRecords, blockRecords});
+        position += length;
+        fileRecords += blockRecords;
+        blockBytes.reset();
+        blockRecords = 0;
+    }
+
+    private int deflate(boolean finish) throws IOException {
+        int length = 0;
+        while (finish ? !deflater.finished() : !deflater.needsInput()) {
+            int n = deflater.deflate(deflateBuffer);
+            out.write(deflateBuffer, 0, n);
+            length += n;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the buffered records and a footer with the index of the blocks written since the previous footer,
+     * so that the file is complete up to this point. No-op if nothing was written since the previous checkpoint
+     */
+    private void checkpoint() throws IOException {
+        if (finished)
+            return;
+        flushBlock();
+        ByteBuffer footer = ByteBuffer.allocate(PackedRecordFile.FOOTER_PREFIX_SIZE
+                + PackedRecordFile.BLOCK_ENTRY_SIZE * blockIndex.size() + PackedRecordFile.TRAILER_SIZE);
+        footer.putLong(previousFooter);
+        footer.putInt(blockIndex.size());
+        for (long[] b : blockIndex) {
+            footer.putLong(b[0]);
+            footer.putInt((int) b[1]);
+            footer.putInt((int) b[2]);
+            footer.putLong(b[3]);
+            footer.putInt((int) b[4]);
+        }
+        footer.putLong(position);
+        footer.putInt(PackedRecordFile.MAGIC);
+        out.write(footer.array());
+        out.flush();
+
+        previousFooter = position;
+        position += footer.capacity();
+        blockIndex.clear();
+        finished = true;
+    }
+
+    /**
+     * Completes and closes the current file
+     */
+    private void finishFile() throws IOException {
+        checkpoint();
+        out.close();
+    }
+
+    @Override
+    public void close() {
+        if (out != null) {
+            try {
+                finishFile();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                out = null;
+                stream = null;
+                partitioner = null;
+                if (deflater != null) {
+                    deflater.end();
+                    deflater = null;
+                }
+            }
+        }
+    }
+}
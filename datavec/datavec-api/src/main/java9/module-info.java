@@ -41,12 +41,14 @@ open module datavec.api {
     exports org.datavec.api.records.reader.impl.inmemory;
     exports org.datavec.api.records.reader.impl.jackson;
     exports org.datavec.api.records.reader.impl.misc;
+    exports org.datavec.api.records.reader.impl.packed;
     exports org.datavec.api.records.reader.impl.regex;
     exports org.datavec.api.records.reader.impl.transform;
     exports org.datavec.api.records.writer;
     exports org.datavec.api.records.writer.impl;
     exports org.datavec.api.records.writer.impl.csv;
     exports org.datavec.api.records.writer.impl.misc;
+    exports org.datavec.api.records.writer.impl.packed;
     exports org.datavec.api.split;
     exports org.datavec.api.split.partition;
     exports org.datavec.api.split.streams;
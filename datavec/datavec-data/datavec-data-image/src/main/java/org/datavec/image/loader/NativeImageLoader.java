@@ -139,6 +139,23 @@ public class NativeImageLoader extends BaseImageLoader {
         this.multiPageMode = other.multiPageMode;
     }
 
+    /**
+     * Returns a new loader with the same configuration as this one, but using the given image transform.
+     * Loaders and most image transforms can't be used by multiple threads at once: this can be used to create
+     * one loader per thread
+     *
+     * @param imageTransform to use before rescaling and converting, may be null
+     */
+    public NativeImageLoader copy(ImageTransform imageTransform) {
+        NativeImageLoader ret = new NativeImageLoader(this);
+        ret.imageTransform = imageTransform;
+        return ret;
+    }
+
+    public ImageTransform getImageTransform() {
+        return imageTransform;
+    }
+
     @Override
     public String[] getAllowedFormats() {
         return ALLOWED_FORMATS;
@@ -41,6 +41,7 @@ import org.datavec.api.writable.IntWritable;
 import org.datavec.api.writable.NDArrayWritable;
 import org.datavec.api.writable.Writable;
 import org.datavec.api.writable.batch.NDArrayRecordBatch;
+import org.datavec.image.data.ImageWritable;
 import org.datavec.image.loader.BaseImageLoader;
 import org.datavec.image.loader.ImageLoader;
 import org.datavec.image.loader.NativeImageLoader;
@@ -52,6 +53,11 @@ import org.nd4j.linalg.factory.Nd4j;
 import java.io.*;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 @Slf4j
 public abstract class BaseImageRecordReader extends BaseRecordReader {
@@ -78,6 +84,23 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
     protected boolean logLabelCountOnInit = true;
     @Getter @Setter
     protected boolean nchw_channels_first = true;
+    /**
+     * Number of threads decoding and transforming images for {@link #next(int)}. 0: images are decoded on the
+     * calling thread. See {@link #setParallelDecoding(int, int)}
+     */
+    @Getter
+    protected int decodeThreads = 0;
+    /** Number of upcoming minibatches decoded ahead of the consumer, with parallel decoding */
+    @Getter
+    protected int prefetchBatches = 1;
+    protected transient Supplier<ImageTransform> imageTransformFactory;
+    @Getter
+    protected ImageDecodeStats decodeStats = new ImageDecodeStats();
+    protected transient ExecutorService decodeExecutor;
+    protected transient ThreadLocal<NativeImageLoader> decodeLoaders;
+    protected transient Deque<PendingBatch> prefetched;
+    /** Files to read before those of the iterator: files of discarded prefetched minibatches */
+    protected final Deque<File> pendingFiles = new ArrayDeque<>();
 
     public final static String HEIGHT = NAME_SPACE + ".height";
     public final static String WIDTH = NAME_SPACE + ".width";
@@ -127,6 +150,8 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
 
     @Override
     public void initialize(InputSplit split) throws IOException {
+        clearPrefetch();
+        decodeLoaders = null;
         if (imageLoader == null) {
             imageLoader = new NativeImageLoader(height, width, channels, imageTransform);
         }
@@ -236,8 +261,9 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
             }
         }
         if (iter != null) {
+            cancelPrefetch();
             List<Writable> ret;
-            File image = iter.next();
+            File image = nextFile();
             currentFile = image;
 
             if (image.isDirectory())
@@ -283,7 +309,7 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
         }
 
         if (iter != null) {
-            return iter.hasNext();
+            return (prefetched != null && !prefetched.isEmpty()) || hasNextFile();
         } else if (record != null) {
             return !hitImage;
         }
@@ -295,6 +321,46 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
         return (imageLoader instanceof NativeImageLoader);
     }
 
+    /**
+     * Decode and transform images for {@link #next(int)} on background threads: images of a minibatch are decoded
+     * concurrently, each directly into its part of the minibatch array, and upcoming minibatches are decoded while the
+     * caller uses earlier ones. Only used with a {@link NativeImageLoader} (the default image loader).<br>
+     * See {@link #getDecodeStats()} for decoding throughput, and whether the consumer is waiting for decoding.
+     *
+     * @param numThreads      Number of decoding threads. 0 to decode images on the calling thread (default)
+     * @param prefetchBatches Maximum number of upcoming minibatches decoded ahead of the consumer
+     */
+    public void setParallelDecoding(int numThreads, int prefetchBatches) {
+        Preconditions.checkArgument(numThreads >= 0, "Number of decoding threads can't be negative: got %s", numThreads);
+        Preconditions.checkArgument(prefetchBatches >= 0, "Number of prefetched minibatches can't be negative: got %s", prefetchBatches);
+        cancelPrefetch();
+        if (decodeExecutor != null) {
+            decodeExecutor.shutdown();
+            decodeExecutor = null;
+        }
+        this.decodeThreads = numThreads;
+        this.prefetchBatches = prefetchBatches;
+    }
+
+    /**
+     * Sets the factory used to create one image transform per decoding thread, with parallel decoding.<br>
+     * Most image transforms keep per-image state, and can't be used by multiple threads at once: without a factory,
+     * the image transform of the image loader is shared by all decoding threads, but applied to one image at a time.
+     */
+    public void setImageTransformFactory(Supplier<ImageTransform> imageTransformFactory) {
+        cancelPrefetch();
+        this.imageTransformFactory = imageTransformFactory;
+        this.decodeLoaders = null;
+    }
+
+    protected boolean hasNextFile() {
+        return !pendingFiles.isEmpty() || iter.hasNext();
+    }
+
+    protected File nextFile() {
+        return pendingFiles.isEmpty() ? iter.next() : pendingFiles.poll();
+    }
+
     @Override
     public List<List<Writable>> next(int num) {
         Preconditions.checkArgument(num > 0, "Number of examples must be > 0: got %s", num);
@@ -302,52 +368,166 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
         if (imageLoader == null) {
             imageLoader = new NativeImageLoader(height, width, channels, imageTransform);
         }
+        if (decodeThreads > 0 && imageLoader.getClass() == NativeImageLoader.class) {
+            return nextParallel(num);
+        }
+
+        PendingBatch batch = takeBatch(num);
+        for (int i = 0; i < batch.files.size(); i++) {
+            long start = System.nanoTime();
+            try {
+                ((NativeImageLoader) imageLoader).asMatrixView(batch.files.get(i),
+                        batch.features.tensorAlongDimension(i, 1, 2, 3));
+            } catch (Exception e) {
+                System.out.println("Image file failed during load: " + batch.files.get(i).getAbsolutePath());
+                throw new RuntimeException(e);
+            }
+            decodeStats.imageDecoded(System.nanoTime() - start);
+        }
+        return finishBatch(batch);
+    }
 
-        List<File> currBatch = new ArrayList<>();
+    private List<List<Writable>> nextParallel(int num) {
+        if (prefetched == null) {
+            prefetched = new ArrayDeque<>();
+        } else if (!prefetched.isEmpty() && prefetched.peek().requested != num) {
+            cancelPrefetch();
+        }
 
-        int cnt = 0;
+        if (prefetched.isEmpty()) {
+            if (!hasNextFile()) {
+                return finishBatch(takeBatch(num));
+            }
+            prefetched.add(submitBatch(num));
+        }
+        PendingBatch batch = prefetched.poll();
+        // keep decoding threads busy while this minibatch is being used
+        while (prefetched.size() < prefetchBatches && hasNextFile()) {
+            prefetched.add(submitBatch(num));
+        }
 
-        int numCategories = (appendLabel || writeLabel) ? labels.size() : 0;
-        List<Integer> currLabels = null;
-        List<Writable> currLabelsWritable = null;
-        List<List<Writable>> multiGenLabels = null;
-        while (cnt < num && iter.hasNext()) {
-            currentFile = iter.next();
-            currBatch.add(currentFile);
-            invokeListeners(currentFile);
+        long start = System.nanoTime();
+        boolean waited = false;
+        for (int i = 0; i < batch.decoding.size(); i++) {
+            Future<?> f = batch.decoding.get(i);
+            waited |= !f.isDone();
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Image file failed during load: " + batch.files.get(i).getAbsolutePath(), e.getCause());
+            }
+        }
+        decodeStats.batchReturned(waited, System.nanoTime() - start);
+        return finishBatch(batch);
+    }
+
+    /**
+     * Takes the next minibatch, and submits its images for decoding on the decoding threads
+     */
+    private PendingBatch submitBatch(int num) {
+        if (decodeExecutor == null) {
+            decodeExecutor = Executors.newFixedThreadPool(decodeThreads, r -> {
+                Thread t = Executors.defaultThreadFactory().newThread(r);
+                t.setName("ImageRecordReader decoding thread");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        if (decodeLoaders == null) {
+            final NativeImageLoader loader = (NativeImageLoader) imageLoader;
+            final Supplier<ImageTransform> factory = imageTransformFactory;
+            final ImageTransform shared = loader.getImageTransform() == null ? null : new LockedImageTransform(loader.getImageTransform());
+            decodeLoaders = ThreadLocal.withInitial(() -> loader.copy(factory != null ? factory.get() : shared));
+        }
+
+        final PendingBatch batch = takeBatch(num);
+        final ThreadLocal<NativeImageLoader> loaders = decodeLoaders;
+        batch.decoding = new ArrayList<>(batch.files.size());
+        for (int i = 0; i < batch.files.size(); i++) {
+            final File file = batch.files.get(i);
+            final INDArray view = batch.features.tensorAlongDimension(i, 1, 2, 3);
+            batch.decoding.add(decodeExecutor.submit(() -> {
+                long start = System.nanoTime();
+                loaders.get().asMatrixView(file, view);
+                decodeStats.imageDecoded(System.nanoTime() - start);
+                return null;
+            }));
+        }
+        return batch;
+    }
+
+    /**
+     * Discards minibatches decoded ahead of the consumer: their files are returned to the front of the file queue
+     */
+    protected void cancelPrefetch() {
+        if (prefetched == null || prefetched.isEmpty())
+            return;
+        List<File> files = new ArrayList<>();
+        for (PendingBatch b : prefetched) {
+            for (Future<?> f : b.decoding)
+                f.cancel(false);
+            files.addAll(b.files);
+        }
+        prefetched.clear();
+        for (int i = files.size() - 1; i >= 0; i--)
+            pendingFiles.addFirst(files.get(i));
+    }
+
+    protected void clearPrefetch() {
+        cancelPrefetch();
+        pendingFiles.clear();
+    }
+
+    /**
+     * Takes the files of the next minibatch (at most num) and their labels, and allocates the features array
+     */
+    protected PendingBatch takeBatch(int num) {
+        PendingBatch batch = new PendingBatch(num);
+        while (batch.files.size() < num && hasNextFile()) {
+            File file = nextFile();
+            batch.files.add(file);
             if (appendLabel || writeLabel) {
                 //Collect the label Writables from the label generators
                 if(labelMultiGenerator != null){
-                    if(multiGenLabels == null)
-                        multiGenLabels = new ArrayList<>();
+                    if(batch.multiGenLabels == null)
+                        batch.multiGenLabels = new ArrayList<>();
 
-                    multiGenLabels.add(labelMultiGenerator.getLabels(currentFile.getPath()));
+                    batch.multiGenLabels.add(labelMultiGenerator.getLabels(file.getPath()));
                 } else {
                     if (labelGenerator.inferLabelClasses()) {
-                        if (currLabels == null)
-                            currLabels = new ArrayList<>();
-                        currLabels.add(labels.indexOf(getLabel(currentFile.getPath())));
+                        if (batch.currLabels == null)
+                            batch.currLabels = new ArrayList<>();
+                        batch.currLabels.add(labels.indexOf(getLabel(file.getPath())));
                     } else {
-                        if (currLabelsWritable == null)
-                            currLabelsWritable = new ArrayList<>();
-                        currLabelsWritable.add(labelGenerator.getLabelForPath(currentFile.getPath()));
+                        if (batch.currLabelsWritable == null)
+                            batch.currLabelsWritable = new ArrayList<>();
+                        batch.currLabelsWritable.add(labelGenerator.getLabelForPath(file.getPath()));
                     }
                 }
             }
-            cnt++;
         }
 
-        INDArray features = Nd4j.createUninitialized(new long[] {cnt, channels, height, width}, 'c');
-        Nd4j.getAffinityManager().tagLocation(features, AffinityManager.Location.HOST);
-        for (int i = 0; i < cnt; i++) {
-            try {
-                ((NativeImageLoader) imageLoader).asMatrixView(currBatch.get(i),
-                        features.tensorAlongDimension(i, 1, 2, 3));
-            } catch (Exception e) {
-                System.out.println("Image file failed during load: " + currBatch.get(i).getAbsolutePath());
-                throw new RuntimeException(e);
-            }
+        int cnt = batch.files.size();
+        batch.features = Nd4j.createUninitialized(new long[] {cnt, channels, height, width}, 'c');
+        Nd4j.getAffinityManager().tagLocation(batch.features, AffinityManager.Location.HOST);
+        return batch;
+    }
+
+    /**
+     * Converts a decoded minibatch, and its labels, to a record batch
+     */
+    protected List<List<Writable>> finishBatch(PendingBatch batch) {
+        for (File f : batch.files) {
+            currentFile = f;
+            invokeListeners(f);
         }
+
+        int cnt = batch.files.size();
+        int numCategories = (appendLabel || writeLabel) ? labels.size() : 0;
+        INDArray features = batch.features;
         if(!nchw_channels_first){
             features = features.permute(0,2,3,1);   //NCHW to NHWC
         }
@@ -360,10 +540,10 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
             //And convert the previously collected label Writables from the label generators
             if(labelMultiGenerator != null){
                 List<Writable> temp = new ArrayList<>();
-                List<Writable> first = multiGenLabels.get(0);
+                List<Writable> first = batch.multiGenLabels.get(0);
                 for(int col=0; col<first.size(); col++ ){
                     temp.clear();
-                    for (List<Writable> multiGenLabel : multiGenLabels) {
+                    for (List<Writable> multiGenLabel : batch.multiGenLabels) {
                         temp.add(multiGenLabel.get(col));
                     }
                     INDArray currCol = RecordConverter.toMinibatchArray(temp);
@@ -375,19 +555,19 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
                     //Standard classification use case (i.e., handle String -> integer conversion)
                     labels = Nd4j.create(cnt, numCategories, 'c');
                     Nd4j.getAffinityManager().tagLocation(labels, AffinityManager.Location.HOST);
-                    for (int i = 0; i < currLabels.size(); i++) {
-                        labels.putScalar(i, currLabels.get(i), 1.0f);
+                    for (int i = 0; i < batch.currLabels.size(); i++) {
+                        labels.putScalar(i, batch.currLabels.get(i), 1.0f);
                     }
                 } else {
                     //Regression use cases, and PathLabelGenerator instances that already map to integers
-                    if (currLabelsWritable.get(0) instanceof NDArrayWritable) {
+                    if (batch.currLabelsWritable.get(0) instanceof NDArrayWritable) {
                         List<INDArray> arr = new ArrayList<>();
-                        for (Writable w : currLabelsWritable) {
+                        for (Writable w : batch.currLabelsWritable) {
                             arr.add(((NDArrayWritable) w).get());
                         }
                         labels = Nd4j.concat(0, arr.toArray(new INDArray[arr.size()]));
                     } else {
-                        labels = RecordConverter.toMinibatchArray(currLabelsWritable);
+                        labels = RecordConverter.toMinibatchArray(batch.currLabelsWritable);
                     }
                 }
 
@@ -400,7 +580,11 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
 
     @Override
     public void close() throws IOException {
-        //No op
+        clearPrefetch();
+        if (decodeExecutor != null) {
+            decodeExecutor.shutdown();
+            decodeExecutor = null;
+        }
     }
 
     @Override
@@ -469,6 +653,7 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
         if (inputSplit == null)
             throw new UnsupportedOperationException("Cannot reset without first initializing");
         inputSplit.reset();
+        clearPrefetch();
         if (iter != null) {
             iter = new FileFromPathIterator(inputSplit.locationsPathIterator());
         } else if (record != null) {
@@ -533,4 +718,60 @@ public abstract class BaseImageRecordReader extends BaseRecordReader {
         }
         return out;
     }
+
+    /**
+     * Files and labels of a minibatch, and its features array being decoded
+     */
+    protected static class PendingBatch {
+        protected final int requested;
+        protected final List<File> files = new ArrayList<>();
+        protected List<Integer> currLabels;
+        protected List<Writable> currLabelsWritable;
+        protected List<List<Writable>> multiGenLabels;
+        protected INDArray features;
+        protected List<Future<?>> decoding;
+
+        protected PendingBatch(int requested) {
+            this.requested = requested;
+        }
+    }
+
+    /**
+     * Image transform shared by decoding threads: applied to one image at a time
+     */
+    private static class LockedImageTransform implements ImageTransform {
+        private final ImageTransform transform;
+
+        private LockedImageTransform(ImageTransform transform) {
+            this.transform = transform;
+        }
+
+        @Override
+        public ImageWritable transform(ImageWritable image) {
+            synchronized (transform) {
+                return transform.transform(image);
+            }
+        }
+
+        @Override
+        public ImageWritable transform(ImageWritable image, Random random) {
+            synchronized (transform) {
+                return transform.transform(image, random);
+            }
+        }
+
+        @Override
+        public float[] query(float... coordinates) {
+            synchronized (transform) {
+                return transform.query(coordinates);
+            }
+        }
+
+        @Override
+        public ImageWritable getCurrentImage() {
+            synchronized (transform) {
+                return transform.getCurrentImage();
+            }
+        }
+    }
 }
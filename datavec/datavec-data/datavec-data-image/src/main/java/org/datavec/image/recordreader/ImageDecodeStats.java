@@ -0,0 +1,127 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.image.recordreader;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decoding statistics of a {@link BaseImageRecordReader}, for minibatches returned by
+ * {@link BaseImageRecordReader#next(int)}.<br>
+ * With parallel decoding, a minibatch is either ready when requested (decoding is ahead of the consumer, and is held
+ * back by the prefetch limit) or the consumer has to wait for it (decoding is the bottleneck): see
+ * {@link #getBatchesReady()}, {@link #getBatchesWaited()} and {@link #getConsumerWaitNanos()}.
+ */
+public class ImageDecodeStats implements Serializable {
+
+    private final AtomicLong imagesDecoded = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicLong batchesReady = new AtomicLong();
+    private final AtomicLong batchesWaited = new AtomicLong();
+    private final AtomicLong consumerWaitNanos = new AtomicLong();
+    private final AtomicLong startNanos = new AtomicLong();
+    private final AtomicLong lastNanos = new AtomicLong();
+
+    void imageDecoded(long nanos) {
+        long now = System.nanoTime();
+        startNanos.compareAndSet(0, now - nanos);
+        lastNanos.set(now);
+        imagesDecoded.incrementAndGet();
+        decodeNanos.addAndGet(nanos);
+    }
+
+    void batchReturned(boolean waited, long waitNanos) {
+        if (waited) {
+            batchesWaited.incrementAndGet();
+            consumerWaitNanos.addAndGet(waitNanos);
+        } else {
+            batchesReady.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Number of images decoded
+     */
+    public long getImagesDecoded() {
+        return imagesDecoded.get();
+    }
+
+    /**
+     * @return Total time spent decoding and transforming images, summed over all decoding threads
+     */
+    public long getDecodeNanos() {
+        return decodeNanos.get();
+    }
+
+    /**
+     * @return Number of minibatches that were fully decoded when requested
+     */
+    public long getBatchesReady() {
+        return batchesReady.get();
+    }
+
+    /**
+     * @return Number of minibatches the consumer had to wait for
+     */
+    public long getBatchesWaited() {
+        return batchesWaited.get();
+    }
+
+    /**
+     * @return Total time the consumer spent waiting for minibatches to be decoded
+     */
+    public long getConsumerWaitNanos() {
+        return consumerWaitNanos.get();
+    }
+
+    /**
+     * @return Average time to decode and transform a single image, in milliseconds
+     */
+    public double getAverageDecodeMillis() {
+        long n = imagesDecoded.get();
+        return n == 0 ? 0.0 : decodeNanos.get() / 1e6 / n;
+    }
+
+    /**
+     * @return Decoding throughput in images per second, between the first and the last decoded image
+     */
+    public double getImagesPerSecond() {
+        long elapsed = lastNanos.get() - startNanos.get();
+        return elapsed <= 0 ? 0.0 : imagesDecoded.get() * 1e9 / elapsed;
+    }
+
+    public void reset() {
+        imagesDecoded.set(0);
+        decodeNanos.set(0);
+        batchesReady.set(0);
+        batchesWaited.set(0);
+        consumerWaitNanos.set(0);
+        startNanos.set(0);
+        lastNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ImageDecodeStats(imagesDecoded=%d, imagesPerSecond=%.1f, averageDecodeMillis=%.3f, " +
+                        "batchesReady=%d, batchesWaited=%d, consumerWaitMillis=%.1f)", getImagesDecoded(), getImagesPerSecond(),
+                getAverageDecodeMillis(), getBatchesReady(), getBatchesWaited(), getConsumerWaitNanos() / 1e6);
+    }
+}
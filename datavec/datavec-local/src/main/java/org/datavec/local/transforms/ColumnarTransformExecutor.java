@@ -0,0 +1,264 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.filter.Filter;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.writable.Writable;
+import org.datavec.arrow.ArrowConverter;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.datavec.local.transforms.columnar.ColumnVectors;
+import org.datavec.local.transforms.columnar.ColumnarFilter;
+import org.datavec.local.transforms.columnar.ColumnarTransform;
+import org.datavec.local.transforms.columnar.ColumnarTransforms;
+import org.datavec.local.transforms.transform.LocalTransformFunction;
+import org.datavec.local.transforms.transform.filter.LocalFilterFunction;
+import org.nd4j.common.base.Preconditions;
+
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Columnar counterpart of {@link LocalTransformExecutor}: data is kept as Arrow columns
+ * ({@link ArrowWritableRecordBatch}) between steps, and transforms and filters with a vectorized implementation
+ * (see {@link ColumnarTransforms}) are executed over whole columns, without creating a writable per value.
+ * <p>
+ * Steps without a vectorized implementation, and vectorized steps that can't handle a particular batch (for example,
+ * columns with missing values), fall back to record by record execution: the batch is converted to records,
+ * and converted back to columns only when the next vectorized step is reached.
+ * <p>
+ * Only transform processes consisting of transforms and filters on non-sequence data can be executed in columnar mode.
+ * Other transform processes are executed by {@link LocalTransformExecutor}.
+ */
+@Slf4j
+public class ColumnarTransformExecutor {
+
+    private static final BufferAllocator DEFAULT_ALLOCATOR = new RootAllocator(Long.MAX_VALUE);
+
+    private final BufferAllocator allocator;
+
+    public ColumnarTransformExecutor() {
+        this(DEFAULT_ALLOCATOR);
+    }
+
+    /**
+     * @param allocator Allocator for columns created during execution
+     */
+    public ColumnarTransformExecutor(@NonNull BufferAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    /**
+     * @return True if the transform process can be executed in columnar mode: it has non-sequence input
+     * and consists only of transforms and filters
+     */
+    public static boolean canExecute(@NonNull TransformProcess transformProcess) {
+        if (transformProcess.getInitialSchema() instanceof SequenceSchema)
+            return false;
+        for (DataAction d : transformProcess.getActionList()) {
+            if (d.getTransform() == null && d.getFilter() == null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Execute the specified TransformProcess with the given input data. Transform processes that can't be executed
+     * in columnar mode (see {@link #canExecute(TransformProcess)}) are executed with {@link LocalTransformExecutor}
+     *
+     * @param inputWritables   Input data to process
+     * @param transformProcess TransformProcess to execute
+     * @return Processed data
+     */
+    public List<List<Writable>> execute(@NonNull List<List<Writable>> inputWritables,
+                                        @NonNull TransformProcess transformProcess) {
+        if (!canExecute(transformProcess))
+            return LocalTransformExecutor.execute(inputWritables, transformProcess);
+
+        int numColumns = transformProcess.getInitialSchema().numColumns();
+        List<List<Writable>> filtered = inputWritables.stream().filter(input -> input.size() == numColumns).collect(toList());
+        if (filtered.size() != inputWritables.size())
+            log.warn("Filtered out " + (inputWritables.size() - filtered.size()) + " values");
+
+        return execute(null, filtered, transformProcess);
+    }
+
+    /**
+     * Execute the specified TransformProcess with the given columnar input data. The input batch is not modified,
+     * and can be closed independently of the returned batch
+     *
+     * @param input            Input data to process
+     * @param transformProcess TransformProcess to execute. Must be executable in columnar mode,
+     *                         see {@link #canExecute(TransformProcess)}
+     * @return Processed data
+     */
+    public ArrowWritableRecordBatch execute(@NonNull ArrowWritableRecordBatch input,
+                                            @NonNull TransformProcess transformProcess) {
+        Preconditions.checkState(canExecute(transformProcess), "Transform process can't be executed in columnar mode:" +
+                " only transforms and filters on non-sequence data are supported. Use LocalTransformExecutor instead");
+        Preconditions.checkArgument(input.getList().size() == transformProcess.getInitialSchema().numColumns(),
+                "Number of input columns (%s) does not match the initial schema of the transform process (%s columns)",
+                input.getList().size(), transformProcess.getInitialSchema().numColumns());
+
+        List<FieldVector> columns = new ArrayList<>(input.getList().size());
+        for (FieldVector v : input.getList())
+            columns.add(ColumnVectors.slice(v, v.getName(), input.getOffset(), input.size()));
+        return execute(columns, null, transformProcess);
+    }
+
+    /**
+     * Exactly one of columns and records is non-null at any time: the current representation of the data
+     */
+    private ArrowWritableRecordBatch execute(List<FieldVector> columns, List<List<Writable>> records,
+                                             TransformProcess transformProcess) {
+        Schema schema = transformProcess.getInitialSchema();
+        int columnarSteps = 0;
+        try {
+            for (DataAction d : transformProcess.getActionList()) {
+                if (d.getTransform() != null) {
+                    Transform t = d.getTransform();
+                    ColumnarTransform columnar = ColumnarTransforms.forTransform(t);
+                    List<FieldVector> out = null;
+                    if (columnar != null) {
+                        if (columns == null) {
+                            columns = ArrowConverter.toArrowColumns(allocator, schema, records);
+                            records = null;
+                        }
+                        try {
+                            out = columnar.transform(schema, columns, numRows(columns), allocator);
+                        } catch (RuntimeException e) {
+                            //Executed again record by record, so errors are handled the same way as in LocalTransformExecutor
+                            log.debug("Columnar execution of transform {} failed, executing record by record", t, e);
+                        }
+                    }
+
+                    if (out != null) {
+                        release(columns, out);
+                        columns = out;
+                        columnarSteps++;
+                    } else {
+                        if (records == null) {
+                            records = toRecords(columns, schema);
+                            columns = null;
+                        }
+                        //Failed records are returned as empty lists when errors are logged instead of thrown
+                        LocalTransformFunction function = new LocalTransformFunction(t);
+                        records = records.stream().map(function::apply)
+                                .filter(record -> !record.isEmpty())
+                                .collect(toList());
+                    }
+                    schema = t.transform(schema);
+                } else {
+                    Filter f = d.getFilter();
+                    ColumnarFilter columnar = ColumnarTransforms.forFilter(f);
+                    boolean[] keep = null;
+                    if (columnar != null) {
+                        if (columns == null) {
+                            columns = ArrowConverter.toArrowColumns(allocator, schema, records);
+                            records = null;
+                        }
+                        try {
+                            keep = columnar.keep(schema, columns, numRows(columns));
+                        } catch (RuntimeException e) {
+                            log.debug("Columnar execution of filter {} failed, executing record by record", f, e);
+                        }
+                    }
+
+                    if (keep != null) {
+                        List<FieldVector> out = select(columns, keep);
+                        release(columns, out);
+                        columns = out;
+                        columnarSteps++;
+                    } else {
+                        if (records == null) {
+                            records = toRecords(columns, schema);
+                            columns = null;
+                        }
+                        LocalFilterFunction function = new LocalFilterFunction(f);
+                        records = records.stream().filter(function::apply).collect(toList());
+                    }
+                }
+            }
+
+            if (columns == null) {
+                columns = ArrowConverter.toArrowColumns(allocator, schema, records);
+                records = null;
+            }
+        } catch (RuntimeException e) {
+            if (columns != null)
+                release(columns, Collections.<FieldVector>emptyList());
+            throw e;
+        }
+
+        log.debug("Executed {} of {} steps in columnar mode", columnarSteps, transformProcess.getActionList().size());
+        return new ArrowWritableRecordBatch(columns, schema);
+    }
+
+    private static int numRows(List<FieldVector> columns) {
+        return columns.get(0).getValueCount();
+    }
+
+    private List<FieldVector> select(List<FieldVector> columns, boolean[] keep) {
+        int numKept = 0;
+        for (boolean b : keep) {
+            if (b)
+                numKept++;
+        }
+        if (numKept == keep.length)
+            return columns;
+
+        List<FieldVector> out = new ArrayList<>(columns.size());
+        for (FieldVector v : columns)
+            out.add(ColumnVectors.select(v, keep, numKept, allocator));
+        return out;
+    }
+
+    private static List<List<Writable>> toRecords(List<FieldVector> columns, Schema schema) {
+        ArrowWritableRecordBatch batch = new ArrowWritableRecordBatch(columns, schema);
+        List<List<Writable>> ret = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++)
+            ret.add(batch.get(i));
+        release(columns, Collections.<FieldVector>emptyList());
+        return ret;
+    }
+
+    /**
+     * Closes columns that are no longer used: those not present in the retained columns
+     */
+    private static void release(List<FieldVector> columns, List<FieldVector> retained) {
+        Set<FieldVector> keep = Collections.newSetFromMap(new IdentityHashMap<FieldVector, Boolean>());
+        keep.addAll(retained);
+        for (FieldVector v : columns) {
+            if (keep.add(v))
+                v.close();
+        }
+    }
+}
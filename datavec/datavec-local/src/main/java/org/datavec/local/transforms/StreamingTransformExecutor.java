@@ -0,0 +1,531 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.SequenceRecordReader;
+import org.datavec.api.records.writer.RecordWriter;
+import org.datavec.api.records.writer.SequenceRecordWriter;
+import org.datavec.api.transform.DataAction;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.join.Join;
+import org.datavec.api.transform.ops.IAggregableReduceOp;
+import org.datavec.api.transform.rank.CalculateSortedRank;
+import org.datavec.api.transform.reduce.IAssociativeReducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.schema.SequenceSchema;
+import org.datavec.api.transform.sequence.ConvertToSequence;
+import org.datavec.api.writable.Text;
+import org.datavec.api.writable.Writable;
+import org.datavec.local.transforms.join.ExecuteJoinFromCoGroupFlatMapFunction;
+import org.datavec.local.transforms.rank.UnzipForCalculateSortedRankFunction;
+import org.datavec.local.transforms.reduce.MapToPairForReducerFunction;
+import org.datavec.local.transforms.sequence.ConvertToSequenceLengthOne;
+import org.datavec.local.transforms.sequence.LocalGroupToSequenceFunction;
+import org.datavec.local.transforms.sequence.LocalSequenceFilterFunction;
+import org.datavec.local.transforms.sequence.LocalSequenceTransformFunction;
+import org.datavec.local.transforms.sort.ExternalSorter;
+import org.datavec.local.transforms.transform.LocalTransformFunction;
+import org.datavec.local.transforms.transform.SequenceSplitFunction;
+import org.datavec.local.transforms.transform.filter.LocalFilterFunction;
+import org.nd4j.common.primitives.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Out-of-core counterpart of {@link LocalTransformExecutor}: records are pulled from a RecordReader
+ * (or SequenceRecordReader) and written to a RecordWriter (or SequenceRecordWriter), without materializing the dataset.
+ * <p>
+ * Transforms, filters, sequence splits and conversions from sequences are pipelined record by record.
+ * Reductions, sorted rank calculation, conversion to sequences and joins need records grouped or ordered by key:
+ * these stages sort their input with an {@link ExternalSorter}, keeping at most {@code maxRecordsInMemory}
+ * records per stage in memory and spilling the rest to disk as sorted runs. Only a single group (i.e. one sequence,
+ * or all records for one join key on one side) has to fit in memory.
+ * <p>
+ * Differences from LocalTransformExecutor: output records are written as produced by the transform process
+ * (no Arrow round trip), and order of reduced groups and sequences follows the order of their keys.
+ */
+@Slf4j
+public class StreamingTransformExecutor {
+    public static final int DEFAULT_MAX_RECORDS_IN_MEMORY = 1_000_000;
+
+    private final File spillDirectory;
+    private final int maxRecordsInMemory;
+
+    /**
+     * Executor spilling to the default temporary directory, with up to {@link #DEFAULT_MAX_RECORDS_IN_MEMORY} records
+     * in memory per sorting stage
+     */
+    public StreamingTransformExecutor() {
+        this(new File(System.getProperty("java.io.tmpdir")), DEFAULT_MAX_RECORDS_IN_MEMORY);
+    }
+
+    /**
+     * @param spillDirectory     Directory for temporary sorted runs
+     * @param maxRecordsInMemory Maximal number of records kept in memory by each sorting stage
+     */
+    public StreamingTransformExecutor(@NonNull File spillDirectory, int maxRecordsInMemory) {
+        if (maxRecordsInMemory <= 0)
+            throw new IllegalArgumentException("Maximal number of records in memory should be positive, got " + maxRecordsInMemory);
+        this.spillDirectory = spillDirectory;
+        this.maxRecordsInMemory = maxRecordsInMemory;
+    }
+
+    /**
+     * Execute the specified TransformProcess on all records of the given reader<br>
+     * Note: this method can only be used if the TransformProcess returns non-sequence data
+     *
+     * @param input            Input records
+     * @param transformProcess TransformProcess to execute
+     * @param output           Writer for processed records
+     * @return Number of records written
+     */
+    public long execute(@NonNull RecordReader input, @NonNull TransformProcess transformProcess,
+                        @NonNull RecordWriter output) throws IOException {
+        if (transformProcess.getFinalSchema() instanceof SequenceSchema)
+            throw new IllegalStateException("Cannot return sequence data with this method");
+        return execute(records(input, transformProcess.getInitialSchema()), null, transformProcess, output, null);
+    }
+
+    /**
+     * Execute the specified TransformProcess on all records of the given reader<br>
+     * Note: this method can only be used if the TransformProcess starts with non-sequential data,
+     * but returns sequence data (after grouping or converting to a sequence as one of the steps)
+     *
+     * @param input            Input records
+     * @param transformProcess TransformProcess to execute
+     * @param output           Writer for processed sequences
+     * @return Number of sequences written
+     */
+    public long executeToSequence(@NonNull RecordReader input, @NonNull TransformProcess transformProcess,
+                                  @NonNull SequenceRecordWriter output) throws IOException {
+        if (!(transformProcess.getFinalSchema() instanceof SequenceSchema))
+            throw new IllegalStateException("Cannot return non-sequence data with this method");
+        return execute(records(input, transformProcess.getInitialSchema()), null, transformProcess, null, output);
+    }
+
+    /**
+     * Execute the specified TransformProcess on all sequences of the given reader<br>
+     * Note: this method can only be used if the TransformProcess starts with sequence data, but returns non-sequential
+     * data (after reducing or converting sequential data to individual examples)
+     *
+     * @param input            Input sequences
+     * @param transformProcess TransformProcess to execute
+     * @param output           Writer for processed records
+     * @return Number of records written
+     */
+    public long executeSequenceToSeparate(@NonNull SequenceRecordReader input, @NonNull TransformProcess transformProcess,
+                                          @NonNull RecordWriter output) throws IOException {
+        if (transformProcess.getFinalSchema() instanceof SequenceSchema)
+            throw new IllegalStateException("Cannot return sequence data with this method");
+        return execute(null, sequences(input), transformProcess, output, null);
+    }
+
+    /**
+     * Execute the specified TransformProcess on all sequences of the given reader<br>
+     * Note: this method can only be used if the TransformProcess starts with sequence data, and also returns sequence data
+     *
+     * @param input            Input sequences
+     * @param transformProcess TransformProcess to execute
+     * @param output           Writer for processed sequences
+     * @return Number of sequences written
+     */
+    public long executeSequenceToSequence(@NonNull SequenceRecordReader input, @NonNull TransformProcess transformProcess,
+                                          @NonNull SequenceRecordWriter output) throws IOException {
+        if (!(transformProcess.getFinalSchema() instanceof SequenceSchema))
+            throw new IllegalStateException("Cannot return non-sequence data with this method");
+        return execute(null, sequences(input), transformProcess, null, output);
+    }
+
+    /**
+     * Execute a join on the specified data, as a sort-merge join: both inputs are sorted by their join columns,
+     * and only records for a single key are kept in memory while joining
+     *
+     * @param join   Join to execute
+     * @param left   Left data for join
+     * @param right  Right data for join
+     * @param output Writer for joined records
+     * @return Number of records written
+     */
+    public long executeJoin(@NonNull Join join, @NonNull RecordReader left, @NonNull RecordReader right,
+                            @NonNull RecordWriter output) throws IOException {
+        int[] leftKeys = join.getLeftSchema().getIndexOfColumns(join.getJoinColumnsLeft());
+        int[] rightKeys = join.getRightSchema().getIndexOfColumns(join.getJoinColumnsRight());
+        Comparator<List<Writable>> leftComparator = keyComparator(leftKeys);
+        Comparator<List<Writable>> rightComparator = keyComparator(rightKeys);
+        ExecuteJoinFromCoGroupFlatMapFunction joinFunction = new ExecuteJoinFromCoGroupFlatMapFunction(join);
+
+        try (ExternalSorter leftSorter = new ExternalSorter(leftComparator, spillDirectory, maxRecordsInMemory);
+             ExternalSorter rightSorter = new ExternalSorter(rightComparator, spillDirectory, maxRecordsInMemory)) {
+            Iterator<List<List<Writable>>> leftGroups =
+                    groups(sort(records(left, join.getLeftSchema()).iterator(), leftSorter), leftComparator);
+            Iterator<List<List<Writable>>> rightGroups =
+                    groups(sort(records(right, join.getRightSchema()).iterator(), rightSorter), rightComparator);
+
+            long count = 0;
+            List<List<Writable>> l = leftGroups.hasNext() ? leftGroups.next() : null;
+            List<List<Writable>> r = rightGroups.hasNext() ? rightGroups.next() : null;
+            while (l != null || r != null) {
+                int c;
+                if (l == null)
+                    c = 1;
+                else if (r == null)
+                    c = -1;
+                else
+                    c = compareKeys(l.get(0), leftKeys, r.get(0), rightKeys);
+
+                List<List<Writable>> leftGroup = c <= 0 ? l : Collections.<List<Writable>>emptyList();
+                List<List<Writable>> rightGroup = c >= 0 ? r : Collections.<List<Writable>>emptyList();
+                List<Writable> key = c <= 0 ? key(l.get(0), leftKeys) : key(r.get(0), rightKeys);
+                for (List<Writable> joined : joinFunction.call(Pair.of(key, Pair.of(leftGroup, rightGroup)))) {
+                    output.write(joined);
+                    count++;
+                }
+
+                if (c <= 0)
+                    l = leftGroups.hasNext() ? leftGroups.next() : null;
+                if (c >= 0)
+                    r = rightGroups.hasNext() ? rightGroups.next() : null;
+            }
+            return count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long execute(Stream<List<Writable>> currentWritables, Stream<List<List<Writable>>> currentSequence,
+                         TransformProcess transformProcess, RecordWriter writer, SequenceRecordWriter sequenceWriter) throws IOException {
+        List<ExternalSorter> sorters = new ArrayList<>();
+        try {
+            for (DataAction d : transformProcess.getActionList()) {
+                if (d.getTransform() != null) {
+                    if (currentWritables != null) {
+                        LocalTransformFunction function = new LocalTransformFunction(d.getTransform());
+                        currentWritables = currentWritables.map(function::apply);
+                        if (LocalTransformExecutor.isTryCatch())
+                            currentWritables = currentWritables.filter(input -> !input.isEmpty());
+                    } else {
+                        LocalSequenceTransformFunction function = new LocalSequenceTransformFunction(d.getTransform());
+                        currentSequence = currentSequence.map(function::apply);
+                        if (LocalTransformExecutor.isTryCatch())
+                            currentSequence = currentSequence.filter(input -> !input.isEmpty());
+                    }
+                } else if (d.getFilter() != null) {
+                    if (currentWritables != null) {
+                        LocalFilterFunction function = new LocalFilterFunction(d.getFilter());
+                        currentWritables = currentWritables.filter(function::apply);
+                    } else {
+                        LocalSequenceFilterFunction function = new LocalSequenceFilterFunction(d.getFilter());
+                        currentSequence = currentSequence.filter(function::apply);
+                    }
+                } else if (d.getConvertToSequence() != null) {
+                    if (currentWritables == null)
+                        throw new IllegalStateException("Cannot execute ConvertToSequence operation: current writables are null");
+                    ConvertToSequence cts = d.getConvertToSequence();
+                    if (cts.isSingleStepSequencesMode()) {
+                        ConvertToSequenceLengthOne function = new ConvertToSequenceLengthOne();
+                        currentSequence = currentWritables.map(function::apply);
+                    } else {
+                        Comparator<List<Writable>> comparator = keyComparator(cts.getInputSchema().getIndexOfColumns(cts.getKeyColumns()));
+                        LocalGroupToSequenceFunction function = new LocalGroupToSequenceFunction(cts.getComparator());
+                        currentSequence = stream(groups(sort(currentWritables.iterator(), newSorter(comparator, sorters)), comparator))
+                                .map(function::apply);
+                    }
+                    currentWritables = null;
+                } else if (d.getConvertFromSequence() != null) {
+                    if (currentSequence == null)
+                        throw new IllegalStateException("Cannot execute ConvertFromSequence operation: current sequence is null");
+                    currentWritables = currentSequence.flatMap(List::stream);
+                    currentSequence = null;
+                } else if (d.getSequenceSplit() != null) {
+                    if (currentSequence == null)
+                        throw new IllegalStateException("Error during execution of SequenceSplit: currentSequence is null");
+                    SequenceSplitFunction function = new SequenceSplitFunction(d.getSequenceSplit());
+                    currentSequence = currentSequence.flatMap(input -> function.call(input).stream());
+                } else if (d.getReducer() != null) {
+                    if (currentWritables == null)
+                        throw new IllegalStateException("Error during execution of reduction: current writables are null. "
+                                + "Trying to execute a reduce operation on a sequence?");
+                    currentWritables = stream(reduce(currentWritables.iterator(), d.getReducer(), sorters));
+                } else if (d.getCalculateSortedRank() != null) {
+                    if (currentWritables == null)
+                        throw new IllegalStateException("Error during execution of CalculateSortedRank: current writables are null. "
+                                + "Trying to execute a CalculateSortedRank operation on a sequence? (not currently supported)");
+                    currentWritables = stream(rank(currentWritables.iterator(), d.getCalculateSortedRank(), sorters));
+                } else {
+                    throw new RuntimeException("Unknown/not implemented action: " + d);
+                }
+            }
+
+            long count = 0;
+            if (currentSequence != null) {
+                Iterator<List<List<Writable>>> iter = currentSequence.iterator();
+                while (iter.hasNext()) {
+                    sequenceWriter.write(iter.next());
+                    count++;
+                }
+            } else {
+                Iterator<List<Writable>> iter = currentWritables.iterator();
+                while (iter.hasNext()) {
+                    writer.write(iter.next());
+                    count++;
+                }
+            }
+            return count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            for (ExternalSorter s : sorters)
+                s.close();
+        }
+    }
+
+    private ExternalSorter newSorter(Comparator<List<Writable>> comparator, List<ExternalSorter> sorters) {
+        ExternalSorter sorter = new ExternalSorter(comparator, spillDirectory, maxRecordsInMemory);
+        sorters.add(sorter);
+        return sorter;
+    }
+
+    /**
+     * Reduction: global reductions are aggregated in a single pass, keyed reductions are aggregated over key-sorted records
+     */
+    private Iterator<List<Writable>> reduce(final Iterator<List<Writable>> input, final IAssociativeReducer reducer,
+                                            List<ExternalSorter> sorters) throws IOException {
+        final MapToPairForReducerFunction keyFunction = new MapToPairForReducerFunction(reducer);
+        if (reducer.getKeyColumns() == null) {
+            IAggregableReduceOp<List<Writable>, List<Writable>> op = reducer.aggregableReducer();
+            boolean any = false;
+            while (input.hasNext()) {
+                op.accept(input.next());
+                any = true;
+            }
+            return any ? Collections.singletonList(op.get()).iterator() : Collections.<List<Writable>>emptyIterator();
+        }
+
+        //Key is computed once per record, and kept with the record (as its first value) while sorting and spilling
+        final Comparator<List<Writable>> comparator = new Comparator<List<Writable>>() {
+            @Override
+            public int compare(List<Writable> o1, List<Writable> o2) {
+                return ((Text) o1.get(0)).compareTo((Text) o2.get(0));
+            }
+        };
+        Iterator<List<Writable>> keyed = new Iterator<List<Writable>>() {
+            @Override
+            public boolean hasNext() {
+                return input.hasNext();
+            }
+
+            @Override
+            public List<Writable> next() {
+                List<Writable> record = input.next();
+                List<Writable> ret = new ArrayList<>(record.size() + 1);
+                ret.add(new Text(keyFunction.apply(record).getFirst()));
+                ret.addAll(record);
+                return ret;
+            }
+        };
+        final Iterator<List<Writable>> sorted = sort(keyed, newSorter(comparator, sorters));
+
+        return new Iterator<List<Writable>>() {
+            private List<Writable> pending = sorted.hasNext() ? sorted.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return pending != null;
+            }
+
+            @Override
+            public List<Writable> next() {
+                if (pending == null)
+                    throw new NoSuchElementException();
+                Writable key = pending.get(0);
+                IAggregableReduceOp<List<Writable>, List<Writable>> op = reducer.aggregableReducer();
+                op.accept(pending.subList(1, pending.size()));
+                pending = null;
+                while (sorted.hasNext()) {
+                    List<Writable> next = sorted.next();
+                    if (!key.equals(next.get(0))) {
+                        pending = next;
+                        break;
+                    }
+                    op.accept(next.subList(1, next.size()));
+                }
+                return op.get();
+            }
+        };
+    }
+
+    private Iterator<List<Writable>> rank(Iterator<List<Writable>> input, CalculateSortedRank csr,
+                                          List<ExternalSorter> sorters) throws IOException {
+        final Comparator<Writable> comparator = csr.getComparator();
+        final int sortColumnIdx = csr.getInputSchema().getIndexOfColumn(csr.getSortOnColumn());
+        final boolean ascending = csr.isAscending();
+        Comparator<List<Writable>> recordComparator = new Comparator<List<Writable>>() {
+            @Override
+            public int compare(List<Writable> o1, List<Writable> o2) {
+                int result = comparator.compare(o1.get(sortColumnIdx), o2.get(sortColumnIdx));
+                return ascending ? result : -result;
+            }
+        };
+        final Iterator<List<Writable>> sorted = sort(input, newSorter(recordComparator, sorters));
+        final UnzipForCalculateSortedRankFunction function = new UnzipForCalculateSortedRankFunction();
+
+        return new Iterator<List<Writable>>() {
+            private long rank = 0;
+
+            @Override
+            public boolean hasNext() {
+                return sorted.hasNext();
+            }
+
+            @Override
+            public List<Writable> next() {
+                List<Writable> record = sorted.next();
+                return function.apply(Pair.of(Pair.of(record.get(sortColumnIdx), record), rank++));
+            }
+        };
+    }
+
+    private static Iterator<List<Writable>> sort(Iterator<List<Writable>> input, ExternalSorter sorter) throws IOException {
+        while (input.hasNext())
+            sorter.add(input.next());
+        if (sorter.numRuns() > 0)
+            log.info("Spilled {} sorted runs to disk", sorter.numRuns());
+        return sorter.sorted();
+    }
+
+    /**
+     * Groups consecutive records that compare as equal
+     */
+    private static Iterator<List<List<Writable>>> groups(final Iterator<List<Writable>> sorted,
+                                                         final Comparator<List<Writable>> comparator) {
+        return new Iterator<List<List<Writable>>>() {
+            private List<Writable> pending = sorted.hasNext() ? sorted.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return pending != null;
+            }
+
+            @Override
+            public List<List<Writable>> next() {
+                if (pending == null)
+                    throw new NoSuchElementException();
+                List<List<Writable>> group = new ArrayList<>();
+                group.add(pending);
+                pending = null;
+                while (sorted.hasNext()) {
+                    List<Writable> next = sorted.next();
+                    if (comparator.compare(group.get(0), next) != 0) {
+                        pending = next;
+                        break;
+                    }
+                    group.add(next);
+                }
+                return group;
+            }
+        };
+    }
+
+    /**
+     * Orders records by key columns, comparing their string representations, consistently with key
+     * grouping in {@link LocalTransformExecutor}
+     */
+    private static Comparator<List<Writable>> keyComparator(final int[] keyColumns) {
+        return new Comparator<List<Writable>>() {
+            @Override
+            public int compare(List<Writable> o1, List<Writable> o2) {
+                return compareKeys(o1, keyColumns, o2, keyColumns);
+            }
+        };
+    }
+
+    private static int compareKeys(List<Writable> left, int[] leftKeys, List<Writable> right, int[] rightKeys) {
+        for (int i = 0; i < leftKeys.length; i++) {
+            int c = left.get(leftKeys[i]).toString().compareTo(right.get(rightKeys[i]).toString());
+            if (c != 0)
+                return c;
+        }
+        return 0;
+    }
+
+    private static List<Writable> key(List<Writable> record, int[] keyColumns) {
+        List<Writable> key = new ArrayList<>(keyColumns.length);
+        for (int i : keyColumns)
+            key.add(record.get(i));
+        return key;
+    }
+
+    private static Stream<List<Writable>> records(final RecordReader reader, final Schema schema) {
+        final int numColumns = schema.numColumns();
+        final AtomicLong filtered = new AtomicLong();
+        Iterator<List<Writable>> iter = new Iterator<List<Writable>>() {
+            private boolean reported = false;
+
+            @Override
+            public boolean hasNext() {
+                boolean ret = reader.hasNext();
+                if (!ret && !reported && filtered.get() > 0) {
+                    reported = true;
+                    log.warn("Filtered out " + filtered.get() + " values");
+                }
+                return ret;
+            }
+
+            @Override
+            public List<Writable> next() {
+                return reader.next();
+            }
+        };
+        return stream(iter).filter(input -> {
+            if (input.size() == numColumns)
+                return true;
+            filtered.incrementAndGet();
+            return false;
+        });
+    }
+
+    private static Stream<List<List<Writable>>> sequences(final SequenceRecordReader reader) {
+        return stream(new Iterator<List<List<Writable>>>() {
+            @Override
+            public boolean hasNext() {
+                return reader.hasNext();
+            }
+
+            @Override
+            public List<List<Writable>> next() {
+                return reader.sequenceRecord();
+            }
+        });
+    }
+
+    private static <T> Stream<T> stream(Iterator<T> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+}
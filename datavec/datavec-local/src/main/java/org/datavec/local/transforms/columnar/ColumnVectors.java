@@ -0,0 +1,265 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.columnar;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.util.TransferPair;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.writable.*;
+import org.datavec.arrow.ArrowConverter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Utilities for reading Arrow columns into primitive arrays, and for creating, slicing and compacting columns.<br>
+ * Readers return null for columns that contain missing values, or whose vector type doesn't match the requested
+ * type: callers should then fall back to record by record execution.
+ */
+public class ColumnVectors {
+
+    private ColumnVectors() {
+    }
+
+    /**
+     * Reads a numeric column as doubles
+     */
+    public static double[] doubles(FieldVector vector, int numRows) {
+        if (vector.getNullCount() > 0)
+            return null;
+        double[] ret = new double[numRows];
+        if (vector instanceof Float8Vector) {
+            Float8Vector v = (Float8Vector) vector;
+            for (int i = 0; i < numRows; i++)
+                ret[i] = v.get(i);
+        } else if (vector instanceof Float4Vector) {
+            Float4Vector v = (Float4Vector) vector;
+            for (int i = 0; i < numRows; i++)
+                ret[i] = v.get(i);
+        } else if (vector instanceof IntVector) {
+            IntVector v = (IntVector) vector;
+            for (int i = 0; i < numRows; i++)
+                ret[i] = v.get(i);
+        } else if (vector instanceof BigIntVector) {
+            BigIntVector v = (BigIntVector) vector;
+            for (int i = 0; i < numRows; i++)
+                ret[i] = v.get(i);
+        } else {
+            return null;
+        }
+        return ret;
+    }
+
+    /**
+     * Reads an integer column
+     */
+    public static int[] ints(FieldVector vector, int numRows) {
+        if (vector.getNullCount() > 0 || !(vector instanceof IntVector))
+            return null;
+        IntVector v = (IntVector) vector;
+        int[] ret = new int[numRows];
+        for (int i = 0; i < numRows; i++)
+            ret[i] = v.get(i);
+        return ret;
+    }
+
+    /**
+     * Reads an integer or long column as longs
+     */
+    public static long[] longs(FieldVector vector, int numRows) {
+        if (vector.getNullCount() > 0)
+            return null;
+        long[] ret = new long[numRows];
+        if (vector instanceof BigIntVector) {
+            BigIntVector v = (BigIntVector) vector;
+            for (int i = 0; i < numRows; i++)
+                ret[i] = v.get(i);
+        } else if (vector instanceof IntVector) {
+            IntVector v = (IntVector) vector;
+            for (int i = 0; i < numRows; i++)
+                ret[i] = v.get(i);
+        } else {
+            return null;
+        }
+        return ret;
+    }
+
+    /**
+     * Reads a string or categorical column
+     */
+    public static String[] strings(FieldVector vector, int numRows) {
+        if (vector.getNullCount() > 0 || !(vector instanceof VarCharVector))
+            return null;
+        VarCharVector v = (VarCharVector) vector;
+        String[] ret = new String[numRows];
+        for (int i = 0; i < numRows; i++)
+            ret[i] = new String(v.get(i), StandardCharsets.UTF_8);
+        return ret;
+    }
+
+    public static Float8Vector vectorOf(String name, double[] values, BufferAllocator allocator) {
+        return ArrowConverter.vectorFor(allocator, name, values);
+    }
+
+    public static IntVector vectorOf(String name, int[] values, BufferAllocator allocator) {
+        return ArrowConverter.vectorFor(allocator, name, values);
+    }
+
+    public static BigIntVector vectorOf(String name, long[] values, BufferAllocator allocator) {
+        return ArrowConverter.vectorFor(allocator, name, values);
+    }
+
+    /**
+     * Creates an empty column for the given column type, to be filled with
+     * {@link ArrowConverter#setValue(ColumnType, FieldVector, Object, int)}. Returns null for column types without
+     * columnar support (time and NDArray columns)
+     */
+    public static FieldVector newVector(ColumnType type, String name, int numRows, BufferAllocator allocator) {
+        switch (type) {
+            case Integer:
+                return ArrowConverter.intVectorOf(allocator, name, numRows);
+            case Long:
+                return ArrowConverter.longVectorOf(allocator, name, numRows);
+            case Double:
+                return ArrowConverter.doubleVectorOf(allocator, name, numRows);
+            case Float:
+                return ArrowConverter.floatVectorOf(allocator, name, numRows);
+            case Boolean:
+                return ArrowConverter.booleanVectorOf(allocator, name, numRows);
+            case String:
+            case Categorical:
+                //Variable width values must be written in order: value count is set once the column is filled
+                VarCharVector v = new VarCharVector(name, allocator);
+                v.allocateNew();
+                return v;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns a reader that exposes each value of the column as a writable of the given column type.
+     * The same writable instance is reused for every row, so values must be consumed before reading the next row.
+     */
+    public static ValueReader reader(FieldVector vector, ColumnType type) {
+        if (vector.getNullCount() > 0)
+            return null;
+        switch (type) {
+            case Integer:
+                if (vector instanceof IntVector) {
+                    final IntVector v = (IntVector) vector;
+                    final IntWritable w = new IntWritable();
+                    return row -> {
+                        w.set(v.get(row));
+                        return w;
+                    };
+                }
+                break;
+            case Long:
+                if (vector instanceof BigIntVector) {
+                    final BigIntVector v = (BigIntVector) vector;
+                    final LongWritable w = new LongWritable();
+                    return row -> {
+                        w.set(v.get(row));
+                        return w;
+                    };
+                }
+                break;
+            case Double:
+                if (vector instanceof Float8Vector) {
+                    final Float8Vector v = (Float8Vector) vector;
+                    final DoubleWritable w = new DoubleWritable();
+                    return row -> {
+                        w.set(v.get(row));
+                        return w;
+                    };
+                }
+                break;
+            case Float:
+                if (vector instanceof Float4Vector) {
+                    final Float4Vector v = (Float4Vector) vector;
+                    final FloatWritable w = new FloatWritable();
+                    return row -> {
+                        w.set(v.get(row));
+                        return w;
+                    };
+                }
+                break;
+            case Boolean:
+                if (vector instanceof BitVector) {
+                    final BitVector v = (BitVector) vector;
+                    final BooleanWritable w = new BooleanWritable();
+                    return row -> {
+                        w.set(v.get(row) > 0);
+                        return w;
+                    };
+                }
+                break;
+            case String:
+            case Categorical:
+                if (vector instanceof VarCharVector) {
+                    final VarCharVector v = (VarCharVector) vector;
+                    final Text w = new Text();
+                    return row -> {
+                        w.set(v.get(row));
+                        return w;
+                    };
+                }
+                break;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a new column sharing the buffers of rows {@code [offset, offset + numRows)} of the given column,
+     * without copying. The returned column can be closed independently of the original one
+     */
+    public static FieldVector slice(FieldVector vector, String name, int offset, int numRows) {
+        TransferPair tp = vector.getTransferPair(name, vector.getAllocator());
+        tp.splitAndTransfer(offset, numRows);
+        return (FieldVector) tp.getTo();
+    }
+
+    /**
+     * Returns a new column with only the rows of the given column for which {@code keep} is true
+     *
+     * @param numKept number of true values in {@code keep}
+     */
+    public static FieldVector select(FieldVector vector, boolean[] keep, int numKept, BufferAllocator allocator) {
+        TransferPair tp = vector.getTransferPair(allocator);
+        FieldVector to = (FieldVector) tp.getTo();
+        to.allocateNew();
+        int j = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i])
+                tp.copyValueSafe(i, j++);
+        }
+        to.setValueCount(numKept);
+        return to;
+    }
+
+    /**
+     * Reads values of a column, exposed as writables
+     */
+    public interface ValueReader {
+        Writable read(int row);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.columnar;
+
+import org.apache.arrow.vector.FieldVector;
+import org.datavec.api.transform.schema.Schema;
+
+import java.util.List;
+
+/**
+ * Vectorized implementation of a {@link org.datavec.api.transform.filter.Filter}: evaluates the filter
+ * over whole Arrow columns instead of individual records.
+ *
+ * @see ColumnarTransforms#forFilter(org.datavec.api.transform.filter.Filter)
+ */
+public interface ColumnarFilter {
+
+    /**
+     * Evaluate the filter on a batch of columns
+     *
+     * @param schema  Schema of the columns
+     * @param columns Columns, one per column of the schema
+     * @param numRows Number of rows in the batch
+     * @return For each row, true if the row should be kept, or null if the filter can't be evaluated on these
+     * columns (for example, due to missing values) and should be evaluated record by record instead
+     */
+    boolean[] keep(Schema schema, List<FieldVector> columns, int numRows);
+}
@@ -0,0 +1,49 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.columnar;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.datavec.api.transform.schema.Schema;
+
+import java.util.List;
+
+/**
+ * Vectorized implementation of a {@link org.datavec.api.transform.Transform}: operates on whole Arrow columns
+ * instead of individual records.
+ *
+ * @see ColumnarTransforms#forTransform(org.datavec.api.transform.Transform)
+ */
+public interface ColumnarTransform {
+
+    /**
+     * Execute the transform on a batch of columns. Implementations must not modify the input columns, but may
+     * return them as part of the output when they are unchanged.
+     *
+     * @param inputSchema Schema of the input columns
+     * @param columns     Input columns, one per column of the input schema
+     * @param numRows     Number of rows in the batch
+     * @param allocator   Allocator for any new columns
+     * @return Output columns, one per column of the output schema, or null if the transform can't be executed
+     * on these columns (for example, due to missing values) and should be executed record by record instead
+     */
+    List<FieldVector> transform(Schema inputSchema, List<FieldVector> columns, int numRows, BufferAllocator allocator);
+}
@@ -0,0 +1,410 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.columnar;
+
+import org.apache.arrow.vector.FieldVector;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.MathFunction;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.Transform;
+import org.datavec.api.transform.condition.Condition;
+import org.datavec.api.transform.condition.column.BaseColumnCondition;
+import org.datavec.api.transform.filter.ConditionFilter;
+import org.datavec.api.transform.filter.Filter;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.transform.BaseColumnTransform;
+import org.datavec.api.transform.transform.categorical.CategoricalToIntegerTransform;
+import org.datavec.api.transform.transform.categorical.CategoricalToOneHotTransform;
+import org.datavec.api.transform.transform.categorical.StringToCategoricalTransform;
+import org.datavec.api.transform.transform.column.*;
+import org.datavec.api.transform.transform.doubletransform.*;
+import org.datavec.api.transform.transform.integer.IntegerMathOpTransform;
+import org.datavec.api.transform.transform.longtransform.LongMathOpTransform;
+import org.datavec.arrow.ArrowConverter;
+
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Vectorized implementations of transforms and filters, used by
+ * {@link org.datavec.local.transforms.ColumnarTransformExecutor}.<br>
+ * Three kinds of transforms are supported:
+ * <ul>
+ *     <li>Column selection, reordering, renaming and duplication: output columns share the input buffers, no values are copied</li>
+ *     <li>Numerical math ops and normalizers, and categorical to integer/one-hot conversions: columns are read into
+ *     primitive arrays, transformed in a single loop and written back</li>
+ *     <li>Any other single column transform ({@link BaseColumnTransform}): values are passed one at a time through
+ *     {@link BaseColumnTransform#map(org.datavec.api.writable.Writable)}, using a single reused writable for the input</li>
+ * </ul>
+ * Filters on a single column condition ({@link BaseColumnCondition}) are evaluated the same way as the last kind.
+ */
+public class ColumnarTransforms {
+
+    private ColumnarTransforms() {
+    }
+
+    /**
+     * @param transform Transform, with its input schema set
+     * @return Vectorized implementation of the transform, or null if the transform has to be executed record by record
+     */
+    public static ColumnarTransform forTransform(Transform transform) {
+        if (transform instanceof DoubleMathOpTransform) {
+            DoubleMathOpTransform t = (DoubleMathOpTransform) transform;
+            return doubleColumn(t.getColumnNumber(), doubleOp(t.getMathOp(), t.getScalar()));
+        } else if (transform instanceof IntegerMathOpTransform) {
+            IntegerMathOpTransform t = (IntegerMathOpTransform) transform;
+            return intColumn(t.getColumnNumber(), intOp(t.getMathOp(), t.getScalar()));
+        } else if (transform instanceof LongMathOpTransform) {
+            LongMathOpTransform t = (LongMathOpTransform) transform;
+            return longColumn(t.getColumnNumber(), longOp(t.getMathOp(), t.getScalar()));
+        } else if (transform instanceof DoubleMathFunctionTransform) {
+            DoubleMathFunctionTransform t = (DoubleMathFunctionTransform) transform;
+            return doubleColumn(t.getColumnNumber(), doubleFunction(t.getMathFunction()));
+        } else if (transform instanceof MinMaxNormalizer) {
+            MinMaxNormalizer t = (MinMaxNormalizer) transform;
+            final double min = t.getMin();
+            final double newMin = t.getNewMin();
+            final double ratio = t.getRatio();
+            return doubleColumn(t.getColumnNumber(), x -> Double.isNaN(x) ? 0 : ratio * (x - min) + newMin);
+        } else if (transform instanceof StandardizeNormalizer) {
+            StandardizeNormalizer t = (StandardizeNormalizer) transform;
+            final double mean = t.getMean();
+            final double stdev = t.getStdev();
+            return doubleColumn(t.getColumnNumber(), x -> (x - mean) / stdev);
+        } else if (transform instanceof SubtractMeanNormalizer) {
+            SubtractMeanNormalizer t = (SubtractMeanNormalizer) transform;
+            final double mean = t.getMean();
+            return doubleColumn(t.getColumnNumber(), x -> x - mean);
+        } else if (transform instanceof CategoricalToIntegerTransform) {
+            CategoricalToIntegerTransform t = (CategoricalToIntegerTransform) transform;
+            return categoricalToInteger(t.getColumnIdx(), t.getStatesMap());
+        } else if (transform instanceof CategoricalToOneHotTransform) {
+            CategoricalToOneHotTransform t = (CategoricalToOneHotTransform) transform;
+            return categoricalToOneHot(t.getColumnIdx(), t.getStateNames(), t.getStatesMap());
+        } else if (transform instanceof StringToCategoricalTransform || transform instanceof RenameColumnsTransform) {
+            //Values and column positions are unchanged: only the schema changes
+            return (inputSchema, columns, numRows, allocator) -> columns;
+        } else if (transform instanceof RemoveColumnsTransform || transform instanceof RemoveAllColumnsExceptForTransform
+                || transform instanceof ReorderColumnsTransform) {
+            return selectColumns(transform);
+        } else if (transform instanceof DuplicateColumnsTransform) {
+            return duplicateColumns((DuplicateColumnsTransform) transform);
+        } else if (transform instanceof BaseColumnTransform && mapsSingleColumn((BaseColumnTransform) transform)) {
+            return singleColumn((BaseColumnTransform) transform);
+        }
+        return null;
+    }
+
+    /**
+     * @param filter Filter, with its input schema set
+     * @return Vectorized implementation of the filter, or null if the filter has to be executed record by record
+     */
+    public static ColumnarFilter forFilter(Filter filter) {
+        if (!(filter instanceof ConditionFilter))
+            return null;
+        Condition condition = ((ConditionFilter) filter).getCondition();
+        if (!(condition instanceof BaseColumnCondition))
+            return null;
+
+        final BaseColumnCondition c = (BaseColumnCondition) condition;
+        return (schema, columns, numRows) -> {
+            int column = schema.getIndexOfColumn(c.getColumnName());
+            ColumnVectors.ValueReader reader = ColumnVectors.reader(columns.get(column), schema.getType(column));
+            if (reader == null)
+                return null;
+            boolean[] keep = new boolean[numRows];
+            for (int i = 0; i < numRows; i++)
+                keep[i] = !c.columnCondition(reader.read(i));
+            return keep;
+        };
+    }
+
+    private static ColumnarTransform doubleColumn(final int column, final DoubleUnaryOperator op) {
+        if (op == null)
+            return null;
+        return (inputSchema, columns, numRows, allocator) -> {
+            double[] values = ColumnVectors.doubles(columns.get(column), numRows);
+            if (values == null)
+                return null;
+            for (int i = 0; i < numRows; i++)
+                values[i] = op.applyAsDouble(values[i]);
+            return replace(columns, column, ColumnVectors.vectorOf(inputSchema.getName(column), values, allocator));
+        };
+    }
+
+    private static ColumnarTransform intColumn(final int column, final IntUnaryOperator op) {
+        if (op == null)
+            return null;
+        return (inputSchema, columns, numRows, allocator) -> {
+            int[] values = ColumnVectors.ints(columns.get(column), numRows);
+            if (values == null)
+                return null;
+            for (int i = 0; i < numRows; i++)
+                values[i] = op.applyAsInt(values[i]);
+            return replace(columns, column, ColumnVectors.vectorOf(inputSchema.getName(column), values, allocator));
+        };
+    }
+
+    private static ColumnarTransform longColumn(final int column, final LongUnaryOperator op) {
+        if (op == null)
+            return null;
+        return (inputSchema, columns, numRows, allocator) -> {
+            long[] values = ColumnVectors.longs(columns.get(column), numRows);
+            if (values == null)
+                return null;
+            for (int i = 0; i < numRows; i++)
+                values[i] = op.applyAsLong(values[i]);
+            return replace(columns, column, ColumnVectors.vectorOf(inputSchema.getName(column), values, allocator));
+        };
+    }
+
+    private static ColumnarTransform categoricalToInteger(final int column, final Map<String, Integer> statesMap) {
+        return (inputSchema, columns, numRows, allocator) -> {
+            int[] classIdx = classIndices(columns.get(column), numRows, statesMap);
+            if (classIdx == null)
+                return null;
+            return replace(columns, column, ColumnVectors.vectorOf(inputSchema.getName(column), classIdx, allocator));
+        };
+    }
+
+    private static ColumnarTransform categoricalToOneHot(final int column, final List<String> stateNames,
+                                                         final Map<String, Integer> statesMap) {
+        return (inputSchema, columns, numRows, allocator) -> {
+            int[] classIdx = classIndices(columns.get(column), numRows, statesMap);
+            if (classIdx == null)
+                return null;
+
+            int[][] oneHot = new int[stateNames.size()][numRows];
+            for (int i = 0; i < numRows; i++)
+                oneHot[classIdx[i]][i] = 1;
+
+            List<FieldVector> out = new ArrayList<>(columns.size() + stateNames.size() - 1);
+            for (int c = 0; c < columns.size(); c++) {
+                if (c != column) {
+                    out.add(columns.get(c));
+                    continue;
+                }
+                String name = inputSchema.getName(column);
+                for (int j = 0; j < stateNames.size(); j++)
+                    out.add(ColumnVectors.vectorOf(name + "[" + stateNames.get(j) + "]", oneHot[j], allocator));
+            }
+            return out;
+        };
+    }
+
+    private static int[] classIndices(FieldVector column, int numRows, Map<String, Integer> statesMap) {
+        String[] values = ColumnVectors.strings(column, numRows);
+        if (values == null)
+            return null;
+        int[] ret = new int[numRows];
+        for (int i = 0; i < numRows; i++) {
+            Integer idx = statesMap.get(values[i]);
+            if (idx == null) {
+                throw new IllegalStateException("Cannot convert categorical value: input value (\"" + values[i]
+                        + "\") is not in the list of known categories (state names/categories: " + statesMap.keySet() + ")");
+            }
+            ret[i] = idx;
+        }
+        return ret;
+    }
+
+    private static ColumnarTransform selectColumns(final Transform transform) {
+        return (inputSchema, columns, numRows, allocator) -> {
+            Schema outputSchema = transform.transform(inputSchema);
+            List<FieldVector> out = new ArrayList<>(outputSchema.numColumns());
+            for (String name : outputSchema.getColumnNames())
+                out.add(columns.get(inputSchema.getIndexOfColumn(name)));
+            return out;
+        };
+    }
+
+    private static ColumnarTransform duplicateColumns(final DuplicateColumnsTransform transform) {
+        final Set<String> toDuplicate = new HashSet<>(transform.getColumnsToDuplicate());
+        return (inputSchema, columns, numRows, allocator) -> {
+            Schema outputSchema = transform.transform(inputSchema);
+            List<FieldVector> out = new ArrayList<>(outputSchema.numColumns());
+            for (int c = 0; c < columns.size(); c++) {
+                out.add(columns.get(c));
+                if (toDuplicate.contains(inputSchema.getName(c)))
+                    out.add(ColumnVectors.slice(columns.get(c), outputSchema.getName(out.size()), 0, numRows));
+            }
+            return out;
+        };
+    }
+
+    private static ColumnarTransform singleColumn(final BaseColumnTransform transform) {
+        return (inputSchema, columns, numRows, allocator) -> {
+            int column = transform.getColumnNumber();
+            ColumnType outputType = transform.transform(inputSchema).getType(column);
+            ColumnVectors.ValueReader reader = ColumnVectors.reader(columns.get(column), inputSchema.getType(column));
+            if (reader == null)
+                return null;
+            FieldVector out = ColumnVectors.newVector(outputType, inputSchema.getName(column), numRows, allocator);
+            if (out == null)
+                return null;
+            try {
+                for (int i = 0; i < numRows; i++)
+                    ArrowConverter.setValue(outputType, out, transform.map(reader.read(i)), i);
+                out.setValueCount(numRows);
+            } catch (RuntimeException e) {
+                out.close();
+                throw e;
+            }
+            return replace(columns, column, out);
+        };
+    }
+
+    /**
+     * Single column transforms can be executed one column at a time only if they don't override the record level
+     * {@link BaseColumnTransform#map(List)}
+     */
+    private static boolean mapsSingleColumn(BaseColumnTransform transform) {
+        try {
+            return transform.getClass().getMethod("map", List.class).getDeclaringClass() == BaseColumnTransform.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static List<FieldVector> replace(List<FieldVector> columns, int column, FieldVector replacement) {
+        List<FieldVector> out = new ArrayList<>(columns);
+        out.set(column, replacement);
+        return out;
+    }
+
+    private static DoubleUnaryOperator doubleOp(MathOp op, final double scalar) {
+        switch (op) {
+            case Add:
+                return x -> x + scalar;
+            case Subtract:
+                return x -> x - scalar;
+            case Multiply:
+                return x -> x * scalar;
+            case Divide:
+                return x -> x / scalar;
+            case Modulus:
+                return x -> x % scalar;
+            case ReverseSubtract:
+                return x -> scalar - x;
+            case ReverseDivide:
+                return x -> scalar / x;
+            case ScalarMin:
+                return x -> Math.min(x, scalar);
+            case ScalarMax:
+                return x -> Math.max(x, scalar);
+            default:
+                return null;
+        }
+    }
+
+    private static IntUnaryOperator intOp(MathOp op, final int scalar) {
+        switch (op) {
+            case Add:
+                return x -> x + scalar;
+            case Subtract:
+                return x -> x - scalar;
+            case Multiply:
+                return x -> x * scalar;
+            case Divide:
+                return x -> x / scalar;
+            case Modulus:
+                return x -> x % scalar;
+            case ReverseSubtract:
+                return x -> scalar - x;
+            case ReverseDivide:
+                return x -> scalar / x;
+            case ScalarMin:
+                return x -> Math.min(x, scalar);
+            case ScalarMax:
+                return x -> Math.max(x, scalar);
+            default:
+                return null;
+        }
+    }
+
+    private static LongUnaryOperator longOp(MathOp op, final long scalar) {
+        switch (op) {
+            case Add:
+                return x -> x + scalar;
+            case Subtract:
+                return x -> x - scalar;
+            case Multiply:
+                return x -> x * scalar;
+            case Divide:
+                return x -> x / scalar;
+            case Modulus:
+                return x -> x % scalar;
+            case ReverseSubtract:
+                return x -> scalar - x;
+            case ReverseDivide:
+                return x -> scalar / x;
+            case ScalarMin:
+                return x -> Math.min(x, scalar);
+            case ScalarMax:
+                return x -> Math.max(x, scalar);
+            default:
+                return null;
+        }
+    }
+
+    private static DoubleUnaryOperator doubleFunction(MathFunction function) {
+        switch (function) {
+            case ABS:
+                return Math::abs;
+            case ACOS:
+                return Math::acos;
+            case ASIN:
+                return Math::asin;
+            case ATAN:
+                return Math::atan;
+            case CEIL:
+                return Math::ceil;
+            case COS:
+                return Math::cos;
+            case COSH:
+                return Math::cosh;
+            case EXP:
+                return Math::exp;
+            case FLOOR:
+                return Math::floor;
+            case LOG:
+                return Math::log;
+            case LOG10:
+                return Math::log10;
+            case SIGNUM:
+                return Math::signum;
+            case SIN:
+                return Math::sin;
+            case SINH:
+                return Math::sinh;
+            case SQRT:
+                return Math::sqrt;
+            case TAN:
+                return Math::tan;
+            case TANH:
+                return Math::tanh;
+            default:
+                return null;
+        }
+    }
+}
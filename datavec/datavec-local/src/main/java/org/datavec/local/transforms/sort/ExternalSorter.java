@@ -0,0 +1,273 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.sort;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.writable.Writable;
+import org.datavec.api.writable.WritableFactory;
+import org.nd4j.common.base.Preconditions;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Sorts records with bounded memory: records are buffered up to the configured limit, and each full buffer
+ * is sorted and spilled to disk as a sorted run. Runs are then merged with a k-way merge, in multiple passes
+ * if there are more runs than can be merged at once.<br>
+ * Sort is stable: records comparing as equal are returned in insertion order.
+ * <p>
+ * Usage: {@link #add(List)} all records, then iterate over {@link #sorted()} once, then {@link #close()}.
+ * Spilled runs are deleted as soon as they have been merged, and {@link #close()} deletes any runs left, for example
+ * if iteration was not completed.
+ */
+@Slf4j
+public class ExternalSorter implements Closeable {
+    /**
+     * Maximal number of runs merged at once, to bound number of open files
+     */
+    public static final int MAX_MERGE_WIDTH = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Comparator<List<Writable>> comparator;
+    private final File directory;
+    private final int maxRecordsInMemory;
+
+    private List<List<Writable>> buffer = new ArrayList<>();
+    private final List<File> runs = new ArrayList<>();
+    private final List<Closeable> openReaders = new ArrayList<>();
+    private boolean finished = false;
+
+    /**
+     * @param comparator         Record comparator
+     * @param directory          Directory for spilled runs
+     * @param maxRecordsInMemory Maximal number of records kept in memory before spilling a run to disk
+     */
+    public ExternalSorter(@NonNull Comparator<List<Writable>> comparator, @NonNull File directory, int maxRecordsInMemory) {
+        Preconditions.checkArgument(maxRecordsInMemory > 0, "Maximal number of records in memory should be positive, got %s", maxRecordsInMemory);
+        this.comparator = comparator;
+        this.directory = directory;
+        this.maxRecordsInMemory = maxRecordsInMemory;
+    }
+
+    /**
+     * Adds record to the sorter
+     */
+    public void add(@NonNull List<Writable> record) throws IOException {
+        Preconditions.checkState(!finished, "Can't add records after sorted() was called");
+        buffer.add(record);
+        if (buffer.size() >= maxRecordsInMemory)
+            spill();
+    }
+
+    /**
+     * @return number of runs spilled to disk so far
+     */
+    public int numRuns() {
+        return runs.size();
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(comparator);
+        runs.add(writeRun(buffer.iterator()));
+        buffer = new ArrayList<>();
+    }
+
+    private File writeRun(Iterator<List<Writable>> records) throws IOException {
+        if (!directory.exists() && !directory.mkdirs() && !directory.exists())
+            throw new IOException("Could not create directory for sorted runs: " + directory.getAbsolutePath());
+
+        File file = File.createTempFile("datavec_sort_", ".run", directory);
+        boolean written = false;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+            while (records.hasNext()) {
+                List<Writable> record = records.next();
+                out.writeInt(record.size());
+                for (Writable w : record)
+                    WritableFactory.getInstance().writeWithType(w, out);
+            }
+            out.writeInt(-1);
+            written = true;
+        } finally {
+            if (!written)
+                delete(file);
+        }
+        return file;
+    }
+
+    /**
+     * Returns all added records in sorted order. Can be called only once
+     */
+    public Iterator<List<Writable>> sorted() throws IOException {
+        Preconditions.checkState(!finished, "sorted() can be called only once");
+        finished = true;
+
+        if (runs.isEmpty()) {
+            //Everything fits in memory
+            buffer.sort(comparator);
+            Iterator<List<Writable>> ret = buffer.iterator();
+            buffer = null;
+            return ret;
+        }
+
+        if (!buffer.isEmpty())
+            spill();
+        buffer = null;
+
+        //Reduce number of runs, so that final merge doesn't exceed merge width. Earlier runs are merged first to keep sort stable
+        while (runs.size() > MAX_MERGE_WIDTH) {
+            log.debug("Merging {} sorted runs", runs.size());
+            List<File> next = new ArrayList<>();
+            try {
+                for (int i = 0; i < runs.size(); i += MAX_MERGE_WIDTH) {
+                    List<File> group = runs.subList(i, Math.min(runs.size(), i + MAX_MERGE_WIDTH));
+                    if (group.size() == 1) {
+                        next.add(group.get(0));
+                        continue;
+                    }
+                    next.add(writeRun(merge(group)));
+                    for (File f : group)
+                        delete(f);
+                }
+            } catch (IOException | RuntimeException e) {
+                //Runs merged so far are not tracked in runs yet: delete them here, close() deletes the others
+                for (File f : next) {
+                    if (!runs.contains(f))
+                        delete(f);
+                }
+                throw e;
+            }
+            runs.clear();
+            runs.addAll(next);
+        }
+
+        return merge(runs);
+    }
+
+    private Iterator<List<Writable>> merge(List<File> files) throws IOException {
+        final List<RunReader> readers = new ArrayList<>(files.size());
+        for (File f : files) {
+            RunReader r = new RunReader(f, readers.size());
+            readers.add(r);
+            openReaders.add(r);
+        }
+
+        final PriorityQueue<RunReader> queue = new PriorityQueue<>(Math.max(1, readers.size()), new Comparator<RunReader>() {
+            @Override
+            public int compare(RunReader o1, RunReader o2) {
+                int c = comparator.compare(o1.head, o2.head);
+                return c != 0 ? c : Integer.compare(o1.index, o2.index);
+            }
+        });
+        for (RunReader r : readers) {
+            if (r.advance())
+                queue.add(r);
+        }
+
+        return new Iterator<List<Writable>>() {
+            @Override
+            public boolean hasNext() {
+                return !queue.isEmpty();
+            }
+
+            @Override
+            public List<Writable> next() {
+                if (queue.isEmpty())
+                    throw new NoSuchElementException();
+                RunReader r = queue.poll();
+                List<Writable> ret = r.head;
+                try {
+                    if (r.advance())
+                        queue.add(r);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return ret;
+            }
+        };
+    }
+
+    private static void delete(File f) {
+        if (f.exists() && !f.delete())
+            log.warn("Could not delete sorted run file {}", f.getAbsolutePath());
+    }
+
+    /**
+     * Closes open runs and deletes all spilled files
+     */
+    @Override
+    public void close() {
+        for (Closeable c : openReaders) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                log.warn("Error closing sorted run", e);
+            }
+        }
+        openReaders.clear();
+        for (File f : runs)
+            delete(f);
+        runs.clear();
+        buffer = null;
+    }
+
+    private static class RunReader implements Closeable {
+        private final File file;
+        private final DataInputStream in;
+        private final int index;
+        private List<Writable> head;
+        private boolean closed = false;
+
+        private RunReader(File file, int index) throws IOException {
+            this.file = file;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            this.index = index;
+        }
+
+        /**
+         * Reads next record into head, closes and deletes the run when it's exhausted
+         */
+        private boolean advance() throws IOException {
+            int size = in.readInt();
+            if (size < 0) {
+                close();
+                delete(file);
+                head = null;
+                return false;
+            }
+
+            List<Writable> record = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                record.add(WritableFactory.getInstance().readWithType(in));
+            head = record;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                in.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.datasets.datavec;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.records.reader.impl.csv.NumericCSVReader;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DataSetIterator for numeric CSV files, backed by a {@link NumericCSVReader}: values are parsed from the file bytes
+ * directly into a reusable minibatch buffer, instead of creating a String and a Writable per value as
+ * {@link RecordReaderDataSetIterator} with a {@link CSVRecordReader} does. All columns must be numeric: for
+ * classification, the label column contains the class index.
+ * <p>
+ * With {@link Builder#numThreads(int)} greater than 1, minibatches are parsed on background threads: the line
+ * boundaries of upcoming minibatches are located on the calling thread (which only requires finding line breaks),
+ * and each minibatch is then parsed independently on a pool of daemon threads shared by all iterators. Minibatches are
+ * still returned in file order.
+ */
+@Slf4j
+public class NumericCSVDataSetIterator implements DataSetIterator, Closeable {
+
+    @Getter
+    protected final NumericCSVReader reader;
+    protected final int batchSize;
+    protected final int labelIndex;
+    protected final int labelIndexTo;
+    protected final int numPossibleLabels;
+    protected final boolean regression;
+    protected final DataType dataType;
+    protected final int numThreads;
+    protected final int[] featureColumns;
+    protected final int[] labelColumns;
+    @Getter
+    protected DataSetPreProcessor preProcessor;
+
+    /** Offset of the next record to read */
+    protected long position;
+    protected final Deque<Future<DataSet>> prefetched = new ArrayDeque<>();
+    private final ThreadLocal<float[]> floatBuffers = new ThreadLocal<>();
+    private final ThreadLocal<double[]> doubleBuffers = new ThreadLocal<>();
+
+    protected NumericCSVDataSetIterator(Builder b) throws IOException {
+        Preconditions.checkArgument(b.batchSize > 0, "Batch size must be positive, got %s", b.batchSize);
+        Preconditions.checkArgument(b.dataType == DataType.FLOAT || b.dataType == DataType.DOUBLE,
+                "Only FLOAT and DOUBLE data types are supported, got %s", b.dataType);
+        Preconditions.checkArgument(b.numThreads > 0, "Number of threads must be positive, got %s", b.numThreads);
+        this.reader = new NumericCSVReader(b.file, b.skipNumLines, b.delimiter);
+        this.batchSize = b.batchSize;
+        this.labelIndex = b.labelIndex;
+        this.labelIndexTo = b.labelIndexTo;
+        this.numPossibleLabels = b.numPossibleLabels;
+        this.regression = b.regression;
+        this.dataType = b.dataType;
+        this.numThreads = b.numThreads;
+        this.preProcessor = b.preProcessor;
+        this.position = reader.getDataStart();
+
+        int numColumns = reader.getNumColumns();
+        if (labelIndex >= 0) {
+            if (labelIndexTo >= numColumns || labelIndexTo < labelIndex) {
+                reader.close();
+                throw new IllegalArgumentException("Invalid label columns: from " + labelIndex + " to " + labelIndexTo
+                        + " (inclusive), for file with " + numColumns + " columns");
+            }
+            if (!regression && numPossibleLabels <= 0) {
+                reader.close();
+                throw new IllegalArgumentException("Number of classes must be positive for classification, got " + numPossibleLabels);
+            }
+        }
+        int numLabelColumns = labelIndex >= 0 ? labelIndexTo - labelIndex + 1 : 0;
+        featureColumns = new int[numColumns - numLabelColumns];
+        labelColumns = new int[numLabelColumns];
+        for (int i = 0, f = 0; i < numColumns; i++) {
+            if (labelIndex >= 0 && i >= labelIndex && i <= labelIndexTo)
+                labelColumns[i - labelIndex] = i;
+            else
+                featureColumns[f++] = i;
+        }
+    }
+
+    @Override
+    public DataSet next(int num) {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+        DataSet ds;
+        if (numThreads > 1 && num == batchSize) {
+            ds = nextPrefetched();
+        } else {
+            Preconditions.checkState(prefetched.isEmpty(), "Prefetched minibatches have size %s, can't return minibatch of size %s", batchSize, num);
+            ds = parse(nextRange(num), num);
+        }
+        if (preProcessor != null)
+            preProcessor.preProcess(ds);
+        return ds;
+    }
+
+    /**
+     * @return Offsets of the next num records, as {start, end}
+     */
+    private long[] nextRange(int num) {
+        try {
+            long start = position;
+            long end = reader.nextLines(start, num);
+            position = reader.nextRecord(end);
+            return new long[]{start, end};
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private DataSet nextPrefetched() {
+        fillPrefetchQueue();
+        Future<DataSet> future = prefetched.poll();
+        // keep parsing threads busy while this minibatch is being used
+        fillPrefetchQueue();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void fillPrefetchQueue() {
+        while (prefetched.size() < 2 * numThreads && position < reader.getSize()) {
+            final long[] range = nextRange(batchSize);
+            prefetched.add(ParseExecutorHolder.INSTANCE.submit(() -> parse(range, batchSize)));
+        }
+    }
+
+    /**
+     * Parses the records in the given range (at most maxRows records) into this thread's buffer, and converts them
+     * to a DataSet
+     */
+    private DataSet parse(long[] range, int maxRows) {
+        int numColumns = reader.getNumColumns();
+        int capacity = maxRows * numColumns;
+        int rows;
+        float[] floats = null;
+        double[] doubles = null;
+        INDArray all;
+        try {
+            if (dataType == DataType.FLOAT) {
+                floats = floatBuffers.get();
+                if (floats == null || floats.length < capacity) {
+                    floats = new float[capacity];
+                    floatBuffers.set(floats);
+                }
+                rows = reader.read(range[0], range[1], floats, 0);
+                long[] shape = {rows, numColumns};
+                all = Nd4j.create(floats.length == rows * numColumns ? floats : Arrays.copyOf(floats, rows * numColumns), shape, 'c');
+            } else {
+                doubles = doubleBuffers.get();
+                if (doubles == null || doubles.length < capacity) {
+                    doubles = new double[capacity];
+                    doubleBuffers.set(doubles);
+                }
+                rows = reader.read(range[0], range[1], doubles, 0);
+                long[] shape = {rows, numColumns};
+                all = Nd4j.create(doubles.length == rows * numColumns ? doubles : Arrays.copyOf(doubles, rows * numColumns), shape, 'c');
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        INDArray features = featureColumns.length == numColumns ? all : all.getColumns(featureColumns);
+        INDArray labels = null;
+        if (labelIndex >= 0) {
+            if (regression) {
+                labels = all.getColumns(labelColumns);
+            } else {
+                labels = Nd4j.create(dataType, rows, numPossibleLabels);
+                for (int i = 0; i < rows; i++) {
+                    double value = floats != null ? floats[i * numColumns + labelIndex] : doubles[i * numColumns + labelIndex];
+                    int classIdx = (int) value;
+                    if (classIdx != value || classIdx < 0 || classIdx >= numPossibleLabels) {
+                        throw new IllegalStateException("Invalid classification data: expect label value (at label index column = "
+                                + labelIndex + ") to be in range 0 to " + (numPossibleLabels - 1) + " inclusive (0 to numClasses-1, with numClasses="
+                                + numPossibleLabels + "); got label value of " + value);
+                    }
+                    labels.putScalar(i, classIdx, 1.0);
+                }
+            }
+        }
+        return new DataSet(features, labels);
+    }
+
+    @Override
+    public int inputColumns() {
+        return featureColumns.length;
+    }
+
+    @Override
+    public int totalOutcomes() {
+        if (labelIndex < 0)
+            return 0;
+        return regression ? labelColumns.length : numPossibleLabels;
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        //Minibatches are already parsed in the background when using multiple threads
+        return numThreads <= 1;
+    }
+
+    @Override
+    public void reset() {
+        //Not interrupted: interrupting a read would close the file channel
+        for (Future<DataSet> f : prefetched)
+            f.cancel(false);
+        prefetched.clear();
+        position = reader.getDataStart();
+    }
+
+    @Override
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !prefetched.isEmpty() || position < reader.getSize();
+    }
+
+    @Override
+    public DataSet next() {
+        return next(batchSize);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Cancels parsing of prefetched minibatches, and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        reset();
+        reader.close();
+    }
+
+    public static class Builder {
+
+        protected final File file;
+        protected final int batchSize;
+        protected int labelIndex = -1;
+        protected int labelIndexTo = -1;
+        protected int numPossibleLabels = -1;
+        protected boolean regression = false;
+        protected int skipNumLines = 0;
+        protected char delimiter = CSVRecordReader.DEFAULT_DELIMITER;
+        protected DataType dataType = DataType.FLOAT;
+        protected int numThreads = 1;
+        protected DataSetPreProcessor preProcessor;
+
+        /**
+         * @param file      Numeric CSV file to read
+         * @param batchSize Batch size to use
+         */
+        public Builder(@NonNull File file, int batchSize) {
+            this.file = file;
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Use this for single output regression (i.e., 1 output/regression target)
+         *
+         * @param labelIndex Column index that contains the regression target (indexes start at 0)
+         */
+        public Builder regression(int labelIndex) {
+            return regression(labelIndex, labelIndex);
+        }
+
+        /**
+         * Use this for multiple output regression (1 or more output/regression targets). Note that all regression
+         * targets must be contiguous (i.e., positions x to y, without gaps)
+         *
+         * @param labelIndexFrom Column index of the first regression target (indexes start at 0)
+         * @param labelIndexTo   Column index of the last regression target (inclusive)
+         */
+        public Builder regression(int labelIndexFrom, int labelIndexTo) {
+            this.labelIndex = labelIndexFrom;
+            this.labelIndexTo = labelIndexTo;
+            this.regression = true;
+            return this;
+        }
+
+        /**
+         * Use this for classification
+         *
+         * @param labelIndex Index of the column that contains the class index: integer values 0 to numClasses-1
+         * @param numClasses Number of label classes (i.e., number of categories/classes in the dataset)
+         */
+        public Builder classification(int labelIndex, int numClasses) {
+            this.labelIndex = labelIndex;
+            this.labelIndexTo = labelIndex;
+            this.numPossibleLabels = numClasses;
+            this.regression = false;
+            return this;
+        }
+
+        /**
+         * @param skipNumLines Number of lines to skip at the start of the file (headers). Default: 0
+         */
+        public Builder skipNumLines(int skipNumLines) {
+            this.skipNumLines = skipNumLines;
+            return this;
+        }
+
+        /**
+         * @param delimiter Delimiter character. Default: ','
+         */
+        public Builder delimiter(char delimiter) {
+            this.delimiter = delimiter;
+            return this;
+        }
+
+        /**
+         * @param dataType Data type of the features and labels: FLOAT (default) or DOUBLE
+         */
+        public Builder dataType(@NonNull DataType dataType) {
+            this.dataType = dataType;
+            return this;
+        }
+
+        /**
+         * @param numThreads Number of threads used to parse minibatches. When greater than 1 (default: 1), up to
+         *                   2 * numThreads upcoming minibatches are parsed in the background, on a pool shared by all
+         *                   iterators
+         */
+        public Builder numThreads(int numThreads) {
+            this.numThreads = numThreads;
+            return this;
+        }
+
+        /**
+         * Optional arg. Allows the preprocessor to be set
+         * @param preProcessor Preprocessor to use
+         */
+        public Builder preProcessor(DataSetPreProcessor preProcessor) {
+            this.preProcessor = preProcessor;
+            return this;
+        }
+
+        public NumericCSVDataSetIterator build() throws IOException {
+            return new NumericCSVDataSetIterator(this);
+        }
+    }
+
+    /**
+     * Parsing pool shared by all iterators, so iterators that are abandoned before exhaustion (or never closed) don't
+     * leave threads behind. Threads are daemons, and exit after being idle for a while
+     */
+    private static class ParseExecutorHolder {
+        private static final ExecutorService INSTANCE = createExecutor();
+
+        private static ExecutorService createExecutor() {
+            final AtomicInteger threadCount = new AtomicInteger();
+            int numThreads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), r -> {
+                        Thread t = new Thread(r, "NumericCSVDataSetIterator-parsing-" + threadCount.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+}
@@ -100,6 +100,12 @@ public class BagOfWordsVectorizer extends BaseTextVectorizer {
         return input;
     }
 
+    @Override
+    protected double weight(int index, long count, long documentLength) {
+        // same as transform()
+        return vocabCache.wordFrequency(vocabCache.wordAtIndex(index));
+    }
+
     /**
      * @param input the text to vectorize
      * @param label the label of the text
@@ -21,6 +21,7 @@
 package org.deeplearning4j.bagofwords.vectorizer;
 
 import lombok.Getter;
+import lombok.NonNull;
 import lombok.Setter;
 import org.deeplearning4j.models.sequencevectors.iterators.AbstractSequenceIterator;
 import org.deeplearning4j.models.sequencevectors.transformers.impl.SentenceTransformer;
@@ -34,7 +35,9 @@ import org.deeplearning4j.text.invertedindex.InvertedIndex;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 public abstract class BaseTextVectorizer implements TextVectorizer {
     @Setter
@@ -77,6 +80,71 @@ public abstract class BaseTextVectorizer implements TextVectorizer {
         buildVocab();
     }
 
+    /**
+     * This method builds sparse vectors for given tokenized documents, without allocating vocabulary-sized rows.
+     * Weights are the same as produced by {@link #transform(List)}.
+     *
+     * @param documents tokens of each document
+     * @return CSR batch with one row per document
+     */
+    public CSRBatch transformSparse(@NonNull List<List<String>> documents) {
+        return transformSparse(documents, new String[documents.size()]);
+    }
+
+    protected CSRBatch transformSparse(@NonNull List<List<String>> documents, @NonNull String[] labels) {
+        int[] pointers = new int[documents.size() + 1];
+        int[] indices = new int[16];
+        float[] values = new float[16];
+        int nnz = 0;
+
+        int[] ids = new int[16];
+        for (int d = 0; d < documents.size(); d++) {
+            List<String> tokens = documents.get(d);
+            if (ids.length < tokens.size())
+                ids = new int[tokens.size()];
+
+            int length = 0;
+            for (String token : tokens) {
+                int idx = vocabCache.indexOf(token);
+                if (idx >= 0)
+                    ids[length++] = idx;
+            }
+
+            // sorted ids give both term counts and canonical column order
+            Arrays.sort(ids, 0, length);
+            for (int i = 0; i < length;) {
+                int j = i + 1;
+                while (j < length && ids[j] == ids[i])
+                    j++;
+
+                if (nnz == indices.length) {
+                    indices = Arrays.copyOf(indices, nnz * 2);
+                    values = Arrays.copyOf(values, nnz * 2);
+                }
+                indices[nnz] = ids[i];
+                values[nnz] = (float) weight(ids[i], j - i, tokens.size());
+                nnz++;
+                i = j;
+            }
+            pointers[d + 1] = nnz;
+        }
+
+        return new CSRBatch(vocabCache.numWords(), pointers, Arrays.copyOf(indices, nnz), Arrays.copyOf(values, nnz),
+                        labels);
+    }
+
+    /**
+     * Returns weight of the vocabulary element within a document
+     *
+     * @param index index of the element in vocabulary
+     * @param count number of occurrences of the element in the document
+     * @param documentLength number of tokens in the document
+     * @return weight of the element
+     */
+    protected double weight(int index, long count, long documentLength) {
+        return count;
+    }
+
     /**
      * Returns the number of words encountered so far
      *
@@ -0,0 +1,87 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.bagofwords.vectorizer;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+/**
+ * Batch of document vectors in compressed sparse row format: non-zero entries of row {@code i}
+ * are {@code indices[pointers[i]..pointers[i+1])} with weights {@code values[pointers[i]..pointers[i+1])},
+ * column indexes within a row are sorted in ascending order.
+ */
+@Getter
+public class CSRBatch {
+    private final int rows;
+    private final int columns;
+    private final int[] pointers;
+    private final int[] indices;
+    private final float[] values;
+    // label of each row, null for unlabelled documents
+    private final String[] labels;
+
+    public CSRBatch(int columns, @NonNull int[] pointers, @NonNull int[] indices, @NonNull float[] values,
+                    @NonNull String[] labels) {
+        Preconditions.checkArgument(pointers.length == labels.length + 1,
+                        "Expected %s row pointers, got %s", labels.length + 1, pointers.length);
+        Preconditions.checkArgument(indices.length == values.length && pointers[pointers.length - 1] <= indices.length,
+                        "Indices and values don't match row pointers");
+        this.rows = labels.length;
+        this.columns = columns;
+        this.pointers = pointers;
+        this.indices = indices;
+        this.values = values;
+        this.labels = labels;
+    }
+
+    /**
+     * @return number of non-zero entries in this batch
+     */
+    public int nnz() {
+        return pointers[rows];
+    }
+
+    /**
+     * @return number of non-zero entries in the given row
+     */
+    public int rowLength(int row) {
+        return pointers[row + 1] - pointers[row];
+    }
+
+    /**
+     * This method converts this batch into dense matrix of shape [rows, columns].
+     *
+     * PLEASE NOTE: this defeats the purpose of sparse representation, and is meant for small vocabularies and testing only
+     *
+     * @return dense matrix
+     */
+    public INDArray toDense() {
+        INDArray ret = Nd4j.create(rows, columns);
+        for (int r = 0; r < rows; r++) {
+            for (int p = pointers[r]; p < pointers[r + 1]; p++)
+                ret.putScalar(r, indices[p], values[p]);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.bagofwords.vectorizer;
+
+import lombok.NonNull;
+import org.deeplearning4j.text.documentiterator.LabelAwareIterator;
+import org.deeplearning4j.text.documentiterator.LabelledDocument;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * MultiDataSetIterator streaming documents of a fitted {@link BaseTextVectorizer} as sparse vectors.
+ * Documents are read and vectorized one batch at a time, and vocabulary-sized rows are never allocated.
+ *
+ * Each MultiDataSet holds a batch in padded (index, weight) form, as two inputs of shape [minibatch, maxNonZero]:
+ * INT vocabulary indexes of the non-zero entries, and corresponding weights (word counts or TF-IDF scores).
+ * Both inputs share a feature mask with zeros for padding, labels are one-hot outcomes.
+ * Raw CSR batches are available via {@link #nextBatch(int)}.
+ */
+public class SparseTextMultiDataSetIterator implements MultiDataSetIterator {
+    private final BaseTextVectorizer vectorizer;
+    private final LabelAwareIterator iterator;
+    private final int batchSize;
+    private MultiDataSetPreProcessor preProcessor;
+
+    /**
+     * @param vectorizer fitted vectorizer, its document iterator is used as data source
+     * @param batchSize number of documents per batch
+     */
+    public SparseTextMultiDataSetIterator(@NonNull BaseTextVectorizer vectorizer, int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size should be positive, got %s", batchSize);
+        Preconditions.checkState(vectorizer.getVocabCache() != null && vectorizer.getVocabCache().numWords() > 0,
+                        "Vectorizer should be fitted before iterating over sparse vectors");
+        Preconditions.checkState(vectorizer.iterator != null && vectorizer.tokenizerFactory != null,
+                        "Vectorizer has no document iterator or tokenizer factory defined");
+        this.vectorizer = vectorizer;
+        this.iterator = vectorizer.iterator;
+        this.batchSize = batchSize;
+        this.iterator.reset();
+    }
+
+    /**
+     * Returns next batch of documents in CSR format
+     *
+     * @param num maximal number of documents in batch
+     * @return CSR batch
+     */
+    public CSRBatch nextBatch(int num) {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        List<List<String>> documents = new ArrayList<>(num);
+        List<String> labels = new ArrayList<>(num);
+        while (documents.size() < num && iterator.hasNextDocument()) {
+            LabelledDocument document = iterator.nextDocument();
+            documents.add(vectorizer.tokenizerFactory.create(document.getContent()).getTokens());
+            labels.add(document.getLabels() == null || document.getLabels().isEmpty() ? null
+                            : document.getLabels().get(0));
+        }
+
+        return vectorizer.transformSparse(documents, labels.toArray(new String[0]));
+    }
+
+    @Override
+    public MultiDataSet next(int num) {
+        CSRBatch batch = nextBatch(num);
+
+        int width = 1;
+        for (int r = 0; r < batch.getRows(); r++)
+            width = Math.max(width, batch.rowLength(r));
+
+        int[][] indices = new int[batch.getRows()][width];
+        float[][] weights = new float[batch.getRows()][width];
+        float[][] mask = new float[batch.getRows()][width];
+        for (int r = 0; r < batch.getRows(); r++) {
+            for (int p = batch.getPointers()[r], c = 0; p < batch.getPointers()[r + 1]; p++, c++) {
+                indices[r][c] = batch.getIndices()[p];
+                weights[r][c] = batch.getValues()[p];
+                mask[r][c] = 1.0f;
+            }
+        }
+
+        INDArray labels = Nd4j.create(batch.getRows(), Math.max(1, totalOutcomes()));
+        for (int r = 0; r < batch.getRows(); r++) {
+            int label = batch.getLabels()[r] == null ? -1 : vectorizer.getLabelsSource().indexOf(batch.getLabels()[r]);
+            if (label >= 0)
+                labels.putScalar(r, label, 1.0);
+        }
+
+        INDArray featuresMask = Nd4j.createFromArray(mask);
+        MultiDataSet ret = new MultiDataSet(
+                        new INDArray[] {Nd4j.createFromArray(indices), Nd4j.createFromArray(weights)},
+                        new INDArray[] {labels}, new INDArray[] {featuresMask, featuresMask.dup()}, null);
+        if (preProcessor != null)
+            preProcessor.preProcess(ret);
+
+        return ret;
+    }
+
+    @Override
+    public MultiDataSet next() {
+        return next(batchSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return iterator.hasNextDocument();
+    }
+
+    /**
+     * Returns the number of columns of the sparse vectors, i.e. vocabulary size. Padded index/weight inputs are
+     * narrower: their width is the largest number of non-zero entries in the batch
+     */
+    public int vocabularySize() {
+        return vectorizer.getVocabCache().numWords();
+    }
+
+    public int totalOutcomes() {
+        return vectorizer.getLabelsSource() == null ? 0 : vectorizer.getLabelsSource().size();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        iterator.reset();
+    }
+
+    public int batch() {
+        return batchSize;
+    }
+
+    @Override
+    public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+        this.preProcessor = preProcessor;
+    }
+
+    @Override
+    public MultiDataSetPreProcessor getPreProcessor() {
+        return preProcessor;
+    }
+
+    public List<String> getLabels() {
+        return vectorizer.getLabelsSource() == null ? null : vectorizer.getLabelsSource().getLabels();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Not supported");
+    }
+}
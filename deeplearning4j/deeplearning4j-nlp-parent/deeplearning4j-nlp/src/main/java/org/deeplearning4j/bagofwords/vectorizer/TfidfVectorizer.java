@@ -147,6 +147,11 @@ public class TfidfVectorizer extends BaseTextVectorizer {
         return MathUtils.tfidf(tfForWord(wordCount, documentLength), idfForWord(word));
     }
 
+    @Override
+    protected double weight(int index, long count, long documentLength) {
+        return tfidfWord(vocabCache.wordAtIndex(index), count, documentLength);
+    }
+
     private double tfForWord(long wordCount, long documentLength) {
         return (double) wordCount / (double) documentLength;
     }
@@ -26,6 +26,7 @@ import lombok.Setter;
 import org.deeplearning4j.iterator.bert.BertMaskedLMMasker;
 import org.deeplearning4j.iterator.bert.BertSequenceMasker;
 import org.deeplearning4j.text.tokenization.tokenizer.Tokenizer;
+import org.deeplearning4j.text.tokenization.tokenizer.WordPieceTrie;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.BertWordPieceTokenizerFactory;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
 import org.nd4j.common.base.Preconditions;
@@ -39,10 +40,21 @@ import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.common.primitives.Pair;
 import org.nd4j.common.primitives.Triple;
 
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class BertIterator implements MultiDataSetIterator {
 
@@ -72,9 +84,13 @@ public class BertIterator implements MultiDataSetIterator {
     protected String maskToken;
     protected String prependToken;
     protected String appendToken;
+    protected int prefetchSize = 0;
 
 
     protected List<String> vocabKeysAsList;
+    // true if tokenizer ids can be used as feature indices as is
+    protected boolean tokenIdsMatchVocab;
+    protected final Deque<Future<Triple<List<Pair<List<String>, String>>, Integer, long[]>>> prefetched = new ArrayDeque<>();
 
     protected BertIterator(Builder b) {
         this.task = b.task;
@@ -93,10 +109,17 @@ public class BertIterator implements MultiDataSetIterator {
         this.maskToken = b.maskToken;
         this.prependToken = b.prependToken;
         this.appendToken = b.appendToken;
+        this.prefetchSize = b.prefetchSize;
+        this.tokenIdsMatchVocab = tokenizerFactory instanceof BertWordPieceTokenizerFactory
+                && ((BertWordPieceTokenizerFactory) tokenizerFactory).getVocab().equals(vocabMap);
     }
 
     @Override
     public boolean hasNext() {
+        return !prefetched.isEmpty() || providerHasNext();
+    }
+
+    private boolean providerHasNext() {
         if (sentenceProvider != null)
             return sentenceProvider.hasNext();
         return sentencePairProvider.hasNext();
@@ -115,31 +138,15 @@ public class BertIterator implements MultiDataSetIterator {
     @Override
     public MultiDataSet next(int num) {
         Preconditions.checkState(hasNext(), "No next element available");
-        List<Pair<List<String>, String>> tokensAndLabelList;
-        int mbSize = 0;
-        int outLength;
-        long[] segIdOnesFrom = null;
-        if (sentenceProvider != null) {
-            List<Pair<String, String>> list = new ArrayList<>(num);
-            while (sentenceProvider.hasNext() && mbSize++ < num) {
-                list.add(sentenceProvider.nextSentence());
-            }
-            SentenceListProcessed sentenceListProcessed = tokenizeMiniBatch(list);
-            tokensAndLabelList = sentenceListProcessed.getTokensAndLabelList();
-            outLength = sentenceListProcessed.getMaxL();
-        } else if (sentencePairProvider != null) {
-            List<Triple<String, String, String>> listPairs = new ArrayList<>(num);
-            while (sentencePairProvider.hasNext() && mbSize++ < num) {
-                listPairs.add(sentencePairProvider.nextSentencePair());
-            }
-            SentencePairListProcessed sentencePairListProcessed = tokenizePairsMiniBatch(listPairs);
-            tokensAndLabelList = sentencePairListProcessed.getTokensAndLabelList();
-            outLength = sentencePairListProcessed.getMaxL();
-            segIdOnesFrom = sentencePairListProcessed.getSegIdOnesFrom();
+        Triple<List<Pair<List<String>, String>>, Integer, long[]> tokenized;
+        if (prefetchSize > 0) {
+            tokenized = nextPrefetched(num);
         } else {
-            //TODO - other types of iterators...
-            throw new UnsupportedOperationException("Labelled sentence provider is null and no other iterator types have yet been implemented");
+            tokenized = readMiniBatch(num).get();
         }
+        List<Pair<List<String>, String>> tokensAndLabelList = tokenized.getFirst();
+        int outLength = tokenized.getSecond();
+        long[] segIdOnesFrom = tokenized.getThird();
 
         Pair<INDArray[], INDArray[]> featuresAndMaskArraysPair = convertMiniBatchFeatures(tokensAndLabelList, outLength, segIdOnesFrom);
         INDArray[] featureArray = featuresAndMaskArraysPair.getFirst();
@@ -158,6 +165,66 @@ public class BertIterator implements MultiDataSetIterator {
     }
 
 
+    /**
+     * Reads up to {@code num} sentences from the provider on the calling thread, and returns tokenization task for them.
+     * Tokenization result is: tokens and labels, output sequence length and (for sentence pairs) segment offsets
+     */
+    private Supplier<Triple<List<Pair<List<String>, String>>, Integer, long[]>> readMiniBatch(int num) {
+        int mbSize = 0;
+        if (sentenceProvider != null) {
+            final List<Pair<String, String>> list = new ArrayList<>(num);
+            while (sentenceProvider.hasNext() && mbSize++ < num) {
+                list.add(sentenceProvider.nextSentence());
+            }
+            return () -> {
+                SentenceListProcessed sentenceListProcessed = tokenizeMiniBatch(list);
+                return new Triple<>(sentenceListProcessed.getTokensAndLabelList(), sentenceListProcessed.getMaxL(), null);
+            };
+        } else if (sentencePairProvider != null) {
+            final List<Triple<String, String, String>> listPairs = new ArrayList<>(num);
+            while (sentencePairProvider.hasNext() && mbSize++ < num) {
+                listPairs.add(sentencePairProvider.nextSentencePair());
+            }
+            return () -> {
+                SentencePairListProcessed sentencePairListProcessed = tokenizePairsMiniBatch(listPairs);
+                return new Triple<>(sentencePairListProcessed.getTokensAndLabelList(), sentencePairListProcessed.getMaxL(),
+                        sentencePairListProcessed.getSegIdOnesFrom());
+            };
+        } else {
+            //TODO - other types of iterators...
+            throw new UnsupportedOperationException("Labelled sentence provider is null and no other iterator types have yet been implemented");
+        }
+    }
+
+    private Triple<List<Pair<List<String>, String>>, Integer, long[]> nextPrefetched(int num) {
+        if (num != minibatchSize) {
+            Preconditions.checkState(prefetched.isEmpty(), "Prefetched minibatches have size %s, can't return minibatch of size %s", minibatchSize, num);
+            return readMiniBatch(num).get();
+        }
+
+        fillPrefetchQueue();
+        Future<Triple<List<Pair<List<String>, String>>, Integer, long[]>> future = prefetched.poll();
+        // keep tokenization threads busy while this minibatch is being converted
+        fillPrefetchQueue();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void fillPrefetchQueue() {
+        while (prefetched.size() < prefetchSize && providerHasNext()) {
+            final Supplier<Triple<List<Pair<List<String>, String>>, Integer, long[]>> task = readMiniBatch(minibatchSize);
+            prefetched.add(PrefetchExecutorHolder.INSTANCE.submit(task::get));
+        }
+    }
+
     /**
      * For use during inference. Will convert a given list of sentences to features and feature masks as appropriate.
      *
@@ -213,6 +280,13 @@ public class BertIterator implements MultiDataSetIterator {
         for (int i = 0; i < tokensAndLabelList.size(); i++) {
             Pair<List<String>, String> p = tokensAndLabelList.get(i);
             List<String> t = p.getFirst();
+            if (t instanceof TokenIdList) {
+                //Token ids are vocabulary indices already
+                int length = Math.min(outLength, t.size());
+                System.arraycopy(((TokenIdList) t).ids, 0, outIdxs[i], 0, length);
+                Arrays.fill(outMask[i], 0, length, 1);
+                continue;
+            }
             for (int j = 0; j < outLength && j < t.size(); j++) {
                 Preconditions.checkState(vocabMap.containsKey(t.get(j)), "Unknown token encountered: token \"%s\" is not in vocabulary", t.get(j));
                 int idx = vocabMap.get(t.get(j));
@@ -271,8 +345,8 @@ public class BertIterator implements MultiDataSetIterator {
     private SentencePairListProcessed tokenizePairsMiniBatch(List<Triple<String, String, String>> listPairs) {
         SentencePairListProcessed sentencePairListProcessed = new SentencePairListProcessed(listPairs.size());
         for (Triple<String, String, String> t : listPairs) {
-            List<String> tokensL = tokenizeSentence(t.getFirst(), true);
-            List<String> tokensR = tokenizeSentence(t.getSecond(), true);
+            List<String> tokensL = new ArrayList<>(tokenizeSentence(t.getFirst(), true));
+            List<String> tokensR = new ArrayList<>(tokenizeSentence(t.getSecond(), true));
             List<String> tokens = new ArrayList<>(maxTokens);
             int maxLength = maxTokens;
             if (prependToken != null)
@@ -417,6 +491,12 @@ public class BertIterator implements MultiDataSetIterator {
     }
 
     private List<String> tokenizeSentence(String sentence, boolean ignorePrependAppend) {
+        if (tokenIdsMatchVocab && ((BertWordPieceTokenizerFactory) tokenizerFactory).getTokenPreProcessor() == null) {
+            List<String> tokens = tokenizeToIds((BertWordPieceTokenizerFactory) tokenizerFactory, sentence, ignorePrependAppend);
+            if (tokens != null)
+                return tokens;
+        }
+
         Tokenizer t = tokenizerFactory.create(sentence);
 
         List<String> tokens = new ArrayList<>();
@@ -433,6 +513,32 @@ public class BertIterator implements MultiDataSetIterator {
     }
 
 
+    /**
+     * Tokenizes sentence directly into vocabulary ids, returns null if prepend/append tokens aren't in the vocabulary
+     */
+    private List<String> tokenizeToIds(BertWordPieceTokenizerFactory factory, String sentence, boolean ignorePrependAppend) {
+        Integer prependId = prependToken != null && !ignorePrependAppend ? vocabMap.get(prependToken) : null;
+        Integer appendId = appendToken != null && !ignorePrependAppend ? vocabMap.get(appendToken) : null;
+        if ((prependToken != null && !ignorePrependAppend && prependId == null) || (appendToken != null && !ignorePrependAppend && appendId == null))
+            return null;
+
+        int offset = prependId != null ? 1 : 0;
+        int extra = offset + (appendId != null ? 1 : 0);
+        int[] ids = new int[sentence.length() + extra];
+        int count = factory.tokenize(sentence, ids, offset, ids.length - extra);
+        if (count > ids.length - extra) {
+            //Preprocessing may expand the text, retry with exact size
+            ids = new int[count + extra];
+            factory.tokenize(sentence, ids, offset, count);
+        }
+        if (prependId != null)
+            ids[0] = prependId;
+        if (appendId != null)
+            ids[offset + count] = appendId;
+
+        return new TokenIdList(ids, count + extra, factory.getTrie());
+    }
+
     private List<Pair<String, String>> addDummyLabel(List<String> listOnlySentences) {
         List<Pair<String, String>> list = new ArrayList<>(listOnlySentences.size());
         for (String s : listOnlySentences) {
@@ -461,6 +567,10 @@ public class BertIterator implements MultiDataSetIterator {
 
     @Override
     public void reset() {
+        for (Future<?> f : prefetched)
+            f.cancel(true);
+        prefetched.clear();
+
         if (sentenceProvider != null) {
             sentenceProvider.reset();
         }
@@ -488,6 +598,7 @@ public class BertIterator implements MultiDataSetIterator {
         protected String maskToken;
         protected String prependToken;
         protected String appendToken;
+        protected int prefetchSize = 0;
 
         /**
          * Specify the {@link Task} the iterator should be set up for. See {@link BertIterator} for more details.
@@ -647,6 +758,20 @@ public class BertIterator implements MultiDataSetIterator {
             return this;
         }
 
+        /**
+         * Tokenize up to the specified number of upcoming minibatches in parallel, ahead of consumption.<br>
+         * Sentences are still read from the provider on the calling thread, only tokenization is done asynchronously,
+         * on a pool of daemon threads shared by all iterators.
+         * Default: 0 (tokenize on the calling thread)
+         *
+         * @param numMinibatches Number of minibatches to tokenize ahead
+         */
+        public Builder prefetch(int numMinibatches) {
+            Preconditions.checkArgument(numMinibatches >= 0, "Number of prefetched minibatches can't be negative, got %s", numMinibatches);
+            this.prefetchSize = numMinibatches;
+            return this;
+        }
+
         public BertIterator build() {
             Preconditions.checkState(task != null, "No task has been set. Use .task(BertIterator.Task.X) to set the task to be performed");
             Preconditions.checkState(tokenizerFactory != null, "No tokenizer factory has been set. A tokenizer factory (such as BertWordPieceTokenizerFactory) is required");
@@ -667,6 +792,54 @@ public class BertIterator implements MultiDataSetIterator {
         }
     }
 
+    /**
+     * Tokenization pool shared by all iterators, so iterators that are abandoned before exhaustion don't leave
+     * threads behind. Threads are daemons, and exit after being idle for a while
+     */
+    private static class PrefetchExecutorHolder {
+        private static final ExecutorService INSTANCE = createExecutor();
+
+        private static ExecutorService createExecutor() {
+            final AtomicInteger threadCount = new AtomicInteger();
+            int numThreads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), r -> {
+                        Thread t = new Thread(r, "BertIterator-tokenization-" + threadCount.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /**
+     * Tokens backed by vocabulary ids: strings are vocabulary entries, so no token strings are allocated
+     */
+    private static class TokenIdList extends AbstractList<String> {
+        private final int[] ids;
+        private final int size;
+        private final WordPieceTrie trie;
+
+        private TokenIdList(int[] ids, int size, WordPieceTrie trie) {
+            this.ids = ids;
+            this.size = size;
+            this.trie = trie;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            return trie.token(ids[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
     private static class SentencePairListProcessed {
         private int listLength = 0;
 
@@ -36,6 +36,7 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.rng.Random;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.nd4j.linalg.learning.legacy.AdaGrad;
 import org.nd4j.common.util.ArrayUtil;
 import org.slf4j.Logger;
@@ -184,6 +185,60 @@ public class InMemoryLookupTable<T extends SequenceElement> implements WeightLoo
         }
     }
 
+    /**
+     * This method grows syn0, syn1 and syn1Neg up to the current vocabulary size, keeping all existing rows.
+     * New syn0 rows are initialized randomly, new syn1/syn1Neg rows are zeros, and negative sampling table
+     * is rebuilt from updated frequencies.
+     *
+     * PLEASE NOTE: new elements are expected to be appended to the vocabulary, i.e. indexes of existing
+     * elements must stay the same.
+     */
+    public synchronized void expandWeights() {
+        if (syn0 == null) {
+            resetWeights(true);
+            return;
+        }
+
+        int numWords = vocab.numWords();
+        long oldRows = syn0.rows();
+        Preconditions.checkState(numWords >= oldRows, "Vocabulary has %s elements, but syn0 has %s rows",
+                        numWords, oldRows);
+
+        if (numWords > oldRows) {
+            if (this.rng == null)
+                this.rng = Nd4j.getRandom();
+
+            log.info("Expanding weights from {} to {} rows...", oldRows, numWords);
+            INDArray init = Nd4j.rand(new int[] {(int) (numWords - oldRows), vectorLength}, rng).subi(0.5)
+                            .divi(vectorLength);
+            syn0 = expand(syn0, numWords, init);
+            if (syn1 != null)
+                syn1 = expand(syn1, numWords, null);
+            if (syn1Neg != null)
+                syn1Neg = expand(syn1Neg, numWords, null);
+
+            if (useAdaGrad)
+                initAdaGrad();
+        }
+
+        if ((syn1 == null) && useHS)
+            syn1 = syn0.like();
+
+        if (negative > 0) {
+            if (syn1Neg == null)
+                syn1Neg = Nd4j.zeros(syn0.shape());
+            makeTable(Math.max(getExpTable().length, 100000), 0.75);
+        }
+    }
+
+    private static INDArray expand(INDArray array, long rows, INDArray init) {
+        INDArray result = Nd4j.create(array.dataType(), rows, array.columns());
+        result.get(NDArrayIndex.interval(0, array.rows()), NDArrayIndex.all()).assign(array);
+        if (init != null)
+            result.get(NDArrayIndex.interval(array.rows(), rows), NDArrayIndex.all()).assign(init);
+        return result;
+    }
+
 
     protected void initExpTable() {
         expTable = new double[100000];
@@ -349,28 +404,32 @@ public class InMemoryLookupTable<T extends SequenceElement> implements WeightLoo
 
     protected void makeTable(int tableSize, double power) {
         int vocabSize = syn0.rows();
-        table = Nd4j.create(tableSize);
         double trainWordsPow = 0.0;
         for (String word : vocab.words()) {
             trainWordsPow += Math.pow(vocab.wordFrequency(word), power);
         }
 
+        // powered frequencies by index, so the table doesn't need label lookups
+        double[] powers = new double[vocabSize];
+        for (int i = 0; i < vocabSize; i++) {
+            String word = vocab.wordAtIndex(i);
+            powers[i] = word == null ? 0.0 : Math.pow(vocab.wordFrequency(word), power);
+        }
+
+        double[] values = new double[tableSize];
         int wordIdx = 0;
-        String word = vocab.wordAtIndex(wordIdx);
-        double d1 = Math.pow(vocab.wordFrequency(word), power) / trainWordsPow;
+        double d1 = powers[wordIdx] / trainWordsPow;
         for (int i = 0; i < tableSize; i++) {
-            table.putScalar(i, wordIdx);
+            values[i] = wordIdx;
             double mul = i * 1.0 / (double) tableSize;
             if (mul > d1) {
                 if (wordIdx < vocabSize - 1)
                     wordIdx++;
-                word = vocab.wordAtIndex(wordIdx);
-                String wordAtIndex = vocab.wordAtIndex(wordIdx);
-                if (word == null)
-                    continue;
-                d1 += Math.pow(vocab.wordFrequency(wordAtIndex), power) / trainWordsPow;
+                d1 += powers[wordIdx] / trainWordsPow;
             }
         }
+
+        table = Nd4j.create(values, new long[] {tableSize}, Nd4j.defaultFloatingPointType());
     }
 
     /**
@@ -70,6 +70,9 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
 
     protected int maxQueueSize = Integer.parseInt(System.getProperty(DL4JSystemProperties.NLP_QUEUE_SIZE,"1000"));
 
+    // non-null if lock-free in-place updates were requested and are supported for this model
+    protected HogwildKernel hogwild;
+
 
 
     public int getWorkers() {
@@ -136,6 +139,8 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
                 new long[]{((InMemoryLookupTable<T>) lookupTable).getExpTable().length}, syn0.get() == null ? DataType.DOUBLE :  syn0.get().dataType()));
         this.table = new DeviceLocalNDArray(((InMemoryLookupTable<T>) lookupTable).getTable());
         this.variableWindows = configuration.getVariableWindows();
+        this.hogwild = Boolean.TRUE.equals(configuration.isHogwild())
+                ? HogwildKernel.create(vocabCache, (InMemoryLookupTable<T>) lookupTable, configuration) : null;
     }
 
     /**
@@ -177,6 +182,17 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
             currentWindow = variableWindows[RandomUtils.nextInt(0, variableWindows.length)];
         }
 
+        if (hogwild != null) {
+            int[] windowWords = new int[currentWindow * 2];
+            boolean[] statuses = new boolean[currentWindow * 2];
+            for (int i = 0; i < tempSequence.getElements().size(); i++) {
+                nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
+                hogwildCbow(i, tempSequence.getElements(), (int) (nextRandom.get() % currentWindow), nextRandom,
+                        learningRate, currentWindow, windowWords, statuses);
+            }
+            return 0;
+        }
+
         for (int i = 0; i < tempSequence.getElements().size(); i++) {
             nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
             cbow(i, tempSequence.getElements(), (int) nextRandom.get() % currentWindow, nextRandom, learningRate,
@@ -470,6 +486,35 @@ public class CBOW<T extends SequenceElement> implements ElementsLearningAlgorith
 
     }
 
+    /**
+     * Same window traversal as cbow(), but the window is applied to the weights immediately via HogwildKernel
+     */
+    private void hogwildCbow(int i, List<T> sentence, int b, AtomicLong nextRandom, double alpha, int currentWindow,
+                             int[] windowWords, boolean[] statuses) {
+        T currentWord = sentence.get(i);
+        if (currentWord == null || currentWord.getIndex() < 0)
+            return;
+
+        int end = currentWindow * 2 + 1 - b;
+        int cnt = 0;
+        for (int a = b; a < end; a++) {
+            if (a != currentWindow) {
+                int c = i - currentWindow + a;
+                if (c >= 0 && c < sentence.size()) {
+                    T lastWord = sentence.get(c);
+                    if (lastWord == null || lastWord.getIndex() < 0)
+                        continue;
+
+                    windowWords[cnt] = lastWord.getIndex();
+                    statuses[cnt] = lastWord.isLocked();
+                    cnt++;
+                }
+            }
+        }
+
+        hogwild.cbow(currentWord.getIndex(), windowWords, statuses, cnt, (float) alpha, nextRandom);
+    }
+
     private double iterateBatchesIfReady(List<BatchItem<T>> batch) {
         double score = 0.0;
         if(batches.get() == null) {
@@ -0,0 +1,350 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.learning.impl.elements;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free SkipGram/CBOW updates in the style of the original word2vec ("Hogwild!").
+ *
+ * Every training thread reads and writes syn0, syn1 and syn1Neg directly in native memory, one
+ * (word, context) pair at a time, with no batching, no native op invocation and no synchronization.
+ * Concurrent updates of the same row may race and lose an occasional write, which doesn't hurt
+ * convergence since each update only touches a few sparse rows.
+ *
+ * Huffman codes/points are copied into flat primitive arrays once, so the inner loops never touch
+ * the vocabulary or boxed lists.
+ */
+@Slf4j
+public class HogwildKernel {
+    // must match InMemoryLookupTable.MAX_EXP, expTable covers [-MAX_EXP, MAX_EXP)
+    private static final float MAX_EXP = 6.0f;
+
+    private final FloatIndexer syn0;
+    private final FloatIndexer syn1;
+    private final FloatIndexer syn1Neg;
+    private final int vectorLength;
+    private final int numWords;
+    private final int negative;
+    private final boolean useHS;
+
+    private final float[] expTable;
+    private final float expScale;
+    private final int[] negTable;
+
+    private final int[] codeOffsets;
+    private final byte[] codes;
+    private final int[] points;
+
+    // neu1 and neu1e, one pair per training thread
+    private final ThreadLocal<float[][]> buffers;
+
+    protected HogwildKernel(INDArray syn0, INDArray syn1, INDArray syn1Neg, double[] expTable, INDArray negTable,
+                            @NonNull List<? extends SequenceElement> elements, int negative, boolean useHS) {
+        this.syn0 = indexer(syn0);
+        this.syn1 = useHS ? indexer(syn1) : null;
+        this.syn1Neg = negative > 0 ? indexer(syn1Neg) : null;
+        this.vectorLength = (int) syn0.columns();
+        this.numWords = elements.size();
+        this.negative = negative;
+        this.useHS = useHS;
+
+        this.expTable = new float[expTable.length];
+        for (int i = 0; i < expTable.length; i++)
+            this.expTable[i] = (float) expTable[i];
+        this.expScale = expTable.length / MAX_EXP / 2.0f;
+        this.negTable = negative > 0 && negTable != null ? negTable.toIntVector() : new int[0];
+
+        this.codeOffsets = new int[numWords + 1];
+        if (useHS) {
+            int total = 0;
+            for (SequenceElement element : elements) {
+                if (element.getIndex() >= 0 && element.getIndex() < numWords)
+                    codeOffsets[element.getIndex() + 1] = Math.min(element.getCodeLength(),
+                                    Math.min(element.getCodes().size(), element.getPoints().size()));
+            }
+            for (int i = 0; i < numWords; i++) {
+                total += codeOffsets[i + 1];
+                codeOffsets[i + 1] = total;
+            }
+
+            this.codes = new byte[total];
+            this.points = new int[total];
+            for (SequenceElement element : elements) {
+                int index = element.getIndex();
+                if (index < 0 || index >= numWords)
+                    continue;
+                for (int i = 0, p = codeOffsets[index]; p < codeOffsets[index + 1]; i++, p++) {
+                    codes[p] = element.getCodes().get(i);
+                    points[p] = element.getPoints().get(i);
+                }
+            }
+        } else {
+            this.codes = new byte[0];
+            this.points = new int[0];
+        }
+
+        final int length = vectorLength;
+        this.buffers = ThreadLocal.withInitial(() -> new float[][] {new float[length], new float[length]});
+    }
+
+    /**
+     * Creates kernel for the given model, or returns null if weights can't be updated in place
+     * (non-CPU backend, non-FLOAT weights, views or non-c-ordered arrays)
+     */
+    public static <T extends SequenceElement> HogwildKernel create(@NonNull VocabCache<T> vocabCache,
+                                                                   @NonNull InMemoryLookupTable<T> lookupTable,
+                                                                   @NonNull VectorsConfiguration configuration) {
+        boolean useHS = configuration.isUseHierarchicSoftmax();
+        int negative = (int) configuration.getNegative().doubleValue();
+        if (!Nd4j.getEnvironment().isCPU()) {
+            log.warn("Hogwild training is only available on CPU backend, falling back to batched training");
+            return null;
+        }
+
+        if (!isSupported(lookupTable.getSyn0()) || (useHS && !isSupported(lookupTable.getSyn1()))
+                        || (negative > 0 && !isSupported(lookupTable.getSyn1Neg()))) {
+            log.warn("Hogwild training requires FLOAT c-ordered weights, falling back to batched training");
+            return null;
+        }
+
+        // elements are ordered by index here, same as used by Huffman
+        List<T> elements = new ArrayList<>(vocabCache.numWords());
+        for (int i = 0; i < vocabCache.numWords(); i++)
+            elements.add(vocabCache.elementAtIndex(i));
+
+        return new HogwildKernel(lookupTable.getSyn0(), lookupTable.getSyn1(), lookupTable.getSyn1Neg(),
+                        lookupTable.getExpTable(), lookupTable.getTable(), elements, negative, useHS);
+    }
+
+    protected static boolean isSupported(INDArray array) {
+        return array != null && array.dataType() == DataType.FLOAT && array.ordering() == 'c' && !array.isView()
+                        && array.rank() == 2;
+    }
+
+    private static FloatIndexer indexer(INDArray array) {
+        return (FloatIndexer) array.data().indexer();
+    }
+
+    /**
+     * Trains one SkipGram pair: vector of {@code context} predicts {@code word}
+     *
+     * @param word index of the predicted word, defines Huffman path and positive sample
+     * @param context index of the syn0 row being trained
+     * @param alpha learning rate
+     * @param nextRandom thread-local random state, advanced as negative samples are drawn
+     */
+    public void skipGram(int word, int context, float alpha, @NonNull AtomicLong nextRandom) {
+        float[][] buffer = buffers.get();
+        float[] neu1 = buffer[0];
+        float[] neu1e = buffer[1];
+
+        long l1 = (long) context * vectorLength;
+        for (int j = 0; j < vectorLength; j++)
+            neu1[j] = syn0.get(l1 + j);
+
+        train(word, neu1, neu1e, alpha, nextRandom, true);
+
+        for (int j = 0; j < vectorLength; j++)
+            syn0.put(l1 + j, syn0.get(l1 + j) + neu1e[j]);
+    }
+
+    /**
+     * Inference counterpart of {@link #skipGram(int, int, float, AtomicLong)}: {@code vector} predicts {@code word},
+     * and only {@code vector} is updated, model weights are read-only
+     *
+     * @param vector vector being inferred, updated in place
+     * @param word index of the predicted word
+     * @param alpha learning rate
+     * @param nextRandom random state, advanced as negative samples are drawn
+     */
+    public void inferSkipGram(@NonNull float[] vector, int word, float alpha, @NonNull AtomicLong nextRandom) {
+        float[] neu1e = buffers.get()[1];
+
+        train(word, vector, neu1e, alpha, nextRandom, false);
+
+        for (int j = 0; j < vectorLength; j++)
+            vector[j] += neu1e[j];
+    }
+
+    /**
+     * Trains one CBOW window: mean of the context vectors predicts {@code word}
+     *
+     * @param word index of the predicted word
+     * @param context indexes of the context words, only first {@code length} entries are used
+     * @param locked if not null, locked context rows aren't updated
+     * @param length number of context words
+     * @param alpha learning rate
+     * @param nextRandom thread-local random state, advanced as negative samples are drawn
+     */
+    public void cbow(int word, @NonNull int[] context, boolean[] locked, int length, float alpha,
+                    @NonNull AtomicLong nextRandom) {
+        if (length == 0)
+            return;
+
+        float[][] buffer = buffers.get();
+        float[] neu1 = buffer[0];
+        float[] neu1e = buffer[1];
+
+        Arrays.fill(neu1, 0.0f);
+        for (int c = 0; c < length; c++) {
+            long l1 = (long) context[c] * vectorLength;
+            for (int j = 0; j < vectorLength; j++)
+                neu1[j] += syn0.get(l1 + j);
+        }
+        for (int j = 0; j < vectorLength; j++)
+            neu1[j] /= length;
+
+        train(word, neu1, neu1e, alpha, nextRandom, true);
+
+        for (int c = 0; c < length; c++) {
+            if (locked != null && locked[c])
+                continue;
+            long l1 = (long) context[c] * vectorLength;
+            for (int j = 0; j < vectorLength; j++)
+                syn0.put(l1 + j, syn0.get(l1 + j) + neu1e[j]);
+        }
+    }
+
+    /**
+     * Inference counterpart of {@link #cbow(int, int[], boolean[], int, float, AtomicLong)}: mean of {@code vector}
+     * and the context vectors predicts {@code word}, and only {@code vector} is updated
+     *
+     * @param vector vector being inferred, updated in place
+     * @param word index of the predicted word
+     * @param context indexes of the context words, only first {@code length} entries are used
+     * @param length number of context words
+     * @param alpha learning rate
+     * @param nextRandom random state, advanced as negative samples are drawn
+     */
+    public void inferCbow(@NonNull float[] vector, int word, @NonNull int[] context, int length, float alpha,
+                    @NonNull AtomicLong nextRandom) {
+        float[][] buffer = buffers.get();
+        float[] neu1 = buffer[0];
+        float[] neu1e = buffer[1];
+
+        System.arraycopy(vector, 0, neu1, 0, vectorLength);
+        for (int c = 0; c < length; c++) {
+            long l1 = (long) context[c] * vectorLength;
+            for (int j = 0; j < vectorLength; j++)
+                neu1[j] += syn0.get(l1 + j);
+        }
+        for (int j = 0; j < vectorLength; j++)
+            neu1[j] /= length + 1;
+
+        train(word, neu1, neu1e, alpha, nextRandom, false);
+
+        for (int j = 0; j < vectorLength; j++)
+            vector[j] += neu1e[j];
+    }
+
+    public int getVectorLength() {
+        return vectorLength;
+    }
+
+    /**
+     * Applies hierarchic softmax and negative sampling updates to syn1/syn1Neg for hidden layer
+     * {@code neu1}, and accumulates error to be applied to the input rows in {@code neu1e}.
+     * If {@code updateWeights} is false, syn1/syn1Neg are left intact (inference mode)
+     */
+    protected void train(int word, float[] neu1, float[] neu1e, float alpha, AtomicLong nextRandom,
+                    boolean updateWeights) {
+        Arrays.fill(neu1e, 0.0f);
+
+        if (useHS) {
+            for (int p = codeOffsets[word]; p < codeOffsets[word + 1]; p++) {
+                int point = points[p];
+                if (point < 0 || point >= numWords)
+                    continue;
+
+                long l2 = (long) point * vectorLength;
+                float f = dot(neu1, syn1, l2);
+                if (f <= -MAX_EXP || f >= MAX_EXP)
+                    continue;
+
+                f = expTable[(int) ((f + MAX_EXP) * expScale)];
+                float g = (1 - codes[p] - f) * alpha;
+                update(g, neu1, neu1e, syn1, l2, updateWeights);
+            }
+        }
+
+        if (negative > 0 && numWords > 1) {
+            for (int d = 0; d <= negative; d++) {
+                int target;
+                float label;
+                if (d == 0) {
+                    target = word;
+                    label = 1;
+                } else {
+                    long random = Math.abs(nextRandom.get() * 25214903917L + 11);
+                    nextRandom.set(random);
+                    target = negTable.length > 0 ? negTable[(int) ((random >> 16) % negTable.length)] : 0;
+                    if (target <= 0 || target >= numWords)
+                        target = (int) (random % (numWords - 1)) + 1;
+                    if (target == word)
+                        continue;
+                    label = 0;
+                }
+
+                long l2 = (long) target * vectorLength;
+                float f = dot(neu1, syn1Neg, l2);
+                float g;
+                if (f >= MAX_EXP)
+                    g = (label - 1) * alpha;
+                else if (f < -MAX_EXP)
+                    g = label * alpha;
+                else
+                    g = (label - expTable[(int) ((f + MAX_EXP) * expScale)]) * alpha;
+                update(g, neu1, neu1e, syn1Neg, l2, updateWeights);
+            }
+        }
+    }
+
+    private float dot(float[] neu1, FloatIndexer weights, long offset) {
+        float f = 0.0f;
+        for (int j = 0; j < vectorLength; j++)
+            f += neu1[j] * weights.get(offset + j);
+        return f;
+    }
+
+    private void update(float g, float[] neu1, float[] neu1e, FloatIndexer weights, long offset, boolean write) {
+        for (int j = 0; j < vectorLength; j++) {
+            float w = weights.get(offset + j);
+            neu1e[j] += g * w;
+            if (write)
+                weights.put(offset + j, w + g * neu1[j]);
+        }
+    }
+}
@@ -89,6 +89,9 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
 
     protected ThreadLocal<List<BatchItem<T>>> batches = new ThreadLocal<>();
 
+    // non-null if lock-free in-place updates were requested and are supported for this model
+    protected HogwildKernel hogwild;
+
 
     /**
      * Dummy construction is required for reflection
@@ -152,6 +155,8 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
         this.variableWindows = configuration.getVariableWindows();
         this.workers = configuration.getWorkers();
         this.vectorLength = configuration.getLayersSize();
+        this.hogwild = Boolean.TRUE.equals(configuration.isHogwild())
+                ? HogwildKernel.create(vocabCache, (InMemoryLookupTable<T>) lookupTable, configuration) : null;
     }
 
     /**
@@ -213,6 +218,15 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
         if (variableWindows != null && variableWindows.length != 0) {
             currentWindow = variableWindows[RandomUtils.nextInt(0, variableWindows.length)];
         }
+        if (hogwild != null) {
+            for (int i = 0; i < tempSequence.getElements().size(); i++) {
+                nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
+                hogwildSkipGram(i, tempSequence.getElements(), (int) (nextRandom.get() % currentWindow), nextRandom,
+                        learningRate, currentWindow);
+            }
+            return score;
+        }
+
         for (int i = 0; i < tempSequence.getElements().size(); i++) {
             nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
             score = skipGram(i, tempSequence.getElements(), (int) nextRandom.get() % currentWindow, nextRandom,
@@ -286,6 +300,35 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
     }
 
 
+    /**
+     * Same window traversal as skipGram(), but each pair is applied to the weights immediately via HogwildKernel
+     */
+    private void hogwildSkipGram(int i, List<T> sentence, int b, AtomicLong nextRandom, double alpha,
+                                 int currentWindow) {
+        final T word = sentence.get(i);
+        if (word == null || word.isLocked() || word.getIndex() < 0 || isSpecial(word))
+            return;
+
+        int end = currentWindow * 2 + 1 - b;
+        for (int a = b; a < end; a++) {
+            if (a != currentWindow) {
+                int c = i - currentWindow + a;
+                if (c >= 0 && c < sentence.size()) {
+                    T lastWord = sentence.get(c);
+                    if (lastWord == null || lastWord.getIndex() < 0 || lastWord.getIndex() == word.getIndex()
+                            || isSpecial(lastWord))
+                        continue;
+
+                    hogwild.skipGram(word.getIndex(), lastWord.getIndex(), (float) alpha, nextRandom);
+                }
+            }
+        }
+    }
+
+    private static boolean isSpecial(SequenceElement element) {
+        return element.getLabel().equals("STOP") || element.getLabel().equals("UNK");
+    }
+
     public double iterateSample(BatchItem<T> item) {
         double score = 0.0;
 
@@ -85,6 +85,7 @@ public class VectorsConfiguration implements Serializable {
     private Boolean allowParallelTokenization;
     private Boolean preciseWeightInit;
     private Boolean preciseMode;
+    private Boolean hogwild;
 
     private Integer vectorCalcThreads;
 
@@ -117,6 +118,7 @@ public class VectorsConfiguration implements Serializable {
         this.allowParallelTokenization = false;
         this.preciseWeightInit = false;
         this.preciseMode = false;
+        this.hogwild = false;
         this.workers = Runtime.getRuntime().availableProcessors();
 
     }
@@ -169,6 +171,10 @@ public class VectorsConfiguration implements Serializable {
         return preciseMode;
     }
 
+    public Boolean getHogwild() {
+        return hogwild;
+    }
+
     @JsonCreator
     public VectorsConfiguration(@JsonProperty("minWordFrequency")  Integer minWordFrequency,
                                 @JsonProperty("learningRate") Double learningRate,
@@ -205,7 +211,8 @@ public class VectorsConfiguration implements Serializable {
                                 @JsonProperty("preciseWeightInit") Boolean preciseWeightInit,
                                 @JsonProperty("preciseMode") Boolean preciseMode,
                                 @JsonProperty("workers") Integer workers,
-                                @JsonProperty("vectorCalcThreads") Integer vectorCalcThreads) {
+                                @JsonProperty("vectorCalcThreads") Integer vectorCalcThreads,
+                                @JsonProperty("hogwild") Boolean hogwild) {
         if(minWordFrequency != null)
             this.minWordFrequency = minWordFrequency;
         else
@@ -326,6 +333,10 @@ public class VectorsConfiguration implements Serializable {
             this.preciseMode = preciseMode;
         else
             this.preciseMode = false;
+        if(hogwild != null)
+            this.hogwild = hogwild;
+        else
+            this.hogwild = false;
     }
 
     private static ObjectMapper mapper() {
@@ -667,6 +678,14 @@ public class VectorsConfiguration implements Serializable {
         this.preciseMode = preciseMode;
     }
 
+    public Boolean isHogwild() {
+        return hogwild;
+    }
+
+    public void setHogwild(Boolean hogwild) {
+        this.hogwild = hogwild;
+    }
+
     public static ObjectMapper getMapper() {
         return mapper;
     }
@@ -676,12 +695,12 @@ public class VectorsConfiguration implements Serializable {
         if (this == o) return true;
         if (!(o instanceof VectorsConfiguration)) return false;
         VectorsConfiguration that = (VectorsConfiguration) o;
-        return Objects.equals(getMinWordFrequency(), that.getMinWordFrequency()) && Objects.equals(getLearningRate(), that.getLearningRate()) && Objects.equals(getMinLearningRate(), that.getMinLearningRate()) && Objects.equals(getLayersSize(), that.getLayersSize()) && Objects.equals(useAdaGrad, that.useAdaGrad) && Objects.equals(getBatchSize(), that.getBatchSize()) && Objects.equals(getIterations(), that.getIterations()) && Objects.equals(getEpochs(), that.getEpochs()) && Objects.equals(getWindow(), that.getWindow()) && Objects.equals(getSeed(), that.getSeed()) && Objects.equals(getNegative(), that.getNegative()) && Objects.equals(useHierarchicSoftmax, that.useHierarchicSoftmax) && Objects.equals(getSampling(), that.getSampling()) && Objects.equals(getLearningRateDecayWords(), that.getLearningRateDecayWords()) && Arrays.equals(getVariableWindows(), that.getVariableWindows()) && Objects.equals(hugeModelExpected, that.hugeModelExpected) && Objects.equals(useUnknown, that.useUnknown) && Objects.equals(getScavengerActivationThreshold(), that.getScavengerActivationThreshold()) && Objects.equals(getScavengerRetentionDelay(), that.getScavengerRetentionDelay()) && Objects.equals(getElementsLearningAlgorithm(), that.getElementsLearningAlgorithm()) && Objects.equals(getSequenceLearningAlgorithm(), that.getSequenceLearningAlgorithm()) && Objects.equals(getModelUtils(), that.getModelUtils()) && Objects.equals(getTokenizerFactory(), that.getTokenizerFactory()) && Objects.equals(getTokenPreProcessor(), that.getTokenPreProcessor()) && Objects.equals(getnGram(), that.getnGram()) && Objects.equals(getUNK(), that.getUNK()) && Objects.equals(getSTOP(), that.getSTOP()) && Objects.equals(getStopList(), that.getStopList()) && Objects.equals(getVocabSize(), that.getVocabSize()) && Objects.equals(trainElementsVectors, that.trainElementsVectors) && Objects.equals(trainSequenceVectors, that.trainSequenceVectors) && Objects.equals(allowParallelTokenization, that.allowParallelTokenization) && Objects.equals(preciseWeightInit, that.preciseWeightInit) && Objects.equals(preciseMode, that.preciseMode);
+        return Objects.equals(getMinWordFrequency(), that.getMinWordFrequency()) && Objects.equals(getLearningRate(), that.getLearningRate()) && Objects.equals(getMinLearningRate(), that.getMinLearningRate()) && Objects.equals(getLayersSize(), that.getLayersSize()) && Objects.equals(useAdaGrad, that.useAdaGrad) && Objects.equals(getBatchSize(), that.getBatchSize()) && Objects.equals(getIterations(), that.getIterations()) && Objects.equals(getEpochs(), that.getEpochs()) && Objects.equals(getWindow(), that.getWindow()) && Objects.equals(getSeed(), that.getSeed()) && Objects.equals(getNegative(), that.getNegative()) && Objects.equals(useHierarchicSoftmax, that.useHierarchicSoftmax) && Objects.equals(getSampling(), that.getSampling()) && Objects.equals(getLearningRateDecayWords(), that.getLearningRateDecayWords()) && Arrays.equals(getVariableWindows(), that.getVariableWindows()) && Objects.equals(hugeModelExpected, that.hugeModelExpected) && Objects.equals(useUnknown, that.useUnknown) && Objects.equals(getScavengerActivationThreshold(), that.getScavengerActivationThreshold()) && Objects.equals(getScavengerRetentionDelay(), that.getScavengerRetentionDelay()) && Objects.equals(getElementsLearningAlgorithm(), that.getElementsLearningAlgorithm()) && Objects.equals(getSequenceLearningAlgorithm(), that.getSequenceLearningAlgorithm()) && Objects.equals(getModelUtils(), that.getModelUtils()) && Objects.equals(getTokenizerFactory(), that.getTokenizerFactory()) && Objects.equals(getTokenPreProcessor(), that.getTokenPreProcessor()) && Objects.equals(getnGram(), that.getnGram()) && Objects.equals(getUNK(), that.getUNK()) && Objects.equals(getSTOP(), that.getSTOP()) && Objects.equals(getStopList(), that.getStopList()) && Objects.equals(getVocabSize(), that.getVocabSize()) && Objects.equals(trainElementsVectors, that.trainElementsVectors) && Objects.equals(trainSequenceVectors, that.trainSequenceVectors) && Objects.equals(allowParallelTokenization, that.allowParallelTokenization) && Objects.equals(preciseWeightInit, that.preciseWeightInit) && Objects.equals(preciseMode, that.preciseMode) && Objects.equals(hogwild, that.hogwild);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(getMinWordFrequency(), getLearningRate(), getMinLearningRate(), getLayersSize(), useAdaGrad, getBatchSize(), getIterations(), getEpochs(), getWindow(), getSeed(), getNegative(), useHierarchicSoftmax, getSampling(), getLearningRateDecayWords(), hugeModelExpected, useUnknown, getScavengerActivationThreshold(), getScavengerRetentionDelay(), getElementsLearningAlgorithm(), getSequenceLearningAlgorithm(), getModelUtils(), getTokenizerFactory(), getTokenPreProcessor(), getnGram(), getUNK(), getSTOP(), getStopList(), getVocabSize(), trainElementsVectors, trainSequenceVectors, allowParallelTokenization, preciseWeightInit, preciseMode);
+        int result = Objects.hash(getMinWordFrequency(), getLearningRate(), getMinLearningRate(), getLayersSize(), useAdaGrad, getBatchSize(), getIterations(), getEpochs(), getWindow(), getSeed(), getNegative(), useHierarchicSoftmax, getSampling(), getLearningRateDecayWords(), hugeModelExpected, useUnknown, getScavengerActivationThreshold(), getScavengerRetentionDelay(), getElementsLearningAlgorithm(), getSequenceLearningAlgorithm(), getModelUtils(), getTokenizerFactory(), getTokenPreProcessor(), getnGram(), getUNK(), getSTOP(), getStopList(), getVocabSize(), trainElementsVectors, trainSequenceVectors, allowParallelTokenization, preciseWeightInit, preciseMode, hogwild);
         result = 31 * result + Arrays.hashCode(getVariableWindows());
         return result;
     }
@@ -723,6 +742,7 @@ public class VectorsConfiguration implements Serializable {
                 ", allowParallelTokenization=" + allowParallelTokenization +
                 ", preciseWeightInit=" + preciseWeightInit +
                 ", preciseMode=" + preciseMode +
+                ", hogwild=" + hogwild +
                 '}';
     }
 
@@ -37,6 +37,7 @@ import org.deeplearning4j.models.embeddings.WeightLookupTable;
 import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.learning.impl.elements.SkipGram;
 import org.deeplearning4j.models.embeddings.reader.impl.BasicModelUtils;
+import org.deeplearning4j.models.embeddings.wordvectors.MappedWordVectors;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectorsImpl;
 import org.deeplearning4j.models.fasttext.FastText;
@@ -3432,6 +3433,106 @@ public class WordVectorSerializer {
         return result;
     }
 
+    /**
+     * This method writes word vectors to the memory-mapped format read by {@link MappedWordVectors}.
+     * Words are written in index order, one vector at a time.
+     *
+     * @param vectors WordVectors to write
+     * @param file    File to write to
+     */
+    public static void writeMappedWordVectors(@NonNull WordVectors vectors, @NonNull File file) throws IOException {
+        VocabCache<?> vocab = vectors.vocab();
+        try (MappedWordVectors.Writer writer = new MappedWordVectors.Writer(file, vectors.vectorSize())) {
+            for (int i = 0; i < vocab.numWords(); i++) {
+                String word = vocab.wordAtIndex(i);
+                writer.add(word, vectors.getWordVectorMatrix(word));
+            }
+        }
+    }
+
+    /**
+     * This method converts word vectors in text format (as written by {@link #writeWordVectors(WeightLookupTable, File)},
+     * or GloVe/word2vec text files, optionally zip or gzip compressed) to the memory-mapped format read by
+     * {@link MappedWordVectors}.
+     * Please note: this method streams the input, hence vectors are never loaded into memory as a whole.
+     *
+     * @param source Text file to convert
+     * @param target File to write to
+     */
+    public static void convertTxtToMappedWordVectors(@NonNull File source, @NonNull File target) throws IOException {
+        try (InputStream inputStream = fileStream(source);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (line != null && isHeader(line, new AbstractCache<>()))
+                line = reader.readLine();
+
+            MappedWordVectors.Writer writer = null;
+            try {
+                for (; line != null; line = reader.readLine()) {
+                    if (line.isEmpty())
+                        continue;
+                    String[] tokens = line.split(" ");
+                    float[] vector = new float[tokens.length - 1];
+                    for (int i = 1; i < tokens.length; i++) {
+                        vector[i - 1] = Float.parseFloat(tokens[i]);
+                    }
+                    if (writer == null)
+                        writer = new MappedWordVectors.Writer(target, vector.length);
+                    writer.add(ReadHelper.decodeB64(tokens[0]), vector);
+                }
+            } finally {
+                if (writer != null)
+                    writer.close();
+            }
+            if (writer == null)
+                throw new DL4JInvalidInputException("No word vectors found in file " + source);
+        }
+    }
+
+    /**
+     * This method converts word vectors in the binary format of the original word2vec implementation (optionally
+     * zip or gzip compressed) to the memory-mapped format read by {@link MappedWordVectors}.
+     * Please note: this method streams the input, hence vectors are never loaded into memory as a whole.
+     *
+     * @param source     Binary file to convert
+     * @param target     File to write to
+     * @param linebreaks if true, the reader expects each word/vector to be terminated by a line break
+     */
+    public static void convertBinaryToMappedWordVectors(@NonNull File source, @NonNull File target, boolean linebreaks)
+            throws IOException {
+        try (DataInputStream dis = new DataInputStream(fileStream(source))) {
+            int words = Integer.parseInt(ReadHelper.readString(dis));
+            int size = Integer.parseInt(ReadHelper.readString(dis));
+
+            try (MappedWordVectors.Writer writer = new MappedWordVectors.Writer(target, size)) {
+                float[] vector = new float[size];
+                for (int i = 0; i < words; i++) {
+                    String word = ReadHelper.readString(dis);
+                    for (int j = 0; j < size; j++) {
+                        vector[j] = ReadHelper.readFloat(dis);
+                    }
+                    writer.add(word, vector);
+
+                    if (linebreaks) {
+                        dis.readByte(); // line break
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This method opens word vectors in the memory-mapped format, as written by
+     * {@link #writeMappedWordVectors(WordVectors, File)}. Vectors are read directly from the mapped file
+     * on each lookup, hence opening the file is (almost) instant and needs no heap space for the vectors or vocabulary.
+     *
+     * @param file File to read
+     * @return MappedWordVectors
+     */
+    public static MappedWordVectors readMappedWordVectors(@NonNull File file) throws IOException {
+        return new MappedWordVectors(file);
+    }
+
     /**
      * This method prints memory usage to log
      *
@@ -0,0 +1,502 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+/**
+ * Hierarchical Navigable Small World (HNSW) graph for approximate nearest neighbour search by cosine similarity.<br>
+ * See Malkov and Yashunin, "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable
+ * Small World graphs" - https://arxiv.org/abs/1603.09320<br>
+ * Vectors are stored as a single flat float array (row i at offset i * dimension), and are expected to be unit length
+ * (i.e., distance is 1 - dot product). The graph (but not the vectors) can be saved and loaded, so the index can be
+ * reused with the vectors from the model it was built for.<br>
+ * The index may be built using multiple threads (using fine grained locking of each node's links, as per the paper);
+ * searches may be performed concurrently once the index is built.
+ */
+public class HnswIndex {
+    private static final int FORMAT_VERSION = 1;
+    private static final String MAGIC = "HNSW";
+
+    @Getter
+    private final int dimension;
+    @Getter
+    private final int size;
+    @Getter
+    private final int m;
+    @Getter
+    private final int efConstruction;
+    private final int maxM0;
+    private final float[] vectors;
+
+    private final int[] levels;
+    //links[node][level] = {count, neighbour_0, ..., neighbour_count-1, (spare capacity)}
+    private final int[][][] links;
+    private volatile int entryPoint = -1;
+    private volatile int maxLevel = -1;
+    //Held while inserting a node that becomes the new entry point
+    private final ReentrantLock entryPointLock = new ReentrantLock();
+    private volatile boolean building;
+
+    private final ThreadLocal<VisitedSet> visited;
+
+    private HnswIndex(float[] vectors, int dimension, int m, int efConstruction) {
+        Preconditions.checkArgument(dimension > 0, "Dimension must be positive, got %s", dimension);
+        Preconditions.checkArgument(vectors.length % dimension == 0, "Vectors array length (%s) must be a multiple of dimension (%s)", vectors.length, dimension);
+        Preconditions.checkArgument(m >= 2, "M must be at least 2, got %s", m);
+        this.vectors = vectors;
+        this.dimension = dimension;
+        this.size = vectors.length / dimension;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levels = new int[size];
+        this.links = new int[size][][];
+        this.visited = ThreadLocal.withInitial(() -> new VisitedSet(size));
+    }
+
+    /**
+     * Build the index for the specified vectors
+     *
+     * @param vectors        Unit length vectors, as a flat array: vector i is at offset i * dimension
+     * @param dimension      Dimension of the vectors
+     * @param m              Number of links per node (2 * m at the bottom layer). Higher values give better recall, but
+     *                       larger index and slower build. Typical values: 8 to 48
+     * @param efConstruction Size of the candidate list when building. Higher values give a better quality graph but slower build
+     * @param seed           Random seed, used for the node level assignment
+     * @param parallel       If true: insert the vectors using multiple threads. Note that the resulting graph is then
+     *                       not deterministic
+     * @return The index
+     */
+    public static HnswIndex build(@NonNull float[] vectors, int dimension, int m, int efConstruction, long seed, boolean parallel) {
+        HnswIndex index = new HnswIndex(vectors, dimension, m, efConstruction);
+        if (index.size == 0)
+            return index;
+
+        //Assign levels and allocate all link arrays up front, so they are never modified structurally while inserting
+        Random r = new Random(seed);
+        double levelMult = 1.0 / Math.log(m);
+        for (int i = 0; i < index.size; i++) {
+            int level = (int) (-Math.log(1.0 - r.nextDouble()) * levelMult);
+            index.levels[i] = level;
+            index.links[i] = new int[level + 1][];
+            for (int l = 0; l <= level; l++)
+                index.links[i][l] = new int[index.maxM(l) + 1];
+        }
+
+        index.entryPoint = 0;
+        index.maxLevel = index.levels[0];
+        index.building = true;
+        IntStream ids = IntStream.range(1, index.size);
+        if (parallel)
+            ids = ids.parallel();
+        ids.forEach(index::insert);
+        index.building = false;
+        return index;
+    }
+
+    /**
+     * Search for the (approximate) nearest neighbours of the specified vector
+     *
+     * @param query Unit length query vector
+     * @param k     Number of neighbours to return
+     * @param ef    Size of the candidate list. Must be at least k; higher values give higher recall, but slower search
+     * @return Indices of the nearest vectors, nearest first
+     */
+    public int[] search(@NonNull float[] query, int k, int ef) {
+        Preconditions.checkArgument(query.length == dimension, "Query vector length (%s) does not match index dimension (%s)", query.length, dimension);
+        if (entryPoint < 0 || k <= 0)
+            return new int[0];
+        ef = Math.max(ef, k);
+
+        int ep = entryPoint;
+        float epDist = distance(query, 0, ep);
+        for (int l = maxLevel; l > 0; l--) {
+            long closest = greedyClosest(query, 0, ep, epDist, l);
+            ep = id(closest);
+            epDist = dist(closest);
+        }
+
+        long[] found = searchLayer(query, 0, ep, epDist, ef, 0);
+        int n = Math.min(k, found.length);
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++)
+            out[i] = id(found[i]);
+        return out;
+    }
+
+    /**
+     * Cosine similarity between the query vector and the specified indexed vector
+     */
+    public double similarity(float[] query, int idx) {
+        return 1.0 - distance(query, 0, idx);
+    }
+
+    private void insert(int q) {
+        int level = levels[q];
+        entryPointLock.lock();
+        int currMaxLevel = maxLevel;
+        int ep = entryPoint;
+        boolean newEntryPoint = level > currMaxLevel;
+        if (!newEntryPoint)
+            entryPointLock.unlock();
+
+        try {
+            int qOff = q * dimension;
+            float epDist = distance(vectors, qOff, ep);
+            for (int l = currMaxLevel; l > level; l--) {
+                long closest = greedyClosest(vectors, qOff, ep, epDist, l);
+                ep = id(closest);
+                epDist = dist(closest);
+            }
+
+            for (int l = Math.min(level, currMaxLevel); l >= 0; l--) {
+                long[] candidates = searchLayer(vectors, qOff, ep, epDist, efConstruction, l);
+                int[] selected = selectNeighbours(candidates, m);
+                synchronized (links[q]) {
+                    int[] qLinks = links[q][l];
+                    qLinks[0] = selected.length;
+                    System.arraycopy(selected, 0, qLinks, 1, selected.length);
+                }
+
+                for (int nb : selected) {
+                    addLink(nb, q, l);
+                }
+
+                ep = id(candidates[0]);
+                epDist = dist(candidates[0]);
+            }
+        } finally {
+            if (newEntryPoint) {
+                maxLevel = level;
+                entryPoint = q;
+                entryPointLock.unlock();
+            }
+        }
+    }
+
+    private void addLink(int node, int newNeighbour, int level) {
+        synchronized (links[node]) {
+            int[] nl = links[node][level];
+            int count = nl[0];
+            int max = maxM(level);
+            if (count < max) {
+                nl[count + 1] = newNeighbour;
+                nl[0] = count + 1;
+                return;
+            }
+
+            //Too many links: re-select the neighbours of this node from its existing neighbours plus the new one
+            int nOff = node * dimension;
+            long[] candidates = new long[count + 1];
+            for (int i = 0; i < count; i++) {
+                candidates[i] = key(distance(vectors, nOff, nl[i + 1]), nl[i + 1]);
+            }
+            candidates[count] = key(distance(vectors, nOff, newNeighbour), newNeighbour);
+            Arrays.sort(candidates);
+            int[] selected = selectNeighbours(candidates, max);
+            nl[0] = selected.length;
+            System.arraycopy(selected, 0, nl, 1, selected.length);
+        }
+    }
+
+    /**
+     * Get the links of the node at the specified level: {count, neighbour_0, ...}. While building, this is a copy
+     * made while holding the node's lock
+     */
+    private int[] neighbours(int node, int level) {
+        if (!building)
+            return links[node][level];
+        synchronized (links[node]) {
+            int[] nl = links[node][level];
+            return Arrays.copyOf(nl, nl[0] + 1);
+        }
+    }
+
+    /**
+     * Neighbour selection heuristic (algorithm 4 in the paper): a candidate is kept only if it is closer to the base
+     * element than to any already selected neighbour. This keeps links spread out in different directions.
+     *
+     * @param candidates Candidate keys, sorted by distance to the base element (nearest first)
+     */
+    private int[] selectNeighbours(long[] candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.length)];
+        int n = 0;
+        for (int i = 0; i < candidates.length && n < selected.length; i++) {
+            int c = id(candidates[i]);
+            float dc = dist(candidates[i]);
+            boolean keep = true;
+            int cOff = c * dimension;
+            for (int j = 0; j < n; j++) {
+                if (distance(vectors, cOff, selected[j]) < dc) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep)
+                selected[n++] = c;
+        }
+        return n == selected.length ? selected : Arrays.copyOf(selected, n);
+    }
+
+    private long greedyClosest(float[] q, int qOff, int ep, float epDist, int level) {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] nl = neighbours(ep, level);
+            for (int i = 1; i <= nl[0]; i++) {
+                float d = distance(q, qOff, nl[i]);
+                if (d < epDist) {
+                    epDist = d;
+                    ep = nl[i];
+                    changed = true;
+                }
+            }
+        }
+        return key(epDist, ep);
+    }
+
+    /**
+     * Beam search within one layer (algorithm 2 in the paper)
+     *
+     * @return Keys of the ef nearest elements found, sorted nearest first
+     */
+    private long[] searchLayer(float[] q, int qOff, int ep, float epDist, int ef, int level) {
+        VisitedSet v = visited.get();
+        v.reset();
+        v.add(ep);
+
+        LongHeap candidates = new LongHeap(ef * 2);     //Min heap by distance
+        LongHeap results = new LongHeap(ef + 1);        //Max heap by distance (negated keys)
+        long epKey = key(epDist, ep);
+        candidates.push(epKey);
+        results.push(-epKey);
+
+        while (candidates.size() > 0) {
+            long c = candidates.pop();
+            if (results.size() >= ef && dist(c) > dist(-results.peek()))
+                break;
+
+            int[] nl = neighbours(id(c), level);
+            for (int i = 1; i <= nl[0]; i++) {
+                int nb = nl[i];
+                if (!v.add(nb))
+                    continue;
+                float d = distance(q, qOff, nb);
+                if (results.size() < ef || d < dist(-results.peek())) {
+                    long k = key(d, nb);
+                    candidates.push(k);
+                    results.push(-k);
+                    if (results.size() > ef)
+                        results.pop();
+                }
+            }
+        }
+
+        long[] out = new long[results.size()];
+        for (int i = out.length - 1; i >= 0; i--)
+            out[i] = -results.pop();
+        return out;
+    }
+
+    private int maxM(int level) {
+        return level == 0 ? maxM0 : m;
+    }
+
+    private float distance(float[] q, int qOff, int node) {
+        int off = node * dimension;
+        float dot = 0.0f;
+        for (int i = 0; i < dimension; i++)
+            dot += q[qOff + i] * vectors[off + i];
+        //Clamp: keys rely on distances being non-negative
+        return Math.max(0.0f, 1.0f - dot);
+    }
+
+    //Distance and index packed into a long: for non-negative floats, the int bits are ordered the same as the float
+    // values, hence keys sort by distance, then by index
+    private static long key(float dist, int idx) {
+        return ((long) Float.floatToIntBits(dist) << 32) | (idx & 0xFFFFFFFFL);
+    }
+
+    private static int id(long key) {
+        return (int) key;
+    }
+
+    private static float dist(long key) {
+        return Float.intBitsToFloat((int) (key >>> 32));
+    }
+
+    /**
+     * Save the graph structure to the specified file. Note that the vectors are not saved.
+     */
+    public void save(@NonNull File file) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            dos.writeUTF(MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeInt(dimension);
+            dos.writeInt(size);
+            dos.writeInt(m);
+            dos.writeInt(efConstruction);
+            dos.writeInt(entryPoint);
+            dos.writeInt(maxLevel);
+            for (int i = 0; i < size; i++) {
+                dos.writeInt(levels[i]);
+                for (int l = 0; l <= levels[i]; l++) {
+                    int[] nl = links[i][l];
+                    dos.writeInt(nl[0]);
+                    for (int j = 1; j <= nl[0]; j++)
+                        dos.writeInt(nl[j]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load an index previously saved with {@link #save(File)}
+     *
+     * @param file      File to load the graph from
+     * @param vectors   The (unit length) vectors the index was built for
+     * @param dimension Dimension of the vectors
+     * @return The index
+     */
+    public static HnswIndex load(@NonNull File file, @NonNull float[] vectors, int dimension) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            String magic = dis.readUTF();
+            if (!MAGIC.equals(magic))
+                throw new IOException("Not a valid HNSW index file: " + file);
+            int version = dis.readInt();
+            if (version != FORMAT_VERSION)
+                throw new IOException("Unsupported HNSW index format version: " + version);
+            int dim = dis.readInt();
+            int size = dis.readInt();
+            int m = dis.readInt();
+            int efConstruction = dis.readInt();
+            Preconditions.checkState(dim == dimension && (long) size * dim == vectors.length, "HNSW index file %s does not" +
+                    " match the vectors: index has %s vectors of dimension %s, got %s vectors of dimension %s", file, size, dim,
+                    vectors.length / dimension, dimension);
+
+            HnswIndex index = new HnswIndex(vectors, dimension, m, efConstruction);
+            index.entryPoint = dis.readInt();
+            index.maxLevel = dis.readInt();
+            for (int i = 0; i < size; i++) {
+                int level = dis.readInt();
+                index.levels[i] = level;
+                index.links[i] = new int[level + 1][];
+                for (int l = 0; l <= level; l++) {
+                    int count = dis.readInt();
+                    int[] nl = new int[index.maxM(l) + 1];
+                    nl[0] = count;
+                    for (int j = 1; j <= count; j++)
+                        nl[j] = dis.readInt();
+                    index.links[i][l] = nl;
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Visited marks for one search, reset in O(1) by incrementing the generation
+     */
+    private static class VisitedSet {
+        private final int[] marks;
+        private int generation;
+
+        private VisitedSet(int size) {
+            this.marks = new int[size];
+        }
+
+        private void reset() {
+            generation++;
+            if (generation == 0) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        private boolean add(int i) {
+            if (marks[i] == generation)
+                return false;
+            marks[i] = generation;
+            return true;
+        }
+    }
+
+    /**
+     * Binary min heap of primitive longs
+     */
+    private static class LongHeap {
+        private long[] heap;
+        private int size;
+
+        private LongHeap(int initialCapacity) {
+            this.heap = new long[Math.max(initialCapacity, 4)];
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private long peek() {
+            return heap[0];
+        }
+
+        private void push(long v) {
+            if (size == heap.length)
+                heap = Arrays.copyOf(heap, 2 * heap.length);
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= v)
+                    break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = v;
+        }
+
+        private long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] < heap[child])
+                    child++;
+                if (last <= heap[child])
+                    break;
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * ModelUtils implementation that answers wordsNearest queries using an approximate nearest neighbour index
+ * ({@link HnswIndex}) built over the (normalized) rows of {@link InMemoryLookupTable#getSyn0()}, instead of computing
+ * the similarity to every word in the vocabulary for each query.<br>
+ * The index is built on the first query (or explicitly via {@link #buildIndex()}). If an index file is set, the index is
+ * loaded from that file if it exists, or saved to it after being built - i.e., the index can be persisted next to the model.<br>
+ * Recall vs. speed can be tuned using ef (search time), and m/efConstruction (build time).<br>
+ * Lookup tables other than InMemoryLookupTable use the exact implementation from {@link BasicModelUtils}.
+ */
+@Slf4j
+@Getter
+@Setter
+public class HnswModelUtils<T extends SequenceElement> extends BasicModelUtils<T> {
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 200;
+    public static final int DEFAULT_EF = 100;
+
+    /**
+     * Number of links per node in the index
+     */
+    protected int m = DEFAULT_M;
+    /**
+     * Size of the candidate list when building the index
+     */
+    protected int efConstruction = DEFAULT_EF_CONSTRUCTION;
+    /**
+     * Size of the candidate list when searching. Higher values give higher recall, but slower queries
+     */
+    protected int ef = DEFAULT_EF;
+    protected long seed = 12345;
+    protected boolean parallelBuild = true;
+    /**
+     * If set: the index is loaded from this file if it exists, or saved to this file after it has been built
+     */
+    protected File indexFile;
+
+    @Setter(AccessLevel.NONE)
+    protected volatile HnswIndex index;
+
+    public HnswModelUtils() {
+
+    }
+
+    public HnswModelUtils(int m, int efConstruction, int ef) {
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.ef = ef;
+    }
+
+    @Override
+    public void init(@NonNull WeightLookupTable<T> lookupTable) {
+        super.init(lookupTable);
+        this.index = null;
+    }
+
+    /**
+     * Build the index (or load it from the index file, if set and it exists). This is done automatically on the first
+     * wordsNearest query, but may be called earlier to avoid the delay on the first query.
+     */
+    public synchronized HnswIndex buildIndex() {
+        if (index != null)
+            return index;
+        if (!(lookupTable instanceof InMemoryLookupTable))
+            throw new IllegalStateException("HNSW index can only be built for InMemoryLookupTable, got " +
+                    (lookupTable == null ? null : lookupTable.getClass()));
+
+        INDArray syn0 = ((InMemoryLookupTable<T>) lookupTable).getSyn0();
+        int dimension = (int) syn0.size(1);
+        float[] vectors = unitVectors(syn0);
+
+        if (indexFile != null && indexFile.exists()) {
+            try {
+                index = HnswIndex.load(indexFile, vectors, dimension);
+                log.info("Loaded HNSW index for {} vectors from {}", index.getSize(), indexFile);
+                return index;
+            } catch (IOException | IllegalStateException e) {
+                log.warn("Unable to load HNSW index from {}, rebuilding index", indexFile, e);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        index = HnswIndex.build(vectors, dimension, m, efConstruction, seed, parallelBuild);
+        log.info("Built HNSW index for {} vectors in {} ms", index.getSize(), System.currentTimeMillis() - start);
+
+        if (indexFile != null) {
+            try {
+                index.save(indexFile);
+            } catch (IOException e) {
+                log.warn("Unable to save HNSW index to {}", indexFile, e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Save the index (building it first, if required)
+     *
+     * @param file File to save the index to
+     */
+    public void saveIndex(@NonNull File file) throws IOException {
+        buildIndex().save(file);
+    }
+
+    @Override
+    public Collection<String> wordsNearest(INDArray words, int top) {
+        if (!(lookupTable instanceof InMemoryLookupTable))
+            return super.wordsNearest(words, top);
+
+        HnswIndex idx = index;
+        if (idx == null)
+            idx = buildIndex();
+        words = adjustRank(words);
+        float[] query = words.reshape(words.length()).castTo(DataType.FLOAT).toFloatVector();
+        normalize(query, 0, query.length);
+
+        //Extra results to allow for the excluded labels
+        int[] nearest = idx.search(query, top + 2, Math.max(ef, top + 2));
+        List<String> result = new ArrayList<>(top);
+        for (int i = 0; i < nearest.length && result.size() < top; i++) {
+            String word = vocabCache.wordAtIndex(nearest[i]);
+            if (word != null && !word.equals("UNK") && !word.equals("STOP"))
+                result.add(word);
+        }
+        return result;
+    }
+
+    /**
+     * Copy the rows of the specified matrix to a flat float array, normalizing each to unit length.
+     * Done in blocks of rows, to avoid a full size intermediate copy of the matrix
+     */
+    protected static float[] unitVectors(INDArray syn0) {
+        long rows = syn0.size(0);
+        int dimension = (int) syn0.size(1);
+        if (rows * dimension > Integer.MAX_VALUE)
+            throw new IllegalStateException("Lookup table is too large for HNSW index: " + rows + " x " + dimension);
+        float[] out = new float[(int) (rows * dimension)];
+        int blockRows = Math.max(1, (1 << 20) / dimension);
+        for (long start = 0; start < rows; start += blockRows) {
+            long end = Math.min(rows, start + blockRows);
+            INDArray block = syn0.get(NDArrayIndex.interval(start, end), NDArrayIndex.all()).castTo(DataType.FLOAT).dup('c');
+            float[] f = block.data().asFloat();
+            System.arraycopy(f, 0, out, (int) (start * dimension), f.length);
+        }
+        for (int i = 0; i < rows; i++)
+            normalize(out, i * dimension, dimension);
+        return out;
+    }
+
+    private static void normalize(float[] v, int offset, int length) {
+        double sumSq = 0.0;
+        for (int i = offset; i < offset + length; i++)
+            sumSq += v[i] * v[i];
+        if (sumSq == 0.0)
+            return;
+        float scale = (float) (1.0 / Math.sqrt(sumSq));
+        for (int i = offset; i < offset + length; i++)
+            v[i] *= scale;
+    }
+}
@@ -0,0 +1,669 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.wordvectors;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.embeddings.reader.ModelUtils;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Read-only {@link WordVectors} implementation backed by a memory-mapped file.<br>
+ * Neither the vectors nor the vocabulary are loaded onto the heap: word to index lookups use an open addressing
+ * hash table stored in the file, and vectors are copied from the mapped region on each lookup. Opening a file is
+ * therefore (almost) instant regardless of the vocabulary size, and the pages of the file are shared by all processes
+ * that open it.<br>
+ * Files are written using {@link Writer}, or converted from other formats using the methods in
+ * {@link org.deeplearning4j.models.embeddings.loader.WordVectorSerializer}.<br>
+ * File layout (little endian):
+ * <pre>
+ * header      64 bytes: magic, version, vector size, number of words, strings offset, hash table offset, hash table capacity
+ * vectors     numWords x vectorSize float32 values, row major
+ * strings     long[numWords + 1] offsets, followed by the UTF-8 bytes of all words
+ * hash table  int[capacity]: index + 1 of the word in each slot, or 0 for an empty slot (FNV-1a hash, linear probing)
+ * </pre>
+ * PLEASE NOTE: This implementation has no VocabCache or WeightLookupTable, hence methods relying on these are not available.
+ */
+@Slf4j
+public class MappedWordVectors implements WordVectors {
+    public static final byte[] MAGIC = "DL4JWV01".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+
+    //Vectors are mapped in chunks of whole rows, as a single mapping is limited to 2GB
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+    @Getter
+    private final File file;
+    private final int vectorSize;
+    private final int numWords;
+    private final int rowsPerChunk;
+    private final FloatBuffer[] vectors;
+    private final LongBuffer stringOffsets;
+    private final ByteBuffer strings;
+    private final IntBuffer hashTable;
+    private final int hashMask;
+    private String unk = null;
+
+    /**
+     * Open the specified file. The file is mapped read-only, and may be shared with other readers
+     *
+     * @param file File written by {@link Writer}
+     */
+    public MappedWordVectors(@NonNull File file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(MAGIC, magic))
+                throw new IllegalStateException("File " + file + " is not a mapped word vectors file");
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IllegalStateException("Unsupported mapped word vectors file version: " + version);
+            vectorSize = header.getInt();
+            long words = header.getLong();
+            long stringsOffset = header.getLong();
+            long hashOffset = header.getLong();
+            int capacity = header.getInt();
+            Preconditions.checkState(words <= Integer.MAX_VALUE, "Too many words in file: %s", words);
+            numWords = (int) words;
+            hashMask = capacity - 1;
+
+            long rowBytes = 4L * vectorSize;
+            rowsPerChunk = (int) Math.max(1, Math.min(numWords, MAX_CHUNK_BYTES / Math.max(1, rowBytes)));
+            int numChunks = numWords == 0 ? 0 : (numWords + rowsPerChunk - 1) / rowsPerChunk;
+            vectors = new FloatBuffer[numChunks];
+            for (int i = 0; i < numChunks; i++) {
+                long firstRow = (long) i * rowsPerChunk;
+                long rows = Math.min(rowsPerChunk, numWords - firstRow);
+                vectors[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + firstRow * rowBytes, rows * rowBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+
+            long offsetsBytes = 8L * (numWords + 1);
+            stringOffsets = channel.map(FileChannel.MapMode.READ_ONLY, stringsOffset, offsetsBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            long stringBytes = stringOffsets.get(numWords);
+            Preconditions.checkState(stringBytes <= Integer.MAX_VALUE, "Vocabulary strings are too large: %s bytes", stringBytes);
+            strings = channel.map(FileChannel.MapMode.READ_ONLY, stringsOffset + offsetsBytes, stringBytes);
+            hashTable = channel.map(FileChannel.MapMode.READ_ONLY, hashOffset, 4L * capacity)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+    }
+
+    @Override
+    public String getUNK() {
+        return unk;
+    }
+
+    @Override
+    public void setUNK(String newUNK) {
+        this.unk = newUNK;
+    }
+
+    @Override
+    public boolean hasWord(String word) {
+        return indexOf(word) >= 0;
+    }
+
+    /**
+     * Returns the index of the specified word, or -1 if the word is not in the vocabulary
+     */
+    @Override
+    public int indexOf(String word) {
+        if (word == null || numWords == 0)
+            return -1;
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int slot = hash(bytes, 0, bytes.length) & hashMask;
+        while (true) {
+            int entry = hashTable.get(slot);
+            if (entry == 0)
+                return -1;
+            if (wordEquals(entry - 1, bytes))
+                return entry - 1;
+            slot = (slot + 1) & hashMask;
+        }
+    }
+
+    /**
+     * Returns the word at the specified index
+     */
+    public String wordAtIndex(int index) {
+        Preconditions.checkArgument(index >= 0 && index < numWords, "Invalid word index: %s", index);
+        int start = (int) stringOffsets.get(index);
+        int end = (int) stringOffsets.get(index + 1);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer bb = strings.duplicate();
+        bb.position(start);
+        bb.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean wordEquals(int index, byte[] bytes) {
+        int start = (int) stringOffsets.get(index);
+        int end = (int) stringOffsets.get(index + 1);
+        if (end - start != bytes.length)
+            return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if (strings.get(start + i) != bytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    private int vectorIndex(String word) {
+        int idx = indexOf(word);
+        if (idx < 0 && unk != null)
+            idx = indexOf(unk);
+        return idx;
+    }
+
+    private void copyRow(int index, float[] target, int offset) {
+        FloatBuffer fb = vectors[index / rowsPerChunk].duplicate();
+        fb.position((index % rowsPerChunk) * vectorSize);
+        fb.get(target, offset, vectorSize);
+    }
+
+    @Override
+    public double[] getWordVector(String word) {
+        INDArray vector = getWordVectorMatrix(word);
+        return vector == null ? null : vector.toDoubleVector();
+    }
+
+    @Override
+    public INDArray getWordVectorMatrixNormalized(String word) {
+        INDArray vector = getWordVectorMatrix(word);
+        return vector == null ? null : Transforms.unitVec(vector);
+    }
+
+    /**
+     * Get the vector for the specified word, copied from the mapped file
+     *
+     * @param word the word to get the vector for
+     * @return the vector, or null if the word (and UNK, if set) is not in the vocabulary
+     */
+    @Override
+    public INDArray getWordVectorMatrix(String word) {
+        int idx = vectorIndex(word);
+        if (idx < 0)
+            return null;
+        float[] vector = new float[vectorSize];
+        copyRow(idx, vector, 0);
+        return Nd4j.create(vector);
+    }
+
+    @Override
+    public INDArray getWordVectors(@NonNull Collection<String> labels) {
+        int[] indexes = new int[labels.size()];
+        int n = 0;
+        for (String label : labels) {
+            int idx = vectorIndex(label);
+            if (idx >= 0)
+                indexes[n++] = idx;
+        }
+        if (n == 0)
+            return Nd4j.empty();
+
+        float[] data = new float[n * vectorSize];
+        for (int i = 0; i < n; i++)
+            copyRow(indexes[i], data, i * vectorSize);
+        return Nd4j.create(data, new long[]{n, vectorSize}, DataType.FLOAT);
+    }
+
+    @Override
+    public INDArray getWordVectorsMean(Collection<String> labels) {
+        return getWordVectors(labels).mean(0);
+    }
+
+    @Override
+    public Collection<String> wordsNearest(INDArray words, int top) {
+        float[] query = words.reshape(words.length()).castTo(DataType.FLOAT).toFloatVector();
+        return nearest(query, top, Collections.<String>emptySet());
+    }
+
+    @Override
+    public Collection<String> wordsNearest(Collection<String> positive, Collection<String> negative, int top) {
+        float[] query = new float[vectorSize];
+        float[] vector = new float[vectorSize];
+        Set<String> exclude = new HashSet<>();
+        for (String word : positive) {
+            if (addUnitVector(word, vector, query, 1.0f))
+                exclude.add(word);
+        }
+        for (String word : negative) {
+            if (addUnitVector(word, vector, query, -1.0f))
+                exclude.add(word);
+        }
+        if (exclude.isEmpty())
+            return Collections.emptyList();
+        return nearest(query, top, exclude);
+    }
+
+    @Override
+    public Collection<String> wordsNearest(String word, int n) {
+        return wordsNearest(Collections.singletonList(word), Collections.<String>emptyList(), n);
+    }
+
+    private boolean addUnitVector(String word, float[] buffer, float[] target, float sign) {
+        int idx = indexOf(word);
+        if (idx < 0)
+            return false;
+        copyRow(idx, buffer, 0);
+        float scale = sign / norm(buffer, 0);
+        for (int i = 0; i < vectorSize; i++)
+            target[i] += buffer[i] * scale;
+        return true;
+    }
+
+    /**
+     * Exact nearest neighbour search by cosine similarity, scanning the mapped vectors one chunk at a time
+     */
+    private Collection<String> nearest(float[] query, int top, Set<String> exclude) {
+        Preconditions.checkArgument(query.length == vectorSize, "Expected query vector of length %s, got %s",
+                vectorSize, query.length);
+        float queryNorm = norm(query, 0);
+        //Extra results to allow for the excluded labels
+        int size = top + exclude.size() + 2;
+        PriorityQueue<double[]> heap = new PriorityQueue<>(size + 1, (a, b) -> Double.compare(a[0], b[0]));
+
+        float[] block = new float[rowsPerBlock() * vectorSize];
+        for (int first = 0; first < numWords; first += rowsPerBlock()) {
+            int rows = Math.min(rowsPerBlock(), numWords - first);
+            for (int r = 0; r < rows; r++)
+                copyRow(first + r, block, r * vectorSize);
+            for (int r = 0; r < rows; r++) {
+                int offset = r * vectorSize;
+                double dot = 0.0;
+                for (int i = 0; i < vectorSize; i++)
+                    dot += block[offset + i] * query[i];
+                float rowNorm = norm(block, offset);
+                double sim = rowNorm == 0.0f || queryNorm == 0.0f ? 0.0 : dot / (rowNorm * queryNorm);
+                if (heap.size() < size) {
+                    heap.add(new double[]{sim, first + r});
+                } else if (sim > heap.peek()[0]) {
+                    heap.poll();
+                    heap.add(new double[]{sim, first + r});
+                }
+            }
+        }
+
+        List<double[]> sorted = new ArrayList<>(heap);
+        sorted.sort((a, b) -> Double.compare(b[0], a[0]));
+        List<String> result = new ArrayList<>(top);
+        for (double[] d : sorted) {
+            if (result.size() >= top)
+                break;
+            String word = wordAtIndex((int) d[1]);
+            if (!exclude.contains(word) && !word.equals("UNK") && !word.equals("STOP"))
+                result.add(word);
+        }
+        return result;
+    }
+
+    private int rowsPerBlock() {
+        return Math.max(1, Math.min(numWords, (1 << 16) / Math.max(1, vectorSize)));
+    }
+
+    private float norm(float[] v, int offset) {
+        double sumSq = 0.0;
+        for (int i = offset; i < offset + vectorSize; i++)
+            sumSq += v[i] * v[i];
+        return (float) Math.sqrt(sumSq);
+    }
+
+    /**
+     * Returns the similarity of 2 words
+     *
+     * @param word  the first word
+     * @param word2 the second word
+     * @return cosine similarity, or NaN if either word is not in the vocabulary
+     */
+    @Override
+    public double similarity(String word, String word2) {
+        int idx1 = vectorIndex(word);
+        int idx2 = vectorIndex(word2);
+        if (idx1 < 0 || idx2 < 0)
+            return Double.NaN;
+        if (idx1 == idx2)
+            return 1.0;
+
+        float[] v = new float[2 * vectorSize];
+        copyRow(idx1, v, 0);
+        copyRow(idx2, v, vectorSize);
+        double dot = 0.0;
+        for (int i = 0; i < vectorSize; i++)
+            dot += v[i] * v[vectorSize + i];
+        return dot / (norm(v, 0) * norm(v, vectorSize));
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Collection<String> wordsNearestSum(INDArray words, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Collection<String> wordsNearestSum(String word, int n) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Collection<String> wordsNearestSum(Collection<String> positive, Collection<String> negative, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Map<String, Double> accuracy(List<String> questions) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public List<String> similarWordsInVocabTo(String word, double accuracy) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation. Use {@link #indexOf(String)} and
+     * {@link #wordAtIndex(int)} instead.
+     */
+    @Override
+    public VocabCache vocab() {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public WeightLookupTable lookupTable() {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method has no effect in this implementation.
+     */
+    @Override
+    public void setModelUtils(ModelUtils utils) {
+        // no-op
+    }
+
+    @Override
+    public void loadWeightsInto(INDArray array) {
+        int blockRows = rowsPerBlock();
+        float[] block = new float[blockRows * vectorSize];
+        for (int first = 0; first < numWords; first += blockRows) {
+            int rows = Math.min(blockRows, numWords - first);
+            for (int r = 0; r < rows; r++)
+                copyRow(first + r, block, r * vectorSize);
+            INDArray arr = Nd4j.create(Arrays.copyOf(block, rows * vectorSize), new long[]{rows, vectorSize}, DataType.FLOAT);
+            array.get(NDArrayIndex.interval(first, first + rows), NDArrayIndex.all()).assign(arr);
+        }
+    }
+
+    @Override
+    public long vocabSize() {
+        return numWords;
+    }
+
+    @Override
+    public int vectorSize() {
+        return vectorSize;
+    }
+
+    @Override
+    public boolean jsonSerializable() {
+        return false;
+    }
+
+    @Override
+    public boolean outOfVocabularySupported() {
+        return false;
+    }
+
+    //FNV-1a
+    private static int hash(byte[] bytes, int offset, int length) {
+        int h = 0x811C9DC5;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= bytes[i] & 0xFF;
+            h *= 0x01000193;
+        }
+        return h;
+    }
+
+    /**
+     * Streaming writer for the mapped word vectors format. Vectors are written to the file as they are added; only the
+     * vocabulary strings and the hash table are kept in memory until {@link #close()}.<br>
+     * Duplicate words are skipped (the first vector for each word is kept).
+     */
+    public static class Writer implements Closeable {
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final int vectorSize;
+        private final ByteBuffer buffer;
+
+        private byte[] strings = new byte[1 << 16];
+        private long[] offsets = new long[1024];
+        private int[] table = new int[1024];
+        private int numWords = 0;
+        private boolean closed = false;
+
+        /**
+         * @param file       File to write to. Overwritten if it exists
+         * @param vectorSize Length of each vector
+         */
+        public Writer(@NonNull File file, int vectorSize) throws IOException {
+            Preconditions.checkArgument(vectorSize > 0, "Vector size must be positive, got %s", vectorSize);
+            this.vectorSize = vectorSize;
+            this.raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            this.channel = raf.getChannel();
+            channel.position(HEADER_SIZE);
+            this.buffer = ByteBuffer.allocateDirect(Math.max(1 << 20, 4 * vectorSize)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Add a word and its vector
+         *
+         * @return false if the word was already added (in which case the vector is ignored), true otherwise
+         */
+        public boolean add(@NonNull String word, @NonNull float[] vector) throws IOException {
+            Preconditions.checkState(!closed, "Writer has already been closed");
+            Preconditions.checkArgument(vector.length == vectorSize, "Expected vector of length %s for word \"%s\", got %s",
+                    vectorSize, word, vector.length);
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            if (!insert(bytes)) {
+                log.warn("Skipping duplicate word \"{}\"", word);
+                return false;
+            }
+
+            if (buffer.remaining() < 4 * vectorSize)
+                flush();
+            for (float f : vector)
+                buffer.putFloat(f);
+            return true;
+        }
+
+        /**
+         * Add a word and its vector
+         *
+         * @return false if the word was already added (in which case the vector is ignored), true otherwise
+         */
+        public boolean add(@NonNull String word, @NonNull INDArray vector) throws IOException {
+            return add(word, vector.reshape(vector.length()).castTo(DataType.FLOAT).toFloatVector());
+        }
+
+        public int numWords() {
+            return numWords;
+        }
+
+        private boolean insert(byte[] bytes) {
+            long start = offsets[numWords];
+            int slot = hash(bytes, 0, bytes.length) & (table.length - 1);
+            while (table[slot] != 0) {
+                int idx = table[slot] - 1;
+                if (equals(idx, bytes))
+                    return false;
+                slot = (slot + 1) & (table.length - 1);
+            }
+
+            if (start + bytes.length > strings.length) {
+                long newLength = Math.max(2L * strings.length, start + bytes.length);
+                Preconditions.checkState(newLength <= Integer.MAX_VALUE - 8, "Vocabulary strings are too large");
+                strings = Arrays.copyOf(strings, (int) newLength);
+            }
+            System.arraycopy(bytes, 0, strings, (int) start, bytes.length);
+            if (numWords + 2 > offsets.length)
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            offsets[numWords + 1] = start + bytes.length;
+            table[slot] = ++numWords;
+
+            //Load factor of at most 0.5
+            if (2L * numWords > table.length)
+                rehash(2 * table.length);
+            return true;
+        }
+
+        private boolean equals(int idx, byte[] bytes) {
+            int start = (int) offsets[idx];
+            int end = (int) offsets[idx + 1];
+            if (end - start != bytes.length)
+                return false;
+            for (int i = 0; i < bytes.length; i++) {
+                if (strings[start + i] != bytes[i])
+                    return false;
+            }
+            return true;
+        }
+
+        private void rehash(int capacity) {
+            int[] newTable = new int[capacity];
+            for (int idx = 0; idx < numWords; idx++) {
+                int start = (int) offsets[idx];
+                int slot = hash(strings, start, (int) offsets[idx + 1] - start) & (capacity - 1);
+                while (newTable[slot] != 0)
+                    slot = (slot + 1) & (capacity - 1);
+                newTable[slot] = idx + 1;
+            }
+            table = newTable;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        private void write(byte[] bytes, int length) throws IOException {
+            int pos = 0;
+            while (pos < length) {
+                if (!buffer.hasRemaining())
+                    flush();
+                int n = Math.min(buffer.remaining(), length - pos);
+                buffer.put(bytes, pos, n);
+                pos += n;
+            }
+        }
+
+        /**
+         * Write the vocabulary and hash table, and complete the header
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            closed = true;
+            try {
+                flush();
+                long stringsOffset = channel.position();
+                for (int i = 0; i <= numWords; i++) {
+                    if (buffer.remaining() < 8)
+                        flush();
+                    buffer.putLong(offsets[i]);
+                }
+                write(strings, (int) offsets[numWords]);
+                flush();
+                //Align the hash table to 8 bytes
+                long padding = (8 - channel.position() % 8) % 8;
+                for (int i = 0; i < padding; i++)
+                    buffer.put((byte) 0);
+                flush();
+                long hashOffset = channel.position();
+                for (int slot : table) {
+                    if (buffer.remaining() < 4)
+                        flush();
+                    buffer.putInt(slot);
+                }
+                flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.put(MAGIC);
+                header.putInt(VERSION);
+                header.putInt(vectorSize);
+                header.putLong(numWords);
+                header.putLong(stringsOffset);
+                header.putLong(hashOffset);
+                header.putInt(table.length);
+                header.position(0);
+                channel.write(header, 0);
+            } finally {
+                channel.close();
+                raf.close();
+            }
+        }
+    }
+}
@@ -33,6 +33,8 @@ import org.deeplearning4j.models.embeddings.WeightLookupTable;
 import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.learning.ElementsLearningAlgorithm;
 import org.deeplearning4j.models.embeddings.learning.SequenceLearningAlgorithm;
+import org.deeplearning4j.models.embeddings.learning.impl.elements.HogwildKernel;
+import org.deeplearning4j.models.embeddings.learning.impl.sequence.DBOW;
 import org.deeplearning4j.models.embeddings.learning.impl.sequence.DM;
 import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
 import org.deeplearning4j.models.embeddings.reader.ModelUtils;
@@ -88,6 +90,7 @@ public class ParagraphVectors extends Word2Vec {
     protected transient PriorityScheduler inferenceExecutor;
     protected transient AtomicLong countSubmitted;
     protected transient AtomicLong countFinished;
+    protected transient volatile InferenceKernel inferenceKernel;
 
     protected ParagraphVectors() {
         super();
@@ -202,10 +205,27 @@ public class ParagraphVectors extends Word2Vec {
         if ((this.vocab == null || this.vocab.numWords() == 0) && existingModel != null) {
             this.vocab = existingModel.vocab();
             this.lookupTable = existingModel.lookupTable();
+            invalidateInferenceKernel();
         }
 
     }
 
+    @Override
+    public void setLookupTable(@NonNull WeightLookupTable lookupTable) {
+        super.setLookupTable(lookupTable);
+        invalidateInferenceKernel();
+    }
+
+    @Override
+    public void setVocab(VocabCache vocab) {
+        super.setVocab(vocab);
+        invalidateInferenceKernel();
+    }
+
+    protected void invalidateInferenceKernel() {
+        inferenceKernel = null;
+    }
+
     /**
      * This method calculates inferred vector for given document
      *
@@ -478,6 +498,243 @@ public class ParagraphVectors extends Word2Vec {
         return results;
     }
 
+    /**
+     * This method infers vectors for many documents at once, with default parameters for learning rate and iterations
+     *
+     * @param documents raw texts
+     * @return matrix with one inferred vector per row, in the same order as input texts
+     */
+    public INDArray inferVectors(@NonNull List<String> documents) {
+        return inferVectors(documents, this.learningRate.get(), this.minLearningRate,
+                this.numEpochs * this.numIterations);
+    }
+
+    /**
+     * This method infers vectors for many documents at once. Documents are split into chunks processed by
+     * inference thread pool, model weights are shared read-only by all threads and every thread reuses
+     * its own training scratch buffers. Per document, only the token indexes and the vector being trained are
+     * allocated. All vectors are written into single output matrix.
+     *
+     * Each document gets its own random state derived from model seed and document content, so results
+     * are deterministic and don't depend on thread scheduling or batch composition.
+     *
+     * PLEASE NOTE: this path requires FLOAT weights on CPU backend, otherwise it falls back to inferVector() per document,
+     * still executed by inference thread pool
+     *
+     * @param documents raw texts
+     * @param learningRate starting learning rate
+     * @param minLearningRate final learning rate
+     * @param iterations number of passes over each document
+     * @return matrix with one inferred vector per row, in the same order as input texts
+     */
+    public INDArray inferVectors(@NonNull final List<String> documents, final double learningRate,
+                                 final double minLearningRate, final int iterations) {
+        if (tokenizerFactory == null)
+            throw new IllegalStateException("TokenizerFactory should be defined, prior to inferVectors() call");
+
+        if (this.vocab == null || this.vocab.numWords() == 0)
+            reassignExistingModel();
+
+        if (documents.isEmpty())
+            return Nd4j.create(lookupTable.getWeights().dataType(), 0, lookupTable.layerSize());
+
+        if (countSubmitted == null)
+            initInference();
+
+        final HogwildKernel kernel = inferenceKernel();
+        if (kernel == null) {
+            // documents are still tokenized and inferred on the inference threads, one document per task
+            List<Future<INDArray>> futures = new ArrayList<>(documents.size());
+            for (final String document : documents) {
+                futures.add(inferenceExecutor.submit(new Callable<INDArray>() {
+                    @Override
+                    public INDArray call() {
+                        return inferVector(document, learningRate, minLearningRate, iterations);
+                    }
+                }));
+            }
+
+            INDArray result = Nd4j.create(lookupTable.getWeights().dataType(), documents.size(), lookupTable.layerSize());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    result.putRow(i, futures.get(i).get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException) e.getCause();
+                    throw new RuntimeException(e);
+                }
+            }
+            return result;
+        }
+
+        final int numDocs = documents.size();
+        final int layerSize = kernel.getVectorLength();
+        final float[] vectors = new float[numDocs * layerSize];
+        final AtomicLong wordsCounter = new AtomicLong(0);
+        final boolean dbow = sequenceLearningAlgorithm instanceof DBOW;
+        int chunkSize = Math.max(1, Math.min(256, numDocs / (4 * Runtime.getRuntime().availableProcessors())));
+
+        long time = System.currentTimeMillis();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int start = 0; start < numDocs; start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(numDocs, start + chunkSize);
+            futures.add(inferenceExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = from; i < to; i++) {
+                        int[] words = documentIndexes(documents.get(i));
+                        inferVector(kernel, words, vectors, i * layerSize, dbow, learningRate, minLearningRate,
+                                iterations);
+                        wordsCounter.addAndGet(words.length);
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new RuntimeException(e);
+            }
+        }
+
+        long timeSpent = Math.max(1, System.currentTimeMillis() - time);
+        log.info("Inferred vectors for {} documents ({} words) in {} ms; Documents/sec: {}; Words/sec: {}", numDocs,
+                wordsCounter.get(), timeSpent, String.format("%.2f", numDocs * 1000.0 / timeSpent),
+                String.format("%.2f", wordsCounter.get() * 1000.0 / timeSpent));
+
+        return Nd4j.create(vectors, new long[] {numDocs, layerSize}, 'c');
+    }
+
+    /**
+     * Returns the kernel used by {@link #inferVectors(List, double, double, int)}, or null if current model can't be
+     * used with it. Both outcomes are cached until the vocabulary, lookup table or its weights are replaced
+     */
+    @SuppressWarnings("unchecked")
+    protected HogwildKernel inferenceKernel() {
+        InferenceKernel cached = inferenceKernel;
+        if (cached == null || !cached.isValidFor(vocab, lookupTable)) {
+            synchronized (inferenceLocker) {
+                cached = inferenceKernel;
+                if (cached == null || !cached.isValidFor(vocab, lookupTable)) {
+                    HogwildKernel kernel = lookupTable instanceof InMemoryLookupTable
+                            ? HogwildKernel.create(vocab, (InMemoryLookupTable<VocabWord>) lookupTable, configuration)
+                            : null;
+                    cached = new InferenceKernel(vocab, lookupTable, kernel);
+                    inferenceKernel = cached;
+                }
+            }
+        }
+        return cached.kernel;
+    }
+
+    /**
+     * Kernel built for specific vocabulary and weights. A null kernel means that the model is not supported
+     */
+    protected static class InferenceKernel {
+        private final VocabCache<VocabWord> vocab;
+        private final WeightLookupTable<VocabWord> lookupTable;
+        private final INDArray syn0;
+        private final INDArray syn1;
+        private final INDArray syn1Neg;
+        private final HogwildKernel kernel;
+
+        protected InferenceKernel(VocabCache<VocabWord> vocab, WeightLookupTable<VocabWord> lookupTable,
+                                  HogwildKernel kernel) {
+            this.vocab = vocab;
+            this.lookupTable = lookupTable;
+            this.syn0 = syn0(lookupTable);
+            this.syn1 = syn1(lookupTable);
+            this.syn1Neg = syn1Neg(lookupTable);
+            this.kernel = kernel;
+        }
+
+        protected boolean isValidFor(VocabCache<VocabWord> vocab, WeightLookupTable<VocabWord> lookupTable) {
+            return this.vocab == vocab && this.lookupTable == lookupTable && syn0 == syn0(lookupTable)
+                    && syn1 == syn1(lookupTable) && syn1Neg == syn1Neg(lookupTable);
+        }
+
+        private static INDArray syn0(WeightLookupTable<VocabWord> table) {
+            return table instanceof InMemoryLookupTable ? ((InMemoryLookupTable<VocabWord>) table).getSyn0() : null;
+        }
+
+        private static INDArray syn1(WeightLookupTable<VocabWord> table) {
+            return table instanceof InMemoryLookupTable ? ((InMemoryLookupTable<VocabWord>) table).getSyn1() : null;
+        }
+
+        private static INDArray syn1Neg(WeightLookupTable<VocabWord> table) {
+            return table instanceof InMemoryLookupTable ? ((InMemoryLookupTable<VocabWord>) table).getSyn1Neg() : null;
+        }
+    }
+
+    protected int[] documentIndexes(String text) {
+        List<String> tokens = tokenizerFactory.create(text).getTokens();
+        int[] words = new int[tokens.size()];
+        int length = 0;
+        for (String token : tokens) {
+            VocabWord word = vocab.wordFor(token);
+            if (word != null && !word.isLabel())
+                words[length++] = word.getIndex();
+        }
+
+        if (length == 0)
+            throw new ND4JIllegalStateException("Text passed for inference has no matches in model vocabulary.");
+
+        return Arrays.copyOf(words, length);
+    }
+
+    /**
+     * Trains a single vector of {@code vectors} at {@code offset}, model weights stay intact
+     */
+    protected void inferVector(HogwildKernel kernel, int[] words, float[] vectors, int offset, boolean dbow,
+                               double learningRate, double minLearningRate, int iterations) {
+        int layerSize = kernel.getVectorLength();
+        int window = configuration.getWindow();
+        long documentSeed = seed * 31 + Arrays.hashCode(words);
+
+        Random random = new Random(documentSeed);
+        float[] vector = new float[layerSize];
+        for (int j = 0; j < layerSize; j++)
+            vector[j] = (random.nextFloat() - 0.5f) / layerSize;
+
+        AtomicLong nextRandom = new AtomicLong(Math.abs(documentSeed));
+        int[] context = dbow ? null : new int[2 * window];
+        iterations = Math.max(1, iterations);
+        for (int e = 0; e < iterations; e++) {
+            float alpha = (float) Math.max(minLearningRate,
+                    learningRate - (learningRate - minLearningRate) * e / iterations);
+
+            for (int i = 0; i < words.length; i++) {
+                if (dbow) {
+                    kernel.inferSkipGram(vector, words[i], alpha, nextRandom);
+                    continue;
+                }
+
+                nextRandom.set(Math.abs(nextRandom.get() * 25214903917L + 11));
+                int b = (int) (nextRandom.get() % window);
+                int length = 0;
+                for (int a = b; a < window * 2 + 1 - b; a++) {
+                    int c = i - window + a;
+                    if (a != window && c >= 0 && c < words.length)
+                        context[length++] = words[c];
+                }
+                kernel.inferCbow(vector, words[i], context, length, alpha, nextRandom);
+            }
+        }
+
+        System.arraycopy(vector, 0, vectors, offset, layerSize);
+    }
+
     /**
      * This method predicts label of the document.
      * Computes a similarity wrt the mean of the
@@ -739,6 +996,8 @@ public class ParagraphVectors extends Word2Vec {
 
     @Override
     public void fit() {
+        // weights and codes are going to change
+        invalidateInferenceKernel();
         super.fit();
 
         extractLabels();
@@ -1084,6 +1343,12 @@ public class ParagraphVectors extends Word2Vec {
             return this;
         }
 
+        @Override
+        public Builder useShardedVocabCounting(boolean reallyUse) {
+            super.useShardedVocabCounting(reallyUse);
+            return this;
+        }
+
         @Override
         public ParagraphVectors build() {
             presetTables();
@@ -1157,6 +1422,7 @@ public class ParagraphVectors extends Word2Vec {
             ret.unknownElement = this.unknownElement;
             ret.seed = this.seed;
             ret.enableScavenger = this.enableScavenger;
+            ret.shardedVocabCounting = this.shardedVocabCounting;
             ret.vocabLimit = this.vocabLimit;
 
             ret.trainElementsVectors = this.trainElementsVectors;
@@ -1200,6 +1466,7 @@ public class ParagraphVectors extends Word2Vec {
                             .setSequenceLearningAlgorithm(this.sequenceLearningAlgorithm.getClass().getCanonicalName());
                 this.configuration.setModelUtils(this.modelUtils.getClass().getCanonicalName());
                 this.configuration.setAllowParallelTokenization(this.allowParallelTokenization);
+                this.configuration.setHogwild(this.hogwild);
                 if (tokenizerFactory != null) {
                     this.configuration.setTokenizerFactory(tokenizerFactory.getClass().getCanonicalName());
                     if (tokenizerFactory.getTokenPreProcessor() != null)
@@ -1576,6 +1843,12 @@ public class ParagraphVectors extends Word2Vec {
             return this;
         }
 
+        @Override
+        public Builder useHogwild(boolean reallyUse) {
+            super.useHogwild(reallyUse);
+            return this;
+        }
+
         /**
          * This method defines random seed for random numbers generator
          * @param randomSeed
@@ -49,10 +49,12 @@ import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
 import org.deeplearning4j.models.sequencevectors.interfaces.VectorsListener;
 import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.Huffman;
 import org.deeplearning4j.models.word2vec.VocabWord;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
 import org.deeplearning4j.models.word2vec.wordstore.VocabConstructor;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.nd4j.common.base.Preconditions;
 import org.nd4j.common.util.ThreadUtils;
 import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
 import org.nd4j.linalg.api.memory.enums.LearningPolicy;
@@ -92,8 +94,11 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
     protected transient AtomicDouble scoreSequences = new AtomicDouble(0.0);
     protected transient boolean configured = false;
     protected transient boolean lockFactor = false;
+    // number of elements in the data used for learning rate decay during incremental training, 0 means whole vocab
+    protected transient long incrementalWordsCount = 0;
 
     protected boolean enableScavenger = false;
+    protected boolean shardedVocabCounting = false;
     protected int vocabLimit = 0;
 
 
@@ -138,6 +143,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         val constructor = new VocabConstructor.Builder<T>().addSource(iterator, minWordFrequency)
                 .setTargetVocabCache(vocab).fetchLabels(trainSequenceVectors).setStopWords(stopWords)
                 .enableScavenger(enableScavenger).setEntriesLimit(vocabLimit)
+                .useShardedCounting(shardedVocabCounting)
                 .allowParallelTokenization(configuration.isAllowParallelTokenization())
                 .setUnk(useUnknown && unknownElement != null ? unknownElement : null).build();
 
@@ -177,6 +183,132 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
     }
 
 
+    /**
+     * This method updates already trained model with new sequences, without retraining it from scratch:
+     * elements that weren't seen before are appended to the vocabulary (if they pass minWordFrequency within new data),
+     * frequencies of known elements are increased, weights are expanded for new elements, and then training
+     * is performed over new sequences only.
+     *
+     * PLEASE NOTE: if hierarchic softmax is used, Huffman tree is rebuilt for updated frequencies,
+     * so syn1 has to re-adapt to new codes during training.
+     *
+     * @param iterator new sequences
+     */
+    public void fitIncrementally(@NonNull SequenceIterator<T> iterator) {
+        Preconditions.checkState(vocab != null && vocab.numWords() > 0 && lookupTable instanceof InMemoryLookupTable,
+                        "Incremental training is only possible for already trained model with InMemoryLookupTable");
+
+        this.iterator = iterator;
+        long words = updateVocabulary(iterator);
+        ((InMemoryLookupTable<T>) lookupTable).expandWeights();
+
+        boolean reset = resetModel;
+        resetModel = false;
+        // learning algorithms keep references to weights, so they have to be configured again
+        configured = false;
+        incrementalWordsCount = Math.max(1, words);
+        try {
+            fit();
+        } finally {
+            resetModel = reset;
+            incrementalWordsCount = 0;
+        }
+    }
+
+    /**
+     * This method counts elements of new sequences, and merges them into existing vocabulary.
+     * Indexes of existing elements stay intact, new elements get indexes after them.
+     *
+     * @param iterator new sequences
+     * @return number of elements in new sequences
+     */
+    protected long updateVocabulary(@NonNull SequenceIterator<T> iterator) {
+        Set<String> stopList = stopWords == null ? Collections.<String>emptySet() : new HashSet<>(stopWords);
+        // sequences may reference elements of existing vocabulary, so we don't touch them while counting
+        Map<String, long[]> counts = new HashMap<>();
+        Map<String, T> newElements = new LinkedHashMap<>();
+        long words = 0;
+        long documents = 0;
+
+        iterator.reset();
+        while (iterator.hasMoreSequences()) {
+            Sequence<T> sequence = iterator.nextSequence();
+            documents++;
+
+            if (trainSequenceVectors && sequence.getSequenceLabels() != null) {
+                for (T label : sequence.getSequenceLabels()) {
+                    if (!vocab.containsWord(label.getLabel()) && !newElements.containsKey(label.getLabel())) {
+                        label.setSpecial(true);
+                        label.markAsLabel(true);
+                        label.setElementFrequency(1);
+                        newElements.put(label.getLabel(), label);
+                    }
+                }
+            }
+
+            Set<String> seen = new HashSet<>();
+            for (T element : sequence.getElements()) {
+                String label = element.getLabel();
+                if (label == null || label.isEmpty() || stopList.contains(label))
+                    continue;
+
+                words++;
+                long[] count = counts.get(label);
+                if (count == null) {
+                    count = new long[2];
+                    counts.put(label, count);
+                    if (!vocab.containsWord(label))
+                        newElements.put(label, element);
+                }
+                count[0]++;
+                if (seen.add(label))
+                    count[1]++;
+            }
+        }
+        iterator.reset();
+
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            T existing = vocab.wordFor(entry.getKey());
+            if (existing != null && !newElements.containsKey(entry.getKey())) {
+                existing.increaseElementFrequency((int) entry.getValue()[0]);
+                existing.incrementSequencesCount(entry.getValue()[1]);
+            }
+        }
+
+        int added = 0;
+        for (T element : newElements.values()) {
+            long[] count = counts.get(element.getLabel());
+            if (count != null) {
+                if (count[0] < minWordFrequency && !element.isLabel())
+                    continue;
+                element.setElementFrequency(count[0]);
+                element.setSequencesCount(count[1]);
+            }
+
+            int index = vocab.numWords();
+            vocab.addToken(element);
+            vocab.addWordToIndex(index, element.getLabel());
+            element.setIndex(index);
+            added++;
+        }
+
+        vocab.incrementTotalDocCount(documents);
+        vocab.updateWordsOccurrences();
+
+        if (configuration.isUseHierarchicSoftmax()) {
+            for (T element : vocab.vocabWords()) {
+                element.setCodes(new ArrayList<Byte>());
+                element.setPoints(new ArrayList<Integer>());
+            }
+            // codes only, indexes are kept as is
+            new Huffman(vocab.vocabWords()).build();
+        }
+
+        log.info("Vocabulary updated: {} new elements added, {} elements total; {} elements in new sequences",
+                        added, vocab.numWords(), words);
+        return words;
+    }
+
     protected synchronized void initLearners() {
         if (!configured) {
             log.info("Building learning algorithms:");
@@ -339,7 +471,9 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             val timer = new AtomicLong(System.currentTimeMillis());
             val threads = new ArrayList<VectorCalculationsThread>();
             for (int x = 0; x < vectorCalcThreads; x++) {
-                threads.add(x, new VectorCalculationsThread(x, currentEpoch, wordsCounter, vocab.totalWordOccurrences(), linesCounter, sequencer, timer, numEpochs));
+                threads.add(x, new VectorCalculationsThread(x, currentEpoch, wordsCounter,
+                        incrementalWordsCount > 0 ? incrementalWordsCount : vocab.totalWordOccurrences(),
+                        linesCounter, sequencer, timer, numEpochs));
                 threads.get(x).start();
             }
 
@@ -511,6 +645,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         protected String STOP = configuration.getSTOP();
 
         protected boolean enableScavenger = false;
+        protected boolean shardedVocabCounting = false;
         protected int vocabLimit;
 
         protected  int vectorCalcThreads = 1;
@@ -520,6 +655,11 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
          */
         protected boolean preciseMode = false;
 
+        /**
+         * Switches on lock-free in-place updates of the weights, see {@link #useHogwild(boolean)}
+         */
+        protected boolean hogwild = false;
+
         // defaults values for learning algorithms are set here
         protected ElementsLearningAlgorithm<T> elementsLearningAlgorithm;
         protected SequenceLearningAlgorithm<T> sequenceLearningAlgorithm;
@@ -551,6 +691,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             this.variableWindows = configuration.getVariableWindows();
             this.useHierarchicSoftmax = configuration.isUseHierarchicSoftmax();
             this.preciseMode = configuration.isPreciseMode();
+            this.hogwild = configuration.isHogwild();
             this.vectorCalcThreads = configuration.getVectorCalcThreads();
             String modelUtilsClassName = configuration.getModelUtils();
             if (StringUtils.isNotEmpty(modelUtilsClassName)) {
@@ -1014,6 +1155,24 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             return this;
         }
 
+        /**
+         * If set to true, SkipGram and CBOW will update syn0/syn1/syn1Neg in place from every training thread,
+         * without batching and without locks, the same way original word2vec does. Concurrent writes to the same
+         * row may occasionally overwrite each other, which is harmless for sparse SGD updates and lets training
+         * scale with the number of vectorCalcThreads.
+         *
+         * Only applies to FLOAT weights on the CPU backend, otherwise the usual batched path is used.
+         *
+         * Default value: FALSE
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder<T> useHogwild(boolean reallyUse) {
+            this.hogwild = reallyUse;
+            return this;
+        }
+
         /**
          * This method creates new WeightLookupTable<T> and VocabCache<T> if there were none set
          */
@@ -1087,6 +1246,21 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             return this;
         }
 
+        /**
+         * This method enables/disables parallel sharded vocab construction: elements are counted by multiple threads,
+         * each one into its own shard, partial counts are spilled to disk if memory is short, and merged
+         * before minWordFrequency is applied.
+         *
+         * Default value: disabled
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder<T> useShardedVocabCounting(boolean reallyUse) {
+            this.shardedVocabCounting = reallyUse;
+            return this;
+        }
+
         public Builder<T> intersectModel(@NonNull SequenceVectors<T> intersectVectors, boolean lockFactor) {
             this.intersectVectors = intersectVectors;
             this.lockFactor = lockFactor;
@@ -1141,6 +1315,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             vectors.existingModel = this.existingVectors;
             vectors.intersectModel = this.intersectVectors;
             vectors.enableScavenger = this.enableScavenger;
+            vectors.shardedVocabCounting = this.shardedVocabCounting;
             vectors.lockFactor = this.lockFactor;
             //only override values if a configuration wasn't specified
             if(!configurationSpecified) {
@@ -1163,6 +1338,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                 this.configuration.setUseHierarchicSoftmax(this.useHierarchicSoftmax);
                 this.configuration.setPreciseWeightInit(this.preciseWeightInit);
                 this.configuration.setModelUtils(this.modelUtils.getClass().getCanonicalName());
+                this.configuration.setHogwild(this.hogwild);
 
             }
 
@@ -1299,6 +1475,8 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         private final AtomicLong timer;
         private final long startTime;
         private final int totalEpochs;
+        // words processed by this thread only, used to report per-thread throughput
+        private long threadWords;
 
         /*
                 Long constructors suck, so this should be reduced to something reasonable later
@@ -1327,6 +1505,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                     .initialSize(25L * 1024L * 1024L)
                     .build();
             val workspace_id = "sequence_vectors_training_" + UUID.randomUUID();
+            final long threadStartTime = System.currentTimeMillis();
 
             while (digitizer.hasMoreLines()) {
                 try {
@@ -1365,6 +1544,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                                       // increment processed word count, please note: this affects learningRate decay
                                 totalLines.incrementAndGet();
                                 this.wordsCounter.addAndGet(sequence.getElements().size());
+                                threadWords += sequence.getElements().size();
 
                                 if (totalLines.get() % 100000 == 0) {
                                     long currentTime = System.currentTimeMillis();
@@ -1375,11 +1555,12 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
 
                                     double seqSec = (100000.0 / ((double) timeSpent / 1000.0));
                                     double wordsSecTotal = this.wordsCounter.get() / ((double) totalTimeSpent / 1000.0);
+                                    double wordsSecThread = threadWords / ((double) Math.max(1, currentTime - threadStartTime) / 1000.0);
 
-                                    log.info("Epoch: [{}]; Words vectorized so far: [{}];  Lines vectorized so far: [{}]; Seq/sec: [{}]; Words/sec: [{}]; learningRate: [{}]",
+                                    log.info("Epoch: [{}]; Words vectorized so far: [{}];  Lines vectorized so far: [{}]; Seq/sec: [{}]; Words/sec: [{}]; Words/sec per thread: [{}]; learningRate: [{}]",
                                             this.epochNumber, this.wordsCounter.get(), this.totalLines.get(),
                                             String.format("%.2f", seqSec), String.format("%.2f", wordsSecTotal),
-                                            alpha);
+                                            String.format("%.2f", wordsSecThread), alpha);
                                 }
                                 if (eventListeners != null && !eventListeners.isEmpty()) {
                                     for (VectorsListener listener : eventListeners) {
@@ -1414,6 +1595,10 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             if (trainSequenceVectors) {
                 sequenceLearningAlgorithm.finish();
             }
+
+            long threadTime = Math.max(1, System.currentTimeMillis() - threadStartTime);
+            log.info("Epoch: [{}]; Thread [{}] finished: Words vectorized: [{}]; Words/sec: [{}]", this.epochNumber,
+                    this.threadId, threadWords, String.format("%.2f", threadWords / (threadTime / 1000.0)));
         }
     }
 }
@@ -0,0 +1,429 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.sequencevectors.graph.primitives;
+
+import lombok.NonNull;
+import org.deeplearning4j.models.sequencevectors.graph.exception.NoEdgesException;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Immutable graph in compressed sparse row format: neighbours of vertex {@code v} are
+ * {@code targets[offsets[v]..offsets[v+1])}, sorted by vertex index. Undirected edges are stored in both directions.
+ *
+ * Adjacency is kept in primitive arrays only, so memory footprint is ~8 bytes per (directed) edge for
+ * unweighted graphs and ~16 bytes for weighted ones. For weighted graphs each row has an alias table,
+ * so weighted neighbour sampling is O(1) regardless of vertex degree.
+ *
+ * IGraph methods returning Vertex/Edge objects are supported for compatibility, but create these objects on each call.
+ * Use {@link #degree(int)}, {@link #neighbour(int, int)} and {@link #sampleNeighbour(int, Random)} instead.
+ */
+public class CSRGraph<V extends SequenceElement> implements IGraph<V, Float> {
+    private final List<V> elements;
+    private final int[] offsets;
+    private final int[] targets;
+    // null for unweighted graphs
+    private final float[] weights;
+    // alias tables: slot p is kept with probability aliasProbability[p], otherwise replaced with slot aliasIndex[p] of the same row
+    private final float[] aliasProbability;
+    private final int[] aliasIndex;
+
+    private CSRGraph(List<V> elements, int[] offsets, int[] targets, float[] weights) {
+        this.elements = elements;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+
+        if (weights != null) {
+            aliasProbability = new float[targets.length];
+            aliasIndex = new int[targets.length];
+            buildAliasTables();
+        } else {
+            aliasProbability = null;
+            aliasIndex = null;
+        }
+    }
+
+    /**
+     * Converts given graph into CSR format
+     *
+     * @param graph source graph
+     * @param weighted if true, edge values are used as weights for neighbour sampling
+     */
+    public static <V extends SequenceElement> CSRGraph<V> fromGraph(@NonNull IGraph<V, ? extends Number> graph,
+                    boolean weighted) {
+        int numVertices = graph.numVertices();
+        List<V> elements = new ArrayList<>(numVertices);
+        int[] offsets = new int[numVertices + 1];
+        for (int v = 0; v < numVertices; v++) {
+            elements.add(graph.getVertex(v).getValue());
+            offsets[v + 1] = checkedAdd(offsets[v], graph.getVertexDegree(v));
+        }
+
+        int[] targets = new int[offsets[numVertices]];
+        float[] weights = weighted ? new float[targets.length] : null;
+        for (int v = 0; v < numVertices; v++) {
+            int p = offsets[v];
+            for (Edge<? extends Number> edge : graph.getEdgesOut(v)) {
+                targets[p] = edge.getFrom() == v ? edge.getTo() : edge.getFrom();
+                if (weighted)
+                    weights[p] = edge.getValue().floatValue();
+                p++;
+            }
+        }
+
+        sortRows(offsets, targets, weights);
+        return new CSRGraph<>(elements, offsets, targets, weights);
+    }
+
+    private static int checkedAdd(int a, int b) {
+        long sum = (long) a + b;
+        Preconditions.checkState(sum <= Integer.MAX_VALUE - 8, "Number of stored edges exceeds maximal array size");
+        return (int) sum;
+    }
+
+    /**
+     * Sorts neighbours of each vertex by index, so edge lookups can use binary search
+     */
+    private static void sortRows(int[] offsets, int[] targets, float[] weights) {
+        long[] buffer = new long[0];
+        float[] weightBuffer = new float[0];
+        for (int v = 0; v < offsets.length - 1; v++) {
+            int from = offsets[v];
+            int length = offsets[v + 1] - from;
+            if (length < 2)
+                continue;
+
+            if (buffer.length < length) {
+                buffer = new long[length];
+                weightBuffer = new float[length];
+            }
+
+            // target in upper bits, position within row in lower bits
+            for (int i = 0; i < length; i++)
+                buffer[i] = ((long) targets[from + i] << 32) | i;
+            Arrays.sort(buffer, 0, length);
+
+            if (weights != null)
+                System.arraycopy(weights, from, weightBuffer, 0, length);
+            for (int i = 0; i < length; i++) {
+                targets[from + i] = (int) (buffer[i] >>> 32);
+                if (weights != null)
+                    weights[from + i] = weightBuffer[(int) buffer[i]];
+            }
+        }
+    }
+
+    /**
+     * Builds alias tables for all rows, using Vose's method
+     */
+    private void buildAliasTables() {
+        int maxDegree = 0;
+        for (int v = 0; v < numVertices(); v++)
+            maxDegree = Math.max(maxDegree, degree(v));
+
+        int[] small = new int[maxDegree];
+        int[] large = new int[maxDegree];
+        double[] scaled = new double[maxDegree];
+        for (int v = 0; v < numVertices(); v++) {
+            int from = offsets[v];
+            int length = offsets[v + 1] - from;
+            if (length == 0)
+                continue;
+
+            double total = 0.0;
+            for (int i = 0; i < length; i++) {
+                Preconditions.checkState(weights[from + i] >= 0, "Edge weights can't be negative: got %s for edge %s -> %s",
+                                weights[from + i], v, targets[from + i]);
+                total += weights[from + i];
+            }
+
+            int numSmall = 0, numLarge = 0;
+            for (int i = 0; i < length; i++) {
+                // all-zero rows are sampled uniformly
+                scaled[i] = total > 0 ? weights[from + i] * length / total : 1.0;
+                if (scaled[i] < 1.0)
+                    small[numSmall++] = i;
+                else
+                    large[numLarge++] = i;
+            }
+
+            while (numSmall > 0 && numLarge > 0) {
+                int s = small[--numSmall];
+                int l = large[--numLarge];
+                aliasProbability[from + s] = (float) scaled[s];
+                aliasIndex[from + s] = l;
+                scaled[l] = scaled[l] + scaled[s] - 1.0;
+                if (scaled[l] < 1.0)
+                    small[numSmall++] = l;
+                else
+                    large[numLarge++] = l;
+            }
+
+            // leftovers are 1.0 up to rounding errors
+            while (numLarge > 0) {
+                int l = large[--numLarge];
+                aliasProbability[from + l] = 1.0f;
+                aliasIndex[from + l] = l;
+            }
+            while (numSmall > 0) {
+                int s = small[--numSmall];
+                aliasProbability[from + s] = 1.0f;
+                aliasIndex[from + s] = s;
+            }
+        }
+    }
+
+    /**
+     * @return true if neighbour sampling takes edge weights into account
+     */
+    public boolean isWeighted() {
+        return weights != null;
+    }
+
+    /**
+     * @return number of stored edges, undirected edges are counted twice
+     */
+    public int numEdges() {
+        return targets.length;
+    }
+
+    /**
+     * @return number of neighbours of the given vertex
+     */
+    public int degree(int vertex) {
+        return offsets[vertex + 1] - offsets[vertex];
+    }
+
+    /**
+     * @return index of the i-th neighbour of the given vertex
+     */
+    public int neighbour(int vertex, int i) {
+        return targets[offsets[vertex] + i];
+    }
+
+    /**
+     * @return weight of the edge to the i-th neighbour of the given vertex, 1.0 for unweighted graphs
+     */
+    public float weight(int vertex, int i) {
+        return weights == null ? 1.0f : weights[offsets[vertex] + i];
+    }
+
+    /**
+     * @return element of the given vertex
+     */
+    public V getElement(int vertex) {
+        return elements.get(vertex);
+    }
+
+    /**
+     * @return true if there is an edge from {@code from} to {@code to}
+     */
+    public boolean hasEdge(int from, int to) {
+        return Arrays.binarySearch(targets, offsets[from], offsets[from + 1], to) >= 0;
+    }
+
+    /**
+     * Samples random neighbour of the given vertex: uniformly for unweighted graphs, proportionally to edge weight otherwise
+     *
+     * @return neighbour index, or -1 if vertex has no outgoing edges
+     */
+    public int sampleNeighbour(int vertex, @NonNull Random rng) {
+        int length = offsets[vertex + 1] - offsets[vertex];
+        if (length == 0)
+            return -1;
+
+        int slot = offsets[vertex] + rng.nextInt(length);
+        if (weights == null || rng.nextFloat() < aliasProbability[slot])
+            return targets[slot];
+        return targets[offsets[vertex] + aliasIndex[slot]];
+    }
+
+    @Override
+    public int numVertices() {
+        return elements.size();
+    }
+
+    @Override
+    public Vertex<V> getVertex(int idx) {
+        if (idx < 0 || idx >= elements.size())
+            throw new IllegalArgumentException("Invalid index: " + idx);
+        return new Vertex<>(idx, elements.get(idx));
+    }
+
+    @Override
+    public List<Vertex<V>> getVertices(int[] indexes) {
+        List<Vertex<V>> out = new ArrayList<>(indexes.length);
+        for (int i : indexes)
+            out.add(getVertex(i));
+        return out;
+    }
+
+    @Override
+    public List<Vertex<V>> getVertices(int from, int to) {
+        if (to < from || from < 0 || to >= elements.size())
+            throw new IllegalArgumentException("Invalid range: from=" + from + ", to=" + to);
+        List<Vertex<V>> out = new ArrayList<>(to - from + 1);
+        for (int i = from; i <= to; i++)
+            out.add(getVertex(i));
+        return out;
+    }
+
+    @Override
+    public void addEdge(Edge<Float> edge) {
+        throw new UnsupportedOperationException("CSRGraph is immutable, please use CSRGraph.Builder to add edges");
+    }
+
+    @Override
+    public void addEdge(int from, int to, Float value, boolean directed) {
+        throw new UnsupportedOperationException("CSRGraph is immutable, please use CSRGraph.Builder to add edges");
+    }
+
+    @Override
+    public List<Edge<Float>> getEdgesOut(int vertex) {
+        int length = degree(vertex);
+        if (length == 0)
+            return Collections.emptyList();
+        List<Edge<Float>> out = new ArrayList<>(length);
+        for (int i = 0; i < length; i++)
+            out.add(new Edge<>(vertex, neighbour(vertex, i), weight(vertex, i), true));
+        return out;
+    }
+
+    @Override
+    public int getVertexDegree(int vertex) {
+        return degree(vertex);
+    }
+
+    @Override
+    public Vertex<V> getRandomConnectedVertex(int vertex, Random rng) throws NoEdgesException {
+        if (vertex < 0 || vertex >= elements.size())
+            throw new IllegalArgumentException("Invalid vertex index: " + vertex);
+        int length = degree(vertex);
+        if (length == 0)
+            throw new NoEdgesException("Cannot generate random connected vertex: vertex " + vertex
+                            + " has no outgoing/undirected edges");
+        return getVertex(neighbour(vertex, rng.nextInt(length)));
+    }
+
+    @Override
+    public List<Vertex<V>> getConnectedVertices(int vertex) {
+        if (vertex < 0 || vertex >= elements.size())
+            throw new IllegalArgumentException("Invalid vertex index: " + vertex);
+        return getVertices(getConnectedVertexIndices(vertex));
+    }
+
+    @Override
+    public int[] getConnectedVertexIndices(int vertex) {
+        return Arrays.copyOfRange(targets, offsets[vertex], offsets[vertex + 1]);
+    }
+
+    /**
+     * Builder accumulating edges in primitive arrays. Duplicate edges are kept, so for weighted
+     * graphs their weights are effectively summed up during sampling.
+     */
+    public static class Builder<V extends SequenceElement> {
+        private final List<V> elements;
+        private boolean weighted = false;
+        private int numEdges = 0;
+        private int[] from = new int[16];
+        private int[] to = new int[16];
+        private float[] weights = new float[16];
+
+        /**
+         * @param elements vertex elements, vertex indices are positions in this collection
+         */
+        public Builder(@NonNull Collection<V> elements) {
+            this.elements = new ArrayList<>(elements);
+        }
+
+        /**
+         * If true, edge weights are used for neighbour sampling. Default: false
+         */
+        public Builder<V> weighted(boolean weighted) {
+            this.weighted = weighted;
+            return this;
+        }
+
+        /**
+         * Adds an unweighted edge
+         */
+        public Builder<V> addEdge(int from, int to, boolean directed) {
+            return addEdge(from, to, 1.0, directed);
+        }
+
+        /**
+         * Adds an edge. Undirected edges are stored in both directions
+         */
+        public Builder<V> addEdge(int from, int to, double weight, boolean directed) {
+            if (from < 0 || from >= elements.size() || to < 0 || to >= elements.size())
+                throw new IllegalArgumentException("Invalid edge: " + from + " -> " + to + ", from/to indexes out of range");
+
+            append(from, to, (float) weight);
+            if (!directed && from != to)
+                append(to, from, (float) weight);
+            return this;
+        }
+
+        private void append(int from, int to, float weight) {
+            if (numEdges == this.from.length) {
+                int size = checkedAdd(numEdges, Math.max(16, numEdges / 2));
+                this.from = Arrays.copyOf(this.from, size);
+                this.to = Arrays.copyOf(this.to, size);
+                this.weights = Arrays.copyOf(this.weights, size);
+            }
+            this.from[numEdges] = from;
+            this.to[numEdges] = to;
+            this.weights[numEdges] = weight;
+            numEdges++;
+        }
+
+        public CSRGraph<V> build() {
+            int numVertices = elements.size();
+            int[] offsets = new int[numVertices + 1];
+            for (int e = 0; e < numEdges; e++)
+                offsets[from[e] + 1]++;
+            for (int v = 0; v < numVertices; v++)
+                offsets[v + 1] += offsets[v];
+
+            // counting sort by source vertex
+            int[] position = Arrays.copyOf(offsets, numVertices);
+            int[] targets = new int[numEdges];
+            float[] sortedWeights = weighted ? new float[numEdges] : null;
+            for (int e = 0; e < numEdges; e++) {
+                int p = position[from[e]]++;
+                targets[p] = to[e];
+                if (weighted)
+                    sortedWeights[p] = weights[e];
+            }
+
+            sortRows(offsets, targets, sortedWeights);
+            return new CSRGraph<>(elements, offsets, targets, sortedWeights);
+        }
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.sequencevectors.graph.walkers.impl;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.deeplearning4j.models.sequencevectors.graph.enums.NoEdgeHandling;
+import org.deeplearning4j.models.sequencevectors.graph.exception.NoEdgesException;
+import org.deeplearning4j.models.sequencevectors.graph.primitives.CSRGraph;
+import org.deeplearning4j.models.sequencevectors.graph.walkers.GraphWalker;
+import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GraphWalker generating walks over {@link CSRGraph} in background threads.
+ *
+ * Walks are DeepWalk-style (first-order, weighted if graph is weighted) by default, or node2vec-style
+ * if return/in-out parameters are set. node2vec transition probabilities are applied via rejection sampling
+ * on top of first-order sampling, so no per-edge transition tables are needed.
+ *
+ * Generated walks are buffered in a bounded queue, so they can be consumed by SequenceVectors
+ * (i.e. via GraphTransformer) as they are produced. Walks for a given seed are reproducible, but the order
+ * in which they are returned depends on thread scheduling.
+ */
+public class CSRWalker<T extends SequenceElement> implements GraphWalker<T> {
+    private static final Logger logger = LoggerFactory.getLogger(CSRWalker.class);
+
+    // number of walks claimed by a thread at once
+    private static final int CHUNK_SIZE = 64;
+
+    @Getter
+    protected CSRGraph<T> sourceGraph;
+    protected int walkLength = 5;
+    protected NoEdgeHandling noEdgeHandling = NoEdgeHandling.RESTART_ON_DISCONNECTED;
+    protected long seed;
+    protected int workers;
+    protected int walksPerVertex = 1;
+    protected int bufferSize;
+    protected double returnParameter = 1.0;
+    protected double inOutParameter = 1.0;
+
+    protected int[] order;
+    protected Random rng;
+    protected long totalWalks;
+    protected int epoch = 0;
+
+    protected final AtomicLong cursor = new AtomicLong(0);
+    protected final AtomicLong consumed = new AtomicLong(0);
+    protected BlockingQueue<Sequence<T>> buffer;
+    protected Thread[] threads;
+    protected volatile Throwable error;
+
+    protected CSRWalker() {
+
+    }
+
+    /**
+     * This method checks, if walker has any more sequences left in queue
+     *
+     * @return
+     */
+    @Override
+    public boolean hasNext() {
+        return consumed.get() < totalWalks;
+    }
+
+    @Override
+    public boolean isLabelEnabled() {
+        return false;
+    }
+
+    /**
+     * This method returns next walk sequence from this graph
+     *
+     * @return
+     */
+    @Override
+    public Sequence<T> next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        if (threads == null)
+            start();
+
+        try {
+            while (true) {
+                Sequence<T> sequence = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (sequence != null) {
+                    consumed.incrementAndGet();
+                    return sequence;
+                }
+
+                if (error != null) {
+                    if (error instanceof RuntimeException)
+                        throw (RuntimeException) error;
+                    throw new RuntimeException(error);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * This method resets walker
+     *
+     * @param shuffle if TRUE, order of walks will be shuffled
+     */
+    @Override
+    public void reset(boolean shuffle) {
+        stop();
+        cursor.set(0);
+        consumed.set(0);
+        error = null;
+        epoch++;
+
+        if (shuffle) {
+            // https://en.wikipedia.org/wiki/Fisher%E2%80%93Yates_shuffle#The_modern_algorithm
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = rng.nextInt(i + 1);
+                int temp = order[j];
+                order[j] = order[i];
+                order[i] = temp;
+            }
+        }
+    }
+
+    protected void start() {
+        buffer = new LinkedBlockingQueue<>(bufferSize);
+        threads = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            final BlockingQueue<Sequence<T>> queue = buffer;
+            final int currentEpoch = epoch;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    produce(queue, currentEpoch);
+                }
+            });
+            threads[i].setName("CSRWalker thread " + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    protected void stop() {
+        if (threads == null)
+            return;
+
+        for (Thread thread : threads)
+            thread.interrupt();
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        threads = null;
+        buffer = null;
+    }
+
+    protected void produce(BlockingQueue<Sequence<T>> queue, int currentEpoch) {
+        int[] walk = new int[walkLength];
+        try {
+            long chunk;
+            while ((chunk = cursor.getAndAdd(CHUNK_SIZE)) < totalWalks) {
+                // rng depends on chunk only, so walks don't depend on the number of threads
+                Random random = new Random(seed + 0x9E3779B97F4A7C15L * (chunk / CHUNK_SIZE + 1) + 31L * currentEpoch);
+                long last = Math.min(totalWalks, chunk + CHUNK_SIZE);
+                for (long w = chunk; w < last; w++) {
+                    int length = walk(order[(int) (w % order.length)], random, walk);
+
+                    Sequence<T> sequence = new Sequence<>();
+                    for (int i = 0; i < length; i++)
+                        sequence.addElement(sourceGraph.getElement(walk[i]));
+                    queue.put(sequence);
+                }
+            }
+        } catch (InterruptedException e) {
+            // walker was reset
+        } catch (Throwable t) {
+            logger.error("Walk generation failed", t);
+            error = t;
+        }
+    }
+
+    /**
+     * Generates single walk starting at the given vertex
+     *
+     * @return walk length
+     */
+    protected int walk(int start, Random random, int[] walk) {
+        int current = start;
+        int previous = -1;
+        int length = 0;
+        while (true) {
+            walk[length++] = current;
+            if (length == walkLength)
+                return length;
+
+            int next = nextHop(previous, current, random);
+            if (next < 0) {
+                switch (noEdgeHandling) {
+                    case CUTOFF_ON_DISCONNECTED:
+                        return length;
+                    case EXCEPTION_ON_DISCONNECTED:
+                        throw new NoEdgesException("No more edges at vertex [" + current + "]");
+                    case SELF_LOOP_ON_DISCONNECTED:
+                        next = current;
+                        break;
+                    case RESTART_ON_DISCONNECTED:
+                        next = start;
+                        break;
+                    case PADDING_ON_DISCONNECTED:
+                        throw new UnsupportedOperationException("PADDING not implemented yet");
+                    default:
+                        throw new UnsupportedOperationException(
+                                        "NoEdgeHandling mode [" + noEdgeHandling + "] not implemented yet.");
+                }
+                previous = -1;
+            } else {
+                previous = current;
+            }
+            current = next;
+        }
+    }
+
+    /**
+     * Samples next vertex of the walk, -1 if current vertex has no edges
+     */
+    protected int nextHop(int previous, int current, Random random) {
+        if (previous < 0 || (returnParameter == 1.0 && inOutParameter == 1.0))
+            return sourceGraph.sampleNeighbour(current, random);
+
+        // node2vec: accept candidate with probability proportional to its search bias
+        double returnBias = 1.0 / returnParameter;
+        double outBias = 1.0 / inOutParameter;
+        double maxBias = Math.max(1.0, Math.max(returnBias, outBias));
+        while (true) {
+            int candidate = sourceGraph.sampleNeighbour(current, random);
+            if (candidate < 0)
+                return -1;
+
+            double bias;
+            if (candidate == previous)
+                bias = returnBias;
+            else if (sourceGraph.hasEdge(previous, candidate))
+                bias = 1.0;
+            else
+                bias = outBias;
+
+            if (random.nextDouble() * maxBias < bias)
+                return candidate;
+        }
+    }
+
+    public static class Builder<T extends SequenceElement> {
+        protected CSRGraph<T> sourceGraph;
+        protected int walkLength = 5;
+        protected NoEdgeHandling noEdgeHandling = NoEdgeHandling.RESTART_ON_DISCONNECTED;
+        protected long seed = 0;
+        protected int workers = Runtime.getRuntime().availableProcessors();
+        protected int walksPerVertex = 1;
+        protected int bufferSize = 1024;
+        protected double returnParameter = 1.0;
+        protected double inOutParameter = 1.0;
+
+        /**
+         * Builder constructor for CSRWalker
+         *
+         * @param graph source graph to be used for this walker
+         */
+        public Builder(@NonNull CSRGraph<T> graph) {
+            this.sourceGraph = graph;
+        }
+
+        /**
+         * This method specifies output sequence (walk) length
+         *
+         * @param walkLength
+         * @return
+         */
+        public Builder<T> setWalkLength(int walkLength) {
+            this.walkLength = walkLength;
+            return this;
+        }
+
+        /**
+         * This method defines walker behavior when it gets to node which has no next nodes available
+         * Default value: RESTART_ON_DISCONNECTED
+         *
+         * @param handling
+         * @return
+         */
+        public Builder<T> setNoEdgeHandling(@NonNull NoEdgeHandling handling) {
+            this.noEdgeHandling = handling;
+            return this;
+        }
+
+        /**
+         * This method specifies random seed.
+         *
+         * @param seed
+         * @return
+         */
+        public Builder<T> setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * This method specifies number of threads generating walks.
+         * Default value: number of available processors
+         *
+         * @param workers
+         * @return
+         */
+        public Builder<T> setWorkers(int workers) {
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * This method specifies number of walks started at each vertex per epoch.
+         * Default value: 1
+         *
+         * @param walksPerVertex
+         * @return
+         */
+        public Builder<T> setWalksPerVertex(int walksPerVertex) {
+            this.walksPerVertex = walksPerVertex;
+            return this;
+        }
+
+        /**
+         * This method specifies maximal number of generated walks waiting for consumption.
+         * Default value: 1024
+         *
+         * @param bufferSize
+         * @return
+         */
+        public Builder<T> setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * This method specifies node2vec return parameter p: values below 1.0 make walks more likely to step back
+         * to the previous vertex. Default value: 1.0
+         *
+         * @param p
+         * @return
+         */
+        public Builder<T> setReturnParameter(double p) {
+            this.returnParameter = p;
+            return this;
+        }
+
+        /**
+         * This method specifies node2vec in-out parameter q: values below 1.0 bias walks towards vertices
+         * further away from the previous vertex (DFS-like), values above 1.0 keep walks local (BFS-like).
+         * Default value: 1.0
+         *
+         * @param q
+         * @return
+         */
+        public Builder<T> setInOutParameter(double q) {
+            this.inOutParameter = q;
+            return this;
+        }
+
+        /**
+         * This method builds CSRWalker instance
+         * @return
+         */
+        public CSRWalker<T> build() {
+            Preconditions.checkArgument(walkLength > 0, "Walk length should be positive, got %s", walkLength);
+            Preconditions.checkArgument(workers > 0, "Number of workers should be positive, got %s", workers);
+            Preconditions.checkArgument(walksPerVertex > 0, "Number of walks per vertex should be positive, got %s", walksPerVertex);
+            Preconditions.checkArgument(bufferSize > 0, "Buffer size should be positive, got %s", bufferSize);
+            Preconditions.checkArgument(returnParameter > 0 && inOutParameter > 0,
+                            "node2vec parameters should be positive, got p=%s, q=%s", returnParameter, inOutParameter);
+
+            CSRWalker<T> walker = new CSRWalker<>();
+            walker.sourceGraph = this.sourceGraph;
+            walker.walkLength = this.walkLength;
+            walker.noEdgeHandling = this.noEdgeHandling;
+            walker.seed = this.seed;
+            walker.workers = this.workers;
+            walker.walksPerVertex = this.walksPerVertex;
+            walker.bufferSize = this.bufferSize;
+            walker.returnParameter = this.returnParameter;
+            walker.inOutParameter = this.inOutParameter;
+
+            walker.order = new int[sourceGraph.numVertices()];
+            for (int i = 0; i < walker.order.length; i++) {
+                walker.order[i] = i;
+            }
+            walker.totalWalks = (long) walker.order.length * walksPerVertex;
+            walker.rng = new Random(this.seed);
+
+            return walker;
+        }
+    }
+}
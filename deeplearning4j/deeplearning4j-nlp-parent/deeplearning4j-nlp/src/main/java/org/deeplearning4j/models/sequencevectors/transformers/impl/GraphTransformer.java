@@ -67,7 +67,7 @@ public class GraphTransformer<T extends SequenceElement> implements Iterable<Seq
         log.info("Transferring Huffman tree info to nodes...");
         for (int i = 0; i < nVertices; i++) {
             T element = sourceGraph.getVertex(i).getValue();
-            element.setElementFrequency(sourceGraph.getConnectedVertices(i).size());
+            element.setElementFrequency(sourceGraph.getVertexDegree(i));
 
             if (vocabCache != null)
                 vocabCache.addToken(element);
@@ -43,6 +43,7 @@ import org.deeplearning4j.text.sentenceiterator.SentenceIterator;
 import org.deeplearning4j.text.sentenceiterator.StreamLineIterator;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.TokenizerFactory;
+import org.nd4j.common.base.Preconditions;
 import org.nd4j.shade.jackson.core.JsonProcessingException;
 import org.nd4j.shade.jackson.databind.DeserializationFeature;
 import org.nd4j.shade.jackson.databind.ObjectMapper;
@@ -93,6 +94,18 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
             log.error("Please call setTokenizerFactory() prior to setSentenceIter() call.");
     }
 
+    /**
+     * This method updates already trained model with new sentences: new words are appended to the vocabulary,
+     * and training is performed over given sentences only.
+     *
+     * @param iterator SentenceIterator with new sentences
+     */
+    public void fitIncrementally(@NonNull SentenceIterator iterator) {
+        Preconditions.checkState(tokenizerFactory != null, "TokenizerFactory should be defined for incremental training");
+        setSentenceIterator(iterator);
+        fitIncrementally(this.iterator);
+    }
+
     /**
      * This method defines SequenceIterator instance, that will be used as training corpus source.
      * Main difference with other iterators here: it allows you to pass already tokenized Sequence<VocabWord> for training
@@ -646,6 +659,12 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
             return this;
         }
 
+        @Override
+        public Builder useShardedVocabCounting(boolean reallyUse) {
+            super.useShardedVocabCounting(reallyUse);
+            return this;
+        }
+
         /**
          * This method enables/disables Hierarchic softmax
          *
@@ -672,6 +691,12 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
             return this;
         }
 
+        @Override
+        public Builder useHogwild(boolean reallyUse) {
+            super.useHogwild(reallyUse);
+            return this;
+        }
+
         @Override
         public Builder intersectModel(@NonNull SequenceVectors vectors, boolean isLocked) {
             super.intersectModel(vectors, isLocked);
@@ -726,6 +751,7 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
             ret.variableWindows = this.variableWindows;
             ret.seed = this.seed;
             ret.enableScavenger = this.enableScavenger;
+            ret.shardedVocabCounting = this.shardedVocabCounting;
             ret.vocabLimit = this.vocabLimit;
 
             if (ret.unknownElement == null)
@@ -765,6 +791,7 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
                 this.configuration.setModelUtils(this.modelUtils.getClass().getCanonicalName());
                 this.configuration.setAllowParallelTokenization(this.allowParallelTokenization);
                 this.configuration.setPreciseMode(this.preciseMode);
+                this.configuration.setHogwild(this.hogwild);
 
             }
 
@@ -0,0 +1,579 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.word2vec.wordstore;
+
+import lombok.NonNull;
+import org.apache.commons.io.FileUtils;
+import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
+import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.nd4j.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Parallel element counter used by {@link VocabConstructor} for large corpora.
+ *
+ * Sequences are pulled from the iterator in batches and counted by worker threads, each into its own
+ * primitive open-addressing table, so there's no contention on a shared VocabCache. When a shard grows
+ * beyond its entries limit, or the heap is running low, its counts are sorted and spilled to disk.
+ * Once the iterator is exhausted, in-memory shards and spilled runs are merged in a single k-way pass,
+ * and minWordFrequency is applied to the merged counts only, so partial counts are never pruned.
+ */
+public class ShardedVocabCounter<T extends SequenceElement> {
+    protected static final Logger log = LoggerFactory.getLogger(ShardedVocabCounter.class);
+
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private final int numShards;
+    private final int batchSize;
+    private final long maxShardEntries;
+    private final File spillDirectory;
+    private final Set<String> stopWords;
+    private final boolean fetchLabels;
+    private final Function<String, T> elementFactory;
+
+    protected ShardedVocabCounter(Builder<T> builder) {
+        this.numShards = builder.numShards;
+        this.batchSize = builder.batchSize;
+        this.maxShardEntries = builder.maxShardEntries > 0 ? builder.maxShardEntries
+                        : Math.max(100000L, Runtime.getRuntime().maxMemory() / 4 / 256 / builder.numShards);
+        this.spillDirectory = builder.spillDirectory;
+        this.stopWords = builder.stopWords == null ? Collections.<String>emptySet() : new HashSet<>(builder.stopWords);
+        this.fetchLabels = builder.fetchLabels;
+        this.elementFactory = builder.elementFactory;
+    }
+
+    /**
+     * Counts all elements of the given iterator, and returns those with frequency at or above minWordFrequency
+     *
+     * @param iterator source of sequences, it's used from the calling thread only
+     * @param minWordFrequency elements below this frequency are dropped after merge, unless they're special or labels
+     * @param seqCount incremented for each sequence read
+     * @return vocabulary with element and sequence frequencies set, and total documents count
+     */
+    public AbstractCache<T> count(@NonNull SequenceIterator<T> iterator, int minWordFrequency,
+                                  @NonNull AtomicLong seqCount) {
+        final BlockingQueue<List<Sequence<T>>> queue = new ArrayBlockingQueue<>(numShards * 4);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Map<String, T> labels = Collections.synchronizedMap(new LinkedHashMap<String, T>());
+        final List<Shard<T>> shards = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        File spillDir = null;
+
+        try {
+            spillDir = Files.createTempDirectory(spillDirectory.toPath(), "vocab_spill").toFile();
+            for (int i = 0; i < numShards; i++) {
+                final Shard<T> shard = new Shard<>(spillDir, i);
+                shards.add(shard);
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            List<Sequence<T>> batch;
+                            while (!(batch = queue.take()).isEmpty()) {
+                                for (Sequence<T> sequence : batch)
+                                    countSequence(shard, sequence, labels);
+                            }
+                        } catch (Throwable t) {
+                            error.compareAndSet(null, t);
+                        }
+                    }
+                }, "ShardedVocabCounter " + i);
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
+            }
+
+            long startTime = System.currentTimeMillis();
+            long lastTime = startTime;
+            long lastSequences = seqCount.get();
+            long documents = 0;
+            List<Sequence<T>> batch = new ArrayList<>(batchSize);
+            iterator.reset();
+            while (iterator.hasMoreSequences()) {
+                batch.add(iterator.nextSequence());
+                documents++;
+                if (seqCount.incrementAndGet() % 100000 == 0) {
+                    long currentTime = System.currentTimeMillis();
+                    double seconds = Math.max(1, currentTime - lastTime) / 1000.0;
+                    log.info("Sequences checked: [{}]; Sequences/sec: {};", seqCount.get(),
+                                    String.format("%.2f", (seqCount.get() - lastSequences) / seconds));
+                    lastTime = currentTime;
+                    lastSequences = seqCount.get();
+                }
+
+                if (batch.size() >= batchSize) {
+                    submit(queue, batch, error);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+
+            if (!batch.isEmpty())
+                submit(queue, batch, error);
+            for (int i = 0; i < numShards; i++)
+                submit(queue, Collections.<Sequence<T>>emptyList(), error);
+            for (Thread thread : threads)
+                thread.join();
+            rethrow(error);
+
+            int spills = 0;
+            for (Shard<T> shard : shards)
+                spills += shard.spills.size();
+            log.debug("Counting finished in {} ms, merging {} shards and {} spilled runs...",
+                            System.currentTimeMillis() - startTime, shards.size(), spills);
+
+            AbstractCache<T> result = merge(shards, minWordFrequency);
+            for (T label : labels.values()) {
+                if (!result.containsWord(label.getLabel())) {
+                    label.setSpecial(true);
+                    label.markAsLabel(true);
+                    label.setElementFrequency(1);
+                    result.addToken(label);
+                }
+            }
+            result.incrementTotalDocCount(documents);
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            for (Thread thread : threads)
+                thread.interrupt();
+            if (spillDir != null)
+                FileUtils.deleteQuietly(spillDir);
+        }
+    }
+
+    private void submit(BlockingQueue<List<Sequence<T>>> queue, List<Sequence<T>> batch,
+                        AtomicReference<Throwable> error) throws InterruptedException {
+        // workers might be dead already, so we can't just block on put()
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS))
+            rethrow(error);
+        rethrow(error);
+    }
+
+    private static void rethrow(AtomicReference<Throwable> error) {
+        Throwable t = error.get();
+        if (t != null)
+            throw new RuntimeException("Vocabulary counting failed", t);
+    }
+
+    protected void countSequence(Shard<T> shard, Sequence<T> sequence, Map<String, T> labels) throws IOException {
+        if (fetchLabels && sequence.getSequenceLabels() != null) {
+            for (T label : sequence.getSequenceLabels()) {
+                if (!labels.containsKey(label.getLabel()))
+                    labels.put(label.getLabel(), label);
+            }
+        }
+
+        int document = shard.nextDocument();
+        for (T element : sequence.getElements()) {
+            String token = element.getLabel();
+            if (token == null || token.isEmpty() || stopWords.contains(token))
+                continue;
+            shard.add(token, element, document);
+        }
+
+        // spilling only between sequences, so sequence counts stay exact
+        if (shard.size >= maxShardEntries || (shard.size > INITIAL_CAPACITY / 2 && isMemoryShort()))
+            shard.spill();
+    }
+
+    private static boolean isMemoryShort() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return runtime.maxMemory() - used < runtime.maxMemory() / 10;
+    }
+
+    protected AbstractCache<T> merge(List<Shard<T>> shards, int minWordFrequency) throws IOException {
+        PriorityQueue<Run<T>> heap = new PriorityQueue<>(Math.max(1, shards.size()), new Comparator<Run<T>>() {
+            @Override
+            public int compare(Run<T> o1, Run<T> o2) {
+                return o1.label.compareTo(o2.label);
+            }
+        });
+
+        List<Run<T>> runs = new ArrayList<>();
+        try {
+            for (Shard<T> shard : shards) {
+                runs.add(new MemoryRun<>(shard));
+                for (File file : shard.spills)
+                    runs.add(new FileRun<T>(file));
+            }
+            for (Run<T> run : runs) {
+                if (run.advance())
+                    heap.add(run);
+            }
+
+            AbstractCache<T> result = new AbstractCache.Builder<T>().build();
+            while (!heap.isEmpty()) {
+                Run<T> first = heap.poll();
+                String label = first.label;
+                long frequency = first.frequency;
+                long sequences = first.sequences;
+                T element = first.element;
+                if (first.advance())
+                    heap.add(first);
+
+                while (!heap.isEmpty() && heap.peek().label.equals(label)) {
+                    Run<T> run = heap.poll();
+                    frequency += run.frequency;
+                    sequences += run.sequences;
+                    if (element == null)
+                        element = run.element;
+                    if (run.advance())
+                        heap.add(run);
+                }
+
+                boolean special = element != null && (element.isSpecial() || element.isLabel());
+                if (minWordFrequency > 0 && frequency < minWordFrequency && !special)
+                    continue;
+
+                if (element == null)
+                    element = createElement(label, shards);
+                element.setElementFrequency(frequency);
+                element.setSequencesCount(sequences);
+                result.addToken(element);
+            }
+
+            return result;
+        } finally {
+            for (Run<T> run : runs)
+                run.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T createElement(String label, List<Shard<T>> shards) {
+        if (elementFactory != null)
+            return elementFactory.apply(label);
+
+        for (Shard<T> shard : shards) {
+            if (shard.prototype != null) {
+                Preconditions.checkState(shard.prototype instanceof VocabWord,
+                                "Element [%s] was spilled to disk and can't be restored: elementFactory is required for %s",
+                                label, shard.prototype.getClass().getSimpleName());
+                break;
+            }
+        }
+        return (T) new VocabWord(1.0, label);
+    }
+
+    /**
+     * Per-thread counts, open addressing over primitive arrays
+     */
+    protected static class Shard<T extends SequenceElement> {
+        private final File directory;
+        private final int id;
+
+        private String[] keys;
+        private long[] frequencies;
+        private long[] sequences;
+        private int[] lastDocument;
+        private Object[] elements;
+        private int size;
+        private int document;
+        private T prototype;
+        private final List<File> spills = new ArrayList<>();
+
+        protected Shard(File directory, int id) {
+            this.directory = directory;
+            this.id = id;
+            allocate(INITIAL_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            keys = new String[capacity];
+            frequencies = new long[capacity];
+            sequences = new long[capacity];
+            lastDocument = new int[capacity];
+            elements = new Object[capacity];
+            size = 0;
+        }
+
+        protected int nextDocument() {
+            return ++document;
+        }
+
+        private int slot(String token) {
+            int mask = keys.length - 1;
+            int h = token.hashCode();
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (keys[slot] != null && !keys[slot].equals(token))
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        protected void add(String token, T element, int document) {
+            int slot = slot(token);
+            if (keys[slot] == null) {
+                if (needsGrowth()) {
+                    grow();
+                    slot = slot(token);
+                }
+                keys[slot] = token;
+                elements[slot] = element;
+                size++;
+                if (prototype == null)
+                    prototype = element;
+            }
+
+            frequencies[slot]++;
+            if (lastDocument[slot] != document) {
+                lastDocument[slot] = document;
+                sequences[slot]++;
+            }
+        }
+
+        private boolean needsGrowth() {
+            return size + 1 > keys.length * 3 / 4;
+        }
+
+        private void grow() {
+            String[] oldKeys = keys;
+            long[] oldFrequencies = frequencies;
+            long[] oldSequences = sequences;
+            int[] oldLastDocument = lastDocument;
+            Object[] oldElements = elements;
+
+            allocate(oldKeys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null)
+                    continue;
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                frequencies[slot] = oldFrequencies[i];
+                sequences[slot] = oldSequences[i];
+                lastDocument[slot] = oldLastDocument[i];
+                elements[slot] = oldElements[i];
+                size++;
+            }
+        }
+
+        protected int[] sortedSlots() {
+            // keys are sorted directly, and their slots looked up again (string hash codes are cached), so no
+            // boxed index array or comparator indirection is needed
+            String[] sorted = new String[size];
+            for (int i = 0, j = 0; i < keys.length; i++) {
+                if (keys[i] != null)
+                    sorted[j++] = keys[i];
+            }
+            Arrays.sort(sorted);
+
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++)
+                result[i] = slot(sorted[i]);
+            return result;
+        }
+
+        protected void spill() throws IOException {
+            File file = new File(directory, "shard_" + id + "_" + spills.size() + ".bin");
+            int[] slots = sortedSlots();
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                dos.writeInt(slots.length);
+                for (int slot : slots) {
+                    byte[] bytes = keys[slot].getBytes(StandardCharsets.UTF_8);
+                    dos.writeInt(bytes.length);
+                    dos.write(bytes);
+                    dos.writeLong(frequencies[slot]);
+                    dos.writeLong(sequences[slot]);
+                }
+            }
+            log.debug("Shard [{}] spilled {} entries to {}", id, slots.length, file.getName());
+
+            spills.add(file);
+            allocate(INITIAL_CAPACITY);
+        }
+    }
+
+    /**
+     * Sorted stream of partial counts
+     */
+    protected abstract static class Run<T extends SequenceElement> implements Closeable {
+        protected String label;
+        protected long frequency;
+        protected long sequences;
+        protected T element;
+
+        protected abstract boolean advance() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+            // no-op
+        }
+    }
+
+    protected static class MemoryRun<T extends SequenceElement> extends Run<T> {
+        private final Shard<T> shard;
+        private final int[] slots;
+        private int position;
+
+        protected MemoryRun(Shard<T> shard) {
+            this.shard = shard;
+            this.slots = shard.sortedSlots();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected boolean advance() {
+            if (position >= slots.length)
+                return false;
+            int slot = slots[position++];
+            label = shard.keys[slot];
+            frequency = shard.frequencies[slot];
+            sequences = shard.sequences[slot];
+            element = (T) shard.elements[slot];
+            return true;
+        }
+    }
+
+    protected static class FileRun<T extends SequenceElement> extends Run<T> {
+        private final DataInputStream dis;
+        private int remaining;
+
+        protected FileRun(File file) throws IOException {
+            this.dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            this.remaining = dis.readInt();
+        }
+
+        @Override
+        protected boolean advance() throws IOException {
+            if (remaining == 0)
+                return false;
+            remaining--;
+            byte[] bytes = new byte[dis.readInt()];
+            dis.readFully(bytes);
+            label = new String(bytes, StandardCharsets.UTF_8);
+            frequency = dis.readLong();
+            sequences = dis.readLong();
+            element = null;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            dis.close();
+        }
+    }
+
+    public static class Builder<T extends SequenceElement> {
+        private int numShards = Math.max(2, Runtime.getRuntime().availableProcessors());
+        private int batchSize = 256;
+        private long maxShardEntries = 0;
+        private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+        private Collection<String> stopWords;
+        private boolean fetchLabels = false;
+        private Function<String, T> elementFactory;
+
+        public Builder() {
+
+        }
+
+        /**
+         * Number of counting threads, each one owns its own shard
+         *
+         * @param numShards
+         * @return
+         */
+        public Builder<T> numShards(int numShards) {
+            Preconditions.checkArgument(numShards > 0, "Number of shards must be positive, got %s", numShards);
+            this.numShards = numShards;
+            return this;
+        }
+
+        /**
+         * Number of sequences handed to a counting thread at once
+         *
+         * @param batchSize
+         * @return
+         */
+        public Builder<T> batchSize(int batchSize) {
+            Preconditions.checkArgument(batchSize > 0, "Batch size must be positive, got %s", batchSize);
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Number of distinct elements a shard may hold before it's spilled to disk.
+         * Default value is derived from max heap size.
+         *
+         * @param maxShardEntries
+         * @return
+         */
+        public Builder<T> maxShardEntries(long maxShardEntries) {
+            this.maxShardEntries = maxShardEntries;
+            return this;
+        }
+
+        /**
+         * Directory for spilled partial counts, java.io.tmpdir by default
+         *
+         * @param spillDirectory
+         * @return
+         */
+        public Builder<T> spillDirectory(@NonNull File spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        public Builder<T> stopWords(Collection<String> stopWords) {
+            this.stopWords = stopWords;
+            return this;
+        }
+
+        public Builder<T> fetchLabels(boolean reallyFetch) {
+            this.fetchLabels = reallyFetch;
+            return this;
+        }
+
+        /**
+         * Factory used to re-create elements that were spilled to disk.
+         * Not required for VocabWord.
+         *
+         * @param elementFactory
+         * @return
+         */
+        public Builder<T> elementFactory(Function<String, T> elementFactory) {
+            this.elementFactory = elementFactory;
+            return this;
+        }
+
+        public ShardedVocabCounter<T> build() {
+            return new ShardedVocabCounter<>(this);
+        }
+    }
+}
@@ -36,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.threadly.concurrent.PriorityScheduler;
 
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -54,6 +55,10 @@ public class VocabConstructor<T extends SequenceElement> {
     private T unk;
     private boolean allowParallelBuilder = true;
     private boolean lockf = false;
+    private boolean shardedCounting = false;
+    private int numShards;
+    private long maxShardEntries;
+    private File spillDirectory;
 
     protected static final Logger log = LoggerFactory.getLogger(VocabConstructor.class);
 
@@ -288,6 +293,17 @@ public class VocabConstructor<T extends SequenceElement> {
             log.debug("Target vocab size before building: [" + cache.numWords() + "]");
             cnt++;
 
+            if (shardedCounting && index == null) {
+                ShardedVocabCounter<T> counter = new ShardedVocabCounter.Builder<T>().numShards(numShards)
+                                .maxShardEntries(maxShardEntries).spillDirectory(spillDirectory)
+                                .stopWords(stopWords).fetchLabels(fetchLabels).build();
+                AbstractCache<T> counted = counter.count(iterator, source.getMinWordFrequency(), seqCount);
+                log.debug("Vocab size after truncation: [" + counted.numWords() + "],  NumWords: ["
+                                + counted.totalWordOccurrences() + "], sequences parsed: [" + seqCount.get() + "]");
+                topHolder.importVocabulary(counted);
+                continue;
+            }
+
             AbstractCache<T> tempHolder = new AbstractCache.Builder<T>().build();
 
             int sequences = 0;
@@ -451,6 +467,10 @@ public class VocabConstructor<T extends SequenceElement> {
         private T unk;
         private boolean allowParallelBuilder = true;
         private boolean lockf = false;
+        private boolean shardedCounting = false;
+        private int numShards = Math.max(2, Runtime.getRuntime().availableProcessors());
+        private long maxShardEntries = 0;
+        private File spillDirectory = new File(System.getProperty("java.io.tmpdir"));
 
         public Builder() {
 
@@ -558,6 +578,54 @@ public class VocabConstructor<T extends SequenceElement> {
             return this;
         }
 
+        /**
+         * If set to true, elements will be counted by {@link ShardedVocabCounter}: each thread counts into its own
+         * shard, shards are spilled to disk if memory is short, and merged before minWordFrequency is applied.
+         *
+         * PLEASE NOTE: InvertedIndex isn't filled in this mode, so it's ignored if index is set.
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder<T> useShardedCounting(boolean reallyUse) {
+            this.shardedCounting = reallyUse;
+            return this;
+        }
+
+        /**
+         * Number of counting threads for sharded counting
+         *
+         * @param numShards
+         * @return
+         */
+        public Builder<T> setNumShards(int numShards) {
+            this.numShards = numShards;
+            return this;
+        }
+
+        /**
+         * Number of distinct elements per shard before it's spilled to disk, for sharded counting.
+         * By default it's derived from max heap size.
+         *
+         * @param maxShardEntries
+         * @return
+         */
+        public Builder<T> setMaxShardEntries(long maxShardEntries) {
+            this.maxShardEntries = maxShardEntries;
+            return this;
+        }
+
+        /**
+         * Directory used for spilled shards, java.io.tmpdir by default
+         *
+         * @param spillDirectory
+         * @return
+         */
+        public Builder<T> setSpillDirectory(@NonNull File spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
         public VocabConstructor<T> build() {
             VocabConstructor<T> constructor = new VocabConstructor<>();
             constructor.sources = this.sources;
@@ -571,6 +639,10 @@ public class VocabConstructor<T extends SequenceElement> {
             constructor.unk = this.unk;
             constructor.allowParallelBuilder = this.allowParallelBuilder;
             constructor.lockf = this.lockf;
+            constructor.shardedCounting = this.shardedCounting;
+            constructor.numShards = this.numShards;
+            constructor.maxShardEntries = this.maxShardEntries;
+            constructor.spillDirectory = this.spillDirectory;
 
             return constructor;
         }
@@ -0,0 +1,928 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.word2vec.wordstore.inmemory;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * VocabCache implementation that stores the vocabulary in columnar primitive arrays, instead of maps of
+ * {@link VocabWord} objects as done in {@link AbstractCache}.<br>
+ * Frequencies, sequence counts, Huffman indexes, codes and points of all elements are stored in primitive arrays
+ * indexed by an internal element id; labels are stored once, and looked up using open addressing hash tables
+ * (by label and by storage id). This avoids per-element object headers, boxed codes/points and map entries, which
+ * dominate the heap use (and GC time) of very large vocabularies.<br>
+ * Elements returned by this cache ({@link #wordFor(String)}, {@link #vocabWords()} etc.) are lightweight views
+ * that read from and write to the underlying arrays - i.e., changes such as those made by
+ * {@link org.deeplearning4j.models.word2vec.Huffman} are applied to the cache. Elements passed to
+ * {@link #addToken(VocabWord)} are copied: later changes to that object are not reflected in the cache.<br>
+ * Lookups are safe to perform concurrently with each other and with updates; updates are synchronized.
+ */
+@Slf4j
+public class PrimitiveVocabCache implements VocabCache<VocabWord> {
+    private static final long serialVersionUID = 4286497367271253468L;
+
+    /**
+     * Maximum number of Huffman codes per element: codes are stored as the bits of a long
+     */
+    public static final int MAX_CODES = 64;
+    /**
+     * Maximum number of Huffman points per element
+     */
+    public static final int MAX_POINTS = Short.MAX_VALUE;
+
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+
+    private static final byte FLAG_REMOVED = 1;
+    private static final byte FLAG_SPECIAL = 2;
+    private static final byte FLAG_LABEL = 4;
+
+    //Columnar element storage, indexed by element id
+    private String[] labels;
+    private long[] storageIds;
+    private double[] frequencies;
+    private long[] sequenceCounts;
+    private int[] indexes;
+    private byte[] flags;
+    private short[] codeLengths;
+    private long[] codes;
+    private byte[] codeCounts;
+    private int[] pointOffsets;
+    private short[] pointCounts;
+    private short[] pointCapacities;
+    private int[] points = new int[0];
+    private int pointsUsed = 0;
+
+    //Open addressing hash tables: slot holds element id + 1, EMPTY or DELETED
+    private int[] labelTable;
+    private int labelTableFill = 0;
+    private int[] storageIdTable;
+    private int storageIdTableFill = 0;
+
+    //Huffman index -> element id, -1 if not assigned
+    private int[] indexTable = new int[0];
+
+    //Number of element ids allocated, written last on insertion
+    private volatile int size = 0;
+    private volatile int numRemoved = 0;
+
+    private final AtomicLong documentsCounter = new AtomicLong(0);
+    private final AtomicLong totalWordCount = new AtomicLong(0);
+
+    public PrimitiveVocabCache() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedElements Expected number of elements; used to size the arrays initially
+     */
+    public PrimitiveVocabCache(int expectedElements) {
+        int capacity = Math.max(16, expectedElements);
+        labels = new String[capacity];
+        storageIds = new long[capacity];
+        frequencies = new double[capacity];
+        sequenceCounts = new long[capacity];
+        indexes = new int[capacity];
+        flags = new byte[capacity];
+        codeLengths = new short[capacity];
+        codes = new long[capacity];
+        codeCounts = new byte[capacity];
+        pointOffsets = new int[capacity];
+        pointCounts = new short[capacity];
+        pointCapacities = new short[capacity];
+        int tableSize = Integer.highestOneBit(capacity - 1) << 2;
+        labelTable = new int[tableSize];
+        storageIdTable = new int[tableSize];
+    }
+
+    @Override
+    public void loadVocab() {
+        // no-op
+    }
+
+    @Override
+    public boolean vocabExists() {
+        return numWords() > 0;
+    }
+
+    @Override
+    public void saveVocab() {
+        // no-op
+    }
+
+    @Override
+    public Collection<String> words() {
+        return new ElementCollection<String>() {
+            @Override
+            protected boolean skip(int id) {
+                return labels[id] == null || isRemoved(id);
+            }
+
+            @Override
+            protected String get(int id) {
+                return labels[id];
+            }
+        };
+    }
+
+    @Override
+    public void incrementWordCount(String word) {
+        incrementWordCount(word, 1);
+    }
+
+    @Override
+    public void incrementWordCount(String word, int increment) {
+        int id = find(word);
+        if (id >= 0) {
+            increaseFrequency(id, increment);
+            totalWordCount.addAndGet(increment);
+        }
+    }
+
+    @Override
+    public int wordFrequency(@NonNull String word) {
+        int id = find(word);
+        return id >= 0 ? (int) frequencies[id] : 0;
+    }
+
+    @Override
+    public boolean containsWord(String word) {
+        return find(word) >= 0;
+    }
+
+    @Override
+    public String wordAtIndex(int index) {
+        int id = idAtIndex(index);
+        return id >= 0 ? labels[id] : null;
+    }
+
+    @Override
+    public VocabWord elementAtIndex(int index) {
+        int id = idAtIndex(index);
+        return id >= 0 ? element(id) : null;
+    }
+
+    /**
+     * Returns Huffman index for specified label
+     *
+     * @param label the label to get index for
+     * @return >=0 if label exists, -1 if Huffman tree wasn't built yet, -2 if specified label wasn't found
+     */
+    @Override
+    public int indexOf(String label) {
+        int id = find(label);
+        return id >= 0 ? indexes[id] : -2;
+    }
+
+    @Override
+    public Collection<VocabWord> vocabWords() {
+        return new ElementCollection<VocabWord>() {
+            @Override
+            protected boolean skip(int id) {
+                return isRemoved(id);
+            }
+
+            @Override
+            protected VocabWord get(int id) {
+                return element(id);
+            }
+        };
+    }
+
+    @Override
+    public long totalWordOccurrences() {
+        return totalWordCount.get();
+    }
+
+    public void setTotalWordOccurences(long value) {
+        totalWordCount.set(value);
+    }
+
+    @Override
+    public VocabWord wordFor(@NonNull String word) {
+        int id = find(word);
+        return id >= 0 ? element(id) : null;
+    }
+
+    @Override
+    public VocabWord wordFor(long id) {
+        int elementId = findByStorageId(id);
+        return elementId >= 0 ? element(elementId) : null;
+    }
+
+    @Override
+    public synchronized void addWordToIndex(int index, String word) {
+        if (index >= 0) {
+            int id = find(word);
+            if (id >= 0) {
+                putIndex(index, id);
+                indexes[id] = index;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void addWordToIndex(int index, long elementId) {
+        if (index >= 0) {
+            int id = findByStorageId(elementId);
+            if (id >= 0)
+                putIndex(index, id);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void putVocabWord(String word) {
+        if (!containsWord(word))
+            throw new IllegalStateException("Specified label is not present in vocabulary");
+    }
+
+    @Override
+    public int numWords() {
+        return size - numRemoved;
+    }
+
+    @Override
+    public int docAppearedIn(String word) {
+        int id = find(word);
+        return id >= 0 ? (int) sequenceCounts[id] : -1;
+    }
+
+    @Override
+    public void incrementDocCount(String word, long howMuch) {
+        int id = find(word);
+        if (id >= 0)
+            addSequencesCount(id, howMuch);
+    }
+
+    @Override
+    public void setCountForDoc(String word, long count) {
+        int id = find(word);
+        if (id >= 0)
+            setSequencesCount(id, count);
+    }
+
+    @Override
+    public long totalNumberOfDocs() {
+        return documentsCounter.get();
+    }
+
+    @Override
+    public void incrementTotalDocCount() {
+        documentsCounter.incrementAndGet();
+    }
+
+    @Override
+    public void incrementTotalDocCount(long by) {
+        documentsCounter.addAndGet(by);
+    }
+
+    public void setTotalDocCount(long by) {
+        documentsCounter.set(by);
+    }
+
+    @Override
+    public Collection<VocabWord> tokens() {
+        return vocabWords();
+    }
+
+    /**
+     * Adds the specified element to the vocabulary. If an element with the same storage id already exists,
+     * its frequency and sequences count are increased instead. The element is copied.
+     *
+     * @param element the word to add
+     * @return true if the element was added, false if an existing element was updated
+     */
+    @Override
+    public synchronized boolean addToken(@NonNull VocabWord element) {
+        long storageId = element.getStorageId();
+        int id = findByStorageId(storageId);
+        boolean added = id < 0;
+        if (added) {
+            id = insert(element.getLabel(), storageId);
+            frequencies[id] = element.getElementFrequency();
+            sequenceCounts[id] = element.getSequencesCount();
+            indexes[id] = element.getIndex();
+            flags[id] = (byte) ((element.isSpecial() ? FLAG_SPECIAL : 0) | (element.isLabel() ? FLAG_LABEL : 0));
+            codeLengths[id] = (short) element.getCodeLength();
+            setCodes(id, element.getCodes());
+            setPoints(id, element.getPoints());
+        } else {
+            sequenceCounts[id] += element.getSequencesCount();
+            frequencies[id] += (int) element.getElementFrequency();
+        }
+        totalWordCount.addAndGet((long) frequencies[id]);
+        return added;
+    }
+
+    @Override
+    public VocabWord tokenFor(String word) {
+        return wordFor(word);
+    }
+
+    @Override
+    public VocabWord tokenFor(long id) {
+        return wordFor(id);
+    }
+
+    @Override
+    public boolean hasToken(String token) {
+        return containsWord(token);
+    }
+
+    @Override
+    public void importVocabulary(@NonNull VocabCache<VocabWord> vocabCache) {
+        boolean added = false;
+        for (VocabWord element : vocabCache.vocabWords()) {
+            if (addToken(element))
+                added = true;
+        }
+        if (added)
+            documentsCounter.addAndGet(vocabCache.totalNumberOfDocs());
+    }
+
+    @Override
+    public synchronized void updateWordsOccurrences() {
+        long total = 0;
+        for (int id = 0; id < size; id++) {
+            if (!isRemoved(id) && frequencies[id] > 0)
+                total += (long) frequencies[id];
+        }
+        totalWordCount.set(total);
+        log.info("Updated counter: [" + total + "]");
+    }
+
+    @Override
+    public synchronized void removeElement(String label) {
+        int id = find(label);
+        if (id < 0)
+            throw new IllegalStateException("Can't get label: '" + label + "'");
+
+        totalWordCount.getAndAdd((long) frequencies[id] * -1);
+        int index = indexes[id];
+        if (index >= 0 && index < indexTable.length && indexTable[index] == id)
+            indexTable[index] = -1;
+        delete(labelTable, hash(label), id);
+        delete(storageIdTable, hash(storageIds[id]), id);
+        labels[id] = null;
+        flags[id] |= FLAG_REMOVED;
+        numRemoved++;
+    }
+
+    @Override
+    public void removeElement(@NonNull VocabWord element) {
+        removeElement(element.getLabel());
+    }
+
+    private VocabWord element(int id) {
+        return new Element(this, id);
+    }
+
+    private boolean isRemoved(int id) {
+        return (flags[id] & FLAG_REMOVED) != 0;
+    }
+
+    private int find(String label) {
+        if (label == null)
+            return -1;
+        int n = size;
+        int[] table = labelTable;
+        String[] l = labels;
+        int mask = table.length - 1;
+        int slot = hash(label) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int entry = table[slot];
+            if (entry == EMPTY)
+                return -1;
+            int id = entry - 1;
+            if (entry != DELETED && id < n && id < l.length && label.equals(l[id]))
+                return id;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int findByStorageId(long storageId) {
+        int n = size;
+        int[] table = storageIdTable;
+        long[] ids = storageIds;
+        byte[] f = flags;
+        int mask = table.length - 1;
+        int slot = hash(storageId) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int entry = table[slot];
+            if (entry == EMPTY)
+                return -1;
+            int id = entry - 1;
+            if (entry != DELETED && id < n && id < ids.length && ids[id] == storageId && (f[id] & FLAG_REMOVED) == 0)
+                return id;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int idAtIndex(int index) {
+        int[] table = indexTable;
+        if (index < 0 || index >= table.length)
+            return -1;
+        return table[index];
+    }
+
+    private int insert(String label, long storageId) {
+        int id = size;
+        ensureCapacity(id + 1);
+        labels[id] = label;
+        storageIds[id] = storageId;
+        indexes[id] = -1;
+        pointOffsets[id] = -1;
+
+        if (label != null) {
+            if (2L * (labelTableFill + 1) > labelTable.length)
+                labelTable = rehash(labelTable, true);
+            if (put(labelTable, hash(label), id))
+                labelTableFill++;
+        }
+        if (2L * (storageIdTableFill + 1) > storageIdTable.length)
+            storageIdTable = rehash(storageIdTable, false);
+        if (put(storageIdTable, hash(storageId), id))
+            storageIdTableFill++;
+
+        //Written last: entries with id >= size are ignored by concurrent lookups
+        size = id + 1;
+        return id;
+    }
+
+    /**
+     * @return true if a previously empty slot was used
+     */
+    private static boolean put(int[] table, int hash, int id) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != EMPTY && table[slot] != DELETED)
+            slot = (slot + 1) & mask;
+        boolean wasEmpty = table[slot] == EMPTY;
+        table[slot] = id + 1;
+        return wasEmpty;
+    }
+
+    private static void delete(int[] table, int hash, int id) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != EMPTY) {
+            if (table[slot] == id + 1) {
+                table[slot] = DELETED;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int[] rehash(int[] table, boolean byLabel) {
+        //Grow if live entries would use more than a quarter of the table, otherwise just drop the deleted entries
+        int live = size - numRemoved + 1;
+        int capacity = 4L * live > table.length ? 2 * table.length : table.length;
+        int[] newTable = new int[capacity];
+        int fill = 0;
+        for (int id = 0; id < size; id++) {
+            if (isRemoved(id))
+                continue;
+            if (byLabel) {
+                if (labels[id] != null) {
+                    put(newTable, hash(labels[id]), id);
+                    fill++;
+                }
+            } else {
+                put(newTable, hash(storageIds[id]), id);
+                fill++;
+            }
+        }
+        if (byLabel)
+            labelTableFill = fill;
+        else
+            storageIdTableFill = fill;
+        return newTable;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= labels.length)
+            return;
+        long grown = (long) labels.length + (labels.length >> 1);
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, grown));
+        labels = Arrays.copyOf(labels, capacity);
+        storageIds = Arrays.copyOf(storageIds, capacity);
+        frequencies = Arrays.copyOf(frequencies, capacity);
+        sequenceCounts = Arrays.copyOf(sequenceCounts, capacity);
+        indexes = Arrays.copyOf(indexes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        codeLengths = Arrays.copyOf(codeLengths, capacity);
+        codes = Arrays.copyOf(codes, capacity);
+        codeCounts = Arrays.copyOf(codeCounts, capacity);
+        pointOffsets = Arrays.copyOf(pointOffsets, capacity);
+        pointCounts = Arrays.copyOf(pointCounts, capacity);
+        pointCapacities = Arrays.copyOf(pointCapacities, capacity);
+    }
+
+    private void putIndex(int index, int id) {
+        if (index >= indexTable.length) {
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(index + 1L, 2L * indexTable.length));
+            int[] newTable = Arrays.copyOf(indexTable, capacity);
+            Arrays.fill(newTable, indexTable.length, capacity, -1);
+            indexTable = newTable;
+        }
+        indexTable[index] = id;
+    }
+
+    private static int hash(String label) {
+        int h = label.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int hash(long storageId) {
+        long h = storageId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    //Element updates, used by the element views
+
+    private synchronized void setFrequency(int id, double value) {
+        frequencies[id] = value;
+    }
+
+    private synchronized void increaseFrequency(int id, int by) {
+        frequencies[id] += by;
+    }
+
+    private synchronized void setSequencesCount(int id, long count) {
+        sequenceCounts[id] = count;
+    }
+
+    private synchronized void addSequencesCount(int id, long count) {
+        sequenceCounts[id] += count;
+    }
+
+    private synchronized void setIndex(int id, int index) {
+        indexes[id] = index;
+    }
+
+    private synchronized void setFlag(int id, byte flag, boolean value) {
+        flags[id] = (byte) (value ? flags[id] | flag : flags[id] & ~flag);
+    }
+
+    /**
+     * Sets the code length, and extends the codes and points (with zeros) to at least that length, as per
+     * {@link SequenceElement#setCodeLength(short)}
+     */
+    private synchronized void setCodeLength(int id, short codeLength) {
+        codeLengths[id] = codeLength;
+        if (codeCounts[id] < codeLength)
+            resizeCodes(id, codeLength);
+        if (pointCounts[id] < codeLength) {
+            //Reserve one extra point: Huffman appends a point after setting the code length
+            ensurePointCapacity(id, codeLength + 1);
+            pointCounts[id] = codeLength;
+        }
+    }
+
+    private void resizeCodes(int id, int count) {
+        if (count > MAX_CODES)
+            throw new IllegalStateException("Element can have at most " + MAX_CODES + " codes, got " + count);
+        if (count < MAX_CODES)
+            codes[id] &= (1L << count) - 1;
+        codeCounts[id] = (byte) count;
+    }
+
+    private synchronized void setCode(int id, int position, byte code) {
+        if (code != 0 && code != 1)
+            throw new IllegalArgumentException("Huffman codes must be 0 or 1, got " + code);
+        if (position >= codeCounts[id])
+            resizeCodes(id, position + 1);
+        codes[id] = code == 0 ? codes[id] & ~(1L << position) : codes[id] | (1L << position);
+    }
+
+    private synchronized void setCodes(int id, List<Byte> values) {
+        resizeCodes(id, 0);
+        resizeCodes(id, values == null ? 0 : values.size());
+        for (int i = 0; values != null && i < values.size(); i++)
+            setCode(id, i, values.get(i));
+    }
+
+    private synchronized void ensurePointCapacity(int id, int capacity) {
+        if (capacity > MAX_POINTS)
+            throw new IllegalStateException("Element can have at most " + MAX_POINTS + " points, got " + capacity);
+        if (pointCapacities[id] >= capacity)
+            return;
+        //Exact capacity on first allocation (all points are usually set at once), doubling afterwards
+        int newCapacity = pointCapacities[id] == 0 ? capacity : Math.min(MAX_POINTS, Math.max(capacity, 2 * pointCapacities[id]));
+        if ((long) pointsUsed + newCapacity > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Too many Huffman points in vocabulary");
+        if (pointsUsed + newCapacity > points.length) {
+            long grown = Math.max((long) pointsUsed + newCapacity, 2L * points.length);
+            points = Arrays.copyOf(points, (int) Math.min(Integer.MAX_VALUE - 8, grown));
+        }
+        if (pointCounts[id] > 0)
+            System.arraycopy(points, pointOffsets[id], points, pointsUsed, pointCounts[id]);
+        pointOffsets[id] = pointsUsed;
+        pointCapacities[id] = (short) newCapacity;
+        pointsUsed += newCapacity;
+    }
+
+    private synchronized void setPoint(int id, int position, int point) {
+        if (position >= pointCounts[id]) {
+            ensurePointCapacity(id, position + 1);
+            Arrays.fill(points, pointOffsets[id] + pointCounts[id], pointOffsets[id] + position, 0);
+            pointCounts[id] = (short) (position + 1);
+        }
+        points[pointOffsets[id] + position] = point;
+    }
+
+    private synchronized void setPoints(int id, List<Integer> values) {
+        pointCounts[id] = 0;
+        for (int i = 0; values != null && i < values.size(); i++)
+            setPoint(id, i, values.get(i));
+    }
+
+    private int getPoint(int id, int position) {
+        return points[pointOffsets[id] + position];
+    }
+
+    private abstract class ElementCollection<E> extends AbstractCollection<E> {
+
+        protected abstract boolean skip(int id);
+
+        protected abstract E get(int id);
+
+        @Override
+        public int size() {
+            return numWords();
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            final int n = size;
+            return new Iterator<E>() {
+                private int next = advance(0);
+
+                private int advance(int from) {
+                    while (from < n && skip(from))
+                        from++;
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < n;
+                }
+
+                @Override
+                public E next() {
+                    if (next >= n)
+                        throw new NoSuchElementException();
+                    int id = next;
+                    next = advance(id + 1);
+                    return get(id);
+                }
+            };
+        }
+    }
+
+    /**
+     * View of a single element of the cache. All getters and setters read from and write to the cache arrays.
+     * Serialized as a plain {@link VocabWord} holding a copy of the element.
+     */
+    public static class Element extends VocabWord {
+        private static final long serialVersionUID = -2150187234581254720L;
+
+        private final transient PrimitiveVocabCache cache;
+        private final transient int id;
+
+        private Element(PrimitiveVocabCache cache, int id) {
+            this.cache = cache;
+            this.id = id;
+            setWord(cache.labels[id]);
+            this.storageId = cache.storageIds[id];
+        }
+
+        @Override
+        public double getElementFrequency() {
+            return cache.frequencies[id];
+        }
+
+        @Override
+        public void setElementFrequency(long value) {
+            cache.setFrequency(id, value);
+        }
+
+        @Override
+        public void increaseElementFrequency(int by) {
+            cache.increaseFrequency(id, by);
+        }
+
+        @Override
+        public long getSequencesCount() {
+            return cache.sequenceCounts[id];
+        }
+
+        @Override
+        public void setSequencesCount(long count) {
+            cache.setSequencesCount(id, count);
+        }
+
+        @Override
+        public void incrementSequencesCount() {
+            cache.addSequencesCount(id, 1);
+        }
+
+        @Override
+        public void incrementSequencesCount(long count) {
+            cache.addSequencesCount(id, count);
+        }
+
+        @Override
+        public int getIndex() {
+            return cache.indexes[id];
+        }
+
+        @Override
+        public void setIndex(int index) {
+            cache.setIndex(id, index);
+        }
+
+        @Override
+        public boolean isSpecial() {
+            return (cache.flags[id] & FLAG_SPECIAL) != 0;
+        }
+
+        @Override
+        public void setSpecial(boolean special) {
+            cache.setFlag(id, FLAG_SPECIAL, special);
+        }
+
+        @Override
+        public boolean isLabel() {
+            return (cache.flags[id] & FLAG_LABEL) != 0;
+        }
+
+        @Override
+        public void setLabel(boolean isLabel) {
+            cache.setFlag(id, FLAG_LABEL, isLabel);
+        }
+
+        @Override
+        public void markAsLabel(boolean isLabel) {
+            cache.setFlag(id, FLAG_LABEL, isLabel);
+        }
+
+        @Override
+        public int getCodeLength() {
+            return cache.codeLengths[id];
+        }
+
+        @Override
+        public void setCodeLength(short codeLength) {
+            cache.setCodeLength(id, codeLength);
+        }
+
+        @Override
+        public List<Byte> getCodes() {
+            return new AbstractList<Byte>() {
+                @Override
+                public Byte get(int index) {
+                    checkIndex(index, size());
+                    return (byte) ((cache.codes[id] >>> index) & 1);
+                }
+
+                @Override
+                public Byte set(int index, Byte element) {
+                    Byte previous = get(index);
+                    cache.setCode(id, index, element);
+                    return previous;
+                }
+
+                @Override
+                public boolean add(Byte element) {
+                    cache.setCode(id, size(), element);
+                    return true;
+                }
+
+                @Override
+                public int size() {
+                    return cache.codeCounts[id];
+                }
+            };
+        }
+
+        @Override
+        public void setCodes(List<Byte> codes) {
+            cache.setCodes(id, codes);
+        }
+
+        @Override
+        public List<Integer> getPoints() {
+            return new AbstractList<Integer>() {
+                @Override
+                public Integer get(int index) {
+                    checkIndex(index, size());
+                    return cache.getPoint(id, index);
+                }
+
+                @Override
+                public Integer set(int index, Integer element) {
+                    Integer previous = get(index);
+                    cache.setPoint(id, index, element);
+                    return previous;
+                }
+
+                @Override
+                public boolean add(Integer element) {
+                    cache.setPoint(id, size(), element);
+                    return true;
+                }
+
+                @Override
+                public int size() {
+                    return cache.pointCounts[id];
+                }
+            };
+        }
+
+        @Override
+        public void setPoints(List<Integer> points) {
+            cache.setPoints(id, points);
+        }
+
+        @Override
+        public void setPoints(int[] points) {
+            List<Integer> list = new ArrayList<>(points.length);
+            for (int p : points)
+                list.add(p);
+            cache.setPoints(id, list);
+        }
+
+        @Override
+        public int compareTo(SequenceElement o) {
+            return Double.compare(getElementFrequency(), o.getElementFrequency());
+        }
+
+        /**
+         * @return A copy of this element, not backed by the cache
+         */
+        public VocabWord detach() {
+            VocabWord word = new VocabWord();
+            word.setWord(getWord());
+            word.setStorageId(getStorageId());
+            word.setElementFrequency((long) getElementFrequency());
+            word.setSequencesCount(getSequencesCount());
+            word.setIndex(getIndex());
+            word.setSpecial(isSpecial());
+            word.markAsLabel(isLabel());
+            word.setCodes(new ArrayList<>(getCodes()));
+            word.setPoints(new ArrayList<>(getPoints()));
+            word.setCodeLength((short) getCodeLength());
+            return word;
+        }
+
+        @Override
+        public String toJSON() {
+            return detach().toJSON();
+        }
+
+        @Override
+        public String toString() {
+            return detach().toString();
+        }
+
+        private Object writeReplace() {
+            return detach();
+        }
+
+        private static void checkIndex(int index, int size) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+}
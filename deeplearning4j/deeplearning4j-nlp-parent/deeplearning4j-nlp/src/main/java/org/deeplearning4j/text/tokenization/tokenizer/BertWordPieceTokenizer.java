@@ -58,6 +58,23 @@ public class BertWordPieceTokenizer implements Tokenizer {
         this.tokens = tokenize(vocab, tokens);
     }
 
+    /**
+     * Tokenizes with the vocabulary trie, produces the same tokens as the NavigableMap based constructor
+     */
+    public BertWordPieceTokenizer(String tokens, WordPieceTrie trie, TokenPreProcess preTokenizePreProcessor,
+                                  TokenPreProcess tokenPreProcess) {
+        this.preTokenizePreProcessor = preTokenizePreProcessor;
+        this.tokenPreProcess = tokenPreProcess;
+
+        String fullString = preTokenizePreProcessor == null ? tokens : preTokenizePreProcessor.preProcess(tokens);
+        char[] chars = fullString.toCharArray();
+        int[] ids = new int[chars.length];
+        int count = trie.tokenize(chars, 0, chars.length, ids, 0, ids.length);
+        this.tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            this.tokens.add(trie.token(ids[i]));
+    }
+
 
     @Override
     public boolean hasMoreTokens() {
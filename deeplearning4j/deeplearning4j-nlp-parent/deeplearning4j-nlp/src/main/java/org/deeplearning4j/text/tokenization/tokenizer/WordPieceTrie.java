@@ -0,0 +1,205 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.text.tokenization.tokenizer;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * WordPiece vocabulary as a character trie, for greedy longest-match tokenization without substring allocation.
+ *
+ * Text is split the same way as {@link BertWordPieceTokenizer} does: on whitespace, and around every
+ * punctuation character. Each word is then matched from the trie root, and the rest of the word is matched
+ * from the "##" node, so both lookups are a single walk over the characters.
+ *
+ * Nodes are flattened into primitive arrays: children of node {@code n} are edges
+ * {@code [childStart[n], childStart[n + 1])}, sorted by character.
+ */
+public class WordPieceTrie {
+    public static final String CONTINUATION_PREFIX = "##";
+
+    private static final int ROOT = 0;
+
+    private final int[] childStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    // id of the token ending at the node, -1 if none
+    private final int[] tokenIds;
+    private final int continuationRoot;
+    // vocabulary strings by id, so tokens can be returned without allocation
+    private final String[] tokens;
+
+    public WordPieceTrie(@NonNull Map<String, Integer> vocab) {
+        List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        children.add(new TreeMap<Character, Integer>());
+        ids.add(-1);
+
+        int maxId = -1;
+        for (Map.Entry<String, Integer> e : vocab.entrySet()) {
+            String token = e.getKey();
+            int node = ROOT;
+            for (int i = 0; i < token.length(); i++) {
+                Integer next = children.get(node).get(token.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.get(node).put(token.charAt(i), next);
+                    children.add(new TreeMap<Character, Integer>());
+                    ids.add(-1);
+                }
+                node = next;
+            }
+            ids.set(node, e.getValue());
+            maxId = Math.max(maxId, e.getValue());
+        }
+
+        int numNodes = children.size();
+        childStart = new int[numNodes + 1];
+        tokenIds = new int[numNodes];
+        for (int n = 0; n < numNodes; n++) {
+            childStart[n + 1] = childStart[n] + children.get(n).size();
+            tokenIds[n] = ids.get(n);
+        }
+
+        edgeChars = new char[childStart[numNodes]];
+        edgeTargets = new int[childStart[numNodes]];
+        for (int n = 0; n < numNodes; n++) {
+            int p = childStart[n];
+            for (Map.Entry<Character, Integer> e : children.get(n).entrySet()) {
+                edgeChars[p] = e.getKey();
+                edgeTargets[p] = e.getValue();
+                p++;
+            }
+        }
+
+        tokens = new String[maxId + 1];
+        for (Map.Entry<String, Integer> e : vocab.entrySet())
+            tokens[e.getValue()] = e.getKey();
+
+        int node = ROOT;
+        for (int i = 0; i < CONTINUATION_PREFIX.length() && node >= 0; i++)
+            node = child(node, CONTINUATION_PREFIX.charAt(i));
+        continuationRoot = node;
+    }
+
+    private int child(int node, char c) {
+        int idx = Arrays.binarySearch(edgeChars, childStart[node], childStart[node + 1], c);
+        return idx < 0 ? -1 : edgeTargets[idx];
+    }
+
+    /**
+     * Finds the longest vocabulary entry matching the beginning of {@code buffer[start..end)}
+     *
+     * @param continuation if true, entries are looked up with "##" prefix
+     * @return match length in upper 32 bits and token id in lower 32 bits, or -1 if nothing matches
+     */
+    public long longestMatch(@NonNull char[] buffer, int start, int end, boolean continuation) {
+        int node = continuation ? continuationRoot : ROOT;
+        long match = -1;
+        for (int i = start; i < end && node >= 0; i++) {
+            node = child(node, buffer[i]);
+            if (node >= 0 && tokenIds[node] >= 0)
+                match = ((long) (i + 1 - start) << 32) | tokenIds[node];
+        }
+        return match;
+    }
+
+    /**
+     * Tokenizes {@code buffer[start..end)}, and writes token ids into {@code ids} starting at {@code offset}.
+     * Tokens that don't fit into {@code capacity} are counted but not written, so caller can grow the array and retry.
+     *
+     * @param ids output array
+     * @param offset first position in output array
+     * @param capacity maximal number of ids to write
+     * @return total number of tokens in the text
+     * @throws IllegalStateException if some word can't be covered by vocabulary entries
+     */
+    public int tokenize(@NonNull char[] buffer, int start, int end, @NonNull int[] ids, int offset, int capacity) {
+        int count = 0;
+        int i = start;
+        while (i < end) {
+            int cp = Character.codePointAt(buffer, i, end);
+            if (Character.isWhitespace(cp)) {
+                i += Character.charCount(cp);
+                continue;
+            }
+
+            int wordEnd = i + Character.charCount(cp);
+            if (!isPunctuation(cp)) {
+                while (wordEnd < end) {
+                    int next = Character.codePointAt(buffer, wordEnd, end);
+                    if (Character.isWhitespace(next) || isPunctuation(next))
+                        break;
+                    wordEnd += Character.charCount(next);
+                }
+            }
+
+            for (int pos = i; pos < wordEnd;) {
+                long match = longestMatch(buffer, pos, wordEnd, pos > i);
+                if (match < 0)
+                    throw new IllegalStateException("Invalid token encountered: \"" + new String(buffer, i, wordEnd - i)
+                                    + "\" likely contains characters that are not present in the vocabulary. Invalid tokens"
+                                    + " may be cleaned in a preprocessing step using a TokenPreProcessor.");
+                if (count < capacity)
+                    ids[offset + count] = (int) match;
+                count++;
+                pos += (int) (match >>> 32);
+            }
+            i = wordEnd;
+        }
+        return count;
+    }
+
+    /**
+     * Returns vocabulary entry for the given id
+     */
+    public String token(int id) {
+        return tokens[id];
+    }
+
+    /**
+     * Punctuation as treated by {@link BertWordPieceTokenizer#splitPattern}: Unicode punctuation,
+     * and all non-letter/number printable ASCII characters
+     */
+    public static boolean isPunctuation(int cp) {
+        if ((cp >= 0x21 && cp <= 0x2F) || (cp >= 0x3A && cp <= 0x40) || (cp >= 0x5B && cp <= 0x60)
+                        || (cp >= 0x7B && cp <= 0x7E))
+            return true;
+
+        switch (Character.getType(cp)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.deeplearning4j.text.tokenization.tokenizer.BertWordPieceStreamTokeniz
 import org.deeplearning4j.text.tokenization.tokenizer.BertWordPieceTokenizer;
 import org.deeplearning4j.text.tokenization.tokenizer.TokenPreProcess;
 import org.deeplearning4j.text.tokenization.tokenizer.Tokenizer;
+import org.deeplearning4j.text.tokenization.tokenizer.WordPieceTrie;
 import org.deeplearning4j.text.tokenization.tokenizer.preprocessor.BertWordPiecePreProcessor;
 
 import java.io.*;
@@ -44,6 +45,11 @@ public class BertWordPieceTokenizerFactory implements TokenizerFactory {
     @Getter @Setter
     private TokenPreProcess tokenPreProcessor;
     private Charset charset;
+    private transient volatile WordPieceTrie trie;
+    // reusable per-thread char buffer for id tokenization; longer texts use a temporary buffer, so that
+    // a single long text doesn't stay allocated for every thread
+    private static final int MAX_RETAINED_BUFFER = 16384;
+    private final transient ThreadLocal<char[]> charBuffer = new ThreadLocal<>();
 
     /**
      * @param vocab                   Vocabulary, as a navigable map
@@ -94,10 +100,50 @@ public class BertWordPieceTokenizerFactory implements TokenizerFactory {
 
     @Override
     public Tokenizer create(String toTokenize) {
-        Tokenizer t = new BertWordPieceTokenizer(toTokenize, vocab, preTokenizePreProcessor, tokenPreProcessor);
+        Tokenizer t = new BertWordPieceTokenizer(toTokenize, getTrie(), preTokenizePreProcessor, tokenPreProcessor);
         return t;
     }
 
+    /**
+     * Tokenizes given text, and writes vocabulary ids of the tokens directly into {@code ids} starting at {@code offset}.
+     * Tokens that don't fit into {@code capacity} are counted but not written.<br>
+     * PLEASE NOTE: token preprocessor (if any) is not applied, since ids are produced for the vocabulary entries.
+     *
+     * @param text     Text to tokenize
+     * @param ids      Output array
+     * @param offset   First position in output array
+     * @param capacity Maximal number of ids to write
+     * @return Total number of tokens in the text
+     */
+    public int tokenize(@NonNull String text, @NonNull int[] ids, int offset, int capacity) {
+        String fullString = preTokenizePreProcessor == null ? text : preTokenizePreProcessor.preProcess(text);
+        char[] buffer;
+        if (fullString.length() > MAX_RETAINED_BUFFER) {
+            buffer = new char[fullString.length()];
+        } else {
+            buffer = charBuffer.get();
+            if (buffer == null || buffer.length < fullString.length()) {
+                buffer = new char[Math.max(fullString.length(), 256)];
+                charBuffer.set(buffer);
+            }
+        }
+        fullString.getChars(0, fullString.length(), buffer, 0);
+        return getTrie().tokenize(buffer, 0, fullString.length(), ids, offset, capacity);
+    }
+
+    /**
+     * @return Vocabulary as a trie, built on first use
+     */
+    public WordPieceTrie getTrie() {
+        if (trie == null) {
+            synchronized (this) {
+                if (trie == null)
+                    trie = new WordPieceTrie(vocab);
+            }
+        }
+        return trie;
+    }
+
     @Override
     public Tokenizer create(InputStream toTokenize) {
         Tokenizer t = new BertWordPieceStreamTokenizer(toTokenize, charset, vocab, preTokenizePreProcessor, tokenPreProcessor);
@@ -23,17 +23,22 @@ package org.deeplearning4j.util;
 import org.apache.commons.io.input.CloseShieldInputStream;
 import org.nd4j.common.util.ND4JFileUtils;
 import org.nd4j.shade.guava.io.Files;
+import lombok.AllArgsConstructor;
+import lombok.Data;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.Model;
-import org.deeplearning4j.nn.api.Updater;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.updater.BaseMultiLayerUpdater;
+import org.deeplearning4j.nn.updater.MultiLayerUpdater;
+import org.deeplearning4j.nn.updater.UpdaterBlock;
+import org.deeplearning4j.nn.updater.graph.ComputationGraphUpdater;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
@@ -241,17 +246,17 @@ public class ModelSerializer {
             throws IOException {
         checkInputStream(is);
 
-        Map<String, byte[]> zipFile = loadZipData(is);
+        ModelData data = loadModelData(is, true, loadUpdater);
+        Map<String, byte[]> zipFile = data.getFiles();
 
         boolean gotConfig = false;
-        boolean gotCoefficients = false;
-        boolean gotUpdaterState = false;
+        boolean gotCoefficients = data.isGotCoefficients();
+        boolean gotUpdaterState = data.getUpdaterState() != null;
         boolean gotPreProcessor = false;
 
         String json = "";
-        INDArray params = null;
-        Updater updater = null;
-        INDArray updaterState = null;
+        INDArray params = data.getParams();
+        INDArray updaterState = data.getUpdaterState();
         DataSetPreProcessor preProcessor = null;
 
 
@@ -274,33 +279,6 @@ public class ModelSerializer {
         }
 
 
-        byte[] coefficients = zipFile.get(COEFFICIENTS_BIN);
-        if (coefficients != null ) {
-            if(coefficients.length > 0) {
-                InputStream stream = new ByteArrayInputStream(coefficients);
-                DataInputStream dis = new DataInputStream(new BufferedInputStream(stream));
-                params = Nd4j.read(dis);
-
-                dis.close();
-                gotCoefficients = true;
-            } else {
-                byte[] noParamsMarker = zipFile.get(NO_PARAMS_MARKER);
-                gotCoefficients = (noParamsMarker != null);
-            }
-        }
-
-        if (loadUpdater) {
-        	byte[] updaterStateEntry = zipFile.get(UPDATER_BIN);
-            if (updaterStateEntry != null) {
-                InputStream stream = new ByteArrayInputStream(updaterStateEntry);
-                DataInputStream dis = new DataInputStream(new BufferedInputStream(stream));
-                updaterState = Nd4j.read(dis);
-
-                dis.close();
-                gotUpdaterState = true;
-            }
-        }
-
         byte[] prep = zipFile.get(PREPROCESSOR_BIN);
         if (prep != null) {
             InputStream stream = new ByteArrayInputStream(prep);
@@ -345,7 +323,7 @@ public class ModelSerializer {
             network.init(params, false);
 
             if (gotUpdaterState && updaterState != null) {
-                network.getUpdater().setStateViewArray(network, updaterState, false);
+                setUpdaterState(network, updaterState);
             }
             return new Pair<>(network, zipFile);
         } else
@@ -466,16 +444,17 @@ public class ModelSerializer {
             throws IOException {
         checkInputStream(is);
 
-        Map<String, byte[]> files = loadZipData(is);
+        ModelData data = loadModelData(is, true, loadUpdater);
+        Map<String, byte[]> files = data.getFiles();
 
         boolean gotConfig = false;
-        boolean gotCoefficients = false;
-        boolean gotUpdaterState = false;
+        boolean gotCoefficients = data.isGotCoefficients();
+        boolean gotUpdaterState = data.getUpdaterState() != null;
         boolean gotPreProcessor = false;
 
         String json = "";
-        INDArray params = null;
-        INDArray updaterState = null;
+        INDArray params = data.getParams();
+        INDArray updaterState = data.getUpdaterState();
         DataSetPreProcessor preProcessor = null;
 
 
@@ -498,34 +477,6 @@ public class ModelSerializer {
         }
 
 
-        byte[] coefficients = files.get(COEFFICIENTS_BIN);
-        if (coefficients != null) {
-            if(coefficients.length > 0) {
-                InputStream stream = new ByteArrayInputStream(coefficients);
-                DataInputStream dis = new DataInputStream(stream);
-                params = Nd4j.read(dis);
-
-                dis.close();
-                gotCoefficients = true;
-            } else {
-                byte[] noParamsMarker = files.get(NO_PARAMS_MARKER);
-                gotCoefficients = (noParamsMarker != null);
-            }
-        }
-
-
-        if (loadUpdater) {
-            byte[] updaterStateEntry = files.get(UPDATER_BIN);
-            if (updaterStateEntry != null) {
-                InputStream stream = new ByteArrayInputStream(updaterStateEntry);
-                DataInputStream dis = new DataInputStream(stream);
-                updaterState = Nd4j.read(dis);
-
-                dis.close();
-                gotUpdaterState = true;
-            }
-        }
-
         byte[] prep = files.get(PREPROCESSOR_BIN);
         if (prep != null) {
             InputStream stream = new ByteArrayInputStream(prep);
@@ -573,7 +524,7 @@ public class ModelSerializer {
 
 
             if (gotUpdaterState && updaterState != null) {
-                cg.getUpdater().setStateViewArray(updaterState);
+                setUpdaterState(cg, updaterState);
             }
             return new Pair<>(cg, files);
         } else
@@ -633,7 +584,9 @@ public class ModelSerializer {
      */
     public static Pair<ComputationGraph, Normalizer> restoreComputationGraphAndNormalizer(@NonNull File file, boolean loadUpdater)
             throws IOException {
-    	return restoreComputationGraphAndNormalizer(new FileInputStream(file), loadUpdater);
+        try(InputStream is = new BufferedInputStream(new FileInputStream(file))){
+            return restoreComputationGraphAndNormalizer(is, loadUpdater);
+        }
     }
 
     /**
@@ -644,7 +597,66 @@ public class ModelSerializer {
      * @throws IOException
      */
     public static ComputationGraph restoreComputationGraph(@NonNull File file, boolean loadUpdater) throws IOException {
-    	return restoreComputationGraph(new FileInputStream(file), loadUpdater);
+        try(InputStream is = new BufferedInputStream(new FileInputStream(file))){
+            return restoreComputationGraph(is, loadUpdater);
+        }
+    }
+
+    /**
+     * Load the updater state from a model file, and set it on a network previously restored from the same file
+     * without the updater state (i.e., with loadUpdater = false).<br>
+     * This allows the updater state to be deferred: networks restored for inference only need not load the updater state
+     * (which is often as large as, or larger than, the parameters), while still allowing the state to be added later,
+     * if training is to be continued. Only the updater state entry is read from the file.
+     *
+     * @param file  Model file, previously written with {@link #writeModel(Model, File, boolean)}
+     * @param model MultiLayerNetwork or ComputationGraph restored from the same file
+     * @return True if the updater state was present in the file and was set on the model, false otherwise
+     * @throws IOException If an error occurs when reading from the file
+     */
+    public static boolean restoreUpdaterState(@NonNull File file, @NonNull Model model) throws IOException {
+        Preconditions.checkArgument(model instanceof MultiLayerNetwork || model instanceof ComputationGraph,
+                "Model must be a MultiLayerNetwork or ComputationGraph, got %s", model.getClass());
+        try (ZipFile zipFile = new ZipFile(file)) {
+            ZipEntry entry = zipFile.getEntry(UPDATER_BIN);
+            if (entry == null)
+                return false;
+
+            INDArray updaterState;
+            try (DataInputStream dis = new DataInputStream(new BufferedInputStream(zipFile.getInputStream(entry)))) {
+                updaterState = Nd4j.read(dis);
+            }
+            setUpdaterState(model, updaterState);
+            return true;
+        }
+    }
+
+    /**
+     * Set the updater state for the model, using the provided array directly as the updater state view array (without copying)
+     */
+    private static void setUpdaterState(Model model, INDArray updaterState) {
+        //Older formats may store the state as a row vector; updater blocks expect a rank 1 view array
+        if (updaterState.rank() != 1)
+            updaterState = updaterState.reshape(updaterState.length());
+        if (model instanceof MultiLayerNetwork) {
+            MultiLayerNetwork net = (MultiLayerNetwork) model;
+            MultiLayerUpdater u = new MultiLayerUpdater(net, updaterState);
+            checkUpdaterStateLength(u, updaterState);
+            net.setUpdater(u);
+        } else {
+            ComputationGraph cg = (ComputationGraph) model;
+            ComputationGraphUpdater u = new ComputationGraphUpdater(cg, updaterState);
+            checkUpdaterStateLength(u, updaterState);
+            cg.setUpdater(u);
+        }
+    }
+
+    private static void checkUpdaterStateLength(BaseMultiLayerUpdater<?> updater, INDArray updaterState) {
+        List<UpdaterBlock> blocks = updater.getUpdaterBlocks();
+        long expLength = blocks.isEmpty() ? 0 : blocks.get(blocks.size() - 1).getUpdaterViewOffsetEnd();
+        if (expLength != updaterState.length())
+            throw new IllegalStateException("Invalid updater state: view arrays differ in length. Expected length "
+                    + expLength + ", got length " + updaterState.length());
     }
 
     /**
@@ -913,7 +925,7 @@ public class ModelSerializer {
      */
     public static <T extends Normalizer> T restoreNormalizerFromInputStream(InputStream is) throws IOException {
         checkInputStream(is);
-        Map<String, byte[]> files = loadZipData(is);
+        Map<String, byte[]> files = loadModelData(is, false, false).getFiles();
         return restoreNormalizerFromMap(files);
     }
 
@@ -969,30 +981,74 @@ public class ModelSerializer {
         }
     }
 
-    private static Map<String, byte[]> loadZipData(InputStream is) throws IOException {
-    	Map<String, byte[]> result = new HashMap<>();
-		try (final ZipInputStream zis = new ZipInputStream(is)) {
-			while (true) {
-				final ZipEntry zipEntry = zis.getNextEntry();
-				if (zipEntry == null)
-					break;
-				if(zipEntry.isDirectory() || zipEntry.getSize() > Integer.MAX_VALUE)
-					throw new IllegalArgumentException();
-
-				final int size = (int) (zipEntry.getSize());
-				final byte[] data;
-				if (size >= 0) { // known size
-					data = IOUtils.readFully(zis, size);
-				}
-				else { // unknown size
-					final ByteArrayOutputStream bout = new ByteArrayOutputStream();
-					IOUtils.copy(zis, bout);
-					data = bout.toByteArray();
-				}
-                                result.put(zipEntry.getName(), data);
-			}
-		}
-		return result;
+    /**
+     * Read the model zip file entries from the stream.<br>
+     * The parameters and updater state are read directly from the stream into the arrays that will be used by the network
+     * (see {@link MultiLayerNetwork#init(INDArray, boolean)} and {@link BaseMultiLayerUpdater}), without first buffering
+     * the (compressed or decompressed) entry contents in memory. All other entries are small, and are returned as byte arrays.
+     *
+     * @param is          Stream to read
+     * @param loadParams  If false: the parameters are skipped
+     * @param loadUpdater If false: the updater state is skipped
+     */
+    private static ModelData loadModelData(InputStream is, boolean loadParams, boolean loadUpdater) throws IOException {
+        Map<String, byte[]> files = new HashMap<>();
+        INDArray params = null;
+        INDArray updaterState = null;
+        boolean gotCoefficientsEntry = false;
+        boolean emptyCoefficients = false;
+        try (final ZipInputStream zis = new ZipInputStream(is)) {
+            while (true) {
+                final ZipEntry zipEntry = zis.getNextEntry();
+                if (zipEntry == null)
+                    break;
+                if(zipEntry.isDirectory() || zipEntry.getSize() > Integer.MAX_VALUE)
+                    throw new IllegalArgumentException();
+
+                String name = zipEntry.getName();
+                if (COEFFICIENTS_BIN.equals(name)) {
+                    gotCoefficientsEntry = true;
+                    //Empty coefficients entry (with no params marker) is written for networks without parameters
+                    PushbackInputStream pis = new PushbackInputStream(zis);
+                    int first = pis.read();
+                    emptyCoefficients = first < 0;
+                    if (!emptyCoefficients && loadParams) {
+                        pis.unread(first);
+                        params = Nd4j.read(new DataInputStream(new BufferedInputStream(pis)));
+                    }
+                } else if (UPDATER_BIN.equals(name)) {
+                    if (loadUpdater) {
+                        updaterState = Nd4j.read(new DataInputStream(new BufferedInputStream(zis)));
+                    }
+                } else {
+                    final int size = (int) (zipEntry.getSize());
+                    final byte[] data;
+                    if (size >= 0) { // known size
+                        data = IOUtils.readFully(zis, size);
+                    } else { // unknown size
+                        final ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                        IOUtils.copy(zis, bout);
+                        data = bout.toByteArray();
+                    }
+                    files.put(name, data);
+                }
+            }
+        }
+
+        boolean gotCoefficients = gotCoefficientsEntry && (emptyCoefficients ? files.containsKey(NO_PARAMS_MARKER) : loadParams);
+        return new ModelData(files, params, gotCoefficients, updaterState);
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class ModelData {
+        /**
+         * All entries other than the parameters and updater state
+         */
+        private Map<String, byte[]> files;
+        private INDArray params;
+        private boolean gotCoefficients;
+        private INDArray updaterState;
     }
 
 }
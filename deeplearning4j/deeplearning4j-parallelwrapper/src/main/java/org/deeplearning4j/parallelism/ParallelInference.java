@@ -28,9 +28,11 @@ import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.BatchingStats;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
+import org.deeplearning4j.parallelism.inference.MpmcBoundedQueue;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
@@ -43,11 +45,19 @@ import org.nd4j.common.primitives.Pair;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Observable;
 import java.util.Observer;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 @Slf4j
@@ -59,6 +69,8 @@ public class ParallelInference {
     protected InferenceMode inferenceMode;
     protected int queueLimit;
     protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+    protected long maxBatchWaitNanos = DEFAULT_MAX_BATCH_WAIT_NANOS;
+    protected long latencyTargetNanos;
 
     // this queue holds data for inference
     private BlockingQueue<InferenceObservable> observables;
@@ -67,6 +79,7 @@ public class ParallelInference {
 
     private InferenceWorker[] zoo;
     private ObservablesProvider provider;
+    private volatile AdaptiveObservablesProvider adaptiveProvider;
 
     protected String[] layersToOutputTo;
     protected int[] layerIndicesOutputTo;
@@ -76,6 +89,7 @@ public class ParallelInference {
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static long DEFAULT_MAX_BATCH_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
 
 
 
@@ -118,7 +132,7 @@ public class ParallelInference {
     }
 
     protected void init() {
-        observables = new LinkedBlockingQueue<>(queueLimit);
+        observables = new MpmcBoundedQueue<>(queueLimit);
 
         int numDevices = Nd4j.getAffinityManager().getNumberOfDevices();
         int currentDevice = Nd4j.getAffinityManager().getDeviceForCurrentThread();
@@ -145,9 +159,47 @@ public class ParallelInference {
         if (inferenceMode == InferenceMode.BATCHED) {
             log.info("Initializing ObservablesProvider...");
             provider = new ObservablesProvider(nanos, batchLimit, observables);
+        } else if (inferenceMode == InferenceMode.ADAPTIVE_BATCHED) {
+            log.info("Initializing AdaptiveObservablesProvider...");
+            adaptiveProvider = new AdaptiveObservablesProvider(maxBatchWaitNanos, latencyTargetNanos, batchLimit, observables);
         }
     }
 
+    /**
+     * This method returns batching statistics: batch size histogram, queue wait time and batch latency percentiles.
+     *
+     * PLEASE NOTE: statistics are available only in ADAPTIVE_BATCHED inference mode, null is returned otherwise
+     *
+     * @return
+     */
+    public BatchingStats getBatchingStats() {
+        return adaptiveProvider == null ? null : adaptiveProvider.getStats();
+    }
+
+    /**
+     * This method returns number of requests waiting for processing: both requests not yet packed into a batch,
+     * and batches not yet picked up by workers
+     *
+     * @return
+     */
+    public int getQueueDepth() {
+        int depth = observables == null ? 0 : observables.size();
+        if (adaptiveProvider != null)
+            depth += adaptiveProvider.getPendingCount();
+
+        return depth;
+    }
+
+    /**
+     * This method returns batch size limit currently used by ADAPTIVE_BATCHED inference mode.
+     * For other inference modes, configured batch limit is returned
+     *
+     * @return
+     */
+    public int getCurrentBatchLimit() {
+        return adaptiveProvider == null ? batchLimit : adaptiveProvider.getCurrentBatchLimit();
+    }
+
     protected long getWorkerCounter(int workerIdx) {
         return zoo[workerIdx].getCounterValue();
     }
@@ -159,6 +211,11 @@ public class ParallelInference {
         if (zoo == null)
             return;
 
+        if (adaptiveProvider != null) {
+            adaptiveProvider.shutdown();
+            adaptiveProvider = null;
+        }
+
         for (int e = 0; e < zoo.length; e++) {
             if (zoo[e] == null)
                 continue;
@@ -169,9 +226,21 @@ public class ParallelInference {
         }
         zoo = null;
 
+        // requests that no worker picked up would otherwise never complete
+        InferenceObservable observable;
+        while ((observable = observables.poll()) != null)
+            observable.setOutputException(new IllegalStateException("ParallelInference was shut down"));
+
         System.gc();
     }
 
+    private AdaptiveObservablesProvider adaptiveProvider() {
+        AdaptiveObservablesProvider p = adaptiveProvider;
+        if (p == null)
+            throw new IllegalStateException("ParallelInference was shut down");
+        return p;
+    }
+
     /**
      *
      * @param input
@@ -254,6 +323,8 @@ public class ParallelInference {
                 Thread.currentThread().interrupt();
                 throw new RuntimeException(e);
             }
+        } else if (inferenceMode == InferenceMode.ADAPTIVE_BATCHED) {
+            return adaptiveProvider().output(input, inputMasks);
         } else {
             observable = provider.setInput(observer, input, inputMasks);
         }
@@ -271,6 +342,59 @@ public class ParallelInference {
         return observable.getOutput();
     }
 
+    /**
+     * Generate predictions/output from the network, without blocking the calling thread
+     *
+     * @param input Input to the network
+     * @return Future, that will be completed with output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray... input) {
+        return outputAsync(input, null);
+    }
+
+    /**
+     * Generate predictions/outputs from the network, optionally using input masks for predictions, without blocking the calling thread.
+     *
+     * PLEASE NOTE: if the inference queue is full, returned future will be completed exceptionally with {@link RejectedExecutionException}
+     *
+     * @param input      Input to the network
+     * @param inputMasks Input masks for the network. May be null.
+     * @return Future, that will be completed with output from the network
+     */
+    public CompletableFuture<INDArray[]> outputAsync(INDArray[] input, INDArray[] inputMasks) {
+        Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
+
+        if (inferenceMode == InferenceMode.ADAPTIVE_BATCHED)
+            return adaptiveProvider().submit(input, inputMasks);
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Observer observer = (o, arg) -> done.complete(null);
+
+        if (inferenceMode == InferenceMode.SEQUENTIAL) {
+            InferenceObservable observable;
+            if(layersToOutputTo != null)
+                observable = new BasicInferenceObservable(layersToOutputTo,input, inputMasks);
+            else if(layerIndicesOutputTo != null)
+                observable = new BasicInferenceObservable(layerIndicesOutputTo,input, inputMasks);
+            else
+                observable = new BasicInferenceObservable(input, inputMasks);
+
+            observable.addObserver(observer);
+            if (!observables.offer(observable)) {
+                CompletableFuture<INDArray[]> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(new RejectedExecutionException("Inference queue is full"));
+                return rejected;
+            }
+
+            return done.thenApply(v -> observable.getOutput());
+        } else {
+            BatchedInferenceObservable observable = provider.offerInput(observer, input, inputMasks);
+            // position is assigned to the calling thread within offerInput call
+            int position = observable.getPosition();
+            return done.thenApply(v -> observable.getOutput(position));
+        }
+    }
+
     /**
      * This method does forward pass and returns output provided by OutputAdapter
      *
@@ -304,6 +428,8 @@ public class ParallelInference {
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
         private String[] layersToOutputTo;
         private int[] layerIndicesOutputTo;
+        private long maxBatchWaitNanos = DEFAULT_MAX_BATCH_WAIT_NANOS;
+        private long latencyTargetNanos = 0;
 
         protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
 
@@ -396,6 +522,46 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method defines, how long the oldest input can wait before its batch gets dispatched,
+         * even if the batch isn't full yet.
+         *
+         * PLEASE NOTE: This value has effect only in ADAPTIVE_BATCHED inference mode
+         *
+         * Default value: 2 milliseconds
+         *
+         * @param time
+         * @param timeUnit
+         * @return
+         */
+        public Builder maxBatchWait(long time, @NonNull TimeUnit timeUnit) {
+            if (time < 0)
+                throw new IllegalStateException("Max batch wait should be non-negative value");
+
+            this.maxBatchWaitNanos = timeUnit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * This method defines per-batch latency target. If defined, batch size will be tuned at runtime:
+         * decreased if measured batch latency exceeds the target, and increased (up to batchLimit) otherwise.
+         *
+         * PLEASE NOTE: This value has effect only in ADAPTIVE_BATCHED inference mode
+         *
+         * Default value: 0, which means batch size won't be tuned
+         *
+         * @param time
+         * @param timeUnit
+         * @return
+         */
+        public Builder latencyTarget(long time, @NonNull TimeUnit timeUnit) {
+            if (time < 0)
+                throw new IllegalStateException("Latency target should be non-negative value");
+
+            this.latencyTargetNanos = timeUnit.toNanos(time);
+            return this;
+        }
+
         /**
          * This method defines buffer queue size.
          *
@@ -439,6 +605,8 @@ public class ParallelInference {
                 inference.loadBalanceMode = this.loadBalanceMode;
                 inference.layerIndicesOutputTo = layerIndicesOutputTo;
                 inference.layersToOutputTo = layersToOutputTo;
+                inference.maxBatchWaitNanos = this.maxBatchWaitNanos;
+                inference.latencyTargetNanos = this.latencyTargetNanos;
                 inference.init();
 
                 return inference;
@@ -664,26 +832,273 @@ public class ParallelInference {
         }
 
         protected InferenceObservable setInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask) {
+            BatchedInferenceObservable observable = addInput(observer, input, inputMask);
+            if (observable.getPosition() == 0) {
+                try {
+                    targetQueue.put(observable);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    reject(observable, new RejectedExecutionException("Interrupted while submitting input", e));
+                    throw new RuntimeException(e);
+                }
+            }
+            return observable;
+        }
+
+        /**
+         * Non-blocking counterpart of {@link #setInput(Observer, INDArray[], INDArray[])}: if the inference queue is
+         * full, the batch is completed with {@link RejectedExecutionException}
+         */
+        protected BatchedInferenceObservable offerInput(@NonNull Observer observer, INDArray[] input, INDArray[] inputMask) {
+            BatchedInferenceObservable observable = addInput(observer, input, inputMask);
+            if (observable.getPosition() == 0 && !targetQueue.offer(observable))
+                reject(observable, new RejectedExecutionException("Inference queue is full"));
+            return observable;
+        }
+
+        /**
+         * Adds the input to the current batch, or to a new one. New batches (position 0) are not queued yet:
+         * the caller queues them outside of the monitor, other inputs may join them meanwhile
+         */
+        private BatchedInferenceObservable addInput(Observer observer, INDArray[] input, INDArray[] inputMask) {
             synchronized (locker) {
-                boolean isNew = false;
                 if (currentObservable == null || currentObservable.getCounter() >= batchLimit
                         || currentObservable.isLocked()) {
-                    isNew = true;
                     currentObservable = new BatchedInferenceObservable();
                 }
 
                 currentObservable.addInput(input, inputMask);
                 currentObservable.addObserver(observer);
+                return currentObservable;
+            }
+        }
+
+        private void reject(BatchedInferenceObservable observable, Exception e) {
+            synchronized (locker) {
+                // no more inputs may join the batch, all inputs added so far get the exception
+                if (currentObservable == observable)
+                    currentObservable = null;
+            }
+            observable.setOutputException(e);
+        }
+    }
+
+
+    /**
+     * This class packs inputs into batches for ADAPTIVE_BATCHED inference mode.
+     *
+     * Callers never block on submission: inputs are appended to a lock-free queue, and a single dispatcher
+     * thread closes the current batch once it's full, or once the oldest input has been waiting for maxWaitNanos.
+     * If a latency target is set, batch size is adjusted after each batch: halved if batch latency exceeds the target,
+     * and incremented by one if a full batch finished well below the target.
+     */
+    protected static class AdaptiveObservablesProvider {
+        private final BlockingQueue<InferenceObservable> targetQueue;
+        private final Queue<PendingInput> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger(0);
+        private final AtomicInteger currentLimit;
+        private final AtomicBoolean shouldWork = new AtomicBoolean(true);
+        private final long maxWaitNanos;
+        private final long latencyTargetNanos;
+        private final int batchLimit;
+        private final BatchingStats stats;
+        private final Thread dispatcher;
+
+        protected AdaptiveObservablesProvider(long maxWaitNanos, long latencyTargetNanos, int batchLimit, @NonNull BlockingQueue<InferenceObservable> queue) {
+            this.targetQueue = queue;
+            this.maxWaitNanos = maxWaitNanos;
+            this.latencyTargetNanos = latencyTargetNanos;
+            this.batchLimit = batchLimit;
+            this.currentLimit = new AtomicInteger(batchLimit);
+            this.stats = new BatchingStats(batchLimit);
+
+            this.dispatcher = new Thread(this::dispatchLoop);
+            this.dispatcher.setDaemon(true);
+            this.dispatcher.setName("InferenceBatchDispatcher");
+            this.dispatcher.start();
+        }
+
+        protected BatchingStats getStats() {
+            return stats;
+        }
+
+        protected int getPendingCount() {
+            return pendingCount.get();
+        }
+
+        protected int getCurrentBatchLimit() {
+            return currentLimit.get();
+        }
+
+        protected INDArray[] output(INDArray[] input, INDArray[] inputMask) {
+            try {
+                return submit(input, inputMask).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        protected CompletableFuture<INDArray[]> submit(INDArray[] input, INDArray[] inputMask) {
+            if (!shouldWork.get())
+                throw new IllegalStateException("ParallelInference was shut down");
+
+            PendingInput request = new PendingInput(input, inputMask);
+            pending.add(request);
+
+            // shutdown may have drained the queue before this input was added
+            if (!shouldWork.get()) {
+                failPending();
+                return request.future;
+            }
+
+            // wake up dispatcher early, if the batch is full already
+            if (pendingCount.incrementAndGet() >= currentLimit.get())
+                LockSupport.unpark(dispatcher);
+
+            return request.future;
+        }
+
+        /**
+         * Stops the dispatcher. Inputs that weren't dispatched yet are completed exceptionally
+         */
+        protected void shutdown() {
+            shouldWork.set(false);
+            dispatcher.interrupt();
+            failPending();
+        }
 
+        private void failPending() {
+            PendingInput request;
+            while ((request = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                request.future.completeExceptionally(new IllegalStateException("ParallelInference was shut down"));
+            }
+        }
+
+        private void dispatchLoop() {
+            while (shouldWork.get()) {
+                PendingInput head = pending.peek();
+                if (head == null) {
+                    LockSupport.parkNanos(maxWaitNanos > 0 ? maxWaitNanos : 1000);
+                    continue;
+                }
+
+                long waited = System.nanoTime() - head.createdNanos;
+                if (pendingCount.get() >= currentLimit.get() || waited >= maxWaitNanos) {
+                    try {
+                        dispatch();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                } else {
+                    LockSupport.parkNanos(maxWaitNanos - waited);
+                }
+            }
+            failPending();
+        }
+
+        private void dispatch() throws InterruptedException {
+            int limit = currentLimit.get();
+            List<PendingInput> batch = new ArrayList<>(limit);
+            long now = System.nanoTime();
+
+            PendingInput request;
+            while (batch.size() < limit && (request = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                batch.add(request);
+            }
+
+            if (batch.isEmpty())
+                return;
+
+            // failures only affect inputs of this batch, dispatcher keeps running
+            try {
+                BatchedInferenceObservable observable = new BatchedInferenceObservable();
+                for (int i = 0; i < batch.size(); i++) {
+                    request = batch.get(i);
+                    observable.addInput(request.input, request.inputMask);
+                    observable.addObserver(new OutputObserver(request.future, i));
+
+                    stats.recordWaitTime(now - request.createdNanos);
+                }
+
+                observable.addObserver(new BatchLatencyObserver(batch.size(), now));
+                targetQueue.put(observable);
+            } catch (InterruptedException e) {
+                for (PendingInput r : batch)
+                    r.future.completeExceptionally(new IllegalStateException("ParallelInference was shut down"));
+                throw e;
+            } catch (Throwable t) {
+                log.error("Failed to dispatch batch of {} inputs", batch.size(), t);
+                for (PendingInput r : batch)
+                    r.future.completeExceptionally(t);
+            }
+        }
+
+        private void onBatchDone(int size, long latencyNanos) {
+            stats.recordBatch(size, latencyNanos);
+
+            if (latencyTargetNanos <= 0)
+                return;
+
+            int limit = currentLimit.get();
+            if (latencyNanos > latencyTargetNanos) {
+                currentLimit.compareAndSet(limit, Math.max(1, limit / 2));
+            } else if (size >= limit && latencyNanos < latencyTargetNanos * 3 / 4) {
+                currentLimit.compareAndSet(limit, Math.min(batchLimit, limit + 1));
+            }
+        }
+
+        private class BatchLatencyObserver implements Observer {
+            private final int size;
+            private final long dispatchedNanos;
+
+            private BatchLatencyObserver(int size, long dispatchedNanos) {
+                this.size = size;
+                this.dispatchedNanos = dispatchedNanos;
+            }
+
+            @Override
+            public void update(Observable o, Object arg) {
+                onBatchDone(size, System.nanoTime() - dispatchedNanos);
+            }
+        }
+
+        private static class OutputObserver implements Observer {
+            private final CompletableFuture<INDArray[]> future;
+            private final int position;
+
+            private OutputObserver(CompletableFuture<INDArray[]> future, int position) {
+                this.future = future;
+                this.position = position;
+            }
+
+            @Override
+            public void update(Observable o, Object arg) {
                 try {
-                    if (isNew)
-                        targetQueue.put(currentObservable);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException(e);
+                    future.complete(((BatchedInferenceObservable) o).getOutput(position));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
                 }
+            }
+        }
 
-                return currentObservable;
+        private static class PendingInput {
+            private final INDArray[] input;
+            private final INDArray[] inputMask;
+            private final long createdNanos = System.nanoTime();
+            private final CompletableFuture<INDArray[]> future = new CompletableFuture<>();
+
+            private PendingInput(INDArray[] input, INDArray[] inputMask) {
+                this.input = input;
+                this.inputMask = inputMask;
             }
         }
     }
@@ -0,0 +1,183 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class holds batching statistics for {@link InferenceMode#ADAPTIVE_BATCHED} inference:
+ * batch size histogram, plus queue wait time and batch latency percentiles over a sliding window of recent samples.
+ *
+ * PLEASE NOTE: percentiles are computed over the last {@link #DEFAULT_WINDOW_SIZE} samples, and are approximate under concurrent updates
+ */
+public class BatchingStats {
+    public final static int DEFAULT_WINDOW_SIZE = 4096;
+
+    private final AtomicLongArray batchSizes;
+    private final AtomicLong numBatches = new AtomicLong(0);
+    private final AtomicLong numRequests = new AtomicLong(0);
+
+    private final int windowSize;
+    private final AtomicLongArray waitTimes;
+    private final AtomicLong waitPosition = new AtomicLong(0);
+    private final AtomicLongArray latencies;
+    private final AtomicLong latencyPosition = new AtomicLong(0);
+
+    public BatchingStats(int maxBatchSize) {
+        this(maxBatchSize, DEFAULT_WINDOW_SIZE);
+    }
+
+    public BatchingStats(int maxBatchSize, int windowSize) {
+        if (maxBatchSize < 1)
+            throw new IllegalStateException("Max batch size should be positive value");
+
+        if (windowSize < 1)
+            throw new IllegalStateException("Window size should be positive value");
+
+        this.batchSizes = new AtomicLongArray(maxBatchSize + 1);
+        this.windowSize = windowSize;
+        this.waitTimes = new AtomicLongArray(windowSize);
+        this.latencies = new AtomicLongArray(windowSize);
+    }
+
+    /**
+     * This method records time spent by single request in the queue, before its batch was dispatched
+     *
+     * @param nanos
+     */
+    public void recordWaitTime(long nanos) {
+        numRequests.incrementAndGet();
+        waitTimes.set((int) (waitPosition.getAndIncrement() % windowSize), nanos);
+    }
+
+    /**
+     * This method records size of the dispatched batch, and time between batch dispatch and its completion
+     *
+     * @param batchSize
+     * @param nanos
+     */
+    public void recordBatch(int batchSize, long nanos) {
+        numBatches.incrementAndGet();
+        batchSizes.incrementAndGet(Math.min(batchSize, batchSizes.length() - 1));
+        latencies.set((int) (latencyPosition.getAndIncrement() % windowSize), nanos);
+    }
+
+    /**
+     * This method returns histogram of dispatched batch sizes: element at index i holds number of batches of size i
+     *
+     * @return
+     */
+    public long[] getBatchSizeHistogram() {
+        long[] result = new long[batchSizes.length()];
+        for (int e = 0; e < result.length; e++)
+            result[e] = batchSizes.get(e);
+
+        return result;
+    }
+
+    /**
+     * This method returns number of batches dispatched so far
+     *
+     * @return
+     */
+    public long getNumberOfBatches() {
+        return numBatches.get();
+    }
+
+    /**
+     * This method returns number of requests dispatched so far
+     *
+     * @return
+     */
+    public long getNumberOfRequests() {
+        return numRequests.get();
+    }
+
+    /**
+     * This method returns average batch size, or 0.0 if nothing was dispatched yet
+     *
+     * @return
+     */
+    public double getAverageBatchSize() {
+        long batches = numBatches.get();
+        return batches == 0 ? 0.0 : numRequests.get() / (double) batches;
+    }
+
+    /**
+     * This method returns given percentile of queue wait time, in nanoseconds
+     *
+     * @param percentile percentile, in range of [0, 100]
+     * @return
+     */
+    public long getWaitTimePercentile(double percentile) {
+        return percentile(waitTimes, waitPosition.get(), percentile);
+    }
+
+    /**
+     * This method returns given percentile of batch latency, in nanoseconds
+     *
+     * @param percentile percentile, in range of [0, 100]
+     * @return
+     */
+    public long getBatchLatencyPercentile(double percentile) {
+        return percentile(latencies, latencyPosition.get(), percentile);
+    }
+
+    /**
+     * This method resets all statistics
+     */
+    public void reset() {
+        for (int e = 0; e < batchSizes.length(); e++)
+            batchSizes.set(e, 0);
+
+        numBatches.set(0);
+        numRequests.set(0);
+        waitPosition.set(0);
+        latencyPosition.set(0);
+    }
+
+    protected long percentile(AtomicLongArray window, long position, double percentile) {
+        if (percentile < 0.0 || percentile > 100.0)
+            throw new IllegalArgumentException("Percentile should be in range of [0, 100], got " + percentile);
+
+        int length = (int) Math.min(position, windowSize);
+        if (length == 0)
+            return 0L;
+
+        long[] samples = new long[length];
+        for (int e = 0; e < length; e++)
+            samples[e] = window.get(e);
+
+        Arrays.sort(samples);
+        int idx = (int) Math.ceil(percentile / 100.0 * length) - 1;
+        return samples[Math.max(0, Math.min(idx, length - 1))];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchingStats[batches=%d, requests=%d, avgBatch=%.2f, wait p50/p99=%d/%d us, latency p50/p99=%d/%d us]",
+                getNumberOfBatches(), getNumberOfRequests(), getAverageBatchSize(),
+                getWaitTimePercentile(50) / 1000, getWaitTimePercentile(99) / 1000,
+                getBatchLatencyPercentile(50) / 1000, getBatchLatencyPercentile(99) / 1000);
+    }
+}
@@ -35,4 +35,11 @@ public enum InferenceMode {
      * Inference will applied in the calling thread instead of workers. Worker models will be using shared parameters on per-device basis.
      */
     INPLACE,
+
+    /**
+     * Inputs will be packed into batches that are closed either when the batch is full, or when the oldest input
+     * has been waiting for longer than the configured max wait time. Batch size is tuned at runtime from the
+     * measured per-batch latency, if a latency target was provided.
+     */
+    ADAPTIVE_BATCHED,
 }
@@ -0,0 +1,275 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.NonNull;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free multi-producer multi-consumer queue, based on Dmitry Vyukov's bounded MPMC queue algorithm.
+ *
+ * offer()/poll() never block and never take locks, so they're safe to call from event loops.
+ * Blocking put()/take() are available as well: waiting threads are parked, and unparked by the opposite side.
+ *
+ * PLEASE NOTE: iterators are weakly consistent snapshots of the queue, and don't support removal.
+ * Removal of arbitrary elements (remove(Object), removeAll(), retainAll()) isn't supported either
+ *
+ * @param <E>
+ */
+public class MpmcBoundedQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private final int capacity;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePosition = new AtomicLong(0);
+    private final AtomicLong dequeuePosition = new AtomicLong(0);
+
+    private final Queue<Thread> waitingConsumers = new ConcurrentLinkedQueue<>();
+    private final Queue<Thread> waitingProducers = new ConcurrentLinkedQueue<>();
+
+    public MpmcBoundedQueue(int capacity) {
+        if (capacity < 1)
+            throw new IllegalStateException("Queue capacity should be positive value");
+
+        this.capacity = capacity;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int e = 0; e < capacity; e++)
+            sequences.set(e, e);
+    }
+
+    @Override
+    public boolean offer(@NonNull E e) {
+        long pos = enqueuePosition.get();
+        while (true) {
+            int idx = (int) (pos % capacity);
+            long seq = sequences.get(idx);
+            long diff = seq - pos;
+            if (diff == 0) {
+                if (enqueuePosition.compareAndSet(pos, pos + 1)) {
+                    buffer.set(idx, e);
+                    sequences.set(idx, pos + 1);
+                    wakeUp(waitingConsumers);
+                    return true;
+                }
+                pos = enqueuePosition.get();
+            } else if (diff < 0) {
+                // queue is full
+                return false;
+            } else {
+                pos = enqueuePosition.get();
+            }
+        }
+    }
+
+    @Override
+    public E poll() {
+        long pos = dequeuePosition.get();
+        while (true) {
+            int idx = (int) (pos % capacity);
+            long seq = sequences.get(idx);
+            long diff = seq - (pos + 1);
+            if (diff == 0) {
+                if (dequeuePosition.compareAndSet(pos, pos + 1)) {
+                    E e = buffer.getAndSet(idx, null);
+                    sequences.set(idx, pos + capacity);
+                    wakeUp(waitingProducers);
+                    return e;
+                }
+                pos = dequeuePosition.get();
+            } else if (diff < 0) {
+                // queue is empty
+                return null;
+            } else {
+                pos = dequeuePosition.get();
+            }
+        }
+    }
+
+    @Override
+    public E peek() {
+        long pos = dequeuePosition.get();
+        int idx = (int) (pos % capacity);
+        return sequences.get(idx) == pos + 1 ? buffer.get(idx) : null;
+    }
+
+    @Override
+    public void put(@NonNull E e) throws InterruptedException {
+        while (!offer(e))
+            await(waitingProducers, Long.MAX_VALUE, true);
+    }
+
+    @Override
+    public boolean offer(@NonNull E e, long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(e)) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                // wakeup may have been issued to this thread: hand it over to another producer
+                passWakeUp(waitingProducers, true);
+                return false;
+            }
+
+            await(waitingProducers, left, true);
+        }
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e;
+        while ((e = poll()) == null)
+            await(waitingConsumers, Long.MAX_VALUE, false);
+
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E e;
+        while ((e = poll()) == null) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                // wakeup may have been issued to this thread: hand it over to another consumer
+                passWakeUp(waitingConsumers, false);
+                return null;
+            }
+
+            await(waitingConsumers, left, false);
+        }
+        return e;
+    }
+
+    /**
+     * Parks the calling thread until it's unparked by the opposite side, interrupted, or {@code nanos} elapse
+     */
+    private void await(Queue<Thread> waiters, long nanos, boolean producer) throws InterruptedException {
+        Thread current = Thread.currentThread();
+        waiters.add(current);
+        try {
+            // re-check after registration, so wakeup issued in between won't be lost
+            if (!isReady(producer)) {
+                if (nanos == Long.MAX_VALUE)
+                    LockSupport.park(this);
+                else
+                    LockSupport.parkNanos(this, nanos);
+            }
+        } finally {
+            waiters.remove(current);
+        }
+
+        if (Thread.interrupted()) {
+            passWakeUp(waiters, producer);
+            throw new InterruptedException();
+        }
+    }
+
+    private boolean isReady(boolean producer) {
+        return producer ? size() < capacity : size() > 0;
+    }
+
+    /**
+     * Called by a waiting thread that leaves without taking its turn: wakes up another waiter if there's work for it
+     */
+    private void passWakeUp(Queue<Thread> waiters, boolean producer) {
+        if (isReady(producer))
+            wakeUp(waiters);
+    }
+
+    private static void wakeUp(Queue<Thread> waiters) {
+        Thread t = waiters.poll();
+        if (t != null)
+            LockSupport.unpark(t);
+    }
+
+    @Override
+    public int size() {
+        // positions can be read at different moments, so result is clamped to valid range
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    @Override
+    public int drainTo(@NonNull Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(@NonNull Collection<? super E> c, int maxElements) {
+        if (c == this)
+            throw new IllegalArgumentException("Can't drain queue to itself");
+
+        int cnt = 0;
+        E e;
+        while (cnt < maxElements && (e = poll()) != null) {
+            c.add(e);
+            cnt++;
+        }
+        return cnt;
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the queue: elements added or removed after this call may or may not
+     * be returned
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>(size());
+        long pos = dequeuePosition.get();
+        long end = Math.min(enqueuePosition.get(), pos + capacity);
+        for (; pos < end; pos++) {
+            int idx = (int) (pos % capacity);
+            // skip slots that aren't published yet, or were consumed already
+            if (sequences.get(idx) != pos + 1)
+                continue;
+
+            E e = buffer.get(idx);
+            // slot might be consumed and reused while reading it
+            if (e != null && sequences.get(idx) == pos + 1)
+                snapshot.add(e);
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException("Removal of arbitrary elements isn't supported by MpmcBoundedQueue");
+    }
+}
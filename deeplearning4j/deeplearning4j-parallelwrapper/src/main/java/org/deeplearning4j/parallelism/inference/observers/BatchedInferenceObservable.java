@@ -212,6 +212,15 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         position.set(pos);
     }
 
+    /**
+     * This method returns position of the last input added to this batch by the calling thread
+     *
+     * @return
+     */
+    public int getPosition() {
+        return position.get();
+    }
+
     public int getCounter() {
         return counter.get();
     }
@@ -236,4 +245,16 @@ public class BatchedInferenceObservable extends BasicInferenceObservable impleme
         checkOutputException();
         return outputs.get(position.get());
     }
+
+    /**
+     * This method returns output for the input at given position within this batch.
+     * Useful when inputs were added by a thread other than the one consuming the output
+     *
+     * @param position
+     * @return
+     */
+    public INDArray[] getOutput(int position) {
+        checkOutputException();
+        return outputs.get(position);
+    }
 }
@@ -45,6 +45,7 @@ import org.nd4j.autodiff.samediff.config.*;
 import org.nd4j.autodiff.samediff.internal.*;
 import org.nd4j.autodiff.samediff.ops.*;
 import org.nd4j.autodiff.samediff.serde.FlatBuffersMapper;
+import org.nd4j.autodiff.samediff.serde.MappedFlatArrays;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.common.primitives.AtomicBoolean;
 import org.nd4j.common.primitives.Pair;
@@ -97,8 +98,12 @@ import org.tensorflow.framework.GraphDef;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -160,6 +165,10 @@ public class SameDiff extends SDBaseOps {
     @Setter
     private boolean enableCache = true;
 
+    //Max number of independent ops executed concurrently during inference. 1 means sequential execution
+    @Getter
+    private volatile int opParallelism = 1;
+
     ///////////////////////////////////////
     //Fields related to training
     @Getter
@@ -491,6 +500,47 @@ public class SameDiff extends SDBaseOps {
         return this;
     }
 
+    /**
+     * Set the max number of independent ops that may be executed concurrently during graph execution.
+     * When set to a value greater than 1, ops that have all their inputs available in the same frame/iteration
+     * (for example, parallel branches of an Inception block, or attention heads) are executed concurrently on a
+     * work-stealing pool shared by all SameDiff instances (see {@link #getOpExecutor()}), up to the specified number
+     * of ops at a time, while memory management and dependency tracking still happen in the calling thread, in the
+     * same order as for sequential execution.<br>
+     * Note that ops are always executed sequentially if any listeners are active, and that random ops and control
+     * flow ops are always executed in the calling thread.
+     *
+     * @param opParallelism Max number of ops to execute concurrently. Default: 1 (sequential execution)
+     */
+    public SameDiff setOpParallelism(int opParallelism) {
+        Preconditions.checkArgument(opParallelism >= 1, "Op parallelism must be 1 or more, got %s", opParallelism);
+        this.opParallelism = opParallelism;
+        return this;
+    }
+
+    /**
+     * Get the executor used for concurrent op execution - see {@link #setOpParallelism(int)}.
+     * The executor is shared between all SameDiff instances, so it has no lifecycle to manage: it's created on first
+     * use, with one daemon worker thread per available processor, and idle workers are released automatically.
+     * The number of ops executed concurrently for a single session is bounded by {@link #getOpParallelism()}, and
+     * while ops are executed concurrently, the native (OMP) threads available to each op are reduced accordingly
+     * (see {@link org.nd4j.linalg.factory.Environment#setMaxThreads(int)}), so the total number of busy threads stays
+     * close to the number of processors.
+     */
+    public ExecutorService getOpExecutor() {
+        return OpExecutorHolder.INSTANCE;
+    }
+
+    private static class OpExecutorHolder {
+        private static final ExecutorService INSTANCE = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                pool -> {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    t.setName("SameDiff-op-executor-" + t.getPoolIndex());
+                    t.setDaemon(true);
+                    return t;
+                }, null, false);
+    }
+
     /**
      * Set the current SameDiff-wide {@link Listener} instances.
      *
@@ -2911,6 +2961,23 @@ public class SameDiff extends SDBaseOps {
         return batchOutput().output(outputs).inputs(placeholders).output();
     }
 
+    /**
+     * Compile a reusable execution plan for the specified outputs and placeholder shapes.<br>
+     * The subgraph, op execution order, op output shapes and buffer assignments are all calculated once, here.
+     * Executing the plan via {@link ExecutionPlan#output(Map)} then skips all graph analysis, which is useful when
+     * repeatedly performing inference with the same input shapes - particularly for small graphs, where this analysis
+     * can take longer than the op execution itself.<br>
+     * Note that the returned plan is only valid as long as this SameDiff instance's graph structure is not modified.
+     * Graphs with control flow ops are not supported - see {@link ExecutionPlan} for details.
+     *
+     * @param outputs           Variables to calculate
+     * @param placeholderShapes Fully defined shapes for all placeholders required to calculate the outputs
+     * @return The compiled execution plan
+     */
+    public ExecutionPlan compile(@NonNull List<String> outputs, @NonNull Map<String, long[]> placeholderShapes) {
+        return ExecutionPlan.compile(this, outputs, placeholderShapes);
+    }
+
 
     /**
      * Do inference for the given variables for a single batch.
@@ -5943,7 +6010,8 @@ public class SameDiff extends SDBaseOps {
             byte varType = (byte) variable.getVariableType().ordinal();
             if (variable.isConstant() || variable.isPlaceHolder() || variable.getVariableType() == VariableType.VARIABLE) {
                 //Don't export array type (i.e., activations), these are always replaced/re-calculated on each step
-                array = arr == null ? 0 : arr.toFlatArray(bufferBuilder);
+                //Arrays are stored aligned and in native byte order, so they can be used directly when memory-mapped
+                array = arr == null ? 0 : MappedFlatArrays.toFlatArray(bufferBuilder, arr);
             }
 
             if (variable.getVariableType() == VariableType.PLACEHOLDER) {
@@ -6180,8 +6248,23 @@ public class SameDiff extends SDBaseOps {
      * @return The loaded SameDiff network
      */
     public static SameDiff load(@NonNull File file, boolean loadUpdaterState) {
+        return load(file, loadUpdaterState, false);
+    }
+
+    /**
+     * Load the SameDiff instance previously saved with {@link #save(File, boolean)}, optionally memory-mapping the file.
+     * See {@link #fromFlatFile(File, boolean, boolean)} for details.
+     *
+     * @param file             The file to load the network from
+     * @param loadUpdaterState If true - load the updater state (history etc for updaters such as Adam, Nesterov momentum, RMSProp etc).
+     *                         For inference only, this should be false.
+     * @param memoryMap        If true: memory-map the file, and use the constant and variable arrays directly from the
+     *                         mapped file without copying them
+     * @return The loaded SameDiff network
+     */
+    public static SameDiff load(@NonNull File file, boolean loadUpdaterState, boolean memoryMap) {
         try {
-            return fromFlatFile(file, loadUpdaterState);
+            return fromFlatFile(file, loadUpdaterState, memoryMap);
         } catch (IOException e) {
             throw new RuntimeException("Error loading SameDiff instance from file", e);
         }
@@ -6284,6 +6367,43 @@ public class SameDiff extends SDBaseOps {
      * @throws IOException
      */
     public static SameDiff fromFlatFile(@NonNull File file, boolean loadUpdaterState) throws IOException {
+        return fromFlatFile(file, loadUpdaterState, false);
+    }
+
+    /**
+     * Create a {@link SameDiff} instance from a file, optionally also loading the updater state, and optionally
+     * memory-mapping the file instead of reading it into memory.<br>
+     * When memory-mapped, the arrays of constants and variables are backed directly by the mapped file where possible
+     * (i.e., for files saved with native byte order and aligned arrays, as written by {@link #asFlatFile(File)}), instead of
+     * being copied. This reduces both load time and memory use, as unused pages are not read from disk, and the same
+     * pages can be shared between processes loading the same file.<br>
+     * If the file is writable, it is mapped privately (copy-on-write): modifying the arrays (for example, during training)
+     * does not modify the file. If the file is read-only, only constants are backed by the (read-only) mapping and
+     * variables are copied, as variables are modified during training.<br>
+     * Note that the file must not be modified or truncated while the loaded instance is in use, and that FlatBuffers files
+     * are limited to 2GB.
+     *
+     * @param file             the file to load from
+     * @param loadUpdaterState If true, load the updater state (Adam etc state). For training, use true. For inference, use false
+     * @param memoryMap        If true: memory-map the file. If false: read the file into memory, as per {@link #fromFlatFile(File, boolean)}
+     * @return the loaded same diff instance
+     * @throws IOException
+     */
+    public static SameDiff fromFlatFile(@NonNull File file, boolean loadUpdaterState, boolean memoryMap) throws IOException {
+        if (memoryMap) {
+            Preconditions.checkState(file.length() <= Integer.MAX_VALUE, "Cannot memory-map file %s of size %s bytes:" +
+                    " FlatBuffers files are limited to 2GB", file, file.length());
+            boolean writable = file.canWrite();
+            ByteBuffer bbIn;
+            try (RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r"); FileChannel ch = raf.getChannel()) {
+                bbIn = ch.map(writable ? FileChannel.MapMode.PRIVATE : FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+            if (!writable) {
+                log.info("File {} is not writable: only constant arrays will be memory-mapped, variable arrays will be copied", file);
+            }
+            return fromFlatBuffers(bbIn, loadUpdaterState, true, writable);
+        }
+
         byte[] bytes;
         try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
             bytes = IOUtils.toByteArray(is);
@@ -6319,6 +6439,10 @@ public class SameDiff extends SDBaseOps {
      * @throws IOException
      */
     public static SameDiff fromFlatBuffers(ByteBuffer bbIn, boolean loadUpdaterState) throws IOException {
+        return fromFlatBuffers(bbIn, loadUpdaterState, false, false);
+    }
+
+    private static SameDiff fromFlatBuffers(ByteBuffer bbIn, boolean loadUpdaterState, boolean mapConstants, boolean mapVariables) throws IOException {
 
         FlatGraph fg = FlatGraph.getRootAsFlatGraph(bbIn);
 
@@ -6400,9 +6524,14 @@ public class SameDiff extends SDBaseOps {
 
             FlatArray fa = v.ndarray();
             if (fa != null && vt != VariableType.ARRAY) {
-                INDArray arr;
-                try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
-                    arr = Nd4j.createFromFlatArray(fa);
+                INDArray arr = null;
+                if ((mapConstants && vt == VariableType.CONSTANT) || (mapVariables && vt == VariableType.VARIABLE)) {
+                    arr = MappedFlatArrays.fromFlatArray(fa, bbIn);
+                }
+                if (arr == null) {
+                    try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                        arr = Nd4j.createFromFlatArray(fa);
+                    }
                 }
                 sd.setArrayForVariable(n, arr);
             }
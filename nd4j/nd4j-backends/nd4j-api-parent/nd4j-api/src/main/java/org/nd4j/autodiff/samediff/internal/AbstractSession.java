@@ -35,9 +35,13 @@ import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.api.ops.impl.controlflow.compat.*;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.common.function.Predicate;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 import static org.nd4j.imports.VariableUtils.stripVarSuffix;
@@ -100,6 +104,28 @@ public abstract class AbstractSession<T, O> {
      */
     protected final Set<String> zeroInputOpsInSubgraph = new HashSet<>();
 
+    /**
+     * Ops that were parameterized ahead of time and sent to the op executor, together with other independent ops
+     * that were available for execution at the same time. See {@link SameDiff#setOpParallelism(int)}.
+     * Results are still consumed in the main execution loop, in the same order as for sequential execution - hence
+     * dependency tracking, memory management and outputs are the same in both modes
+     */
+    protected final Map<ExecStep, ParallelStep<O>> parallelSteps = new HashMap<>();
+
+    /**
+     * Result of the op execution that was already calculated by the op executor, for the op currently being processed.
+     * See {@link #takePrecomputedResult()}
+     */
+    private ExecutionResult precomputedResult;
+
+    /**
+     * Native (OMP) thread limit to restore once no parallel op execution is in progress, and the number of
+     * sessions currently executing ops in parallel. See {@link #limitNativeThreads(int)}
+     */
+    private static final Object nativeThreadsLock = new Object();
+    private static int activeParallelSessions = 0;
+    private static int originalMaxThreads;
+
     public AbstractSession(@NonNull SameDiff sameDiff) {
         this.sameDiff = sameDiff;
     }
@@ -232,6 +258,11 @@ public abstract class AbstractSession<T, O> {
         dt.clear();
         subgraph.clear();
         subgraphOps.clear();
+        parallelSteps.clear();
+        precomputedResult = null;
+
+        // Ops are sent to the op executor only if there are no listeners, as listeners expect sequential callbacks
+        boolean parallel = sameDiff.getOpParallelism() > 1 && (listeners == null || listeners.isEmpty());
 
         // Step 1: determine subgraph structure we actually need to execute
         // Basic plan: work backwards from the variables we want, based on the graph
@@ -477,61 +508,46 @@ public abstract class AbstractSession<T, O> {
                     outFrameIter = es.getFrameIter();
                 }
 
-                // Resolve the inputs to this execution step (op) to actual arrays
-                Set<VarId> inputs = null;
-                Set<VarId> allIterInputs = null;
-                Set<String> constAndPhInputs = null;
-                DependencyList<ExecStep, ExecStep> dl = dt.getDependencies(es);
+                ParallelStep<O> parallelStep = parallelSteps.remove(es);
+                if (parallelStep == null && parallel && isParallelizable(op)) {
+                    // Send this op, and other independent ops available in the same frame/iteration, to the op executor
+                    parallelStep = submitParallelSteps(es, predicate, placeholderValues, reqOutputVariablesSet,
+                            otherPlaceHolderValues);
+                }
 
                 List<String> inputNames = op.getInputsToOp();
-                if (inputNames != null && !inputNames.isEmpty()) {
-                    inputs = new LinkedHashSet<>();
-                    allIterInputs = new LinkedHashSet<>();
-                    constAndPhInputs = new LinkedHashSet<>();
-                    Iterable<ExecStep> deps = dl.getDependencies();
-                    if (deps != null) {
-                        for (ExecStep dep : deps) {
-                            switch (dep.getType()) {
-                                case OP:
-                                case SWITCH_L:
-                                case SWITCH_R:
-                                    // The current execution step depends on one output of the op "dep"
-                                    SameDiffOp toExecOp = sameDiff.getOps().get(es.getName());
-                                    List<String> inputsToExecOp = toExecOp.getInputsToOp();
-                                    SameDiffOp inputOp = sameDiff.getOps().get(dep.getName());
-                                    List<String> inputOpOutNames = inputOp.getOutputsOfOp();
-                                    for (String s : inputsToExecOp) {
-                                        if (inputOpOutNames.contains(s)) {
-                                            VarId vid = new VarId(s, dep.getFrameIter().getFrame(),
-                                                    dep.getFrameIter().getIteration(),
-                                                    dep.getFrameIter().getParentFrame());
-                                            inputs.add(vid);
-                                        }
-                                    }
-                                    break;
-                                case VARIABLE:
-                                    inputs.add(new VarId(dep.getName(), dep.getFrameIter().getFrame(),
-                                            dep.getFrameIter().getIteration(), dep.getFrameIter().getParentFrame()));
-                                    break;
-                                case CONSTANT:
-                                case PLACEHOLDER:
-                                    constAndPhInputs.add(dep.getName());
-                                    break;
-                                default:
-                                    throw new UnsupportedOperationException("Not yet implemented: " + dep.getType());
-                            }
-                        }
-                    }
+                Set<VarId> inputs;
+                Set<VarId> allIterInputs;
+                Set<String> constAndPhInputs;
+                O parameterizedOp;
+                if (parallelStep != null) {
+                    inputs = parallelStep.getInputs();
+                    allIterInputs = parallelStep.getAllIterInputs();
+                    constAndPhInputs = parallelStep.getConstAndPhInputs();
+                    parameterizedOp = parallelStep.getParameterizedOp();
+                    precomputedResult = parallelStep.awaitResult();
+                } else {
+                    // Resolve the inputs to this execution step (op) to actual arrays
+                    StepInputs stepInputs = resolveInputs(es, op);
+                    inputs = stepInputs.getInputs();
+                    allIterInputs = stepInputs.getAllIterInputs();
+                    constAndPhInputs = stepInputs.getConstAndPhInputs();
+
+                    // Do execution of the op, in 2 steps
+                    // (a) "Parameterize" the op - i.e., find and set the arrays on the op, allocate
+                    // outputs, etc ready for execution
+                    // (b) actually execute the operation
+                    parameterizedOp = getAndParameterizeOp(opName, outFrameIter, inputs, allIterInputs, constAndPhInputs,
+                            placeholderValues, reqOutputVariablesSet, otherPlaceHolderValues);
                 }
 
-                // Do execution of the op, in 2 steps
-                // (a) "Parameterize" the op - i.e., find and set the arrays on the op, allocate
-                // outputs, etc ready for execution
-                // (b) actually execute the operation
-                O parameterizedOp = getAndParameterizeOp(opName, outFrameIter, inputs, allIterInputs, constAndPhInputs,
-                        placeholderValues, reqOutputVariablesSet, otherPlaceHolderValues);
-                ExecutionResult opOutputValues = getOutputs(parameterizedOp, outFrameIter, inputs, allIterInputs,
-                        constAndPhInputs, listeners, at, batch, reqOutputVariablesSet, otherPlaceHolderValues);
+                ExecutionResult opOutputValues;
+                try {
+                    opOutputValues = getOutputs(parameterizedOp, outFrameIter, inputs, allIterInputs,
+                            constAndPhInputs, listeners, at, batch, reqOutputVariablesSet, otherPlaceHolderValues);
+                } finally {
+                    precomputedResult = null;
+                }
                 List<String> opOutVarNames = op.getOutputsOfOp();
 
                 int lengthToCheck = opOutputValues.numResults();
@@ -717,6 +733,198 @@ public abstract class AbstractSession<T, O> {
                 .valueOutputs(outValues).build();
     }
 
+    /**
+     * Resolve the inputs of the specified op execution step, based on the satisfied dependencies of that step
+     *
+     * @param es Execution step for the op
+     * @param op Op to get the inputs for
+     * @return Inputs of the op, split by type. All fields are null if op has no inputs
+     */
+    protected StepInputs resolveInputs(ExecStep es, SameDiffOp op) {
+        Set<VarId> inputs = null;
+        Set<VarId> allIterInputs = null;
+        Set<String> constAndPhInputs = null;
+        DependencyList<ExecStep, ExecStep> dl = dt.getDependencies(es);
+
+        List<String> inputNames = op.getInputsToOp();
+        if (inputNames != null && !inputNames.isEmpty()) {
+            inputs = new LinkedHashSet<>();
+            allIterInputs = new LinkedHashSet<>();
+            constAndPhInputs = new LinkedHashSet<>();
+            Iterable<ExecStep> deps = dl.getDependencies();
+            if (deps != null) {
+                for (ExecStep dep : deps) {
+                    switch (dep.getType()) {
+                        case OP:
+                        case SWITCH_L:
+                        case SWITCH_R:
+                            // The current execution step depends on one output of the op "dep"
+                            SameDiffOp toExecOp = sameDiff.getOps().get(es.getName());
+                            List<String> inputsToExecOp = toExecOp.getInputsToOp();
+                            SameDiffOp inputOp = sameDiff.getOps().get(dep.getName());
+                            List<String> inputOpOutNames = inputOp.getOutputsOfOp();
+                            for (String s : inputsToExecOp) {
+                                if (inputOpOutNames.contains(s)) {
+                                    VarId vid = new VarId(s, dep.getFrameIter().getFrame(),
+                                            dep.getFrameIter().getIteration(),
+                                            dep.getFrameIter().getParentFrame());
+                                    inputs.add(vid);
+                                }
+                            }
+                            break;
+                        case VARIABLE:
+                            inputs.add(new VarId(dep.getName(), dep.getFrameIter().getFrame(),
+                                    dep.getFrameIter().getIteration(), dep.getFrameIter().getParentFrame()));
+                            break;
+                        case CONSTANT:
+                        case PLACEHOLDER:
+                            constAndPhInputs.add(dep.getName());
+                            break;
+                        default:
+                            throw new UnsupportedOperationException("Not yet implemented: " + dep.getType());
+                    }
+                }
+            }
+        }
+
+        return new StepInputs(inputs, allIterInputs, constAndPhInputs);
+    }
+
+    /**
+     * Parameterize the specified op execution step, plus up to {@link SameDiff#getOpParallelism()} - 1 other
+     * parallelizable op steps that are available for execution in the current frame/iteration, and send all of them to
+     * the op executor. Parameterization (and hence all memory manager allocations) happens in the calling thread,
+     * only the op execution itself happens in the op executor threads.<br>
+     * Returns null (nothing is submitted) if no other ops are available for execution at this point: in this case the
+     * op should be executed sequentially instead.
+     *
+     * @return Parallel step for the execution step es, or null if the op should be executed sequentially
+     */
+    protected ParallelStep<O> submitParallelSteps(ExecStep es, ExecStepPredicate predicate,
+            Map<String, T> placeholderValues, Set<String> reqOutputVariablesSet,
+            Map<String, SDValue> otherPlaceHolderValues) {
+        int maxSteps = sameDiff.getOpParallelism();
+        List<ExecStep> steps = new ArrayList<>(maxSteps);
+        steps.add(es);
+        for (ExecStep other : dt.getAllSatisfiedQueue()) {
+            if (steps.size() >= maxSteps)
+                break;
+
+            if (other.getType() == ExecType.OP && predicate.test(other) && !parallelSteps.containsKey(other)
+                    && isParallelizable(sameDiff.getOps().get(other.getName()))) {
+                steps.add(other);
+            }
+        }
+
+        if (steps.size() < 2)
+            return null;
+
+        ExecutorService executor = sameDiff.getOpExecutor();
+        int deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        ParallelStep<O> ret = null;
+        limitNativeThreads(steps.size());
+        try {
+            for (ExecStep step : steps) {
+                SameDiffOp op = sameDiff.getOps().get(step.getName());
+                StepInputs stepInputs = resolveInputs(step, op);
+                FrameIter outFrameIter = step.getFrameIter();
+                O parameterizedOp = getAndParameterizeOp(step.getName(), outFrameIter, stepInputs.getInputs(),
+                        stepInputs.getAllIterInputs(), stepInputs.getConstAndPhInputs(), placeholderValues,
+                        reqOutputVariablesSet, otherPlaceHolderValues);
+
+                CompletableFuture<ExecutionResult> result = CompletableFuture.supplyAsync(() -> {
+                    Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+                    return execParallelizable(parameterizedOp, outFrameIter, stepInputs.getInputs(),
+                            stepInputs.getAllIterInputs(), stepInputs.getConstAndPhInputs(), otherPlaceHolderValues);
+                }, executor);
+
+                ParallelStep<O> ps = new ParallelStep<>(parameterizedOp, stepInputs.getInputs(),
+                        stepInputs.getAllIterInputs(), stepInputs.getConstAndPhInputs(), result);
+                if (step == es) {
+                    ret = ps;
+                } else {
+                    parallelSteps.put(step, ps);
+                }
+            }
+
+            // Wait for all submitted ops: memory manager may release and reuse input arrays once op results are processed
+            for (ParallelStep<O> ps : parallelSteps.values())
+                ps.getResult().exceptionally(t -> null).join();
+            ret.getResult().exceptionally(t -> null).join();
+        } finally {
+            restoreNativeThreads();
+        }
+
+        return ret;
+    }
+
+    /**
+     * Limit the number of native (OMP) threads used by each op while the specified number of ops are executed
+     * concurrently, so that the ops together use roughly as many threads as a single op executed sequentially, instead
+     * of one full set of native threads per op.<br>
+     * The original limit is restored by {@link #restoreNativeThreads()} once no session is executing ops in parallel.
+     */
+    private static void limitNativeThreads(int numConcurrentOps) {
+        synchronized (nativeThreadsLock) {
+            if (activeParallelSessions++ == 0) {
+                originalMaxThreads = Nd4j.getEnvironment().maxThreads();
+            }
+            int perOp = Math.max(1, originalMaxThreads / numConcurrentOps);
+            if (perOp < Nd4j.getEnvironment().maxThreads()) {
+                Nd4j.getEnvironment().setMaxThreads(perOp);
+            }
+        }
+    }
+
+    private static void restoreNativeThreads() {
+        synchronized (nativeThreadsLock) {
+            if (--activeParallelSessions == 0) {
+                Nd4j.getEnvironment().setMaxThreads(originalMaxThreads);
+            }
+        }
+    }
+
+    /**
+     * Returns the result of the op execution that was already calculated by the op executor, for the op currently
+     * being processed by {@link #getOutputs(Object, FrameIter, Set, Set, Set, List, At, MultiDataSet, Set, Map)}.
+     * The result is cleared after this call.
+     *
+     * @return Precomputed execution result, or null if the op was not executed yet, and should be executed now
+     */
+    protected ExecutionResult takePrecomputedResult() {
+        ExecutionResult ret = precomputedResult;
+        precomputedResult = null;
+        return ret;
+    }
+
+    /**
+     * Whether the specified op can be executed in the op executor threads, concurrently with other independent ops.
+     * Such ops must not modify any session state during execution - for example, they must not access the memory
+     * manager or node outputs, and must not depend on thread-local state (such as the RNG).
+     *
+     * @param op Op to check
+     * @return True if the op can be executed via {@link #execParallelizable(Object, FrameIter, Set, Set, Set, Map)}
+     */
+    protected boolean isParallelizable(SameDiffOp op) {
+        return false;
+    }
+
+    /**
+     * Execute the already parameterized op, without any post-processing (listeners, dependency or array tracking).
+     * This method is called from the op executor threads, only for the ops where {@link #isParallelizable(SameDiffOp)}
+     * returns true.<br>
+     * The default implementation doesn't execute anything and returns null: each op of the wave is then executed
+     * sequentially in the calling thread by
+     * {@link #getOutputs(Object, FrameIter, Set, Set, Set, List, At, MultiDataSet, Set, Map)}, in the same order as
+     * for sequential execution (see {@link #takePrecomputedResult()}).
+     *
+     * @return Execution result, or null if the op should be executed in the calling thread instead
+     */
+    protected ExecutionResult execParallelizable(O op, FrameIter outputFrameIter, Set<VarId> inputs,
+            Set<VarId> allIterInputs, Set<String> constAndPhInputs, Map<String, SDValue> otherPlaceHolderValues) {
+        return null;
+    }
+
     private FrameIter getExitIter(ExecStep es) {
         FrameIter outFrameIter;
         // Exit node forwards input to parent frame
@@ -1449,4 +1657,41 @@ public abstract class AbstractSession<T, O> {
     }
 
     ;
+
+    /**
+     * Inputs for an op execution step, split by input type
+     */
+    @Data
+    @AllArgsConstructor
+    protected static class StepInputs {
+        protected Set<VarId> inputs;
+        protected Set<VarId> allIterInputs;
+        protected Set<String> constAndPhInputs;
+    }
+
+    /**
+     * An op execution step that was parameterized in advance, and submitted to the op executor
+     */
+    @Getter
+    @AllArgsConstructor
+    protected static class ParallelStep<O> {
+        protected final O parameterizedOp;
+        protected final Set<VarId> inputs;
+        protected final Set<VarId> allIterInputs;
+        protected final Set<String> constAndPhInputs;
+        protected final CompletableFuture<ExecutionResult> result;
+
+        /**
+         * Wait for the op execution to complete, rethrowing the op execution exception, if any
+         */
+        protected ExecutionResult awaitResult() {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
 }
@@ -0,0 +1,1013 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.functions.DifferentialFunction;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.memory.StaticMemoryPlanner;
+import org.nd4j.autodiff.samediff.internal.memory.StaticMemoryPlanner.MemoryPlan;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.util.ArrayUtil;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.*;
+import org.nd4j.linalg.api.ops.custom.Invoke;
+import org.nd4j.linalg.api.ops.impl.controlflow.compat.*;
+import org.nd4j.linalg.api.ops.impl.layers.ExternalErrorsFunction;
+import org.nd4j.linalg.api.ops.impl.shape.CreateView;
+import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
+import org.nd4j.linalg.api.ops.impl.transforms.Assert;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.Assign;
+import org.nd4j.linalg.api.ops.impl.transforms.gradient.GradientBackwardsMarker;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Identity;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * A precompiled execution plan for a fixed set of outputs and fixed placeholder shapes, as created by
+ * {@link SameDiff#compile(List, Map)}.<br>
+ * All graph analysis is done once, when the plan is created: the subgraph and op schedule (execution order) are
+ * determined, output shapes are calculated for every op, and every intermediate array is assigned an offset in a
+ * preallocated arena (one per datatype) by the {@link StaticMemoryPlanner}, based on the array lifetimes: arrays that
+ * are never in use at the same time share memory. Executing the plan via {@link #output(Map)} then only sets the
+ * arrays on pre-built {@link OpContext}s and executes the ops - no memory is allocated, other than for the requested
+ * outputs. The memory required for execution is known ahead of time: see {@link #getArenaBytes()}.<br>
+ * <br>
+ * The plan itself is immutable and can be shared between threads: op contexts and buffers (including the arenas) are
+ * created separately for each thread executing the plan, on the first {@link #output(Map)} call in that thread. These
+ * are released when {@link #releaseThreadState()} is called from that thread, when the plan is closed, or - for
+ * threads that have terminated - on the next first execution in another thread. Threads of a pool that execute the
+ * plan only occasionally should call {@link #releaseThreadState()} after use, as their arenas are kept otherwise.<br>
+ * Ops that are configured or modified while compiling the plan (ops that need configuration based on the input shapes,
+ * and legacy ops with per-execution state such as reduce ops with an axis argument, or scalar ops with the scalar as an
+ * input) are copied, so ops and variables of the graph are never modified by plan compilation or execution.
+ * Plans are only valid for graphs that are not modified after compilation.<br>
+ * Limitations: control flow ops (loops, conditions), tensor array ops and Invoke ops are not supported. Ops with
+ * output shapes that depend on the input values (not just the input shapes) are not supported either, as the output
+ * shapes are calculated once, when compiling the plan.
+ */
+@Slf4j
+public class ExecutionPlan implements Closeable {
+
+    /**
+     * Type of a step in the op schedule
+     */
+    public enum StepType {
+        /**
+         * Custom op (DynamicCustomOp), executed via {@link Nd4j#exec(CustomOp, OpContext)}
+         */
+        CUSTOM,
+        /**
+         * Legacy op (transform, reduce, scalar etc), executed via {@link Nd4j#exec(Op, OpContext)}
+         */
+        LEGACY,
+        /**
+         * Identity op: the output is the input array, no execution or memory is required
+         */
+        IDENTITY
+    }
+
+    @Getter
+    private final SameDiff sameDiff;
+    @Getter
+    private final List<String> outputs;
+    @Getter
+    private final Map<String, long[]> placeholderShapes;
+    @Getter
+    private final List<Step> schedule;
+
+    private final String[] varNames;                        //Variable index to variable name
+    private final Map<String, LongShapeDescriptor> shapes;  //Variable name to (fixed) shape
+    private final String[] placeholders;
+    private final int[] placeholderIdxs;
+    private final DataType[] placeholderTypes;
+    private final int[] constAndVarIdxs;
+    private final int[] outputIdxs;
+    private final boolean[] dupOutput;                      //Outputs backed by a (reused) buffer slot
+    @Getter
+    private final LongShapeDescriptor[] slotShapes;
+    private final long[] slotOffsets;                       //Offset (in elements) of each slot in the arena for its datatype, or -1
+    @Getter
+    private final Map<DataType, MemoryPlan> memoryPlans;
+
+    private final ThreadLocal<ExecState> execState = new ThreadLocal<>();
+    private final List<ExecState> allExecStates = Collections.synchronizedList(new ArrayList<>());
+
+    private ExecutionPlan(SameDiff sameDiff, List<String> outputs, Map<String, long[]> placeholderShapes, List<Step> schedule,
+                          String[] varNames, Map<String, LongShapeDescriptor> shapes, String[] placeholders, int[] placeholderIdxs,
+                          DataType[] placeholderTypes, int[] constAndVarIdxs, int[] outputIdxs, boolean[] dupOutput,
+                          LongShapeDescriptor[] slotShapes, long[] slotOffsets, Map<DataType, MemoryPlan> memoryPlans) {
+        this.sameDiff = sameDiff;
+        this.outputs = Collections.unmodifiableList(new ArrayList<>(outputs));
+        this.placeholderShapes = Collections.unmodifiableMap(placeholderShapes);
+        this.schedule = Collections.unmodifiableList(schedule);
+        this.varNames = varNames;
+        this.shapes = Collections.unmodifiableMap(shapes);
+        this.placeholders = placeholders;
+        this.placeholderIdxs = placeholderIdxs;
+        this.placeholderTypes = placeholderTypes;
+        this.constAndVarIdxs = constAndVarIdxs;
+        this.outputIdxs = outputIdxs;
+        this.dupOutput = dupOutput;
+        this.slotShapes = slotShapes;
+        this.slotOffsets = slotOffsets;
+        this.memoryPlans = Collections.unmodifiableMap(memoryPlans);
+    }
+
+    /**
+     * Compile an execution plan for the specified outputs and placeholder shapes.
+     * Note that a single execution of the graph is performed (using arrays of zeros as the placeholder values), to
+     * calculate the output shapes of all ops.
+     *
+     * @param sameDiff          SameDiff instance to compile the plan for
+     * @param outputs           Names of the variables to calculate
+     * @param placeholderShapes Shapes of all placeholders required to calculate the outputs. Must be fully defined
+     *                          (no -1 dimensions)
+     * @return The execution plan
+     */
+    public static ExecutionPlan compile(@NonNull SameDiff sameDiff, @NonNull List<String> outputs, @NonNull Map<String, long[]> placeholderShapes) {
+        Preconditions.checkArgument(!outputs.isEmpty(), "No outputs were specified");
+        for (String s : outputs) {
+            Preconditions.checkArgument(sameDiff.hasVariable(s), "Cannot compile execution plan: no variable with name \"%s\" exists", s);
+        }
+
+        //Step 1: determine op schedule. Ops are ordered by depth first post-order traversal from the requested outputs
+        List<String> opOrder = scheduleOps(sameDiff, outputs);
+
+        //Step 2: index all variables used in the plan
+        Map<String, Integer> varIdx = new LinkedHashMap<>();
+        for (String s : outputs)
+            index(varIdx, s);
+        for (String opName : opOrder) {
+            DifferentialFunction df = sameDiff.getOps().get(opName).getOp();
+            String[] argNames = df.argNames();
+            if (argNames != null) {
+                for (String s : argNames)
+                    index(varIdx, s);
+            }
+            for (String s : df.outputVariablesNames())
+                index(varIdx, s);
+        }
+        String[] varNames = varIdx.keySet().toArray(new String[0]);
+
+        List<String> phs = new ArrayList<>();
+        List<Integer> constAndVars = new ArrayList<>();
+        for (int i = 0; i < varNames.length; i++) {
+            SDVariable v = sameDiff.getVariable(varNames[i]);
+            if (v.isPlaceHolder()) {
+                phs.add(varNames[i]);
+            } else if (v.getVariableType() == VariableType.CONSTANT || v.getVariableType() == VariableType.VARIABLE) {
+                constAndVars.add(i);
+            }
+        }
+
+        int[] placeholderIdxs = new int[phs.size()];
+        DataType[] placeholderTypes = new DataType[phs.size()];
+        Map<String, long[]> phShapes = new LinkedHashMap<>();
+        for (int i = 0; i < phs.size(); i++) {
+            String ph = phs.get(i);
+            long[] shape = placeholderShapes.get(ph);
+            Preconditions.checkArgument(shape != null, "Cannot compile execution plan: no shape was provided for required placeholder \"%s\"", ph);
+            for (long l : shape) {
+                Preconditions.checkArgument(l >= 0, "Cannot compile execution plan: shape for placeholder \"%s\" must be fully defined, got %s", ph, shape);
+            }
+            SDVariable v = sameDiff.getVariable(ph);
+            long[] phShape = v.placeholderShape();
+            if (phShape != null) {
+                Preconditions.checkArgument(phShape.length == shape.length, "Cannot compile execution plan: placeholder \"%s\" has shape %s, got incompatible shape %s", ph, phShape, shape);
+                for (int j = 0; j < shape.length; j++) {
+                    Preconditions.checkArgument(phShape[j] < 0 || phShape[j] == shape[j], "Cannot compile execution plan: placeholder \"%s\" has shape %s, got incompatible shape %s", ph, phShape, shape);
+                }
+            }
+            placeholderIdxs[i] = varIdx.get(ph);
+            placeholderTypes[i] = v.dataType();
+            phShapes.put(ph, shape.clone());
+        }
+
+        //Step 3: parameterize and execute all ops once, to determine the output shapes
+        Map<String, LongShapeDescriptor> shapes = new HashMap<>();
+        INDArray[] values = new INDArray[varNames.length];
+        for (int i = 0; i < phs.size(); i++) {
+            values[placeholderIdxs[i]] = Nd4j.create(placeholderTypes[i], phShapes.get(phs.get(i)));
+            shapes.put(phs.get(i), values[placeholderIdxs[i]].shapeDescriptor());
+        }
+        for (int i : constAndVars) {
+            values[i] = sameDiff.getArrForVarName(varNames[i]);
+            shapes.put(varNames[i], values[i].shapeDescriptor());
+        }
+
+        List<StepBuilder> steps = new ArrayList<>(opOrder.size());
+        for (String opName : opOrder) {
+            steps.add(traceOp(sameDiff, sameDiff.getOps().get(opName), varIdx, values, shapes));
+        }
+
+        //Step 4: static memory planning
+        boolean[] isOutput = new boolean[varNames.length];
+        int[] outputIdxs = new int[outputs.size()];
+        for (int i = 0; i < outputIdxs.length; i++) {
+            outputIdxs[i] = varIdx.get(outputs.get(i));
+            isOutput[outputIdxs[i]] = true;
+        }
+        List<LongShapeDescriptor> slotShapeList = new ArrayList<>();
+        List<int[]> slotLifetimes = new ArrayList<>();
+        int[] varSlots = new int[varNames.length];
+        int[] root = assignSlots(steps, isOutput, varSlots, slotShapeList, slotLifetimes);
+        LongShapeDescriptor[] slotShapes = slotShapeList.toArray(new LongShapeDescriptor[0]);
+        long[] slotOffsets = new long[slotShapes.length];
+        Map<DataType, MemoryPlan> memoryPlans = planArenas(slotShapes, slotLifetimes, slotOffsets);
+
+        //Outputs that are aliases of arrays in a buffer slot need to be copied, as the slot is reused by later executions
+        boolean[] dupOutput = new boolean[outputIdxs.length];
+        for (int i = 0; i < outputIdxs.length; i++) {
+            dupOutput[i] = varSlots[root[outputIdxs[i]]] >= 0;
+        }
+
+        List<Step> schedule = new ArrayList<>(steps.size());
+        for (StepBuilder sb : steps)
+            schedule.add(sb.build());
+
+        int[] constAndVarIdxs = new int[constAndVars.size()];
+        for (int i = 0; i < constAndVarIdxs.length; i++)
+            constAndVarIdxs[i] = constAndVars.get(i);
+
+        ExecutionPlan plan = new ExecutionPlan(sameDiff, outputs, phShapes, schedule, varNames, shapes, phs.toArray(new String[0]),
+                placeholderIdxs, placeholderTypes, constAndVarIdxs, outputIdxs, dupOutput, slotShapes, slotOffsets, memoryPlans);
+        log.debug("Compiled execution plan for outputs {}: {} ops, {} intermediate arrays, arena size {} bytes ({} bytes without reuse)",
+                outputs, schedule.size(), slotShapes.length, plan.getArenaBytes(), plan.getTotalIntermediateBytes());
+        return plan;
+    }
+
+    /**
+     * Execute the plan, calculating the outputs the plan was compiled for
+     *
+     * @param placeholderValues Placeholder values. Must have the same shapes as the plan was compiled for
+     * @return Output arrays, keyed by variable name
+     */
+    public Map<String, INDArray> output(Map<String, INDArray> placeholderValues) {
+        ExecState state = execState.get();
+        if (state == null) {
+            releaseTerminatedThreads();
+            state = new ExecState();
+            execState.set(state);
+            allExecStates.add(state);
+        }
+
+        INDArray[] values = state.values;
+        try {
+            for (int i = 0; i < placeholders.length; i++) {
+                INDArray arr = placeholderValues == null ? null : placeholderValues.get(placeholders[i]);
+                Preconditions.checkArgument(arr != null, "No array was provided for required placeholder \"%s\"", placeholders[i]);
+                long[] expShape = placeholderShapes.get(placeholders[i]);
+                Preconditions.checkArgument(Arrays.equals(expShape, arr.shape()), "Placeholder \"%s\" has shape %ndShape, but execution plan " +
+                        "was compiled for shape %s. A new plan must be compiled for different placeholder shapes", placeholders[i], arr, expShape);
+                if (arr.dataType() != placeholderTypes[i]) {
+                    arr = arr.castTo(placeholderTypes[i]);
+                }
+                values[placeholderIdxs[i]] = arr;
+            }
+            for (int i : constAndVarIdxs) {
+                values[i] = sameDiff.getArrForVarName(varNames[i]);
+            }
+
+            for (int s = 0; s < schedule.size(); s++) {
+                Step step = schedule.get(s);
+                if (step.type == StepType.IDENTITY) {
+                    values[step.outputs[0]] = values[step.inputs[0]];
+                    continue;
+                }
+
+                OpContext oc = state.contexts[s];
+                for (int i = 0; i < step.inputs.length; i++) {
+                    oc.setInputArray(i, values[step.inputs[i]]);
+                }
+                for (int i = 0; i < step.outputs.length; i++) {
+                    int slot = step.outputSlots[i];
+                    INDArray out = slot >= 0 ? state.slots[slot] : allocate(step.outputShapes[i]);
+                    oc.setOutputArray(i, out);
+                    values[step.outputs[i]] = out;
+                }
+
+                if (step.type == StepType.CUSTOM) {
+                    Nd4j.exec((CustomOp) step.op, oc);
+                } else {
+                    Op op = (Op) state.ops[s];
+                    if (step.scalarArg) {
+                        ((ScalarOp) op).setScalar(values[step.inputs[1]]);
+                    }
+                    Nd4j.exec(op, oc);
+                }
+            }
+
+            Map<String, INDArray> out = new LinkedHashMap<>();
+            for (int i = 0; i < outputIdxs.length; i++) {
+                INDArray arr = values[outputIdxs[i]];
+                out.put(outputs.get(i), dupOutput[i] ? dup(arr) : arr);
+            }
+            return out;
+        } finally {
+            Arrays.fill(values, null);
+        }
+    }
+
+    /**
+     * Get the shape of the specified variable, as calculated when compiling the plan
+     *
+     * @param variable Name of the variable
+     * @return Shape descriptor, or null if the variable is not part of the plan
+     */
+    public LongShapeDescriptor getShape(String variable) {
+        return shapes.get(variable);
+    }
+
+    /**
+     * @return The shapes of the requested outputs, as calculated when compiling the plan
+     */
+    public Map<String, LongShapeDescriptor> getOutputShapes() {
+        Map<String, LongShapeDescriptor> out = new LinkedHashMap<>();
+        for (String s : outputs)
+            out.put(s, shapes.get(s));
+        return out;
+    }
+
+    /**
+     * @return Number of buffer slots (intermediate arrays) used by each thread executing this plan
+     */
+    public int numBufferSlots() {
+        return slotShapes.length;
+    }
+
+    /**
+     * @return Total size of the preallocated arenas, in bytes. This is the memory (excluding the requested outputs,
+     * and any intermediate arrays that can't be placed in an arena, such as empty and String arrays) required by each
+     * thread executing this plan
+     */
+    public long getArenaBytes() {
+        long sum = 0;
+        for (MemoryPlan p : memoryPlans.values())
+            sum += p.getArenaSize();
+        return sum;
+    }
+
+    /**
+     * @return Peak memory in use by intermediate arrays at any point during execution, in bytes. This is a lower bound
+     * for {@link #getArenaBytes()}
+     */
+    public long getPeakLiveBytes() {
+        long sum = 0;
+        for (MemoryPlan p : memoryPlans.values())
+            sum += p.getPeakLiveSize();
+        return sum;
+    }
+
+    /**
+     * @return Total size of all intermediate arrays, in bytes - i.e., the memory required without any reuse
+     */
+    public long getTotalIntermediateBytes() {
+        long sum = 0;
+        for (MemoryPlan p : memoryPlans.values())
+            sum += p.getTotalSize();
+        return sum;
+    }
+
+    /**
+     * @return Total size of the requested outputs, in bytes. These are allocated by every {@link #output(Map)} call
+     */
+    public long getOutputBytes() {
+        long sum = 0;
+        for (String s : outputs) {
+            LongShapeDescriptor d = shapes.get(s);
+            if (d != null && !d.isEmpty())
+                sum += ArrayUtil.prodLong(d.getShape()) * d.dataType().width();
+        }
+        return sum;
+    }
+
+    /**
+     * Release the op contexts and buffers (including the arenas) of the calling thread. The plan can still be used
+     * after calling this method: these are created again on the next {@link #output(Map)} call in this thread.
+     */
+    public void releaseThreadState() {
+        ExecState state = execState.get();
+        if (state == null)
+            return;
+        execState.remove();
+        allExecStates.remove(state);
+        state.close();
+    }
+
+    /**
+     * Release the op contexts and buffers of all threads that executed this plan. The plan should not be used after
+     * calling this method.
+     */
+    @Override
+    public void close() {
+        synchronized (allExecStates) {
+            for (ExecState s : allExecStates) {
+                s.close();
+            }
+            allExecStates.clear();
+        }
+        execState.remove();
+    }
+
+    /**
+     * Release the op contexts and buffers of threads that executed this plan, and have terminated since
+     */
+    private void releaseTerminatedThreads() {
+        synchronized (allExecStates) {
+            Iterator<ExecState> iter = allExecStates.iterator();
+            while (iter.hasNext()) {
+                ExecState s = iter.next();
+                if (!s.isOwnerAlive()) {
+                    iter.remove();
+                    s.close();
+                }
+            }
+        }
+    }
+
+    private static void index(Map<String, Integer> varIdx, String varName) {
+        if (!varIdx.containsKey(varName))
+            varIdx.put(varName, varIdx.size());
+    }
+
+    private static INDArray allocate(LongShapeDescriptor descriptor) {
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            return Nd4j.create(descriptor, false);
+        }
+    }
+
+    private static INDArray dup(INDArray arr) {
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            return arr.dup();
+        }
+    }
+
+    /**
+     * Determine the execution order for all ops required to calculate the specified outputs, including ops required
+     * via control dependencies
+     */
+    private static List<String> scheduleOps(SameDiff sameDiff, List<String> outputs) {
+        List<String> order = new ArrayList<>();
+        Set<String> expanded = new HashSet<>();
+        Set<String> done = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        for (int i = outputs.size() - 1; i >= 0; i--) {
+            for (String op : producers(sameDiff, outputs.get(i)))
+                stack.push(op);
+        }
+
+        while (!stack.isEmpty()) {
+            String opName = stack.peek();
+            if (done.contains(opName)) {
+                stack.pop();
+                continue;
+            }
+
+            if (!expanded.add(opName)) {
+                //All dependencies of this op have been scheduled
+                stack.pop();
+                done.add(opName);
+                order.add(opName);
+                continue;
+            }
+
+            SameDiffOp op = sameDiff.getOps().get(opName);
+            checkSupported(op);
+            List<String> deps = new ArrayList<>();
+            if (op.getInputsToOp() != null)
+                deps.addAll(op.getInputsToOp());
+            if (op.getControlDeps() != null)
+                deps.addAll(op.getControlDeps());
+            if (op.getVarControlDeps() != null)
+                deps.addAll(op.getVarControlDeps());
+
+            for (int i = deps.size() - 1; i >= 0; i--) {
+                for (String depOp : producers(sameDiff, deps.get(i))) {
+                    if (!done.contains(depOp)) {
+                        Preconditions.checkState(!expanded.contains(depOp), "Cannot compile execution plan: cycle detected in graph at op \"%s\"", depOp);
+                        stack.push(depOp);
+                    }
+                }
+            }
+        }
+
+        return order;
+    }
+
+    /**
+     * Ops that must be executed before the specified variable is available
+     */
+    private static List<String> producers(SameDiff sameDiff, String varName) {
+        Variable v = sameDiff.getVariables().get(varName);
+        Preconditions.checkState(v != null, "Cannot compile execution plan: no variable with name \"%s\" exists", varName);
+        List<String> out = new ArrayList<>();
+        if (v.getOutputOfOp() != null)
+            out.add(v.getOutputOfOp());
+        if (v.getControlDeps() != null)
+            out.addAll(v.getControlDeps());
+        return out;
+    }
+
+    private static void checkSupported(SameDiffOp op) {
+        DifferentialFunction df = op.getOp();
+        if (df instanceof LoopCond || df instanceof Enter || df instanceof Exit || df instanceof NextIteration ||
+                df instanceof Merge || df instanceof Switch) {
+            throw new UnsupportedOperationException("Cannot compile execution plan: control flow op \"" + op.getName() + "\" ("
+                    + df.getClass().getSimpleName() + ") is not supported. Use SameDiff.output(...) instead");
+        }
+
+        if (df instanceof BaseTensorOp || df instanceof Invoke || df instanceof CreateView || df instanceof Assign ||
+                df instanceof Assert || df instanceof ExternalErrorsFunction || df instanceof GradientBackwardsMarker ||
+                !(df instanceof CustomOp || df instanceof Op)) {
+            throw new UnsupportedOperationException("Cannot compile execution plan: op \"" + op.getName() + "\" ("
+                    + df.getClass().getSimpleName() + ") is not supported. Use SameDiff.output(...) instead");
+        }
+    }
+
+    /**
+     * Parameterize and execute the specified op, as per {@link InferenceSession#getAndParameterizeOp(String, FrameIter, Set, Set, Set, Map, Set, Map)},
+     * recording the output shapes
+     */
+    private static StepBuilder traceOp(SameDiff sameDiff, SameDiffOp sdo, Map<String, Integer> varIdx, INDArray[] values,
+                                       Map<String, LongShapeDescriptor> shapes) {
+        DifferentialFunction df = sdo.getOp();
+        String[] argNames = df.argNames();
+        String[] outNames = df.outputVariablesNames();
+
+        INDArray[] args = new INDArray[argNames == null ? 0 : argNames.length];
+        int[] inputs = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            inputs[i] = varIdx.get(argNames[i]);
+            args[i] = values[inputs[i]];
+            Preconditions.checkState(args[i] != null, "Cannot compile execution plan: array for input %s (variable \"%s\") of op \"%s\" is not available",
+                    i, argNames[i], sdo.getName());
+        }
+        int[] outputs = new int[outNames.length];
+        for (int i = 0; i < outputs.length; i++)
+            outputs[i] = varIdx.get(outNames[i]);
+
+        if (df.needsConfigure()) {
+            //Configuration modifies the op and the shapes of its input variables: configure the graph's op, keep a copy
+            //of the configured op for the plan, then restore the graph's op and variables to their original state
+            SDVariable[] vars = df.args();
+            List<FieldSnapshot> snapshots = new ArrayList<>(vars.length + 1);
+            snapshots.add(new FieldSnapshot(df));
+            for (SDVariable v : vars)
+                snapshots.add(new FieldSnapshot(v));
+            try {
+                for (int i = 0; i < vars.length; i++) {
+                    vars[i].setShape(args[i].shape());
+                }
+                df.configureWithSameDiff(sameDiff);
+                df = copyOp(df);
+            } finally {
+                for (FieldSnapshot fs : snapshots)
+                    fs.restore();
+            }
+        }
+
+        StepBuilder sb = new StepBuilder(sdo.getName(), df, inputs, outputs);
+
+        if (df instanceof Identity) {
+            sb.type = StepType.IDENTITY;
+            values[outputs[0]] = args[0];
+            sb.outputShapes = new LongShapeDescriptor[]{args[0].shapeDescriptor()};
+            shapes.put(outNames[0], sb.outputShapes[0]);
+            return sb;
+        }
+
+        try (OpContext oc = Nd4j.getExecutioner().buildContext()) {
+            List<LongShapeDescriptor> outShapes;
+            if (df instanceof CustomOp) {
+                sb.type = StepType.CUSTOM;
+                DynamicCustomOp customOp = (DynamicCustomOp) df;
+                oc.setArgs(args, customOp.iArgs(), customOp.dArgs(), customOp.tArgs(), customOp.bArgs());
+                outShapes = customOp.calculateOutputShape(oc);
+            } else {
+                sb.type = StepType.LEGACY;
+                Op op = (Op) df;
+                boolean axisArg = false;
+                if (op instanceof ReduceOp && ((ReduceOp) op).getOpType() != Op.Type.REDUCE3 && args.length == 2) {
+                    //2nd input is the axis arg: these are fixed at compile time, on the plan's own copy of the op
+                    INDArray axisArr = args[1];
+                    Preconditions.checkState(!axisArr.isEmpty(), "Cannot compile execution plan: empty axis argument for op \"%s\" is not supported", sdo.getName());
+                    long[] axis = Shape.normalizeAxis(args[0].rank(), axisArr.toLongVector());
+                    op = (Op) copyOp(df);
+                    ((ReduceOp) op).setDimensions(axis);
+                    sb.op = (DifferentialFunction) op;
+                    sb.dimensions = axis;
+                    sb.inputs = new int[]{inputs[0]};
+                    axisArg = true;
+                } else if (op instanceof ScalarOp && args.length == 2) {
+                    op = (Op) copyOp(df);
+                    ((ScalarOp) op).setScalar(args[1]);
+                    sb.op = (DifferentialFunction) op;
+                    sb.scalarArg = true;
+                }
+
+                if (args.length > 0) {
+                    oc.setInputArray(0, args[0]);
+                    if (args.length == 2 && !axisArg)
+                        oc.setInputArray(1, args[1]);
+                }
+                outShapes = ((BaseOp) op).calculateOutputShape(oc);
+            }
+
+            Preconditions.checkState(outShapes != null && outShapes.size() == outNames.length, "Cannot compile execution plan: failed to " +
+                    "calculate output shapes for op \"%s\" - got %s shapes for %s outputs", sdo.getName(), outShapes == null ? 0 : outShapes.size(), outNames.length);
+
+            sb.outputShapes = new LongShapeDescriptor[outNames.length];
+            for (int i = 0; i < outNames.length; i++) {
+                LongShapeDescriptor reqShape = outShapes.get(i);
+                //As per InferenceSession: use the output variable datatype, as shape calculation can't always infer it
+                DataType dt = sameDiff.getVariable(outNames[i]).dataType();
+                if (dt != reqShape.dataType()) {
+                    reqShape = reqShape.asDataType(dt);
+                }
+                sb.outputShapes[i] = reqShape;
+                shapes.put(outNames[i], reqShape);
+
+                INDArray out = allocate(reqShape);
+                oc.setOutputArray(i, out);
+                values[outputs[i]] = out;
+            }
+
+            if (df instanceof CustomOp) {
+                Nd4j.exec((CustomOp) df, oc);
+            } else {
+                Nd4j.exec((Op) sb.op, oc);
+            }
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        return sb;
+    }
+
+    /**
+     * Shallow copy of an op (lists and maps are copied), without the input and output arrays of legacy ops. Used for
+     * ops with state that is set when compiling the plan or for each execution, so that this state is never set on
+     * ops shared with the graph, or with other threads
+     */
+    private static DifferentialFunction copyOp(DifferentialFunction df) {
+        try {
+            Constructor<? extends DifferentialFunction> c = df.getClass().getDeclaredConstructor();
+            c.setAccessible(true);
+            DifferentialFunction copy = c.newInstance();
+            for (Class<?> cls = df.getClass(); cls != Object.class; cls = cls.getSuperclass()) {
+                for (Field f : cls.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers()))
+                        continue;
+                    f.setAccessible(true);
+                    f.set(copy, copyCollection(f, f.get(df)));
+                }
+            }
+            if (copy instanceof Op) {
+                Op op = (Op) copy;
+                op.setX(null);
+                op.setY(null);
+                op.setZ(null);
+            }
+            return copy;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot compile execution plan: failed to copy op \"" + df.getOwnName() + "\" ("
+                    + df.getClass().getSimpleName() + ")", e);
+        }
+    }
+
+    /**
+     * Copy of a list or map field value, if the field type allows it - otherwise the value itself
+     */
+    private static Object copyCollection(Field f, Object value) {
+        if (value instanceof List && f.getType().isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<>((List<?>) value);
+        } else if (value instanceof Map && f.getType().isAssignableFrom(LinkedHashMap.class)) {
+            return new LinkedHashMap<>((Map<?, ?>) value);
+        }
+        return value;
+    }
+
+    /**
+     * The (non-static) field values of an object, to restore the object state after it was modified while compiling
+     * the plan. The contents of lists and maps are recorded too, as these are usually modified in place
+     */
+    private static class FieldSnapshot {
+        private final Object target;
+        private final List<Field> fields = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+        private final List<Object> contents = new ArrayList<>();
+
+        private FieldSnapshot(Object target) {
+            this.target = target;
+            try {
+                for (Class<?> cls = target.getClass(); cls != Object.class; cls = cls.getSuperclass()) {
+                    for (Field f : cls.getDeclaredFields()) {
+                        if (Modifier.isStatic(f.getModifiers()))
+                            continue;
+                        f.setAccessible(true);
+                        Object value = f.get(target);
+                        fields.add(f);
+                        values.add(value);
+                        if (value instanceof List) {
+                            contents.add(new ArrayList<>((List<?>) value));
+                        } else if (value instanceof Map) {
+                            contents.add(new LinkedHashMap<>((Map<?, ?>) value));
+                        } else {
+                            contents.add(null);
+                        }
+                    }
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot compile execution plan: failed to record state of " + target.getClass().getSimpleName(), e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void restore() {
+            try {
+                for (int i = 0; i < fields.size(); i++) {
+                    Field f = fields.get(i);
+                    if (f.get(target) != values.get(i)) {
+                        f.set(target, values.get(i));
+                    }
+                    Object c = contents.get(i);
+                    if (c instanceof List) {
+                        List<Object> l = (List<Object>) values.get(i);
+                        l.clear();
+                        l.addAll((List<Object>) c);
+                    } else if (c instanceof Map) {
+                        Map<Object, Object> m = (Map<Object, Object>) values.get(i);
+                        m.clear();
+                        m.putAll((Map<Object, Object>) c);
+                    }
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to restore state of " + target.getClass().getSimpleName() + " after compiling execution plan", e);
+            }
+        }
+    }
+
+    /**
+     * Assign each op output to a buffer slot, and determine the lifetime of each slot: from the step that produces the
+     * array, to the last step that uses it (directly, or via identity ops). Requested outputs are never assigned to a
+     * slot, as they are returned to the caller.
+     *
+     * @param varSlots      Filled with the buffer slot for each variable index, or -1 if the variable is not slot backed
+     * @param slotShapes    Filled with the shape of each slot
+     * @param slotLifetimes Filled with the first and last step (inclusive) each slot is in use
+     * @return For each variable index, the index of the variable it is an alias of (due to identity ops), or itself
+     */
+    private static int[] assignSlots(List<StepBuilder> steps, boolean[] isOutput, int[] varSlots, List<LongShapeDescriptor> slotShapes,
+                                     List<int[]> slotLifetimes) {
+        int numVars = varSlots.length;
+        Arrays.fill(varSlots, -1);
+        int[] root = new int[numVars];
+        for (int i = 0; i < numVars; i++)
+            root[i] = i;
+        int[] lastUse = new int[numVars];
+        Arrays.fill(lastUse, -1);
+
+        for (int s = 0; s < steps.size(); s++) {
+            StepBuilder sb = steps.get(s);
+            for (int in : sb.inputs) {
+                lastUse[root[in]] = s;
+            }
+            if (sb.type == StepType.IDENTITY) {
+                root[sb.outputs[0]] = root[sb.inputs[0]];
+            } else {
+                for (int out : sb.outputs)
+                    lastUse[out] = Math.max(lastUse[out], s);
+            }
+        }
+        //Requested outputs (and arrays they are aliases of) must not be overwritten before the end of execution
+        for (int i = 0; i < numVars; i++) {
+            if (isOutput[i])
+                lastUse[root[i]] = steps.size();
+        }
+
+        for (int s = 0; s < steps.size(); s++) {
+            StepBuilder sb = steps.get(s);
+            if (sb.type == StepType.IDENTITY)
+                continue;
+
+            sb.outputSlots = new int[sb.outputs.length];
+            for (int i = 0; i < sb.outputs.length; i++) {
+                int v = sb.outputs[i];
+                if (isOutput[v]) {
+                    sb.outputSlots[i] = -1;
+                    continue;
+                }
+                sb.outputSlots[i] = slotShapes.size();
+                varSlots[v] = sb.outputSlots[i];
+                slotShapes.add(sb.outputShapes[i]);
+                slotLifetimes.add(new int[]{s, lastUse[v]});
+            }
+        }
+
+        return root;
+    }
+
+    /**
+     * Plan the arena offsets for all slots, with one arena per datatype. Empty and String arrays are not placed in an
+     * arena; these have an offset of -1
+     *
+     * @param slotOffsets Filled with the offset of each slot, in elements, within the arena for its datatype
+     * @return Memory plan for each datatype, with sizes in bytes
+     */
+    private static Map<DataType, MemoryPlan> planArenas(LongShapeDescriptor[] slotShapes, List<int[]> slotLifetimes, long[] slotOffsets) {
+        Arrays.fill(slotOffsets, -1);
+        Map<DataType, List<Integer>> byType = new LinkedHashMap<>();
+        for (int i = 0; i < slotShapes.length; i++) {
+            LongShapeDescriptor d = slotShapes[i];
+            if (d.isEmpty() || d.dataType() == DataType.UTF8 || ArrayUtil.prodLong(d.getShape()) == 0)
+                continue;
+            byType.computeIfAbsent(d.dataType(), k -> new ArrayList<>()).add(i);
+        }
+
+        Map<DataType, MemoryPlan> plans = new LinkedHashMap<>();
+        for (Map.Entry<DataType, List<Integer>> e : byType.entrySet()) {
+            List<Integer> slots = e.getValue();
+            int width = e.getKey().width();
+            long[] sizes = new long[slots.size()];
+            int[] first = new int[slots.size()];
+            int[] last = new int[slots.size()];
+            for (int j = 0; j < sizes.length; j++) {
+                int slot = slots.get(j);
+                sizes[j] = ArrayUtil.prodLong(slotShapes[slot].getShape()) * width;
+                first[j] = slotLifetimes.get(slot)[0];
+                last[j] = slotLifetimes.get(slot)[1];
+            }
+
+            MemoryPlan p = StaticMemoryPlanner.plan(sizes, first, last);
+            for (int j = 0; j < sizes.length; j++) {
+                slotOffsets[slots.get(j)] = p.getOffsets()[j] / width;
+            }
+            plans.put(e.getKey(), p);
+        }
+        return plans;
+    }
+
+    /**
+     * A single op in the execution plan schedule
+     */
+    @Getter
+    public static class Step {
+        private final String opName;
+        private final DifferentialFunction op;
+        private final StepType type;
+        private final int[] inputs;                         //Variable indices of the op inputs
+        private final int[] outputs;                        //Variable indices of the op outputs
+        private final LongShapeDescriptor[] outputShapes;
+        private final int[] outputSlots;                    //Buffer slot for each output, -1 for requested outputs
+        private final long[] dimensions;                    //Fixed dimensions for legacy reduce ops with axis arg
+        private final boolean scalarArg;                    //Legacy scalar op with scalar as 2nd input
+
+        private Step(StepBuilder b) {
+            this.opName = b.opName;
+            this.op = b.op;
+            this.type = b.type;
+            this.inputs = b.inputs;
+            this.outputs = b.outputs;
+            this.outputShapes = b.outputShapes;
+            this.outputSlots = b.outputSlots;
+            this.dimensions = b.dimensions;
+            this.scalarArg = b.scalarArg;
+        }
+    }
+
+    private static class StepBuilder {
+        private final String opName;
+        private DifferentialFunction op;
+        private StepType type;
+        private int[] inputs;
+        private final int[] outputs;
+        private LongShapeDescriptor[] outputShapes;
+        private int[] outputSlots;
+        private long[] dimensions;
+        private boolean scalarArg;
+
+        private StepBuilder(String opName, DifferentialFunction op, int[] inputs, int[] outputs) {
+            this.opName = opName;
+            this.op = op;
+            this.inputs = inputs;
+            this.outputs = outputs;
+        }
+
+        private Step build() {
+            return new Step(this);
+        }
+    }
+
+    /**
+     * Per-thread execution state: op contexts (with the op arguments already set), copies of the ops that are modified
+     * during execution, the arenas and the buffer slot arrays - which are views of the arenas, except for slots not
+     * placed in an arena
+     */
+    private class ExecState {
+        private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+        private final OpContext[] contexts = new OpContext[schedule.size()];
+        private final DifferentialFunction[] ops = new DifferentialFunction[schedule.size()];
+        private final Map<DataType, INDArray> arenas = new HashMap<>();
+        private final INDArray[] slots = new INDArray[slotShapes.length];
+        private final INDArray[] values = new INDArray[varNames.length];
+
+        private ExecState() {
+            for (int s = 0; s < contexts.length; s++) {
+                Step step = schedule.get(s);
+                if (step.type == StepType.IDENTITY)
+                    continue;
+                OpContext oc = Nd4j.getExecutioner().buildContext();
+                if (step.type == StepType.CUSTOM) {
+                    CustomOp c = (CustomOp) step.op;
+                    oc.setIArguments(c.iArgs());
+                    oc.setTArguments(c.tArgs());
+                    oc.setBArguments(c.bArgs());
+                    oc.setDArguments(c.dArgs());
+                }
+                contexts[s] = oc;
+                ops[s] = step.scalarArg ? copyOp(step.op) : step.op;
+            }
+
+            for (Map.Entry<DataType, MemoryPlan> e : memoryPlans.entrySet()) {
+                long length = e.getValue().getArenaSize() / e.getKey().width();
+                try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                    INDArray arena = Nd4j.createUninitializedDetached(e.getKey(), length);
+                    arena.setCloseable(false);
+                    arenas.put(e.getKey(), arena);
+                }
+            }
+
+            for (int i = 0; i < slots.length; i++) {
+                LongShapeDescriptor d = slotShapes[i];
+                if (slotOffsets[i] >= 0) {
+                    slots[i] = Nd4j.create(arenas.get(d.dataType()).data(), d.getShape(), d.getStride(), slotOffsets[i], d.getOrder(), d.dataType());
+                } else {
+                    slots[i] = allocate(d);
+                }
+                slots[i].setCloseable(false);
+            }
+        }
+
+        private boolean isOwnerAlive() {
+            Thread t = owner.get();
+            return t != null && t.isAlive();
+        }
+
+        private void close() {
+            for (OpContext oc : contexts) {
+                if (oc == null)
+                    continue;
+                try {
+                    oc.close();
+                } catch (Exception e) {
+                    log.warn("Error closing op context", e);
+                }
+            }
+            for (INDArray arr : slots) {
+                if (arr.isView())
+                    continue;
+                arr.setCloseable(true);
+                arr.close();
+            }
+            for (INDArray arena : arenas.values()) {
+                arena.setCloseable(true);
+                arena.close();
+            }
+        }
+    }
+}
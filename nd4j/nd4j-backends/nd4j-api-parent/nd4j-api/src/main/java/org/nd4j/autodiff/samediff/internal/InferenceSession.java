@@ -253,13 +253,17 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
             log.info("Executing samediff op: " + op.getName());
         }
 
-        ExecutionResult out = doExec(
-                op.getOp(),
-                opPair.getRight(),
-                outputFrameIter, opInputs,
-                allIterInputs,
-                constAndPhInputs,
-                otherPlaceHolders);
+        //Op may have been executed already, concurrently with other independent ops
+        ExecutionResult out = takePrecomputedResult();
+        if (out == null) {
+            out = doExec(
+                    op.getOp(),
+                    opPair.getRight(),
+                    outputFrameIter, opInputs,
+                    allIterInputs,
+                    constAndPhInputs,
+                    otherPlaceHolders);
+        }
         List<String> opOutNames = op.getOutputsOfOp();
 
         if (log.isTraceEnabled()) {
@@ -452,6 +456,31 @@ public class InferenceSession extends AbstractSession<INDArray, Pair<SameDiffOp,
     }
 
 
+    @Override
+    protected boolean isParallelizable(SameDiffOp op) {
+        DifferentialFunction df = op.getOp();
+        //Only "plain" ops that are executed via op context, and don't touch the session state (node outputs, memory manager)
+        if (df instanceof LoopCond || df instanceof Enter || df instanceof Exit || df instanceof NextIteration ||
+                df instanceof Merge || df instanceof Switch || df instanceof BaseTensorOp || df instanceof Invoke ||
+                df instanceof Identity || df instanceof CreateView || df instanceof Assign || df instanceof Assert ||
+                df instanceof GradientBackwardsMarker || df instanceof ExternalErrorsFunction) {
+            return false;
+        }
+
+        //Random ops depend on the thread-local RNG state: executing them in other threads would break determinism
+        if (df instanceof RandomOp || df.getClass().getName().startsWith("org.nd4j.linalg.api.ops.random")) {
+            return false;
+        }
+
+        return df instanceof CustomOp || df instanceof Op;
+    }
+
+    @Override
+    protected ExecutionResult execParallelizable(Pair<SameDiffOp, OpContext> opPair, FrameIter outputFrameIter, Set<VarId> opInputs,
+                                                 Set<VarId> allIterInputs, Set<String> constAndPhInputs, Map<String, SDValue> otherPlaceHolders) {
+        return doExec(opPair.getFirst().getOp(), opPair.getSecond(), outputFrameIter, opInputs, allIterInputs, constAndPhInputs, otherPlaceHolders);
+    }
+
     private void addToArrayTracker(ExecutionResult out,int i,Dep d) {
         if(out.hasSingle()) {
             arrayUseTracker.addDependency(SDValue.create(out.resultOrValueAt(i,false)), d);       //Op defined by "d" needs to be executed before specified array can be closed
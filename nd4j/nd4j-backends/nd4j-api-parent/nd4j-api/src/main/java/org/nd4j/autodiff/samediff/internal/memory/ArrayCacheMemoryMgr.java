@@ -20,10 +20,11 @@
 
 package org.nd4j.autodiff.samediff.internal.memory;
 
+import java.lang.ref.WeakReference;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.bytedeco.javacpp.Pointer;
 import org.nd4j.common.base.Preconditions;
@@ -43,13 +44,23 @@ import lombok.NonNull;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * A session memory manager that caches released arrays, and reuses them for later allocations with the same datatype
+ * and shape.<br>
+ * Each thread has its own cache (arrays released by one thread are only reused by that same thread), but the total
+ * size of all caches is limited by a single global budget: {@link #getMaxCacheBytes()}, by default
+ * {@link #DEFAULT_MAX_MEM_FRACTION} of the total memory. When releasing an array would exceed the budget, the least
+ * recently released arrays are evicted (closed) - first from the calling thread's cache, then from the caches of other
+ * threads, including caches of threads that have since terminated.<br>
+ * Each thread cache has its own lock, so threads only contend with each other during cross-thread eviction.<br>
+ * Cache hits, misses and evictions are counted globally: see {@link #getCacheHits()}, {@link #getCacheMisses()} and
+ * {@link #getCacheEvictions()}.
+ */
 @Getter
 @Setter
 @Slf4j
 public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
 
-    private static ThreadLocal<Map<INDArray,INDArray>> released = new ThreadLocal<>();
-
     public final static double DEFAULT_MAX_MEM_FRACTION = 0.25;
     public final static long DEFAULT_SMALL_ARRAY_THRESHOLD = 1024;
     public final static double DEFAULT_LARGE_ARRAY_MAX_MULTIPLE = 2.0;
@@ -62,48 +73,40 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
     private static  AtomicDouble maxMemFrac;
     private static AtomicLong currentCacheSize =  new AtomicLong(0);
 
-    private static ThreadLocal<Set<Long>> lruCache = new ThreadLocal<>();
-    private static ThreadLocal<Map<Long, INDArray>> lruCacheValues = new ThreadLocal<>();
+    private static final AtomicLong cacheHits = new AtomicLong(0);
+    private static final AtomicLong cacheMisses = new AtomicLong(0);
+    private static final AtomicLong cacheEvictions = new AtomicLong(0);
 
-    private static ThreadLocal<Table<DataType, String, List<INDArray>>> arrays = new ThreadLocal<>();
+    //All thread caches, keyed by thread ID. Used for eviction across threads
+    private static final Map<Long, ThreadCache> threadCaches = new ConcurrentHashMap<>();
+    private static final ThreadLocal<ThreadCache> threadCache = ThreadLocal.withInitial(ArrayCacheMemoryMgr::newThreadCache);
 
     private static boolean enableCache = Boolean
             .parseBoolean(System.getProperty(ND4JSystemProperties.SAMEDIFF_MEMORY_CACHE_ENABLE, "true"));
 
     static {
         setCacheDefaults();
-        released.set(new IdentityHashMap<>());
-        arrays.set(HashBasedTable.create());
-        lruCacheValues.set(new ConcurrentHashMap<>());
-        lruCache.set(new ConcurrentSkipListSet<>());
-
     }
 
 
-    private static Set<Long> getLruCacheForThread() {
-        if(lruCache.get() != null)
-            return lruCache.get();
-        else {
-            lruCache.set(new ConcurrentSkipListSet<>());
-            return lruCache.get();
+    private static ThreadCache newThreadCache() {
+        Thread t = Thread.currentThread();
+        ThreadCache c = new ThreadCache(t);
+        ThreadCache previous = threadCaches.put(t.getId(), c);
+        if (previous != null && previous != c) {
+            //Thread IDs may be reused after a thread terminates: release anything cached by the old thread
+            previous.lock.lock();
+            try {
+                previous.evict(Long.MAX_VALUE);
+            } finally {
+                previous.lock.unlock();
+            }
         }
+        return c;
     }
 
-    private static Table<DataType, String, List<INDArray>> getArraysForThread() {
-        if(arrays.get() != null)
-            return arrays.get();
-        else {
-            arrays.set(HashBasedTable.create());
-            return arrays.get();
-        }
-    }
-    private static Map<Long, INDArray> getLruCachedValuesForThread() {
-        if(lruCacheValues.get() != null)
-            return lruCacheValues.get();
-        else {
-            lruCacheValues.set(new ConcurrentHashMap<>());
-            return lruCacheValues.get();
-        }
+    private static ThreadCache getCacheForThread() {
+        return threadCache.get();
     }
 
     public static void setCacheDefaults() {
@@ -128,12 +131,44 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
     @Setter
     private static AtomicLong smallArrayThreshold;
 
+    /**
+     * @return IDs of the arrays in the calling thread's cache, least recently released first
+     */
     public static Set<Long> getLruCache() {
-        return getLruCacheForThread();
+        ThreadCache cache = getCacheForThread();
+        cache.lock.lock();
+        try {
+            return Collections.unmodifiableSet(new LinkedHashSet<>(cache.lru.keySet()));
+        } finally {
+            cache.lock.unlock();
+        }
     }
 
+    /**
+     * @return Arrays in the calling thread's cache, keyed by array ID, least recently released first
+     */
     public static Map<Long, INDArray> getLruCacheValues() {
-        return getLruCachedValuesForThread();
+        ThreadCache cache = getCacheForThread();
+        cache.lock.lock();
+        try {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(cache.lru));
+        } finally {
+            cache.lock.unlock();
+        }
+    }
+
+    /**
+     * Close all cached arrays, in the caches of all threads. Mainly for use in tests, to start from an empty cache
+     */
+    public static void clearCaches() {
+        for (ThreadCache c : threadCaches.values()) {
+            c.lock.lock();
+            try {
+                c.evict(Long.MAX_VALUE);
+            } finally {
+                c.lock.unlock();
+            }
+        }
     }
 
     public static AtomicDouble getMaxMemFrac() {
@@ -174,6 +209,36 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
         ArrayCacheMemoryMgr.currentCacheSize = currentCacheSize;
     }
 
+    /**
+     * @return Number of allocations (over all threads) that were served from a cache
+     */
+    public static long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return Number of allocations (over all threads) that required a new array to be allocated
+     */
+    public static long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * @return Number of cached arrays (over all threads) that were closed to keep the caches within the memory budget
+     */
+    public static long getCacheEvictions() {
+        return cacheEvictions.get();
+    }
+
+    /**
+     * Reset the cache hit, miss and eviction counters
+     */
+    public static void resetCacheStats() {
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        cacheEvictions.set(0);
+    }
+
 
 
     /**
@@ -194,43 +259,13 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
 
 
     @Override
-    public synchronized INDArray allocate(boolean detached, DataType dataType, long... shape) {
-        String arrayShapeString = Arrays.toString(shape);
-        Table<DataType, String, List<INDArray>> arraysForThread = getArraysForThread();
-        Set<Long> lruCacheForThread = getLruCacheForThread();
-        Map<Long, INDArray> lruCacheValues = getLruCacheValues();
-        if (arraysForThread.contains(dataType, arrayShapeString) && enableCache) {
-            INDArray arr = null;
-            boolean arrFound = false;
-            while(!arrFound) {
-                arr = !arraysForThread.get(dataType, arrayShapeString).isEmpty()
-                        ? arraysForThread.get(dataType, arrayShapeString).remove(0)
-                        : null;
-                if(arr != null && (!arr.closeable() || arr.wasClosed() || arr.isView())) {
-                    log.trace("Found array closeable, not returning from cache. Only closeable arrays are returnable from the cache.");
-                    if(arr.isView())
-                        arr.setCloseable(false);
-                    log.trace("Found view array with id " + arr.getId() + " in cache. Avoiding return. Allocating new array.");
-
-                    continue;
-                } else if(!arraysForThread.contains(dataType, arrayShapeString) || getArraysForThread().get(dataType,arrayShapeString).isEmpty()) {
-                    break;
-                }
-
-                if (arr != null) {
-                    // Decrement cache size
-                    currentCacheSize.set(currentCacheSize.get() - dataType.width() * arr.data().length());
-                    lruCacheForThread.remove(arr.getId());
-                    lruCacheValues.remove(arr.getId());
-                    // We need to assign new Id. this way we will break any possible relationship it
-                    // had in Tracker.
-                    // the old cache was recreating New Array using buffer and thus gaining new
-                    // reference . Note that it had IdentityHash with references being keys
-                    ((BaseNDArray) arr).assignNewId();
-                    return arr; // Allocated from cache
-                }
+    public INDArray allocate(boolean detached, DataType dataType, long... shape) {
+        if (enableCache) {
+            INDArray arr = getCacheForThread().take(dataType, Arrays.toString(shape), null);
+            if (arr != null) {
+                return arr; // Allocated from cache
             }
-
+            cacheMisses.incrementAndGet();
         }
 
         // Allocation failed, allocate new array
@@ -252,39 +287,12 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
 
         DataType dataType = descriptor.dataType();
         long[] shape = descriptor.getShape();
-        String arrayShape = Arrays.toString(shape);
-        Table<DataType, String, List<INDArray>> arraysForThread = getArraysForThread();
-        if (arraysForThread.contains(dataType, arrayShape) && enableCache && shape.length > 0 && !Longs.contains(shape, 0)) {
-            INDArray arr = null;
-            List<INDArray> arrays2 = arraysForThread.get(dataType, arrayShape);
-
-            while (arrays2.size() > 0) {
-                arr = arrays2.remove(0);
-                if(arr.isView()) {
-                    //set closeable to prevent reuse elsewhere
-                    arr.setCloseable(false);
-                    log.trace("Found view array with id " + arr.getId() + " in cache. Avoiding allocation.");
-                } else {
-                    break;
-                }
-            }
-
-            if (arr != null && arr.ordering() != descriptor.getOrder()) {
-                arr.setOrder(descriptor.getOrder());
-            }
-
-            if (arr != null && !arr.wasClosed()) {
-                // Decrement cache size
-                currentCacheSize.set(currentCacheSize.get() - dataType.width() * arr.data().length());
-                // We need to assign new Id. this way we will break any possible relationship it
-                // had in Tracker.
-                // the old cache was recreating New Array using buffer and thus gaining new
-                // reference . Note that it had IdentityHash with references being keys
-                getLruCache().remove(arr.getId());
-                getLruCacheValues().remove(arr.getId());
-                ((BaseNDArray) arr).assignNewId();
+        if (enableCache && shape.length > 0 && !Longs.contains(shape, 0)) {
+            INDArray arr = getCacheForThread().take(dataType, Arrays.toString(shape), descriptor);
+            if (arr != null) {
                 return arr; // Allocated from cache
             }
+            cacheMisses.incrementAndGet();
         }
 
         // Allocation failed, allocate new array
@@ -296,104 +304,216 @@ public class ArrayCacheMemoryMgr extends AbstractMemoryMgr {
         if(!array.closeable())
             return;
 
-        Set<Long> lruCacheForThread = getLruCacheForThread();
-        Table<DataType, String, List<INDArray>> arraysForThread = getArraysForThread();
-        Map<Long, INDArray> lruCacheValues = getLruCacheValues();
-        // Check for multiple releases of the array
-        long id = array.getId();
-        Preconditions.checkState(!lruCacheForThread.contains(id), "Array was released multiple times: id=%s, shape=%ndShape", id,
-                array);
+        ThreadCache cache = getCacheForThread();
+        cache.lock.lock();
+        try {
+            // Check for multiple releases of the array
+            long id = array.getId();
+            Preconditions.checkState(!cache.lru.containsKey(id), "Array was released multiple times: id=%s, shape=%ndShape", id,
+                    array);
 
-        if (!enableCache) {
-            if (array.closeable()) {
+            if (!enableCache) {
                 array.close();
+                return;
             }
-            return;
-        }
-
-        DataType dt = array.dataType();
-        if (array.data() == null && array.closeable()) {
-            array.close();
-            return;
-        }
 
-        if (array != null && array.data() != null && Nd4j.getExecutioner().useCount(array.data()) > 1) {
-            // DataBuffer is used more than once. Close it and return
-            if (array.closeable()) {
+            if (array.data() == null) {
                 array.close();
+                return;
             }
-            return;
-        }
 
-        long thisBytes = array.data().length() * dt.width();
-        if (array.dataType() == DataType.UTF8) {
-            // Don't cache string arrays due to variable length buffers
-            if (array.closeable()) {
+            if (Nd4j.getExecutioner().useCount(array.data()) > 1) {
+                // DataBuffer is used more than once. Close it and return
                 array.close();
+                return;
             }
-        } else if (currentCacheSize.get() + thisBytes > maxCacheBytes.get()) {
-            if (thisBytes > maxCacheBytes.get()) {
 
-                // Can't store even if we clear everything - too large
-                if (array.closeable())
-                    array.close();
+            long thisBytes = ThreadCache.bytes(array);
+            if (array.dataType() == DataType.UTF8 || thisBytes > maxCacheBytes.get()) {
+                // Don't cache string arrays due to variable length buffers
+                // Also don't cache arrays that can't be stored even if we clear everything - too large
+                array.close();
                 return;
             }
 
-            // Need to deallocate some arrays to stay under limit - do in "oldest first"
-            // order
-            Iterator<Long> iter = lruCacheForThread.iterator();
-            while (currentCacheSize.get() + thisBytes > maxCacheBytes.get() && iter.hasNext()) {
-                long next = iter.next();
-                iter.remove();
-                INDArray nextOldest = lruCacheValues.remove(next);
-                DataType ndt = nextOldest.dataType();
-                long nextBytes = ndt.width() * nextOldest.data().length();
-                List<INDArray> listx = arraysForThread.get(ndt, Arrays.toString(nextOldest.shape()));
-                if (listx != null)
-                    listx.remove(nextOldest);
-                currentCacheSize.set(currentCacheSize.get() - nextBytes);
-
-                if (nextOldest.closeable()) {
-                    nextOldest.close();
+            long excess = currentCacheSize.get() + thisBytes - maxCacheBytes.get();
+            if (excess > 0) {
+                // Need to deallocate some arrays to stay under limit - do in "oldest first" order, starting with
+                // this thread's cache
+                excess -= cache.evict(excess);
+                if (excess > 0) {
+                    excess -= evictFromOtherThreads(cache, excess);
+                }
+                if (excess > 0) {
+                    // Other threads hold the remaining budget and could not be evicted from right now
+                    array.close();
+                    return;
                 }
             }
 
             // After clearing space - can now cache
-            cacheArray(array);
-        } else {
-            // OK to cache
-            cacheArray(array);
+            cache.add(array, thisBytes);
+        } finally {
+            cache.lock.unlock();
         }
-
-        // Store in LRU cache for "last used" removal if we exceed cache size
-        lruCacheForThread.add(array.getId());
-        lruCacheValues.put(array.getId(), array);
     }
 
-    private void cacheArray(INDArray array) {
-        DataType dt = array.dataType();
-        Table<DataType, String, List<INDArray>> arraysForThread = getArraysForThread();
-        Set<Long> lruCacheForThread = getLruCacheForThread();
-        Map<Long, INDArray> lruCacheValues = getLruCacheValues();
-        String arrayShapeString = Arrays.toString(array.shape());
-        if (!arraysForThread.contains(dt, arrayShapeString))
-            arraysForThread.put(dt, arrayShapeString, new ArrayList<>());
-        arraysForThread.get(dt, arrayShapeString).add(array);
-        currentCacheSize.set(currentCacheSize.get() + array.data().length() * dt.width());
-
-        lruCacheForThread.add(array.getId());
-        lruCacheValues.put(array.getId(), array);
+    /**
+     * Evict arrays from the caches of threads other than the calling thread. Caches of terminated threads are evicted
+     * first, and removed entirely. Caches currently locked by their own thread are skipped, so this never blocks.
+     *
+     * @return Number of bytes freed
+     */
+    private static long evictFromOtherThreads(ThreadCache self, long bytes) {
+        long freed = 0;
+        Iterator<ThreadCache> iter = threadCaches.values().iterator();
+        List<ThreadCache> live = new ArrayList<>();
+        while (iter.hasNext()) {
+            ThreadCache c = iter.next();
+            if (c == self)
+                continue;
+            if (!c.isOwnerAlive()) {
+                if (c.lock.tryLock()) {
+                    try {
+                        freed += c.evict(Long.MAX_VALUE);
+                    } finally {
+                        c.lock.unlock();
+                    }
+                    iter.remove();
+                }
+            } else {
+                live.add(c);
+            }
+        }
 
+        for (ThreadCache c : live) {
+            if (freed >= bytes)
+                break;
+            if (c.lock.tryLock()) {
+                try {
+                    freed += c.evict(bytes - freed);
+                } finally {
+                    c.lock.unlock();
+                }
+            }
+        }
+        return freed;
     }
 
     @Override
     public void close() {
-        getArraysForThread().values().stream().forEach(input -> input.stream().forEach(arr -> {
-            if (arr.closeable())
-                arr.close();
-        }));
+        ThreadCache cache = getCacheForThread();
+        cache.lock.lock();
+        try {
+            cache.evict(Long.MAX_VALUE);
+        } finally {
+            cache.lock.unlock();
+        }
     }
 
+    /**
+     * The array cache for a single thread. All access must be done while holding the lock
+     */
+    private static class ThreadCache {
+        private final WeakReference<Thread> owner;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Table<DataType, String, Deque<INDArray>> arrays = HashBasedTable.create();
+        //Cached arrays by ID, in the order they were released (oldest first)
+        private final Map<Long, INDArray> lru = new LinkedHashMap<>();
+
+        private ThreadCache(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        private boolean isOwnerAlive() {
+            Thread t = owner.get();
+            return t != null && t.isAlive();
+        }
+
+        /**
+         * Take an array with the specified datatype and shape from the cache, if one is available
+         *
+         * @param descriptor If non-null: the array ordering is set to the ordering of this descriptor
+         */
+        private INDArray take(DataType dataType, String shapeString, LongShapeDescriptor descriptor) {
+            lock.lock();
+            try {
+                Deque<INDArray> d = arrays.get(dataType, shapeString);
+                while (d != null && !d.isEmpty()) {
+                    INDArray arr = d.pollFirst();
+                    lru.remove(arr.getId());
+                    currentCacheSize.addAndGet(-bytes(arr));
+
+                    if (arr.isView() || !arr.closeable() || arr.wasClosed()) {
+                        //Only closeable, non-view arrays are returnable from the cache
+                        if (arr.isView()) {
+                            //set closeable to prevent reuse elsewhere
+                            arr.setCloseable(false);
+                            log.trace("Found view array with id " + arr.getId() + " in cache. Avoiding allocation.");
+                        }
+                        continue;
+                    }
+
+                    if (descriptor != null && arr.ordering() != descriptor.getOrder()) {
+                        arr.setOrder(descriptor.getOrder());
+                    }
+
+                    cacheHits.incrementAndGet();
+                    // We need to assign new Id. this way we will break any possible relationship it
+                    // had in Tracker.
+                    // the old cache was recreating New Array using buffer and thus gaining new
+                    // reference . Note that it had IdentityHash with references being keys
+                    ((BaseNDArray) arr).assignNewId();
+                    return arr;
+                }
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
 
+        private void add(INDArray array, long bytes) {
+            String shapeString = Arrays.toString(array.shape());
+            Deque<INDArray> d = arrays.get(array.dataType(), shapeString);
+            if (d == null) {
+                d = new ArrayDeque<>();
+                arrays.put(array.dataType(), shapeString, d);
+            }
+            d.addLast(array);
+            lru.put(array.getId(), array);
+            currentCacheSize.addAndGet(bytes);
+        }
+
+        /**
+         * Evict (close) the least recently released arrays, until at least the specified number of bytes have been
+         * freed, or the cache is empty
+         *
+         * @return Number of bytes freed
+         */
+        private long evict(long bytes) {
+            long freed = 0;
+            Iterator<INDArray> iter = lru.values().iterator();
+            while (freed < bytes && iter.hasNext()) {
+                INDArray oldest = iter.next();
+                iter.remove();
+                Deque<INDArray> d = arrays.get(oldest.dataType(), Arrays.toString(oldest.shape()));
+                if (d != null)
+                    d.remove(oldest);
+
+                long b = bytes(oldest);
+                currentCacheSize.addAndGet(-b);
+                freed += b;
+                cacheEvictions.incrementAndGet();
+
+                if (oldest.closeable()) {
+                    oldest.close();
+                }
+            }
+            return freed;
+        }
+
+        private static long bytes(INDArray arr) {
+            return arr.length() * arr.dataType().width();
+        }
+    }
 }
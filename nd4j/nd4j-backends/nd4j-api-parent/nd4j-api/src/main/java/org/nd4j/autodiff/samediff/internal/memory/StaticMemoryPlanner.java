@@ -0,0 +1,167 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.internal.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.nd4j.common.base.Preconditions;
+
+import java.util.*;
+
+/**
+ * A static memory planner: given the size and lifetime of a set of tensors (as known ahead of time for a fixed
+ * execution schedule), assigns each tensor an offset within a single arena, such that tensors with overlapping lifetimes
+ * never overlap in memory.<br>
+ * Uses the "greedy by size" strategy: tensors are placed largest first, each at the smallest gap (between tensors
+ * already placed with overlapping lifetimes) that fits it, or at the end of the arena if no such gap exists.<br>
+ * Lifetimes are inclusive step ranges: a tensor produced by step i and last used by step j occupies its memory for
+ * steps i to j. Hence an op output never shares memory with the inputs of that op.
+ */
+public class StaticMemoryPlanner {
+    public static final long DEFAULT_ALIGNMENT = 64;
+
+    private StaticMemoryPlanner() {
+    }
+
+    /**
+     * As per {@link #plan(long[], int[], int[], long)} with {@link #DEFAULT_ALIGNMENT}
+     */
+    public static MemoryPlan plan(long[] sizes, int[] firstUse, int[] lastUse) {
+        return plan(sizes, firstUse, lastUse, DEFAULT_ALIGNMENT);
+    }
+
+    /**
+     * Plan the arena offsets for the specified tensors
+     *
+     * @param sizes     Size of each tensor (for example, in bytes)
+     * @param firstUse  First step (inclusive) each tensor is in use - usually the step that produces it
+     * @param lastUse   Last step (inclusive) each tensor is in use
+     * @param alignment Alignment for the tensor offsets, in the same units as the sizes
+     * @return The memory plan
+     */
+    public static MemoryPlan plan(long[] sizes, int[] firstUse, int[] lastUse, long alignment) {
+        Preconditions.checkArgument(sizes.length == firstUse.length && sizes.length == lastUse.length,
+                "Sizes, first use and last use arrays must have the same length: got %s, %s and %s", sizes.length, firstUse.length, lastUse.length);
+        Preconditions.checkArgument(alignment > 0, "Alignment must be positive, got %s", alignment);
+        int n = sizes.length;
+
+        long[] aligned = new long[n];
+        long totalSize = 0;
+        for (int i = 0; i < n; i++) {
+            Preconditions.checkArgument(firstUse[i] <= lastUse[i], "Invalid lifetime for tensor %s: first use %s after last use %s", i, firstUse[i], lastUse[i]);
+            aligned[i] = align(sizes[i], alignment);
+            totalSize += aligned[i];
+        }
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compare(aligned[b], aligned[a]);
+            return c != 0 ? c : Integer.compare(firstUse[a], firstUse[b]);
+        });
+
+        long[] offsets = new long[n];
+        long arenaSize = 0;
+        List<Integer> placed = new ArrayList<>(n);
+        List<Integer> overlapping = new ArrayList<>();
+        for (int idx : order) {
+            overlapping.clear();
+            for (int p : placed) {
+                if (firstUse[p] <= lastUse[idx] && firstUse[idx] <= lastUse[p])
+                    overlapping.add(p);
+            }
+            overlapping.sort(Comparator.comparingLong(p -> offsets[p]));
+
+            long best = -1;
+            long bestGap = Long.MAX_VALUE;
+            long prevEnd = 0;
+            for (int p : overlapping) {
+                long gap = offsets[p] - prevEnd;
+                if (gap >= aligned[idx] && gap < bestGap) {
+                    best = prevEnd;
+                    bestGap = gap;
+                }
+                prevEnd = Math.max(prevEnd, offsets[p] + aligned[p]);
+            }
+            if (best < 0)
+                best = prevEnd;
+
+            offsets[idx] = best;
+            arenaSize = Math.max(arenaSize, best + aligned[idx]);
+            placed.add(idx);
+        }
+
+        return new MemoryPlan(offsets, arenaSize, peakLiveSize(aligned, firstUse, lastUse), totalSize);
+    }
+
+    /**
+     * Calculate the maximum (over all steps) of the total size of all tensors in use at that step. This is a lower
+     * bound on the arena size for any offset assignment
+     */
+    protected static long peakLiveSize(long[] sizes, int[] firstUse, int[] lastUse) {
+        //Sweep over start and end events, ordered by step. At equal steps, starts are processed before ends, as
+        // lifetimes are inclusive
+        int n = sizes.length;
+        long[][] events = new long[2 * n][];
+        for (int i = 0; i < n; i++) {
+            events[2 * i] = new long[]{firstUse[i], 0, sizes[i]};
+            events[2 * i + 1] = new long[]{lastUse[i], 1, -sizes[i]};
+        }
+        Arrays.sort(events, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        long curr = 0;
+        long peak = 0;
+        for (long[] e : events) {
+            curr += e[2];
+            peak = Math.max(peak, curr);
+        }
+        return peak;
+    }
+
+    private static long align(long size, long alignment) {
+        return ((size + alignment - 1) / alignment) * alignment;
+    }
+
+    /**
+     * The result of static memory planning
+     */
+    @Data
+    @AllArgsConstructor
+    public static class MemoryPlan {
+        /**
+         * Offset of each tensor within the arena
+         */
+        private long[] offsets;
+        /**
+         * Size of the arena required for all tensors
+         */
+        private long arenaSize;
+        /**
+         * Maximum total size of all tensors in use at the same time. Lower bound for the arena size
+         */
+        private long peakLiveSize;
+        /**
+         * Total size of all tensors - i.e., the memory required without any reuse
+         */
+        private long totalSize;
+    }
+}
@@ -47,6 +47,7 @@ public class GraphOptimizer {
                 new IdentityFunctionOptimizations(),
                 new ShapeFunctionOptimizations(),
                 new UnusedFunctionOptimizations(),
+                new FusionOptimizations(),
                 new CuDNNFunctionOptimizations()
         );
     }
@@ -71,7 +72,7 @@ public class GraphOptimizer {
         ArrayHolder cArr = sd.getConstantArrays();
         ArrayHolder vArr = sd.getVariablesArrays();
 
-        OptimizationHelper h = new OptimizationHelper(graph, new OptimizationConfig());    //TODO defaults for config
+        OptimizationHelper h = new OptimizationHelper(graph, new OptimizationConfig(), requiredOutputs);    //TODO defaults for config
 
         for( int i=0; i<3; i++ ) {  //Run multiple times - one run isn't enough, as some more optimizations may need to be applied to the output of earlier optimizations
             for (OptimizerSet s : optimizations) {
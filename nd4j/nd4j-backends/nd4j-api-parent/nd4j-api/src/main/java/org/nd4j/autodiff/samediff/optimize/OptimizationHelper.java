@@ -31,19 +31,37 @@ import org.nd4j.common.base.Preconditions;
 import org.nd4j.common.function.Supplier;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 public class OptimizationHelper {
 
     private final SameDiff originalGraph;
     @Getter
     private final Properties properties;
+    @Getter
+    private final Set<String> requiredOutputs;
     private boolean setConstantHolder = false;
     private boolean setVariableHolder = false;
 
     public OptimizationHelper(SameDiff originalGraph, Properties properties){
+        this(originalGraph, properties, null);
+    }
+
+    public OptimizationHelper(SameDiff originalGraph, Properties properties, List<String> requiredOutputs){
         this.originalGraph = originalGraph;
         this.properties = properties;
+        this.requiredOutputs = requiredOutputs == null ? Collections.<String>emptySet() : new HashSet<>(requiredOutputs);
+    }
+
+    /**
+     * @return True if the specified variable is one of the outputs the optimized graph was requested to produce
+     */
+    public boolean isRequiredOutput(String varName){
+        return requiredOutputs.contains(varName);
     }
 
     public OptimizationHelper arrayRecoveryFunction(String arrayName, Supplier<INDArray> fn){
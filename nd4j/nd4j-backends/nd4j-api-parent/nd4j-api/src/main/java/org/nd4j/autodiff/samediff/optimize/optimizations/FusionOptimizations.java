@@ -0,0 +1,423 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.optimize.optimizations;
+
+import org.nd4j.autodiff.samediff.ArrayHolder;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.autodiff.samediff.optimize.OptimizationHelper;
+import org.nd4j.autodiff.samediff.optimize.Optimizer;
+import org.nd4j.enums.WeightsFormat;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BiasAdd;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.BatchNorm;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.api.ops.impl.loss.SoftmaxCrossEntropyWithLogitsLoss;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.reduce.same.Sum;
+import org.nd4j.linalg.api.ops.impl.scalar.RectifiedLinear;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.LayerNorm;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.LogSoftMax;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.SoftMax;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.Standardize;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.MulOp;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Negative;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Log;
+import org.nd4j.linalg.factory.Broadcast;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.List;
+
+/**
+ * This set of optimizations looks for chains of ops that have a single fused equivalent, and replaces the chain with
+ * that fused op. This avoids materializing the intermediate arrays of the chain, and reduces the number of op
+ * executions per inference.<br>
+ * A chain is only fused if each of its intermediate variables is used by the next op in the chain only - i.e., is not
+ * a required output, a loss variable, an input to some other op, or involved in a control dependency. The final
+ * output of the chain keeps its name, hence the fused graph has the same outputs as the original.
+ */
+public class FusionOptimizations extends BaseOptimizerSet {
+
+    /**
+     * Fuse mmul(x, w) + b (with rank 1 bias b) into a single xw_plus_b op ({@link XwPlusB})
+     */
+    public static class FuseMatMulBiasAdd implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if (op.getOp().getClass() != Mmul.class || !noControlDeps(op))
+                return false;
+            Mmul mmul = (Mmul) op.getOp();
+            if (!allZero(mmul.iArgs()) || !defaultAlphaBeta(mmul.tArgs()))
+                return false;
+
+            String mmulOut = op.getOutputsOfOp().get(0);
+            SameDiffOp addOp = singleConsumer(sd, helper, mmulOut);
+            if (addOp == null || !noControlDeps(addOp) || addOp.getInputsToOp().size() != 2)
+                return false;
+
+            String biasName;
+            if (addOp.getOp().getClass() == AddOp.class) {
+                List<String> addIn = addOp.getInputsToOp();
+                biasName = addIn.get(0).equals(mmulOut) ? addIn.get(1) : addIn.get(0);
+            } else if (addOp.getOp().getClass() == BiasAdd.class && addOp.getInputsToOp().get(0).equals(mmulOut)) {
+                biasName = addOp.getInputsToOp().get(1);
+            } else {
+                return false;
+            }
+
+            SDVariable in = sd.getVariable(op.getInputsToOp().get(0));
+            SDVariable w = sd.getVariable(op.getInputsToOp().get(1));
+            SDVariable b = sd.getVariable(biasName);
+            long[] inShape = in.getShape();
+            long[] wShape = w.getShape();
+            long[] bShape = b.getShape();
+            if ((inShape != null && inShape.length != 2) || wShape == null || wShape.length != 2 ||
+                    bShape == null || bShape.length != 1 || bShape[0] != wShape[1])
+                return false;
+            if (in.dataType() != w.dataType() || w.dataType() != b.dataType())
+                return false;
+
+            SDVariable fused = sd.nn().linear(in, w, b);
+            replaceChain(sd, fused, addOp.getOutputsOfOp().get(0), op.getName(), addOp.getName());
+            return true;
+        }
+    }
+
+    /**
+     * Fuse relu(xw_plus_b(x, w, b)) into a single relu_layer op ({@link ReluLayer}).
+     * Usually applies after {@link FuseMatMulBiasAdd}
+     */
+    public static class FuseLinearRelu implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if (op.getOp().getClass() != XwPlusB.class || !noControlDeps(op) || !allZero(((XwPlusB) op.getOp()).iArgs()))
+                return false;
+
+            SameDiffOp reluOp = singleConsumer(sd, helper, op.getOutputsOfOp().get(0));
+            if (reluOp == null || !noControlDeps(reluOp) || reluOp.getOp().getClass() != RectifiedLinear.class)
+                return false;
+            INDArray cutoff = ((RectifiedLinear) reluOp.getOp()).scalar();
+            if (reluOp.getInputsToOp().size() != 1 || cutoff == null || cutoff.getDouble(0) != 0.0)
+                return false;
+
+            List<String> in = op.getInputsToOp();
+            SDVariable fused = sd.nn().reluLayer(sd.getVariable(in.get(0)), sd.getVariable(in.get(1)), sd.getVariable(in.get(2)));
+            replaceChain(sd, fused, reluOp.getOutputsOfOp().get(0), op.getName(), reluOp.getName());
+            return true;
+        }
+    }
+
+    /**
+     * Fold an inference mode batch norm into the preceding conv2d op: conv2d(x, w, b) followed by
+     * batchNorm(mean, var, gamma, beta) over the channels dimension is replaced by a single conv2d(x, w', b') where
+     * w' = w * gamma / sqrt(var + eps) and b' = (b - mean) * gamma / sqrt(var + eps) + beta, for each output channel.<br>
+     * Only applied when the weights, bias and all batch norm parameters have arrays (i.e., are constants or variables).
+     * The folded weights and bias are added as new constants; the original arrays are not modified.
+     */
+    public static class FoldBatchNormIntoConv2d implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if (op.getOp().getClass() != Conv2D.class || !noControlDeps(op))
+                return false;
+
+            SameDiffOp bnOp = singleConsumer(sd, helper, op.getOutputsOfOp().get(0));
+            if (bnOp == null || !noControlDeps(bnOp) || bnOp.getOp().getClass() != BatchNorm.class ||
+                    !bnOp.getInputsToOp().get(0).equals(op.getOutputsOfOp().get(0)))
+                return false;
+
+            Conv2DConfig config = ((Conv2D) op.getOp()).getConfig();
+            BatchNorm bn = (BatchNorm) bnOp.getOp();
+            int channelAxis = config.isNHWC() ? 3 : 1;
+            int[] bnAxis = bn.getJaxis();
+            if (bnAxis == null || bnAxis.length != 1 || (bnAxis[0] != channelAxis && !(config.isNHWC() && bnAxis[0] == -1)))
+                return false;
+
+            List<String> convIn = op.getInputsToOp();
+            INDArray w = arrayFor(sd, convIn.get(1));
+            INDArray b = convIn.size() > 2 ? arrayFor(sd, convIn.get(2)) : null;
+            if (w == null || w.rank() != 4 || (convIn.size() > 2 && b == null) || !w.dataType().isFPType())
+                return false;
+
+            List<String> bnIn = bnOp.getInputsToOp();
+            int idx = 1;
+            INDArray mean = arrayFor(sd, bnIn.get(idx++));
+            INDArray var = arrayFor(sd, bnIn.get(idx++));
+            INDArray gamma = bn.isApplyGamma() ? arrayFor(sd, bnIn.get(idx++)) : null;
+            INDArray beta = bn.isApplyBeta() ? arrayFor(sd, bnIn.get(idx)) : null;
+            if (mean == null || var == null || (bn.isApplyGamma() && gamma == null) || (bn.isApplyBeta() && beta == null))
+                return false;
+
+            int outAxis = config.getWeightsFormat() == WeightsFormat.YXIO ? 3 : 0;
+            long nOut = w.size(outAxis);
+            for (INDArray a : new INDArray[]{b, mean, var, gamma, beta}) {
+                if (a != null && a.length() != nOut)
+                    return false;
+            }
+
+            DataType dt = w.dataType();
+            INDArray scale = Transforms.sqrt(var.reshape(nOut).castTo(dt).add(bn.getEpsilon()), false).rdivi(1.0);
+            if (gamma != null)
+                scale.muli(gamma.reshape(nOut).castTo(dt));
+            INDArray newW = Broadcast.mul(w, scale, w.ulike(), outAxis);
+            INDArray newB = b == null ? Nd4j.zeros(dt, nOut) : b.reshape(nOut).castTo(dt).dup();
+            newB.subi(mean.reshape(nOut).castTo(dt)).muli(scale);
+            if (beta != null)
+                newB.addi(beta.reshape(nOut).castTo(dt));
+
+            String wName = convIn.get(1);
+            SDVariable wFolded = sd.constant(sd.generateNewVarName(wName + "_bn_folded", 0), newW);
+            SDVariable bFolded = sd.constant(sd.generateNewVarName(wName + "_bn_folded_bias", 0), newB);
+            SDVariable fused = sd.cnn().conv2d(sd.getVariable(convIn.get(0)), wFolded, bFolded, config);
+            replaceChain(sd, fused, bnOp.getOutputsOfOp().get(0), op.getName(), bnOp.getName());
+            return true;
+        }
+    }
+
+    /**
+     * Fuse standardize(x, lastDim) * gain + bias (with rank 1 gain and bias) into a single layer_norm op
+     * ({@link LayerNorm}). The bias addition is optional
+     */
+    public static class FuseLayerNorm implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if (op.getOp().getClass() != Standardize.class || !noControlDeps(op) || op.getInputsToOp().size() != 1)
+                return false;
+
+            SDVariable in = sd.getVariable(op.getInputsToOp().get(0));
+            long[] inShape = in.getShape();
+            long[] dims = ((Standardize) op.getOp()).iArgs();
+            if (inShape == null || inShape.length < 2 || dims.length != 1 ||
+                    (dims[0] != -1 && dims[0] != inShape.length - 1))
+                return false;
+            long size = inShape[inShape.length - 1];
+
+            String stdOut = op.getOutputsOfOp().get(0);
+            SameDiffOp mulOp = singleConsumer(sd, helper, stdOut);
+            if (mulOp == null || !noControlDeps(mulOp) || mulOp.getOp().getClass() != MulOp.class)
+                return false;
+            SDVariable gain = otherInput(sd, mulOp, stdOut);
+            if (gain == null || !isVector(gain, size) || gain.dataType() != in.dataType())
+                return false;
+
+            String mulOut = mulOp.getOutputsOfOp().get(0);
+            SameDiffOp addOp = singleConsumer(sd, helper, mulOut);
+            SDVariable bias = null;
+            if (addOp != null && noControlDeps(addOp) && addOp.getOp().getClass() == AddOp.class) {
+                bias = otherInput(sd, addOp, mulOut);
+                if (bias != null && (!isVector(bias, size) || bias.dataType() != in.dataType()))
+                    bias = null;
+            }
+
+            SDVariable fused = sd.nn().layerNorm(in, gain, bias, false, inShape.length - 1);
+            if (bias != null) {
+                replaceChain(sd, fused, addOp.getOutputsOfOp().get(0), op.getName(), mulOp.getName(), addOp.getName());
+            } else {
+                replaceChain(sd, fused, mulOut, op.getName(), mulOp.getName());
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Fuse log(softmax(x)) into a single, numerically stable log_softmax op ({@link LogSoftMax})
+     */
+    public static class FuseLogSoftmax implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if (op.getOp().getClass() != SoftMax.class || !noControlDeps(op) || op.getInputsToOp().size() != 1)
+                return false;
+
+            SameDiffOp logOp = singleConsumer(sd, helper, op.getOutputsOfOp().get(0));
+            if (logOp == null || !noControlDeps(logOp) || logOp.getOp().getClass() != Log.class)
+                return false;
+
+            long[] iArgs = ((SoftMax) op.getOp()).iArgs();
+            int dim = iArgs.length == 0 ? -1 : (int) iArgs[0];
+            SDVariable fused = sd.nn().logSoftmax(sd.getVariable(op.getInputsToOp().get(0)), dim);
+            replaceChain(sd, fused, logOp.getOutputsOfOp().get(0), op.getName(), logOp.getName());
+            return true;
+        }
+    }
+
+    /**
+     * Fuse the per-example softmax cross entropy chain -sum(labels * log_softmax(logits), classesDim) into a single
+     * softmax_cross_entropy_loss_with_logits op ({@link SoftmaxCrossEntropyWithLogitsLoss}).
+     * Usually applies after {@link FuseLogSoftmax}. Matched backwards, starting from the final negation
+     */
+    public static class FuseSoftmaxCrossEntropy implements Optimizer {
+        @Override
+        public boolean checkAndApply(SameDiff sd, OptimizationHelper helper, SameDiffOp op, ArrayHolder constantArrays, ArrayHolder variablesArrays) {
+            if (op.getOp().getClass() != Negative.class || !noControlDeps(op) || op.getInputsToOp().size() != 1)
+                return false;
+
+            String sumOut = op.getInputsToOp().get(0);
+            SameDiffOp sumOp = producerIfSingleUse(sd, helper, sumOut, op);
+            if (sumOp == null || sumOp.getOp().getClass() != Sum.class || sumOp.getInputsToOp().size() != 1)
+                return false;
+            Sum sum = (Sum) sumOp.getOp();
+            long[] sumDims = sum.dimensionsArr();
+            if (sum.isKeepDims() || sumDims == null || sumDims.length != 1)
+                return false;
+
+            String mulOut = sumOp.getInputsToOp().get(0);
+            SameDiffOp mulOp = producerIfSingleUse(sd, helper, mulOut, sumOp);
+            if (mulOp == null || mulOp.getOp().getClass() != MulOp.class || mulOp.getInputsToOp().size() != 2)
+                return false;
+
+            SameDiffOp lsmOp = null;
+            String labels = null;
+            for (int i = 0; i < 2 && lsmOp == null; i++) {
+                SameDiffOp p = producerIfSingleUse(sd, helper, mulOp.getInputsToOp().get(i), mulOp);
+                if (p != null && p.getOp().getClass() == LogSoftMax.class && p.getInputsToOp().size() == 1) {
+                    lsmOp = p;
+                    labels = mulOp.getInputsToOp().get(1 - i);
+                }
+            }
+            if (lsmOp == null)
+                return false;
+
+            long[] lsmArgs = ((LogSoftMax) lsmOp.getOp()).iArgs();
+            long lsmDim = lsmArgs.length == 0 ? -1 : lsmArgs[0];
+            SDVariable logits = sd.getVariable(lsmOp.getInputsToOp().get(0));
+            long[] logitsShape = logits.getShape();
+            if (!sameDimension(lsmDim, sumDims[0], logitsShape == null ? -1 : logitsShape.length))
+                return false;
+
+            SDVariable lbl = sd.getVariable(labels);
+            if (lbl.dataType() != logits.dataType())
+                return false;
+
+            SDVariable fused = new SoftmaxCrossEntropyWithLogitsLoss(sd, logits, lbl, (int) lsmDim).outputVariable();
+            replaceChain(sd, fused, op.getOutputsOfOp().get(0), lsmOp.getName(), mulOp.getName(), sumOp.getName(), op.getName());
+            return true;
+        }
+    }
+
+
+    /**
+     * Replace a chain of ops with a single fused op. The fused op must already have been added to the graph.
+     * All outputs of the chain ops other than the final output are removed; the output of the fused op takes the
+     * name (and the consumers) of the final output of the chain
+     */
+    protected static void replaceChain(SameDiff sd, SDVariable fusedOutput, String finalOutput, String... chainOps) {
+        for (String opName : chainOps) {
+            List<String> outputs = sd.getOps().get(opName).getOutputsOfOp();
+            OptimizationUtils.removeOp(sd, opName);
+            for (String s : outputs) {
+                if (!s.equals(finalOutput))
+                    OptimizationUtils.removeVariable(sd, s);
+            }
+        }
+
+        OptimizationUtils.replaceOpInputsWith(sd, finalOutput, fusedOutput.name());
+        OptimizationUtils.removeVariable(sd, finalOutput);
+        sd.renameVariable(fusedOutput.name(), finalOutput);
+    }
+
+    /**
+     * @return The only op using the specified variable, or null if the variable is not safe to fuse away: i.e., it
+     * is used by more or less than one op, is a required output or loss variable, or has control dependencies
+     */
+    protected static SameDiffOp singleConsumer(SameDiff sd, OptimizationHelper helper, String varName) {
+        Variable v = sd.getVariables().get(varName);
+        if (v == null || helper.isRequiredOutput(varName) || sd.getLossVariables().contains(varName))
+            return null;
+        if (v.getInputsForOp() == null || v.getInputsForOp().size() != 1)
+            return null;
+        if (!isEmpty(v.getControlDeps()) || !isEmpty(v.getControlDepsForOp()) || !isEmpty(v.getControlDepsForVar()))
+            return null;
+        SameDiffOp consumer = sd.getOps().get(v.getInputsForOp().get(0));
+        if (consumer == null || consumer.getInputsToOp().indexOf(varName) != consumer.getInputsToOp().lastIndexOf(varName))
+            return null;
+        return consumer;
+    }
+
+    /**
+     * @return The op producing the specified variable, if the variable is used only by the specified consumer op (see
+     * {@link #singleConsumer(SameDiff, OptimizationHelper, String)}) and the producer has no control dependencies,
+     * or null otherwise
+     */
+    protected static SameDiffOp producerIfSingleUse(SameDiff sd, OptimizationHelper helper, String varName, SameDiffOp consumer) {
+        Variable v = sd.getVariables().get(varName);
+        if (v == null || v.getOutputOfOp() == null || singleConsumer(sd, helper, varName) != consumer)
+            return null;
+        SameDiffOp producer = sd.getOps().get(v.getOutputOfOp());
+        if (producer == null || !noControlDeps(producer) || producer.getOutputsOfOp().size() != 1)
+            return null;
+        return producer;
+    }
+
+    protected static boolean noControlDeps(SameDiffOp op) {
+        return isEmpty(op.getControlDeps()) && isEmpty(op.getVarControlDeps()) && isEmpty(op.getControlDepFor());
+    }
+
+    private static boolean isEmpty(List<String> l) {
+        return l == null || l.isEmpty();
+    }
+
+    private static SDVariable otherInput(SameDiff sd, SameDiffOp op, String input) {
+        List<String> in = op.getInputsToOp();
+        if (in.size() != 2 || in.get(0).equals(in.get(1)))
+            return null;
+        return sd.getVariable(in.get(0).equals(input) ? in.get(1) : in.get(0));
+    }
+
+    private static boolean isVector(SDVariable v, long length) {
+        long[] shape = v.getShape();
+        return shape != null && shape.length == 1 && shape[0] == length;
+    }
+
+    private static INDArray arrayFor(SameDiff sd, String varName) {
+        SDVariable v = sd.getVariable(varName);
+        if (v == null || (v.getVariableType() != VariableType.CONSTANT && v.getVariableType() != VariableType.VARIABLE))
+            return null;
+        return v.getArr();
+    }
+
+    private static boolean allZero(long[] args) {
+        for (long l : args) {
+            if (l != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean defaultAlphaBeta(double[] tArgs) {
+        return (tArgs.length < 1 || tArgs[0] == 1.0) && (tArgs.length < 2 || tArgs[1] == 0.0);
+    }
+
+    private static boolean sameDimension(long d1, long d2, int rank) {
+        if (d1 == d2)
+            return true;
+        if (rank < 0)
+            return false;
+        return (d1 < 0 ? d1 + rank : d1) == (d2 < 0 ? d2 + rank : d2);
+    }
+}
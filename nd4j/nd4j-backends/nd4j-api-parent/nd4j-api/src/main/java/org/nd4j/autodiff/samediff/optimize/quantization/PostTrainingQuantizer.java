@@ -0,0 +1,418 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.optimize.quantization;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.autodiff.samediff.ArrayHolder;
+import org.nd4j.autodiff.samediff.SDVariable;
+import org.nd4j.autodiff.samediff.SameDiff;
+import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
+import org.nd4j.autodiff.samediff.internal.Variable;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.primitives.Pair;
+import org.nd4j.enums.WeightsFormat;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.DynamicCustomOp;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.reduce.Mmul;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.FakeQuantWithMinMaxArgs;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
+import org.nd4j.linalg.factory.Broadcast;
+import org.nd4j.linalg.indexing.BooleanIndexing;
+import org.nd4j.linalg.indexing.conditions.Conditions;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.*;
+
+/**
+ * Calibration based post-training INT8 quantization for SameDiff graphs, for CPU inference.<br>
+ * The workflow is as follows:<br>
+ * 1. Calibration (only if activations are quantized): representative batches are run through the FP32 graph, and the
+ * range (min/max) of the activations input to each matmul ({@link Mmul}, {@link XwPlusB} and subclasses) and
+ * {@link Conv2D} op is recorded<br>
+ * 2. Quantization: the weights of each of these ops are converted to INT8 with one symmetric scale per output channel
+ * (scale = max(abs(w)) / 127 over that channel), and stored as INT8 constants, with a cast+multiply to dequantize
+ * them. Optionally (see {@link #isQuantizeActivations()}), the activations input to each of these ops are passed
+ * through a fake quantization op (INT8 quantize then dequantize) using the calibrated range, so the quantized graph
+ * reflects the accuracy of INT8 activations<br>
+ * 3. Evaluation: {@link #evaluate(SameDiff, SameDiff, Iterable, String...)} compares the outputs of the quantized graph to
+ * the FP32 graph, and reports the model size before and after quantization<br>
+ * <br>
+ * The quantized graph stores its weights as INT8, hence is roughly 4x smaller when saved. Note that the dequantize ops
+ * only depend on constants: when optimizing the quantized graph for inference via
+ * {@link org.nd4j.autodiff.samediff.optimize.GraphOptimizer}, these are folded to FP32 constants once (by constant
+ * folding), hence there is no per-inference dequantization cost with the default weight-only quantization. Fake
+ * quantization of activations, on the other hand, adds an elementwise op in front of every quantized op, executed on
+ * every inference: it is only useful to measure the accuracy impact of INT8 activations.<br>
+ * The quantized graph is intended for inference only: quantized weights are converted to constants, so cannot be trained.
+ * The original graph is not modified.
+ */
+@Slf4j
+@Data
+@Builder
+public class PostTrainingQuantizer {
+    public static final int NUM_BITS = 8;
+    public static final int INT8_MAX = 127;
+
+    /**
+     * If true: quantize (via fake quantization) the activations input to quantized ops, using the calibrated ranges.
+     * This adds a fake quantization op per quantized op, executed on every inference, so is slower than the original
+     * graph. If false (default): weight-only quantization, with no runtime overhead once constants are folded.
+     */
+    @Builder.Default
+    private boolean quantizeActivations = false;
+    /**
+     * If true (default): use one scale per output channel for the weights. If false, use one scale per weight array
+     */
+    @Builder.Default
+    private boolean perChannel = true;
+    /**
+     * Weights arrays with fewer elements than this are not quantized. Default: 0 (quantize all)
+     */
+    @Builder.Default
+    private long minWeightElements = 0;
+
+
+    /**
+     * Run the calibration data through the graph, and record the range of the activations input to each of the ops to
+     * be quantized
+     *
+     * @param sd              Graph to calibrate
+     * @param calibrationData Representative placeholder values (batches) for the graph
+     * @return Map of activation ranges, keyed by variable name
+     */
+    public Map<String, ActivationRange> calibrate(@NonNull SameDiff sd, @NonNull Iterable<Map<String, INDArray>> calibrationData) {
+        Set<String> activations = new LinkedHashSet<>();
+        for (QuantizationTarget t : findTargets(sd)) {
+            activations.add(t.getActivation());
+        }
+
+        List<String> toCompute = new ArrayList<>();
+        for (String s : activations) {
+            if (sd.getVariable(s).getVariableType() == VariableType.ARRAY)
+                toCompute.add(s);
+        }
+
+        Map<String, ActivationRange> ranges = new LinkedHashMap<>();
+        int count = 0;
+        for (Map<String, INDArray> batch : calibrationData) {
+            Map<String, INDArray> out = toCompute.isEmpty() ? Collections.<String, INDArray>emptyMap() : sd.output(batch, toCompute);
+            for (String s : activations) {
+                INDArray arr = out.containsKey(s) ? out.get(s) : batch.get(s);
+                if (arr == null || arr.isEmpty())
+                    continue;
+                double min = arr.minNumber().doubleValue();
+                double max = arr.maxNumber().doubleValue();
+                ActivationRange r = ranges.get(s);
+                if (r == null) {
+                    ranges.put(s, new ActivationRange(min, max));
+                } else {
+                    r.setMin(Math.min(r.getMin(), min));
+                    r.setMax(Math.max(r.getMax(), max));
+                }
+            }
+            count++;
+        }
+        Preconditions.checkState(count > 0, "No calibration data was provided");
+        log.info("Calibrated {} activations using {} batches", ranges.size(), count);
+        return ranges;
+    }
+
+    /**
+     * Calibrate and quantize the specified graph. See {@link #calibrate(SameDiff, Iterable)} and
+     * {@link #quantize(SameDiff, Map)}
+     */
+    public SameDiff quantize(@NonNull SameDiff sd, @NonNull Iterable<Map<String, INDArray>> calibrationData) {
+        Map<String, ActivationRange> ranges = quantizeActivations ? calibrate(sd, calibrationData) : Collections.<String, ActivationRange>emptyMap();
+        return quantize(sd, ranges);
+    }
+
+    /**
+     * Quantize the specified graph using previously calibrated activation ranges. The original graph is not modified.
+     *
+     * @param sd     Graph to quantize
+     * @param ranges Activation ranges, as returned by {@link #calibrate(SameDiff, Iterable)}. Activations without a range
+     *               are not quantized
+     * @return A quantized copy of the graph
+     */
+    public SameDiff quantize(@NonNull SameDiff sd, @NonNull Map<String, ActivationRange> ranges) {
+        SameDiff q = sd.dup();
+
+        Map<String, String> dequantizedWeights = new HashMap<>();
+        Map<String, String> quantizedActivations = new HashMap<>();
+        for (QuantizationTarget t : findTargets(q)) {
+            SameDiffOp op = q.getOps().get(t.getOpName());
+
+            String wName = t.getWeights();
+            String deq = dequantizedWeights.get(wName);
+            if (deq == null) {
+                SDVariable w = q.getVariable(wName);
+                Pair<INDArray, INDArray> p = quantizeWeights(w.getArr(), perChannel ? t.getChannelAxis() : -1);
+                SDVariable wq = q.constant(q.generateNewVarName(wName + "_int8", 0), p.getFirst());
+                SDVariable scale = q.constant(q.generateNewVarName(wName + "_scale", 0), p.getSecond());
+                deq = wq.castTo(w.dataType()).mul(q.generateNewVarName(wName + "_dequantized", 0), scale).name();
+                dequantizedWeights.put(wName, deq);
+            }
+            replaceOpInput(q, op, t.getWeightsIdx(), deq);
+
+            ActivationRange r = quantizeActivations ? ranges.get(t.getActivation()) : null;
+            if (r != null && q.getVariable(t.getActivation()).dataType().isFPType()) {
+                String a = t.getActivation();
+                String fq = quantizedActivations.get(a);
+                if (fq == null) {
+                    //Range must contain 0, so that 0 is exactly representable
+                    float min = (float) Math.min(r.getMin(), 0.0);
+                    float max = (float) Math.max(r.getMax(), 0.0);
+                    if (max > min) {
+                        SDVariable out = new FakeQuantWithMinMaxArgs(q, q.getVariable(a), min, max, false, NUM_BITS).outputVariable();
+                        fq = q.updateVariableNameAndReference(out, q.generateNewVarName(a + "_fake_quant", 0)).name();
+                        quantizedActivations.put(a, fq);
+                    }
+                }
+                if (fq != null)
+                    replaceOpInput(q, op, 0, fq);
+            }
+        }
+
+        //Remove the original FP32 weights if no longer used
+        for (String wName : dequantizedWeights.keySet()) {
+            Variable v = q.getVariables().get(wName);
+            if (v.getInputsForOp() != null && !v.getInputsForOp().isEmpty())
+                continue;
+            if (!q.getLossVariables().contains(wName) && (v.getControlDepsForOp() == null || v.getControlDepsForOp().isEmpty())) {
+                ArrayHolder h = v.getVariable().getVariableType() == VariableType.CONSTANT ? q.getConstantArrays() : q.getVariablesArrays();
+                h.removeArray(wName);
+                q.getVariables().remove(wName);
+            }
+        }
+
+        log.info("Quantized {} weight arrays and {} activations to INT8", dequantizedWeights.size(), quantizedActivations.size());
+        return q;
+    }
+
+    /**
+     * Compare the outputs of the quantized graph against the original FP32 graph.
+     *
+     * @param original  Original (FP32) graph
+     * @param quantized Quantized graph
+     * @param data      Evaluation data (placeholder values)
+     * @param outputs   Outputs to compare
+     * @return The accuracy (and size) report
+     */
+    public static QuantizationReport evaluate(@NonNull SameDiff original, @NonNull SameDiff quantized,
+                                              @NonNull Iterable<Map<String, INDArray>> data, @NonNull String... outputs) {
+        Preconditions.checkArgument(outputs.length > 0, "No outputs specified");
+        Map<String, OutputAccumulator> acc = new LinkedHashMap<>();
+        for (String s : outputs) {
+            acc.put(s, new OutputAccumulator());
+        }
+
+        for (Map<String, INDArray> batch : data) {
+            Map<String, INDArray> fp32 = original.output(batch, outputs);
+            Map<String, INDArray> int8 = quantized.output(batch, outputs);
+            for (String s : outputs) {
+                acc.get(s).add(fp32.get(s), int8.get(s));
+            }
+        }
+
+        Map<String, QuantizationReport.OutputAccuracy> accuracy = new LinkedHashMap<>();
+        for (Map.Entry<String, OutputAccumulator> e : acc.entrySet()) {
+            accuracy.put(e.getKey(), e.getValue().toAccuracy());
+        }
+        return new QuantizationReport(accuracy, arrayBytes(original), arrayBytes(quantized));
+    }
+
+    /**
+     * Quantize the specified array to INT8 with symmetric scaling: q = round(w / scale), with scale = max(abs(w)) / 127
+     *
+     * @param w           Weights to quantize
+     * @param channelAxis Dimension of the output channels, for per-channel scales. -1 for a single scale for the entire array
+     * @return The INT8 weights, and the scales (same rank as the weights, with size 1 for all dimensions other than the
+     * channel dimension) such that w is approximately q * scale
+     */
+    public static Pair<INDArray, INDArray> quantizeWeights(@NonNull INDArray w, int channelAxis) {
+        Preconditions.checkArgument(w.dataType().isFPType(), "Can only quantize floating point arrays, got %s", w.dataType());
+        INDArray abs = Transforms.abs(w, true);
+        INDArray scale;
+        if (channelAxis < 0) {
+            scale = abs.max(true);
+        } else {
+            long[] reduce = new long[w.rank() - 1];
+            for (int i = 0, j = 0; i < w.rank(); i++) {
+                if (i != channelAxis)
+                    reduce[j++] = i;
+            }
+            scale = abs.max(true, reduce);
+        }
+        scale.divi(INT8_MAX);
+        BooleanIndexing.replaceWhere(scale, 1.0, Conditions.equals(0.0));
+
+        INDArray scaled;
+        if (channelAxis < 0) {
+            scaled = w.div(scale.getDouble(0));
+        } else {
+            scaled = Broadcast.div(w, scale.reshape(scale.length()), w.ulike(), channelAxis);
+        }
+        INDArray q = Transforms.round(scaled, false).castTo(DataType.INT8);
+        return new Pair<>(q, scale);
+    }
+
+    /**
+     * Dequantize the specified INT8 array - see {@link #quantizeWeights(INDArray, int)}
+     */
+    public static INDArray dequantizeWeights(@NonNull INDArray quantized, @NonNull INDArray scale, @NonNull DataType dataType) {
+        INDArray out = quantized.castTo(dataType);
+        if (scale.length() == 1)
+            return out.muli(scale.getDouble(0));
+        int axis = -1;
+        for (int i = 0; i < scale.rank(); i++) {
+            if (scale.size(i) != 1) {
+                axis = i;
+                break;
+            }
+        }
+        return Broadcast.mul(out, scale.reshape(scale.length()).castTo(dataType), out, axis);
+    }
+
+    protected List<QuantizationTarget> findTargets(SameDiff sd) {
+        List<QuantizationTarget> out = new ArrayList<>();
+        for (SameDiffOp op : sd.getOps().values()) {
+            List<String> in = op.getInputsToOp();
+            if (in == null || in.size() < 2)
+                continue;
+
+            int channelAxis;
+            if (op.getOp() instanceof Conv2D) {
+                WeightsFormat wf = ((Conv2D) op.getOp()).getConfig().getWeightsFormat();
+                channelAxis = wf == WeightsFormat.YXIO ? 3 : 0;
+            } else if (op.getOp() instanceof XwPlusB || op.getOp() instanceof Mmul) {
+                long[] iArgs = ((DynamicCustomOp) op.getOp()).iArgs();
+                if (iArgs.length > 2 && iArgs[2] != 0)
+                    continue;   //Transposed result: not supported
+                channelAxis = iArgs.length > 1 && iArgs[1] != 0 ? 0 : 1;
+            } else {
+                continue;
+            }
+
+            SDVariable w = sd.getVariable(in.get(1));
+            VariableType vt = w.getVariableType();
+            if (vt != VariableType.VARIABLE && vt != VariableType.CONSTANT)
+                continue;
+            INDArray arr = w.getArr();
+            if (arr == null || !arr.dataType().isFPType() || arr.length() < minWeightElements || arr.rank() <= channelAxis ||
+                    (op.getOp() instanceof Mmul && arr.rank() != 2))
+                continue;
+
+            out.add(new QuantizationTarget(op.getName(), in.get(0), in.get(1), 1, channelAxis));
+        }
+        return out;
+    }
+
+    protected static void replaceOpInput(SameDiff sd, SameDiffOp op, int idx, String newInput) {
+        List<String> in = new ArrayList<>(op.getInputsToOp());
+        String old = in.get(idx);
+        in.set(idx, newInput);
+        op.setInputsToOp(in);
+
+        if (!in.contains(old)) {
+            List<String> l = sd.getVariables().get(old).getInputsForOp();
+            if (l != null)
+                l.remove(op.getName());
+        }
+        Variable nv = sd.getVariables().get(newInput);
+        if (nv.getInputsForOp() == null)
+            nv.setInputsForOp(new ArrayList<String>());
+        if (!nv.getInputsForOp().contains(op.getName()))
+            nv.getInputsForOp().add(op.getName());
+    }
+
+    protected static long arrayBytes(SameDiff sd) {
+        long bytes = 0;
+        for (ArrayHolder h : new ArrayHolder[]{sd.getConstantArrays(), sd.getVariablesArrays()}) {
+            for (String s : h.arrayNames()) {
+                INDArray arr = h.getArray(s);
+                if (arr != null && arr.dataType().isNumerical())
+                    bytes += arr.length() * arr.dataType().width();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Calibrated range of an activation
+     */
+    @Data
+    @AllArgsConstructor
+    public static class ActivationRange {
+        private double min;
+        private double max;
+    }
+
+    @Data
+    @AllArgsConstructor
+    protected static class QuantizationTarget {
+        private String opName;
+        private String activation;
+        private String weights;
+        private int weightsIdx;
+        private int channelAxis;
+    }
+
+    protected static class OutputAccumulator {
+        private double maxAbsError;
+        private double sumAbsError;
+        private long count;
+        private long examples;
+        private long top1Matches;
+        private boolean classification = true;
+
+        protected void add(INDArray fp32, INDArray int8) {
+            Preconditions.checkState(Arrays.equals(fp32.shape(), int8.shape()), "Shapes differ between FP32 and quantized outputs: %s vs %s",
+                    fp32.shape(), int8.shape());
+            INDArray diff = Transforms.abs(fp32.castTo(DataType.DOUBLE).sub(int8.castTo(DataType.DOUBLE)), false);
+            if (diff.length() > 0) {
+                maxAbsError = Math.max(maxAbsError, diff.maxNumber().doubleValue());
+                sumAbsError += diff.sumNumber().doubleValue();
+                count += diff.length();
+            }
+
+            if (classification && fp32.rank() == 2 && fp32.size(1) > 1) {
+                INDArray a = fp32.argMax(1);
+                INDArray b = int8.argMax(1);
+                top1Matches += a.eq(b).castTo(DataType.INT64).sumNumber().longValue();
+                examples += fp32.size(0);
+            } else {
+                classification = false;
+            }
+        }
+
+        protected QuantizationReport.OutputAccuracy toAccuracy() {
+            double top1 = classification && examples > 0 ? top1Matches / (double) examples : Double.NaN;
+            return new QuantizationReport.OutputAccuracy(maxAbsError, count == 0 ? 0.0 : sumAbsError / count, top1);
+        }
+    }
+}
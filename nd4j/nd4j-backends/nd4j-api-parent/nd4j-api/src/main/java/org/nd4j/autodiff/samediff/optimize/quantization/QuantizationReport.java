@@ -0,0 +1,89 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.optimize.quantization;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * Accuracy and size of a quantized graph, relative to the original FP32 graph.
+ * See {@link PostTrainingQuantizer#evaluate(org.nd4j.autodiff.samediff.SameDiff, org.nd4j.autodiff.samediff.SameDiff, Iterable, String...)}
+ */
+@Data
+@AllArgsConstructor
+public class QuantizationReport {
+    /**
+     * Accuracy of each of the evaluated outputs, keyed by output name
+     */
+    private Map<String, OutputAccuracy> outputs;
+    /**
+     * Total size (bytes) of the constant and variable arrays of the original graph
+     */
+    private long originalBytes;
+    /**
+     * Total size (bytes) of the constant and variable arrays of the quantized graph
+     */
+    private long quantizedBytes;
+
+    /**
+     * @return Ratio of the original size to the quantized size
+     */
+    public double compressionRatio() {
+        return quantizedBytes == 0 ? 0.0 : originalBytes / (double) quantizedBytes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Model size: %,d bytes (FP32) -> %,d bytes (quantized), %.2fx smaller%n",
+                originalBytes, quantizedBytes, compressionRatio()));
+        sb.append(String.format("%-30s %-15s %-15s %-15s%n", "Output", "MaxAbsError", "MeanAbsError", "Top1Agreement"));
+        for (Map.Entry<String, OutputAccuracy> e : outputs.entrySet()) {
+            OutputAccuracy a = e.getValue();
+            sb.append(String.format("%-30s %-15.6g %-15.6g %-15s%n", e.getKey(), a.getMaxAbsError(), a.getMeanAbsError(),
+                    Double.isNaN(a.getTop1Agreement()) ? "-" : String.format("%.4f", a.getTop1Agreement())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Accuracy of a single output of the quantized graph
+     */
+    @Data
+    @AllArgsConstructor
+    public static class OutputAccuracy {
+        /**
+         * Maximum absolute difference between the FP32 and quantized output values
+         */
+        private double maxAbsError;
+        /**
+         * Mean absolute difference between the FP32 and quantized output values
+         */
+        private double meanAbsError;
+        /**
+         * For rank 2 [minibatch, numClasses] outputs: the fraction of examples where the FP32 and quantized predictions
+         * (argmax) agree. NaN for other outputs
+         */
+        private double top1Agreement;
+    }
+}
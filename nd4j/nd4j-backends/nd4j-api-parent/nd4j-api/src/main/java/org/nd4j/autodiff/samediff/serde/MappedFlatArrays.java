@@ -0,0 +1,185 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.autodiff.samediff.serde;
+
+import com.google.flatbuffers.FlatBufferBuilder;
+import lombok.NonNull;
+import org.bytedeco.javacpp.BytePointer;
+import org.nd4j.graph.FlatArray;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
+import org.nd4j.linalg.api.memory.pointers.PagedPointer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Utilities for FlatBuffers arrays that can be used directly from a memory-mapped model file, without copying.<br>
+ * On save, array data is written in the native byte order and aligned to {@link #ALIGNMENT} bytes (relative to the
+ * start of the FlatBuffers file), instead of the big endian, unaligned format used by {@link INDArray#toFlatArray(FlatBufferBuilder)}.
+ * Files written this way remain readable by all existing loaders, as the byte order is recorded for each array.<br>
+ * On load, {@link #fromFlatArray(FlatArray, ByteBuffer)} creates an array whose DataBuffer points directly into the
+ * mapped region, where the stored byte order and alignment allow this.
+ */
+public class MappedFlatArrays {
+    /**
+     * Alignment (in bytes) of array data, relative to the start of the FlatBuffers file
+     */
+    public static final int ALIGNMENT = 64;
+
+    //Mapped regions must not be unmapped while any array still points into them. The DataBuffer (and hence the mapping)
+    // remains reachable from all arrays and views backed by it. Keyed by identity: DataBuffer equals/hashCode are based
+    // on the buffer contents, so a WeakHashMap would merge entries for distinct buffers with equal contents
+    private static final Map<BufferRef, ByteBuffer> MAPPINGS = new HashMap<>();
+    private static final ReferenceQueue<DataBuffer> QUEUE = new ReferenceQueue<>();
+
+    private MappedFlatArrays() {
+    }
+
+    /**
+     * Serialize the specified array to a FlatArray, with the data stored in the native byte order and aligned to
+     * {@link #ALIGNMENT} bytes. Empty and String arrays are serialized as per {@link INDArray#toFlatArray(FlatBufferBuilder)}
+     *
+     * @param builder Builder to add the array to
+     * @param arr     Array to serialize
+     * @return Offset of the FlatArray in the builder
+     */
+    public static int toFlatArray(@NonNull FlatBufferBuilder builder, @NonNull INDArray arr) {
+        if (arr.isEmpty() || arr.dataType() == DataType.UTF8)
+            return arr.toFlatArray(builder);
+        if (arr.isView())
+            arr = arr.dup(arr.ordering());
+
+        Nd4j.getAffinityManager().ensureLocation(arr, AffinityManager.Location.HOST);
+        long nBytes = arr.length() * arr.dataType().width();
+        ByteBuffer src = arr.data().asNio().order(ByteOrder.nativeOrder());
+        src.position(0);
+        src.limit((int) nBytes);
+
+        ByteBuffer dst = builder.createUnintializedVector(1, (int) nBytes, ALIGNMENT);
+        dst.put(src);
+        int buffer = builder.endVector();
+
+        int shape = FlatArray.createShapeVector(builder, arr.shapeInfoDataBuffer().asLong());
+        byte type = FlatBuffersMapper.getDataTypeAsByte(arr.dataType());
+        return FlatArray.createFlatArray(builder, shape, buffer, type, FlatBuffersMapper.getOrderAsByte());
+    }
+
+    /**
+     * Create an array backed directly by the memory of the specified FlatArray - usually a region of a memory-mapped file.
+     * No data is copied; the returned array shares memory with the mapping, hence the mapping should be a private
+     * (copy-on-write) mapping if the array may be modified.
+     *
+     * @param fa      Array to create the INDArray for
+     * @param mapping The buffer the FlatArray was read from. Kept reachable for as long as the returned array is in use
+     * @return The array, or null if the array cannot be used without copying: i.e., the data is empty, String type,
+     * not in the native byte order or not aligned to the element size
+     */
+    public static INDArray fromFlatArray(@NonNull FlatArray fa, @NonNull ByteBuffer mapping) {
+        if (!mapping.isDirect() || FlatBuffersMapper.getOrderFromByte(fa.byteOrder()) != ByteOrder.nativeOrder())
+            return null;
+
+        int rank = (int) fa.shape(0);
+        long[] shapeInfo = new long[Shape.shapeInfoLength(rank)];
+        for (int i = 0; i < shapeInfo.length; i++)
+            shapeInfo[i] = fa.shape(i);
+        DataType dt = FlatBuffersMapper.getDataTypeFromByte(fa.dtype());
+        if (Shape.isEmpty(shapeInfo) || dt == DataType.UTF8 || dt == DataType.COMPRESSED || dt == DataType.UNKNOWN)
+            return null;
+
+        long length = Shape.length(shapeInfo);
+        long nBytes = length * dt.width();
+        ByteBuffer bb = fa.bufferAsByteBuffer();
+        if (bb == null || bb.remaining() < nBytes)
+            return null;
+
+        BytePointer bp = new BytePointer(bb.slice());
+        if (bp.address() % dt.width() != 0)
+            return null;
+
+        DataBuffer buffer = Nd4j.createBuffer(new PagedPointer(bp, nBytes), length, dt);
+        synchronized (MAPPINGS) {
+            expungeStale();
+            MAPPINGS.put(new BufferRef(buffer, QUEUE), mapping);
+        }
+
+        char order = Shape.order(shapeInfo);
+        INDArray arr = Nd4j.create(buffer, Shape.shapeOf(shapeInfo), Shape.stridesOf(shapeInfo), 0, order, dt);
+        arr.setCloseable(false);
+        return arr;
+    }
+
+    /**
+     * Determine whether the specified buffer (or the buffer it is a view of) was created by {@link #fromFlatArray(FlatArray, ByteBuffer)},
+     * i.e., points directly into a mapped region
+     *
+     * @param buffer Buffer to check
+     * @return True if the buffer is backed by a mapped region
+     */
+    public static boolean isMapped(@NonNull DataBuffer buffer) {
+        synchronized (MAPPINGS) {
+            expungeStale();
+            if (MAPPINGS.containsKey(new BufferRef(buffer, null)))
+                return true;
+            DataBuffer underlying = buffer.underlyingDataBuffer();
+            return underlying != null && underlying != buffer && MAPPINGS.containsKey(new BufferRef(underlying, null));
+        }
+    }
+
+    private static void expungeStale() {
+        Reference<? extends DataBuffer> ref;
+        while ((ref = QUEUE.poll()) != null) {
+            MAPPINGS.remove(ref);
+        }
+    }
+
+    private static class BufferRef extends WeakReference<DataBuffer> {
+        private final int hash;
+
+        private BufferRef(DataBuffer buffer, ReferenceQueue<DataBuffer> queue) {
+            super(buffer, queue);
+            this.hash = System.identityHashCode(buffer);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof BufferRef))
+                return false;
+            DataBuffer b = get();
+            return b != null && b == ((BufferRef) o).get();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.api.records.reader.impl;
+
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.records.reader.impl.csv.NumericCSVReader;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.writable.Writable;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.BaseND4JTest;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Numeric CSV Reader Test")
+@Tag(TagNames.FILE_IO)
+@NativeTag
+class NumericCSVReaderTest extends BaseND4JTest {
+
+    @TempDir
+    public Path testDir;
+
+    private File writeFile(int numLines) throws Exception {
+        Random r = new Random(12345);
+        StringBuilder sb = new StringBuilder("a,b,c,d\n");
+        for (int i = 0; i < numLines; i++) {
+            sb.append(r.nextGaussian() * Math.pow(10, r.nextInt(10) - 5)).append(',')
+                    .append(r.nextInt(1000) - 500).append(',')
+                    .append(String.format(Locale.ROOT, "%.3f", r.nextDouble())).append(',')
+                    .append(String.format(Locale.ROOT, "%.2e", r.nextDouble() * 1e6))
+                    //Mix of line terminators, and blank lines
+                    .append(i % 7 == 0 ? "\r\n" : "\n");
+            if (i % 50 == 0)
+                sb.append('\n');
+        }
+        File f = testDir.resolve("numeric.csv").toFile();
+        Files.write(f.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    @Test
+    @DisplayName("Test Read All Matches CSV Record Reader")
+    void testReadAll() throws Exception {
+        File f = writeFile(2000);
+        CSVRecordReader rr = new CSVRecordReader(1, ',');
+        rr.initialize(new FileSplit(f));
+
+        try (NumericCSVReader reader = new NumericCSVReader(f, 1, ',', 64)) {
+            assertEquals(4, reader.getNumColumns());
+            INDArray single = reader.readAll(DataType.DOUBLE, 1);
+            INDArray parallel = reader.readAll(DataType.DOUBLE, 5);
+            INDArray floats = reader.readAll(DataType.FLOAT, 3);
+            assertArrayEquals(new long[]{2000, 4}, single.shape());
+            assertEquals(single, parallel);
+            assertEquals(DataType.FLOAT, floats.dataType());
+
+            int row = 0;
+            while (rr.hasNext()) {
+                List<Writable> next = rr.next();
+                if (next.size() == 1 && next.get(0).toString().isEmpty())
+                    continue;
+                for (int j = 0; j < 4; j++) {
+                    assertEquals(next.get(j).toDouble(), single.getDouble(row, j), 0.0);
+                    assertEquals((float) next.get(j).toDouble(), floats.getFloat(row, j), 0.0f);
+                }
+                row++;
+            }
+            assertEquals(2000, row);
+        }
+    }
+
+    @Test
+    @DisplayName("Test Split And Ranges")
+    void testSplitAndRanges() throws Exception {
+        File f = writeFile(1000);
+        try (NumericCSVReader reader = new NumericCSVReader(f, 1, ',')) {
+            INDArray all = reader.readAll(DataType.DOUBLE, 1);
+
+            long[] bounds = reader.split(7);
+            assertEquals(reader.getDataStart(), bounds[0]);
+            assertEquals(reader.getSize(), bounds[bounds.length - 1]);
+            long total = 0;
+            for (int i = 0; i < bounds.length - 1; i++)
+                total += reader.countRecords(bounds[i], bounds[i + 1]);
+            assertEquals(1000, total);
+
+            //Batches of 64 records, as used by NumericCSVDataSetIterator
+            double[] buffer = new double[64 * 4];
+            long position = reader.getDataStart();
+            int row = 0;
+            while (position < reader.getSize()) {
+                long end = reader.nextLines(position, 64);
+                int n = reader.read(position, end, buffer, 0);
+                assertEquals(Math.min(64, 1000 - row), n);
+                for (int i = 0; i < n * 4; i++)
+                    assertEquals(all.getDouble(row + i / 4, i % 4), buffer[i], 0.0);
+                row += n;
+                position = reader.nextRecord(end);
+            }
+            assertEquals(1000, row);
+        }
+    }
+
+    @Test
+    @DisplayName("Test Invalid Lines")
+    void testInvalidLines() throws Exception {
+        File f = testDir.resolve("invalid.csv").toFile();
+        Files.write(f.toPath(), "1,2\n3,4,5\n".getBytes(StandardCharsets.UTF_8));
+        try (NumericCSVReader reader = new NumericCSVReader(f)) {
+            assertThrows(IllegalStateException.class, () -> reader.readAll(DataType.FLOAT, 1));
+        }
+
+        Files.write(f.toPath(), "1,2\n3,x\n".getBytes(StandardCharsets.UTF_8));
+        try (NumericCSVReader reader = new NumericCSVReader(f)) {
+            assertThrows(NumberFormatException.class, () -> reader.readAll(DataType.FLOAT, 1));
+        }
+    }
+}
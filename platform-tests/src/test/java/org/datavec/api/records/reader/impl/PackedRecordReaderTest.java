@@ -0,0 +1,181 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.api.records.reader.impl;
+
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.mapper.RecordMapper;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.reader.impl.packed.PackedRecordFile;
+import org.datavec.api.records.reader.impl.packed.PackedRecordReader;
+import org.datavec.api.records.writer.impl.packed.PackedRecordWriter;
+import org.datavec.api.split.CollectionInputSplit;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.split.partition.NumberOfRecordsPartitioner;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.BaseND4JTest;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Packed Record Reader Test")
+@Tag(TagNames.FILE_IO)
+@NativeTag
+class PackedRecordReaderTest extends BaseND4JTest {
+
+    private static final Schema SCHEMA = new Schema.Builder().addColumnInteger("i").addColumnLong("l")
+            .addColumnDouble("d").addColumnFloat("f").addColumnBoolean("b").addColumnCategorical("cat", "a", "b", "c")
+            .addColumnString("s").addColumnNDArray("arr", new long[]{1, 3}).build();
+
+    @TempDir
+    public Path testDir;
+
+    private static List<List<Writable>> data(int n) {
+        Random r = new Random(12345);
+        String[] states = {"a", "b", "c"};
+        List<List<Writable>> ret = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            List<Writable> record = new ArrayList<>(Arrays.<Writable>asList(new IntWritable(r.nextInt()),
+                    new LongWritable(r.nextLong()), new DoubleWritable(r.nextDouble()), new FloatWritable(r.nextFloat()),
+                    new BooleanWritable(r.nextBoolean()), new Text(states[r.nextInt(3)]), new Text("value " + r.nextInt(100)),
+                    new NDArrayWritable(Nd4j.rand(1, 3))));
+            //Missing values in every column
+            if (i % 11 == 0)
+                record.set(i % record.size(), NullWritable.INSTANCE);
+            ret.add(record);
+        }
+        return ret;
+    }
+
+    private File write(List<List<Writable>> data, PackedRecordFile.Compression compression, String name) throws Exception {
+        File f = Files.createFile(testDir.resolve(name)).toFile();
+        PackedRecordWriter writer = new PackedRecordWriter(SCHEMA, compression, 1024);
+        writer.initialize(new FileSplit(f), new NumberOfRecordsPartitioner());
+        writer.writeBatch(data);
+        writer.close();
+        return f;
+    }
+
+    @Test
+    @DisplayName("Test Round Trip")
+    void testRoundTrip() throws Exception {
+        List<List<Writable>> data = data(1000);
+        for (PackedRecordFile.Compression c : PackedRecordFile.Compression.values()) {
+            File f = write(data, c, "data_" + c + ".bin");
+            try (PackedRecordFile file = new PackedRecordFile(f)) {
+                assertEquals(SCHEMA, file.getSchema());
+                assertEquals(data.size(), file.getNumRecords());
+                assertTrue(file.numBlocks() > 1);
+                assertEquals(0, file.getBlockFirstRecord(0));
+            }
+
+            PackedRecordReader rr = new PackedRecordReader();
+            rr.initialize(new FileSplit(f));
+            assertEquals(SCHEMA, rr.getSchema());
+            //Multiple epochs
+            for (int epoch = 0; epoch < 2; epoch++) {
+                int i = 0;
+                while (rr.hasNext())
+                    assertEquals(data.get(i), rr.next(), "Record " + i++);
+                assertEquals(data.size(), i);
+                rr.reset();
+            }
+            rr.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Test Random Access")
+    void testRandomAccess() throws Exception {
+        List<List<Writable>> data = data(500);
+        File f0 = write(data.subList(0, 200), PackedRecordFile.Compression.DEFLATE, "0.bin");
+        File f1 = write(data.subList(200, 500), PackedRecordFile.Compression.NONE, "1.bin");
+
+        PackedRecordReader rr = new PackedRecordReader();
+        rr.initialize(new CollectionInputSplit(Arrays.asList(f0.toURI(), f1.toURI())));
+        assertEquals(data.size(), rr.getNumRecords());
+        Random r = new Random(12345);
+        for (int i = 0; i < 1000; i++) {
+            int idx = r.nextInt(data.size());
+            assertEquals(data.get(idx), rr.get(idx));
+        }
+
+        //Sequential reads from an offset, and batches
+        rr.seek(195);
+        List<List<Writable>> batch = rr.next(10);
+        assertEquals(data.subList(195, 205), batch);
+
+        Record record = rr.nextRecord();
+        assertEquals(data.get(205), record.getRecord());
+        RecordMetaData meta = record.getMetaData();
+        assertEquals(data.get(205), rr.loadFromMetaData(meta).getRecord());
+        rr.close();
+    }
+
+    @Test
+    @DisplayName("Test Record Mapper Partitions")
+    void testRecordMapperPartitions() throws Exception {
+        List<List<Writable>> data = data(250);
+        File in = write(data, PackedRecordFile.Compression.DEFLATE, "in.bin");
+        File outDir = Files.createDirectory(testDir.resolve("out")).toFile();
+        File out = new File(outDir, "out.bin");
+        assertTrue(out.createNewFile());
+
+        //Mapper opens each partition stream itself, and closes the previous one after the writer has finished it
+        Configuration conf = new Configuration();
+        conf.setInt(NumberOfRecordsPartitioner.RECORDS_PER_FILE_CONFIG, 100);
+        RecordMapper mapper = RecordMapper.builder().batchSize(30).configuration(conf)
+                .recordReader(new PackedRecordReader()).inputUrl(new FileSplit(in))
+                .recordWriter(new PackedRecordWriter(SCHEMA, PackedRecordFile.Compression.NONE, 1024))
+                .outputUrl(new FileSplit(out)).partitioner(new NumberOfRecordsPartitioner()).build();
+        mapper.copy();
+
+        File[] files = outDir.listFiles();
+        assertNotNull(files);
+        List<Long> sizes = new ArrayList<>();
+        for (File f : files) {
+            try (PackedRecordFile file = new PackedRecordFile(f)) {
+                assertEquals(SCHEMA, file.getSchema());
+                sizes.add(file.getNumRecords());
+                //Each file holds a contiguous range of the input records
+                List<Writable> first = file.get(0);
+                int start = data.indexOf(first);
+                assertTrue(start >= 0);
+                for (int i = 0; i < file.getNumRecords(); i++)
+                    assertEquals(data.get(start + i), file.get(i), f + ": record " + i);
+            }
+        }
+        Collections.sort(sizes);
+        assertEquals(Arrays.asList(10L, 120L, 120L), sizes);
+    }
+}
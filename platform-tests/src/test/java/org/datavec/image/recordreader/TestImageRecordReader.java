@@ -37,6 +37,7 @@ import org.datavec.api.writable.NDArrayWritable;
 import org.datavec.api.writable.Writable;
 import org.datavec.api.writable.batch.NDArrayRecordBatch;
 import org.datavec.image.recordreader.ImageRecordReader;
+import org.datavec.image.transform.FlipImageTransform;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -281,6 +282,57 @@ public class TestImageRecordReader {
         assertEquals(numFiles, counting.getCount());
     }
 
+    @Test
+    public void testParallelDecoding(@TempDir Path testDir) throws Exception {
+        File f = testDir.toFile();
+        new ClassPathResource("datavec-data-image/testimages/").copyDirectory(f);
+        List<URI> locations = Arrays.asList(new FileSplit(f).locations());
+        assertEquals(6, locations.size());
+
+        ImageRecordReader sequential = new ImageRecordReader(32, 32, 3, new ParentPathLabelGenerator(), new FlipImageTransform(1));
+        sequential.initialize(new CollectionInputSplit(locations));
+        List<List<Writable>> expected = readMixedBatches(sequential);
+
+        for (int numThreads : new int[]{1, 3}) {
+            for (boolean factory : new boolean[]{false, true}) {
+                ImageRecordReader rr = new ImageRecordReader(32, 32, 3, new ParentPathLabelGenerator(), new FlipImageTransform(1));
+                rr.setParallelDecoding(numThreads, 2);
+                if (factory)
+                    rr.setImageTransformFactory(() -> new FlipImageTransform(1));
+                rr.initialize(new CollectionInputSplit(locations));
+                assertEquals(expected, readMixedBatches(rr));
+
+                //3 batches returned. Images of the prefetched batch discarded by next() may have been decoded twice
+                ImageDecodeStats stats = rr.getDecodeStats();
+                assertTrue(stats.getImagesDecoded() >= 5);
+                assertEquals(3, stats.getBatchesReady() + stats.getBatchesWaited());
+                assertTrue(stats.getAverageDecodeMillis() > 0);
+
+                rr.reset();
+                int count = 0;
+                while (rr.hasNext())
+                    count += rr.next(4).size();
+                assertEquals(6, count);
+                rr.close();
+            }
+        }
+    }
+
+    /**
+     * Reads batches of 2 and 2 examples, then a single example, then a batch with the last example
+     */
+    private static List<List<Writable>> readMixedBatches(ImageRecordReader rr) {
+        List<List<Writable>> ret = new ArrayList<>();
+        ret.addAll(rr.next(2));
+        ret.addAll(rr.next(2));
+        ret.add(rr.next());
+        List<List<Writable>> last = rr.next(3);
+        assertEquals(1, last.size());
+        ret.addAll(last);
+        assertFalse(rr.hasNext());
+        return ret;
+    }
+
     private static class TestRegressionLabelGen implements PathLabelGenerator {
 
         @Override
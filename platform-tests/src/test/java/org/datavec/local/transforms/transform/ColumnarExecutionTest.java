@@ -0,0 +1,170 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.transform;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.datavec.api.transform.MathFunction;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.CategoricalColumnCondition;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.condition.column.IntegerColumnCondition;
+import org.datavec.api.transform.filter.ConditionFilter;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.transform.doubletransform.MinMaxNormalizer;
+import org.datavec.api.writable.*;
+import org.datavec.arrow.ArrowConverter;
+import org.datavec.arrow.recordreader.ArrowWritableRecordBatch;
+import org.datavec.local.transforms.ColumnarTransformExecutor;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.datavec.local.transforms.columnar.ColumnarTransforms;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Columnar Execution Test")
+@Tag(TagNames.FILE_IO)
+@NativeTag
+class ColumnarExecutionTest {
+
+    private static final Schema SCHEMA = new Schema.Builder().addColumnInteger("i").addColumnLong("l")
+            .addColumnDouble("d").addColumnCategorical("cat", "a", "b", "c").addColumnString("s").build();
+
+    private static List<List<Writable>> data(int n) {
+        Random r = new Random(12345);
+        String[] states = {"a", "b", "c"};
+        List<List<Writable>> ret = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            ret.add(Arrays.<Writable>asList(new IntWritable(r.nextInt(100)), new LongWritable(r.nextLong() % 1000),
+                    new DoubleWritable(r.nextDouble()), new Text(states[r.nextInt(3)]), new Text("str" + r.nextInt(5))));
+        }
+        return ret;
+    }
+
+    private static TransformProcess transformProcess() {
+        Map<String, String> mapping = new HashMap<>();
+        mapping.put("str1", "one");
+        mapping.put("str2", "two");
+        return new TransformProcess.Builder(SCHEMA)
+                .integerMathOp("i", MathOp.Multiply, 3)
+                .longMathOp("l", MathOp.Add, 7)
+                .filter(new DoubleColumnCondition("d", ConditionOp.LessThan, 0.2))
+                .doubleMathFunction("d", MathFunction.SQRT)
+                .transform(new MinMaxNormalizer("d", 0, 1, -1, 1))
+                .stringMapTransform("s", mapping)
+                .appendStringColumnTransform("s", "_x")
+                //No columnar implementation: executed record by record
+                .conditionalReplaceValueTransform("i", new IntWritable(0), new IntegerColumnCondition("i", ConditionOp.GreaterThan, 150))
+                .duplicateColumn("cat", "cat2")
+                .filter(new CategoricalColumnCondition("cat2", ConditionOp.Equal, "c"))
+                .categoricalToOneHot("cat")
+                .categoricalToInteger("cat2")
+                .renameColumn("l", "long")
+                .removeColumns("cat[b]")
+                .reorderColumns("s", "d")
+                .build();
+    }
+
+    @Test
+    @DisplayName("Test Matches Local Executor")
+    void testMatchesLocalExecutor() {
+        List<List<Writable>> in = data(500);
+        TransformProcess tp = transformProcess();
+        assertTrue(ColumnarTransformExecutor.canExecute(tp));
+
+        List<List<Writable>> expected = new ArrayList<>(LocalTransformExecutor.execute(in, tp));
+        List<List<Writable>> actual = new ColumnarTransformExecutor().execute(in, tp);
+
+        assertTrue(actual instanceof ArrowWritableRecordBatch);
+        assertEquals(tp.getFinalSchema(), ((ArrowWritableRecordBatch) actual).getSchema());
+        assertTrue(expected.size() > 0 && expected.size() < in.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(expected.get(i), actual.get(i), "Record " + i);
+    }
+
+    @Test
+    @DisplayName("Test Arrow Batch Input")
+    void testArrowBatchInput() throws Exception {
+        BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+        List<List<Writable>> records = data(200);
+        //Missing values in the string column: string transforms on it fall back to record by record execution
+        for (int i = 0; i < records.size(); i += 10) {
+            List<Writable> r = new ArrayList<>(records.get(i));
+            r.set(4, NullWritable.INSTANCE);
+            records.set(i, r);
+        }
+        List<FieldVector> columns = ArrowConverter.toArrowColumns(allocator, SCHEMA, records);
+        ArrowWritableRecordBatch input = new ArrowWritableRecordBatch(columns, SCHEMA, 50, 100);
+        List<List<Writable>> inputRecords = input.toArrayList();
+
+        TransformProcess tp = transformProcess();
+        List<List<Writable>> expected = new ArrayList<>(LocalTransformExecutor.execute(inputRecords, tp));
+        ArrowWritableRecordBatch actual = new ColumnarTransformExecutor(allocator).execute(input, tp);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(expected.get(i), actual.get(i), "Record " + i);
+
+        //Input is unchanged, and independent of the output
+        actual.close();
+        assertEquals(inputRecords, input.toArrayList());
+        input.close();
+    }
+
+    @Test
+    @DisplayName("Test Supported Steps")
+    void testSupportedSteps() {
+        TransformProcess tp = transformProcess();
+        int columnar = 0;
+        for (int i = 0; i < tp.getActionList().size(); i++) {
+            if (tp.getActionList().get(i).getTransform() != null) {
+                if (ColumnarTransforms.forTransform(tp.getActionList().get(i).getTransform()) != null)
+                    columnar++;
+            } else if (ColumnarTransforms.forFilter(tp.getActionList().get(i).getFilter()) != null) {
+                columnar++;
+            }
+        }
+        //Everything except the conditional replace
+        assertEquals(tp.getActionList().size() - 1, columnar);
+        assertNotNull(ColumnarTransforms.forFilter(new ConditionFilter(new DoubleColumnCondition("d", ConditionOp.LessThan, 0.0))));
+
+        //Reductions aren't supported in columnar mode: executed by LocalTransformExecutor
+        TransformProcess reduce = new TransformProcess.Builder(SCHEMA)
+                .removeColumns("cat", "s")
+                .reduce(new Reducer.Builder(ReduceOp.Sum).keyColumns("i").build())
+                .build();
+        assertFalse(ColumnarTransformExecutor.canExecute(reduce));
+        List<List<Writable>> in = data(100);
+        assertEquals(LocalTransformExecutor.execute(in, reduce).size(), new ColumnarTransformExecutor().execute(in, reduce).size());
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.transform;
+
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.reader.impl.collection.CollectionRecordReader;
+import org.datavec.api.records.writer.RecordWriter;
+import org.datavec.api.records.writer.SequenceRecordWriter;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.split.partition.PartitionMetaData;
+import org.datavec.api.split.partition.Partitioner;
+import org.datavec.api.transform.MathOp;
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.condition.ConditionOp;
+import org.datavec.api.transform.condition.column.DoubleColumnCondition;
+import org.datavec.api.transform.join.Join;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.sequence.comparator.NumericalColumnComparator;
+import org.datavec.api.writable.*;
+import org.datavec.api.writable.comparator.DoubleWritableComparator;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.datavec.local.transforms.StreamingTransformExecutor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Streaming Execution Test")
+@Tag(TagNames.FILE_IO)
+@NativeTag
+class StreamingExecutionTest {
+
+    private static final Schema SCHEMA = new Schema.Builder().addColumnInteger("key").addColumnInteger("time")
+            .addColumnDouble("value").build();
+
+    private static List<List<Writable>> data(int n) {
+        Random r = new Random(12345);
+        List<List<Writable>> ret = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            ret.add(Arrays.<Writable>asList(new IntWritable(r.nextInt(20)), new IntWritable(i), new DoubleWritable(r.nextDouble())));
+        return ret;
+    }
+
+    @Test
+    @DisplayName("Test Reduction By Key")
+    void testReductionByKey(@TempDir Path tempDir) throws Exception {
+        List<List<Writable>> in = data(1000);
+        TransformProcess tp = new TransformProcess.Builder(SCHEMA)
+                .filter(new DoubleColumnCondition("value", ConditionOp.LessThan, 0.1))
+                .doubleMathOp("value", MathOp.Multiply, 2.0)
+                .reduce(new Reducer.Builder(ReduceOp.Sum).keyColumns("key").countColumns("time").build())
+                .build();
+
+        List<List<Writable>> expected = new ArrayList<>(LocalTransformExecutor.execute(in, tp));
+        Collections.sort(expected, Comparator.comparing(o -> o.get(0).toString()));
+
+        //Small in-memory limit, so reduction has to spill and merge sorted runs
+        StreamingTransformExecutor executor = new StreamingTransformExecutor(tempDir.toFile(), 16);
+        CollectingWriter writer = new CollectingWriter();
+        long count = executor.execute(new CollectionRecordReader(in), tp, writer);
+
+        assertEquals(expected.size(), count);
+        assertEquals(expected.size(), writer.records.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).get(0).toInt(), writer.records.get(i).get(0).toInt());
+            assertEquals(expected.get(i).get(1).toLong(), writer.records.get(i).get(1).toLong());
+            assertEquals(expected.get(i).get(2).toDouble(), writer.records.get(i).get(2).toDouble(), 1e-9);
+        }
+        assertEquals(0, tempDir.toFile().list().length);
+    }
+
+    @Test
+    @DisplayName("Test Sorted Rank And Sequences")
+    void testSortedRankAndSequences(@TempDir Path tempDir) throws Exception {
+        List<List<Writable>> in = data(500);
+        StreamingTransformExecutor executor = new StreamingTransformExecutor(tempDir.toFile(), 7);
+
+        TransformProcess rankTp = new TransformProcess.Builder(SCHEMA)
+                .calculateSortedRank("rank", "value", new DoubleWritableComparator())
+                .build();
+        CollectingWriter writer = new CollectingWriter();
+        executor.execute(new CollectionRecordReader(in), rankTp, writer);
+        assertEquals(in.size(), writer.records.size());
+        for (int i = 0; i < writer.records.size(); i++) {
+            assertEquals(i, writer.records.get(i).get(3).toLong());
+            if (i > 0)
+                assertTrue(writer.records.get(i - 1).get(2).toDouble() <= writer.records.get(i).get(2).toDouble());
+        }
+
+        TransformProcess seqTp = new TransformProcess.Builder(SCHEMA)
+                .convertToSequence("key", new NumericalColumnComparator("time"))
+                .build();
+        CollectingSequenceWriter seqWriter = new CollectingSequenceWriter();
+        executor.executeToSequence(new CollectionRecordReader(in), seqTp, seqWriter);
+
+        Set<Integer> keys = new HashSet<>();
+        int total = 0;
+        for (List<List<Writable>> sequence : seqWriter.sequences) {
+            int key = sequence.get(0).get(0).toInt();
+            assertTrue(keys.add(key), "Duplicate sequence for key " + key);
+            for (int i = 0; i < sequence.size(); i++) {
+                assertEquals(key, sequence.get(i).get(0).toInt());
+                if (i > 0)
+                    assertTrue(sequence.get(i - 1).get(1).toInt() < sequence.get(i).get(1).toInt());
+            }
+            total += sequence.size();
+        }
+        assertEquals(in.size(), total);
+        assertEquals(0, tempDir.toFile().list().length);
+    }
+
+    @Test
+    @DisplayName("Test Join")
+    void testJoin(@TempDir Path tempDir) throws Exception {
+        Schema left = new Schema.Builder().addColumnInteger("id").addColumnString("name").build();
+        Schema right = new Schema.Builder().addColumnInteger("customer").addColumnDouble("amount").build();
+
+        List<List<Writable>> leftData = new ArrayList<>();
+        for (int i = 0; i < 30; i++)
+            leftData.add(Arrays.<Writable>asList(new IntWritable(i), new Text("customer" + i)));
+        List<List<Writable>> rightData = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            rightData.add(Arrays.<Writable>asList(new IntWritable((i * 7) % 40), new DoubleWritable(i)));
+
+        StreamingTransformExecutor executor = new StreamingTransformExecutor(new File(tempDir.toFile(), "spill"), 8);
+        for (Join.JoinType jt : Join.JoinType.values()) {
+            Join join = new Join.Builder(jt).setJoinColumnsLeft("id").setJoinColumnsRight("customer")
+                    .setSchemas(left, right).build();
+
+            List<List<Writable>> expected = new ArrayList<>();
+            for (List<Writable> l : leftData) {
+                boolean matched = false;
+                for (List<Writable> r : rightData) {
+                    if (l.get(0).equals(r.get(0))) {
+                        expected.add(join.joinExamples(l, r));
+                        matched = true;
+                    }
+                }
+                if (!matched && (jt == Join.JoinType.LeftOuter || jt == Join.JoinType.FullOuter))
+                    expected.add(join.joinExamples(l, null));
+            }
+            if (jt == Join.JoinType.RightOuter || jt == Join.JoinType.FullOuter) {
+                for (List<Writable> r : rightData) {
+                    if (r.get(0).toInt() >= 30)
+                        expected.add(join.joinExamples(null, r));
+                }
+            }
+
+            CollectingWriter writer = new CollectingWriter();
+            executor.executeJoin(join, new CollectionRecordReader(leftData), new CollectionRecordReader(rightData), writer);
+
+            Comparator<List<Writable>> c = Comparator.comparing(Object::toString);
+            Collections.sort(expected, c);
+            Collections.sort(writer.records, c);
+            assertEquals(expected, writer.records, jt.toString());
+        }
+    }
+
+    private static class CollectingWriter implements RecordWriter {
+        private final List<List<Writable>> records = new ArrayList<>();
+        private Configuration conf;
+
+        @Override
+        public boolean supportsBatch() {
+            return true;
+        }
+
+        @Override
+        public void initialize(InputSplit inputSplit, Partitioner partitioner) {
+        }
+
+        @Override
+        public void initialize(Configuration configuration, InputSplit split, Partitioner partitioner) {
+        }
+
+        @Override
+        public PartitionMetaData write(List<Writable> record) {
+            records.add(record);
+            return null;
+        }
+
+        @Override
+        public PartitionMetaData writeBatch(List<List<Writable>> batch) {
+            records.addAll(batch);
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void setConf(Configuration conf) {
+            this.conf = conf;
+        }
+
+        @Override
+        public Configuration getConf() {
+            return conf;
+        }
+    }
+
+    private static class CollectingSequenceWriter implements SequenceRecordWriter {
+        private final List<List<List<Writable>>> sequences = new ArrayList<>();
+        private Configuration conf;
+
+        @Override
+        public PartitionMetaData write(List<List<Writable>> sequence) {
+            sequences.add(sequence);
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void setConf(Configuration conf) {
+            this.conf = conf;
+        }
+
+        @Override
+        public Configuration getConf() {
+            return conf;
+        }
+    }
+}
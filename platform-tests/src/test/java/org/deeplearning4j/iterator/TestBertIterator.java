@@ -26,6 +26,8 @@ import org.deeplearning4j.BaseDL4JTest;
 import org.deeplearning4j.iterator.bert.BertMaskedLMMasker;
 import org.deeplearning4j.iterator.provider.CollectionLabeledPairSentenceProvider;
 import org.deeplearning4j.iterator.provider.CollectionLabeledSentenceProvider;
+import org.deeplearning4j.text.tokenization.tokenizer.BertWordPieceTokenizer;
+import org.deeplearning4j.text.tokenization.tokenizer.Tokenizer;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.BertWordPieceTokenizerFactory;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -48,6 +50,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -542,6 +545,88 @@ public class TestBertIterator extends BaseDL4JTest {
         return new Triple<>(pairIter.next(), leftIter.next(), rightIter.next());
     }
 
+    @Test
+    public void testTokenIdsAndPrefetch() throws Exception {
+        List<String> sentences = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        String[] parts = {shortSentence, longSentence, sentenceA, sentenceB};
+        for (int i = 0; i < 50; i++) {
+            sentences.add(parts[i % parts.length] + " " + parts[(i * 7) % parts.length]);
+            labels.add(i % 2 == 0 ? "positive" : "negative");
+        }
+
+        BertWordPieceTokenizerFactory t = new BertWordPieceTokenizerFactory(pathToVocab, false, false, c);
+        //Reference output: tokenized with the NavigableMap vocabulary instead of the trie. Token preprocessor disables
+        //tokenization into ids in BertIterator, so the iterator uses this tokenizer too
+        final NavigableMap<String, Integer> vocab = BertWordPieceTokenizerFactory.loadVocab(pathToVocab, c);
+        BertWordPieceTokenizerFactory reference = new BertWordPieceTokenizerFactory(vocab, false, false) {
+            @Override
+            public Tokenizer create(String toTokenize) {
+                return new BertWordPieceTokenizer(toTokenize, vocab, getPreTokenizePreProcessor(), getTokenPreProcessor());
+            }
+        };
+        reference.setTokenPreProcessor(token -> token);
+
+        for (String s : sentences) {
+            List<String> expected = reference.create(s).getTokens();
+            int[] ids = new int[expected.size()];
+            assertEquals(expected.size(), t.tokenize(s, ids, 0, ids.length));
+            for (int i = 0; i < ids.length; i++)
+                assertEquals(expected.get(i), t.getTrie().token(ids[i]));
+        }
+
+        //Texts above the retained buffer size use a temporary buffer
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() <= 20000)
+            sb.append(longSentence).append(' ');
+        List<String> expectedLong = reference.create(sb.toString()).getTokens();
+        int[] longIds = new int[expectedLong.size()];
+        assertEquals(expectedLong.size(), t.tokenize(sb.toString(), longIds, 0, longIds.length));
+        assertEquals(expectedLong.get(expectedLong.size() - 1), t.getTrie().token(longIds[longIds.length - 1]));
+
+        BertIterator[] iters = new BertIterator[3];
+        BertWordPieceTokenizerFactory[] factories = {reference, t, t};
+        for (int i = 0; i < iters.length; i++) {
+            iters[i] = BertIterator.builder()
+                    .tokenizer(factories[i])
+                    .lengthHandling(BertIterator.LengthHandling.ANY_LENGTH, -1)
+                    .minibatchSize(8)
+                    .sentenceProvider(new CollectionLabeledSentenceProvider(sentences, labels, null))
+                    .featureArrays(BertIterator.FeatureArrays.INDICES_MASK_SEGMENTID)
+                    .vocabMap(t.getVocab())
+                    .task(BertIterator.Task.SEQ_CLASSIFICATION)
+                    .prependToken("[CLS]")
+                    .appendToken("[SEP]")
+                    .prefetch(i == 2 ? 3 : 0)
+                    .build();
+        }
+
+        for (int epoch = 0; epoch < 2; epoch++) {
+            int count = 0;
+            while (iters[0].hasNext()) {
+                MultiDataSet expected = iters[0].next();
+                for (int i = 1; i < iters.length; i++) {
+                    assertTrue(iters[i].hasNext());
+                    MultiDataSet actual = iters[i].next();
+                    assertEquals(expected.getFeatures(0), actual.getFeatures(0));
+                    assertEquals(expected.getFeatures(1), actual.getFeatures(1));
+                    assertEquals(expected.getFeaturesMaskArray(0), actual.getFeaturesMaskArray(0));
+                    assertEquals(expected.getLabels(0), actual.getLabels(0));
+                }
+                count++;
+            }
+            assertEquals(7, count);
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("BertIterator-tokenization-"))
+                    assertTrue(thread.isDaemon(), thread.getName());
+            }
+            for (BertIterator iter : iters) {
+                assertFalse(iter.hasNext());
+                iter.reset();
+            }
+        }
+    }
+
     @Getter
     private static class TestSentencePairsHelper {
 
@@ -0,0 +1,126 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.learning.impl.elements;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.Word2Vec;
+import org.deeplearning4j.text.sentenceiterator.CollectionSentenceIterator;
+import org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.FILE_IO)
+@NativeTag
+public class HogwildKernelTest extends BaseDL4JTest {
+
+    @Override
+    public long getTimeoutMilliseconds() {
+        return 120000L;
+    }
+
+    /**
+     * Two disjoint groups of words, every sentence is built from a single group
+     */
+    private static List<String> corpus() {
+        Random r = new Random(12345);
+        List<String> sentences = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String prefix = r.nextBoolean() ? "alpha" : "beta";
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 10; j++)
+                sb.append(prefix).append(r.nextInt(10)).append(' ');
+            sentences.add(sb.toString().trim());
+        }
+        return sentences;
+    }
+
+    private static void checkClusters(Word2Vec vec) {
+        double in = 0, cross = 0;
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                if (i != j)
+                    in += vec.similarity("alpha" + i, "alpha" + j) / 90;
+                cross += vec.similarity("alpha" + i, "beta" + j) / 100;
+            }
+        }
+        assertTrue(in > cross + 0.3, "In-group similarity " + in + " vs cross-group similarity " + cross);
+    }
+
+    private static Word2Vec.Builder builder() {
+        return new Word2Vec.Builder()
+                .minWordFrequency(1)
+                .layerSize(32)
+                .windowSize(3)
+                .epochs(2)
+                .seed(42)
+                .workers(2)
+                .vectorCalcThreads(4)
+                .useHogwild(true)
+                .iterate(new CollectionSentenceIterator(corpus()))
+                .tokenizerFactory(new DefaultTokenizerFactory());
+    }
+
+    @Test
+    public void testSkipGramNegativeSampling() {
+        Word2Vec vec = builder()
+                .useHierarchicSoftmax(false)
+                .negativeSample(5)
+                .elementsLearningAlgorithm(new SkipGram<VocabWord>())
+                .build();
+        vec.fit();
+
+        assertTrue(vec.getConfiguration().isHogwild());
+        checkClusters(vec);
+    }
+
+    @Test
+    public void testCBOWHierarchicSoftmax() {
+        Word2Vec vec = builder()
+                .useHierarchicSoftmax(true)
+                .negativeSample(0)
+                .elementsLearningAlgorithm(new CBOW<VocabWord>())
+                .build();
+        vec.fit();
+
+        checkClusters(vec);
+    }
+
+    @Test
+    public void testConfigurationSerialization() {
+        VectorsConfiguration configuration = new VectorsConfiguration();
+        assertFalse(configuration.isHogwild());
+
+        configuration.setHogwild(true);
+        VectorsConfiguration restored = VectorsConfiguration.fromJson(configuration.toJson());
+        assertTrue(restored.isHogwild());
+        assertEquals(configuration, restored);
+    }
+}
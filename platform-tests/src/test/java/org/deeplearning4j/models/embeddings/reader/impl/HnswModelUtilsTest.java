@@ -0,0 +1,116 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.reader.impl;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.FILE_IO)
+@NativeTag
+public class HnswModelUtilsTest extends BaseDL4JTest {
+
+    @TempDir
+    Path testDir;
+
+    private InMemoryLookupTable<VocabWord> lookupTable(int numWords, int layerSize) {
+        AbstractCache<VocabWord> cache = new AbstractCache.Builder<VocabWord>().build();
+        for (int i = 0; i < numWords; i++) {
+            VocabWord w = new VocabWord(1.0, "word" + i);
+            cache.addToken(w);
+            cache.addWordToIndex(i, w.getLabel());
+        }
+
+        Nd4j.getRandom().setSeed(12345);
+        InMemoryLookupTable<VocabWord> table = new InMemoryLookupTable.Builder<VocabWord>()
+                .cache(cache).vectorLength(layerSize).useAdaGrad(false).build();
+        table.setSyn0(Nd4j.randn(DataType.FLOAT, numWords, layerSize));
+        return table;
+    }
+
+    @Test
+    public void testWordsNearestMatchesExact() {
+        InMemoryLookupTable<VocabWord> table = lookupTable(2000, 16);
+
+        BasicModelUtils<VocabWord> exact = new BasicModelUtils<>();
+        exact.init(table);
+        HnswModelUtils<VocabWord> approx = new HnswModelUtils<>();
+        approx.init(table);
+
+        int top = 10;
+        int found = 0;
+        int numQueries = 50;
+        for (int i = 0; i < numQueries; i++) {
+            String word = "word" + (i * 37);
+            Set<String> expected = new HashSet<>(exact.wordsNearest(word, top));
+            List<String> actual = new ArrayList<>(approx.wordsNearest(word, top));
+            assertEquals(top, actual.size());
+            assertFalse(actual.contains(word));
+            for (String s : actual) {
+                if (expected.contains(s))
+                    found++;
+            }
+        }
+
+        double recall = found / (double) (numQueries * top);
+        assertTrue(recall >= 0.9, "Recall too low: " + recall);
+    }
+
+    @Test
+    public void testIndexPersistence() throws Exception {
+        InMemoryLookupTable<VocabWord> table = lookupTable(500, 8);
+        File indexFile = new File(testDir.toFile(), "vectors.hnsw");
+
+        HnswModelUtils<VocabWord> utils = new HnswModelUtils<>(8, 100, 50);
+        utils.setIndexFile(indexFile);
+        utils.init(table);
+        INDArray query = table.vector("word3");
+        List<String> before = new ArrayList<>(utils.wordsNearest(query, 5));
+        assertTrue(indexFile.exists());
+
+        HnswModelUtils<VocabWord> restored = new HnswModelUtils<>(8, 100, 50);
+        restored.setIndexFile(indexFile);
+        restored.init(table);
+        HnswIndex index = restored.buildIndex();
+        assertEquals(500, index.getSize());
+        assertEquals(8, index.getDimension());
+        assertEquals(before, new ArrayList<>(restored.wordsNearest(query, 5)));
+        assertEquals("word3", before.get(0));
+    }
+}
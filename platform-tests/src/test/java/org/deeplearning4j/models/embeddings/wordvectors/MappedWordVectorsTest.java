@@ -0,0 +1,117 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.embeddings.wordvectors;
+
+import org.apache.commons.io.FileUtils;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.FILE_IO)
+@NativeTag
+public class MappedWordVectorsTest extends BaseDL4JTest {
+
+    @TempDir
+    Path testDir;
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        int numWords = 3000;
+        int vectorSize = 12;
+        float[][] vectors = new float[numWords][vectorSize];
+        Random r = new Random(12345);
+        File f = new File(testDir.toFile(), "vectors.bin");
+        try (MappedWordVectors.Writer writer = new MappedWordVectors.Writer(f, vectorSize)) {
+            for (int i = 0; i < numWords; i++) {
+                for (int j = 0; j < vectorSize; j++)
+                    vectors[i][j] = (float) r.nextGaussian();
+                assertTrue(writer.add("word" + i, vectors[i]));
+            }
+            assertFalse(writer.add("word7", new float[vectorSize]));
+            assertTrue(writer.add("ünïcödé", vectors[0]));
+        }
+
+        MappedWordVectors wv = WordVectorSerializer.readMappedWordVectors(f);
+        assertEquals(numWords + 1, wv.vocabSize());
+        assertEquals(vectorSize, wv.vectorSize());
+        for (int i = 0; i < numWords; i += 7) {
+            assertEquals(i, wv.indexOf("word" + i));
+            assertEquals("word" + i, wv.wordAtIndex(i));
+            assertArrayEquals(vectors[i], wv.getWordVectorMatrix("word" + i).toFloatVector(), 0.0f);
+        }
+        assertEquals(numWords, wv.indexOf("ünïcödé"));
+        assertEquals(-1, wv.indexOf("missing"));
+        assertFalse(wv.hasWord("missing"));
+        assertNull(wv.getWordVectorMatrix("missing"));
+
+        wv.setUNK("word1");
+        assertArrayEquals(vectors[1], wv.getWordVectorMatrix("missing").toFloatVector(), 0.0f);
+        wv.setUNK(null);
+
+        INDArray matrix = wv.getWordVectors(Arrays.asList("word2", "missing", "word5"));
+        assertArrayEquals(new long[]{2, vectorSize}, matrix.shape());
+        assertArrayEquals(vectors[5], matrix.getRow(1).toFloatVector(), 0.0f);
+
+        INDArray all = Nd4j.create(DataType.FLOAT, numWords + 1, vectorSize);
+        wv.loadWeightsInto(all);
+        assertArrayEquals(vectors[numWords - 1], all.getRow(numWords - 1).toFloatVector(), 0.0f);
+
+        //Nearest neighbour of a slightly perturbed vector should be the word itself
+        float[] query = vectors[42].clone();
+        query[0] += 0.01f;
+        Collection<String> nearest = wv.wordsNearest(Nd4j.createFromArray(query), 3);
+        assertEquals(3, nearest.size());
+        assertEquals("word42", nearest.iterator().next());
+        assertFalse(wv.wordsNearest("word42", 5).contains("word42"));
+        assertEquals(1.0, wv.similarity("word3", "word3"), 1e-6);
+    }
+
+    @Test
+    public void testConvertText() throws Exception {
+        File txt = new File(testDir.toFile(), "vectors.txt");
+        FileUtils.writeStringToFile(txt, "3 4\nthe 0.1 0.2 0.3 0.4\nof 1 0 0 0\nand -1 0.5 0 2\n", StandardCharsets.UTF_8);
+        File mapped = new File(testDir.toFile(), "vectors.mapped");
+        WordVectorSerializer.convertTxtToMappedWordVectors(txt, mapped);
+
+        MappedWordVectors wv = WordVectorSerializer.readMappedWordVectors(mapped);
+        assertEquals(3, wv.vocabSize());
+        assertEquals(4, wv.vectorSize());
+        assertEquals(1, wv.indexOf("of"));
+        assertArrayEquals(new float[]{-1f, 0.5f, 0f, 2f}, wv.getWordVectorMatrix("and").toFloatVector(), 0.0f);
+        assertEquals(-1.0 / Math.sqrt(5.25), wv.similarity("of", "and"), 1e-5);
+    }
+}
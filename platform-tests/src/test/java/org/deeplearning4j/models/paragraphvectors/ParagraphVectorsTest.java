@@ -29,6 +29,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
 import org.deeplearning4j.BaseDL4JTest;
 import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.embeddings.learning.impl.elements.HogwildKernel;
 import org.deeplearning4j.models.embeddings.learning.impl.elements.SkipGram;
 import org.deeplearning4j.models.embeddings.learning.impl.sequence.DBOW;
 import org.deeplearning4j.models.embeddings.learning.impl.sequence.DM;
@@ -1156,6 +1157,57 @@ public class ParagraphVectorsTest extends BaseDL4JTest {
         assertEquals(num1, num2);
     }
 
+    @Test
+    public void testBatchedInference() {
+        Random r = new Random(12345);
+        List<String> corpus = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String prefix = i % 2 == 0 ? "alpha" : "beta";
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 10; j++)
+                sb.append(prefix).append(r.nextInt(10)).append(' ');
+            corpus.add(sb.toString().trim());
+        }
+
+        ParagraphVectors vec = new ParagraphVectors.Builder()
+                .minWordFrequency(1)
+                .layerSize(32)
+                .windowSize(3)
+                .epochs(2)
+                .seed(42)
+                .useHierarchicSoftmax(false)
+                .negativeSample(5)
+                .sequenceLearningAlgorithm(new DBOW<VocabWord>())
+                .trainWordVectors(true)
+                .iterate(new CollectionSentenceIterator(corpus))
+                .tokenizerFactory(new DefaultTokenizerFactory())
+                .build();
+        vec.fit();
+
+        List<String> documents = corpus.subList(0, 40);
+        INDArray vectors = vec.inferVectors(documents);
+        assertArrayEquals(new long[] {40, 32}, vectors.shape());
+
+        // results don't depend on scheduling or batch composition
+        assertEquals(vectors, vec.inferVectors(documents));
+        assertEquals(vectors.getRow(7), vec.inferVectors(documents.subList(7, 8)).getRow(0));
+
+        double in = 0, cross = 0;
+        for (int i = 0; i < 40; i += 2) {
+            in += Transforms.cosineSim(vectors.getRow(i), vectors.getRow((i + 2) % 40));
+            cross += Transforms.cosineSim(vectors.getRow(i), vectors.getRow(i + 1));
+        }
+        assertTrue(in > cross, "In-group similarity " + in + " vs cross-group similarity " + cross);
+
+        // kernel is cached until the model is replaced
+        HogwildKernel kernel = vec.inferenceKernel();
+        assertSame(kernel, vec.inferenceKernel());
+        vec.setLookupTable(vec.getLookupTable());
+        if (kernel != null)
+            assertNotSame(kernel, vec.inferenceKernel());
+        assertEquals(vectors, vec.inferVectors(documents));
+    }
+
     public static SentenceIterator getIterator(boolean isIntegration, File file) throws IOException {
         return getIterator(isIntegration, file, 500);
     }
@@ -0,0 +1,191 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.sequencevectors.graph.walkers.impl;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.sequencevectors.graph.enums.NoEdgeHandling;
+import org.deeplearning4j.models.sequencevectors.graph.exception.NoEdgesException;
+import org.deeplearning4j.models.sequencevectors.graph.primitives.CSRGraph;
+import org.deeplearning4j.models.sequencevectors.graph.primitives.Graph;
+import org.deeplearning4j.models.sequencevectors.graph.vertex.AbstractVertexFactory;
+import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
+import org.deeplearning4j.models.sequencevectors.transformers.impl.GraphTransformer;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.FILE_IO)
+@NativeTag
+public class CSRWalkerTest extends BaseDL4JTest {
+
+    private static List<VocabWord> elements(int n) {
+        List<VocabWord> list = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            list.add(new VocabWord(1.0, String.valueOf(i)));
+        return list;
+    }
+
+    @Test
+    public void testFromGraph() {
+        Graph<VocabWord, Double> graph = new Graph<>(10, false, new AbstractVertexFactory<VocabWord>());
+        for (int i = 0; i < 10; i++) {
+            graph.getVertex(i).setValue(new VocabWord(i, String.valueOf(i)));
+            graph.addEdge(i, (i + 3) % 10, 1.0, false);
+        }
+        graph.addEdge(0, 5, 2.0, true);
+
+        CSRGraph<VocabWord> csr = CSRGraph.fromGraph(graph, true);
+        assertEquals(graph.numVertices(), csr.numVertices());
+        for (int i = 0; i < 10; i++) {
+            int[] expected = graph.getConnectedVertexIndices(i);
+            Arrays.sort(expected);
+            assertArrayEquals(expected, csr.getConnectedVertexIndices(i));
+            assertEquals(graph.getVertex(i).getValue(), csr.getVertex(i).getValue());
+        }
+        assertTrue(csr.hasEdge(0, 5));
+        assertFalse(csr.hasEdge(5, 0));
+    }
+
+    @Test
+    public void testAliasSampling() {
+        CSRGraph<VocabWord> graph = new CSRGraph.Builder<>(elements(5))
+                .weighted(true)
+                .addEdge(0, 1, 1.0, true)
+                .addEdge(0, 2, 3.0, true)
+                .addEdge(0, 3, 6.0, true)
+                .addEdge(0, 4, 0.0, true)
+                .build();
+
+        int[] counts = new int[5];
+        Random rng = new Random(12345);
+        int n = 100000;
+        for (int i = 0; i < n; i++)
+            counts[graph.sampleNeighbour(0, rng)]++;
+
+        assertEquals(0, counts[4]);
+        assertEquals(0.1, counts[1] / (double) n, 0.01);
+        assertEquals(0.3, counts[2] / (double) n, 0.01);
+        assertEquals(0.6, counts[3] / (double) n, 0.01);
+        assertEquals(-1, graph.sampleNeighbour(1, rng));
+    }
+
+    @Test
+    public void testWalks() {
+        int n = 1000;
+        CSRGraph.Builder<VocabWord> builder = new CSRGraph.Builder<>(elements(n));
+        Random rng = new Random(42);
+        for (int i = 0; i < n; i++) {
+            builder.addEdge(i, (i + 1) % n, false);
+            builder.addEdge(i, rng.nextInt(n), false);
+        }
+        CSRGraph<VocabWord> graph = builder.build();
+
+        for (double q : new double[] {1.0, 0.5, 2.0}) {
+            CSRWalker<VocabWord> walker = new CSRWalker.Builder<>(graph)
+                    .setWalkLength(20)
+                    .setWalksPerVertex(3)
+                    .setWorkers(4)
+                    .setBufferSize(16)
+                    .setInOutParameter(q)
+                    .setSeed(119)
+                    .build();
+
+            for (int epoch = 0; epoch < 2; epoch++) {
+                walker.reset(true);
+                Set<String> starts = new HashSet<>();
+                int cnt = 0;
+                while (walker.hasNext()) {
+                    List<VocabWord> walk = walker.next().getElements();
+                    assertEquals(20, walk.size());
+                    for (int i = 1; i < walk.size(); i++) {
+                        int from = Integer.parseInt(walk.get(i - 1).getLabel());
+                        int to = Integer.parseInt(walk.get(i).getLabel());
+                        assertTrue(graph.hasEdge(from, to), "No edge " + from + " -> " + to);
+                    }
+                    starts.add(walk.get(0).getLabel());
+                    cnt++;
+                }
+                assertEquals(3 * n, cnt);
+                assertEquals(n, starts.size());
+            }
+        }
+    }
+
+    @Test
+    public void testNoEdgeHandling() {
+        CSRGraph<VocabWord> graph = new CSRGraph.Builder<>(elements(3))
+                .addEdge(0, 1, true)
+                .build();
+
+        CSRWalker<VocabWord> walker = new CSRWalker.Builder<>(graph)
+                .setWalkLength(5)
+                .setNoEdgeHandling(NoEdgeHandling.CUTOFF_ON_DISCONNECTED)
+                .build();
+        int total = 0;
+        while (walker.hasNext())
+            total += walker.next().size();
+        // 0 -> 1, 1, 2
+        assertEquals(4, total);
+
+        final CSRWalker<VocabWord> failing = new CSRWalker.Builder<>(graph)
+                .setWalkLength(5)
+                .setNoEdgeHandling(NoEdgeHandling.EXCEPTION_ON_DISCONNECTED)
+                .build();
+        assertThrows(NoEdgesException.class, () -> {
+            while (failing.hasNext())
+                failing.next();
+        });
+    }
+
+    @Test
+    public void testGraphTransformer() {
+        int n = 100;
+        CSRGraph.Builder<VocabWord> builder = new CSRGraph.Builder<>(elements(n));
+        for (int i = 0; i < n; i++)
+            builder.addEdge(i, (i + 1) % n, i + 1.0, false);
+        CSRGraph<VocabWord> graph = builder.weighted(true).build();
+
+        CSRWalker<VocabWord> walker = new CSRWalker.Builder<>(graph).setWalkLength(10).setWorkers(2).build();
+        GraphTransformer<VocabWord> transformer = new GraphTransformer.Builder<>(graph).setGraphWalker(walker).build();
+
+        for (int epoch = 0; epoch < 2; epoch++) {
+            Iterator<Sequence<VocabWord>> iterator = transformer.iterator();
+            int cnt = 0;
+            while (iterator.hasNext()) {
+                assertEquals(10, iterator.next().size());
+                cnt++;
+            }
+            assertEquals(n, cnt);
+        }
+    }
+}
@@ -23,6 +23,7 @@ package org.deeplearning4j.models.word2vec;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.loader.WordVectorSerializer;
 import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.deeplearning4j.models.paragraphvectors.ParagraphVectorsTest;
@@ -34,6 +35,7 @@ import org.deeplearning4j.nn.conf.layers.EmbeddingLayer;
 import org.deeplearning4j.nn.conf.layers.OutputLayer;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.text.documentiterator.*;
+import org.deeplearning4j.text.sentenceiterator.CollectionSentenceIterator;
 import org.deeplearning4j.text.sentenceiterator.SentenceIterator;
 import org.deeplearning4j.text.tokenization.tokenizer.preprocessor.CommonPreprocessor;
 import org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory;
@@ -313,4 +315,47 @@ public class Word2VecTestsSmall extends BaseDL4JTest {
         assertEquals(net.getLayerWiseConfigurations(), restored.getLayerWiseConfigurations());
         assertTrue(net.params().equalsWithEps(restored.params(), 2e-3));
     }
+
+    @Test
+    public void testIncrementalFit() {
+        List<String> initial = new ArrayList<>();
+        List<String> update = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            initial.add("day night day night sun moon sun moon");
+            update.add("day night star planet star planet sun moon");
+        }
+
+        Word2Vec vec = new Word2Vec.Builder()
+                .minWordFrequency(1)
+                .layerSize(16)
+                .windowSize(2)
+                .epochs(1)
+                .seed(42)
+                .useHierarchicSoftmax(true)
+                .negativeSample(5)
+                .iterate(new CollectionSentenceIterator(initial))
+                .tokenizerFactory(new DefaultTokenizerFactory())
+                .build();
+        vec.fit();
+
+        assertEquals(4, vec.getVocab().numWords());
+        int dayIndex = vec.getVocab().indexOf("day");
+        long dayFrequency = (long) vec.getVocab().wordFrequency("day");
+        INDArray sun = vec.getWordVectorMatrix("sun").dup();
+
+        vec.fitIncrementally(new CollectionSentenceIterator(update));
+
+        assertEquals(6, vec.getVocab().numWords());
+        assertEquals(dayIndex, vec.getVocab().indexOf("day"));
+        assertEquals(dayFrequency + 200, (long) vec.getVocab().wordFrequency("day"));
+        assertEquals(200, (long) vec.getVocab().wordFrequency("star"));
+        assertTrue(vec.getVocab().indexOf("star") >= 4);
+        assertTrue(vec.getVocab().indexOf("planet") >= 4);
+
+        InMemoryLookupTable<VocabWord> table = (InMemoryLookupTable<VocabWord>) vec.getLookupTable();
+        assertEquals(6, table.getSyn0().rows());
+        assertEquals(6, table.getSyn1().rows());
+        assertEquals(6, table.getSyn1Neg().rows());
+        assertNotEquals(sun, vec.getWordVectorMatrix("sun"));
+    }
 }
@@ -162,6 +162,32 @@ public class VocabConstructorTest extends BaseDL4JTest {
         assertEquals(634303, cache.totalWordOccurrences());
     }
 
+    @Test
+    public void testBuildJointVocabularySharded(@TempDir Path testDir) throws Exception {
+        File inputFile = Resources.asFile("big/raw_sentences.txt");
+
+        VocabCache<VocabWord> cache = new AbstractCache.Builder<VocabWord>().build();
+        SentenceTransformer transformer = new SentenceTransformer.Builder()
+                .vocabCache(cache)
+                .iterator(new BasicLineIterator(inputFile)).tokenizerFactory(t).build();
+        AbstractSequenceIterator<VocabWord> sequenceIterator =
+                new AbstractSequenceIterator.Builder<>(transformer).build();
+
+        // tiny shards, so partial counts are spilled to disk and merged back
+        VocabConstructor<VocabWord> constructor = new VocabConstructor.Builder<VocabWord>()
+                .addSource(sequenceIterator, 5).setTargetVocabCache(cache)
+                .useShardedCounting(true).setNumShards(4).setMaxShardEntries(50)
+                .setSpillDirectory(testDir.toFile()).build();
+
+        constructor.buildJointVocabulary(false, true);
+
+        assertEquals(242, cache.numWords());
+        assertEquals("i", cache.wordAtIndex(1));
+        assertEquals("it", cache.wordAtIndex(0));
+        assertEquals(634303, cache.totalWordOccurrences());
+        assertEquals(0, testDir.toFile().list().length);
+    }
+
     @Test
     public void testCounter1() throws Exception {
         VocabCache<VocabWord> vocabCache = new AbstractCache.Builder<VocabWord>().build();
@@ -0,0 +1,141 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.word2vec.wordstore.inmemory;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.word2vec.Huffman;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimitiveVocabCacheTest extends BaseDL4JTest {
+
+    @Test
+    public void testAddAndLookup() {
+        PrimitiveVocabCache cache = new PrimitiveVocabCache(16);
+
+        cache.addToken(new VocabWord(1.0, "word"));
+        cache.addToken(new VocabWord(2.0, "test"));
+        cache.addToken(new VocabWord(3.0, "tester"));
+        assertFalse(cache.addToken(new VocabWord(2.0, "word")));
+
+        assertEquals(3, cache.numWords());
+        assertEquals(3, cache.wordFrequency("word"));
+        assertEquals(0, cache.wordFrequency("missing"));
+        assertTrue(cache.containsWord("tester"));
+        assertFalse(cache.containsWord("missing"));
+        assertEquals(-2, cache.indexOf("missing"));
+
+        Collection<String> words = cache.words();
+        assertEquals(3, words.size());
+        assertTrue(words.contains("word"));
+        assertTrue(words.contains("test"));
+        assertTrue(words.contains("tester"));
+    }
+
+    @Test
+    public void testHuffmanMatchesAbstractCache() {
+        PrimitiveVocabCache primitive = new PrimitiveVocabCache(16);
+        AbstractCache<VocabWord> reference = new AbstractCache.Builder<VocabWord>().build();
+        Random r = new Random(12345);
+        for (int i = 0; i < 500; i++) {
+            double freq = 1 + r.nextInt(1000);
+            primitive.addToken(new VocabWord(freq, "word" + i));
+            reference.addToken(new VocabWord(freq, "word" + i));
+        }
+
+        //Same input order for both trees, so that ties are broken the same way
+        List<VocabWord> referenceWords = new ArrayList<>();
+        for (VocabWord w : primitive.vocabWords())
+            referenceWords.add(reference.wordFor(w.getLabel()));
+
+        Huffman huffman = new Huffman(primitive.vocabWords());
+        huffman.build();
+        huffman.applyIndexes(primitive);
+        Huffman referenceHuffman = new Huffman(referenceWords);
+        referenceHuffman.build();
+        referenceHuffman.applyIndexes(reference);
+
+        for (VocabWord expected : reference.vocabWords()) {
+            VocabWord actual = primitive.wordFor(expected.getLabel());
+            assertEquals(expected.getIndex(), actual.getIndex());
+            assertEquals(expected.getCodeLength(), actual.getCodeLength());
+            assertEquals(expected.getCodes(), actual.getCodes());
+            assertEquals(expected.getPoints(), actual.getPoints());
+            assertEquals(expected.getLabel(), primitive.wordAtIndex(actual.getIndex()));
+            assertEquals(actual, primitive.elementAtIndex(actual.getIndex()));
+        }
+    }
+
+    @Test
+    public void testRemoval() {
+        PrimitiveVocabCache cache = new PrimitiveVocabCache(16);
+        for (int i = 0; i < 100; i++)
+            cache.addToken(new VocabWord(i + 1, "word" + i));
+        assertEquals(5050, cache.totalWordOccurrences());
+
+        for (int i = 0; i < 100; i += 2)
+            cache.removeElement("word" + i);
+        assertEquals(50, cache.numWords());
+        assertEquals(2550, cache.totalWordOccurrences());
+        assertFalse(cache.containsWord("word10"));
+        assertNull(cache.wordFor("word10"));
+        assertTrue(cache.containsWord("word11"));
+        assertEquals(12, cache.wordFrequency("word11"));
+
+        int count = 0;
+        for (VocabWord w : cache.vocabWords()) {
+            assertTrue(w.getLabel().endsWith("1") || w.getLabel().endsWith("3") || w.getLabel().endsWith("5")
+                    || w.getLabel().endsWith("7") || w.getLabel().endsWith("9"));
+            count++;
+        }
+        assertEquals(50, count);
+
+        assertThrows(IllegalStateException.class, () -> cache.removeElement("word10"));
+        cache.addToken(new VocabWord(1.0, "word10"));
+        assertEquals(1, cache.wordFrequency("word10"));
+    }
+
+    @Test
+    public void testElementViews() {
+        PrimitiveVocabCache cache = new PrimitiveVocabCache();
+        cache.addToken(new VocabWord(1.0, "word"));
+
+        VocabWord view = cache.wordFor("word");
+        view.increaseElementFrequency(4);
+        view.incrementSequencesCount(2);
+        view.setSpecial(true);
+        assertEquals(5, cache.wordFrequency("word"));
+        assertEquals(2, cache.docAppearedIn("word"));
+        assertTrue(cache.tokenFor("word").isSpecial());
+
+        VocabWord detached = ((PrimitiveVocabCache.Element) view).detach();
+        assertEquals(VocabWord.class, detached.getClass());
+        assertEquals("word", detached.getLabel());
+        assertEquals(5.0, detached.getElementFrequency(), 0.0);
+    }
+}
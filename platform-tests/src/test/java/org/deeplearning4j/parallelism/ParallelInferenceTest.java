@@ -35,6 +35,7 @@ import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.*;
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.BatchingStats;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
@@ -55,8 +56,11 @@ import org.nd4j.linalg.factory.Nd4j;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -181,6 +185,80 @@ public class ParallelInferenceTest extends BaseDL4JTest {
     }
 
 
+    @Test()
+    @Timeout(30000)
+    public void testInferenceAdaptiveBatched1() throws Exception {
+        ParallelInference inf = new ParallelInference.Builder(model).inferenceMode(InferenceMode.ADAPTIVE_BATCHED)
+                .batchLimit(8).maxBatchWait(5, TimeUnit.MILLISECONDS).latencyTarget(50, TimeUnit.MILLISECONDS)
+                .workers(2).build();
+        try {
+            iterator = new MnistDataSetIterator(1, false, 12345);
+
+            INDArray features = iterator.next().getFeatures();
+            INDArray array1 = inf.output(features);
+            assertFalse(array1.isAttached());
+            assertEquals(model.output(features), array1);
+
+            iterator.reset();
+
+            evalClassifcationMultipleThreads(inf, iterator, 10);
+
+            BatchingStats stats = inf.getBatchingStats();
+            assertNotNull(stats);
+            assertTrue(stats.getNumberOfBatches() > 0);
+            assertTrue(stats.getNumberOfRequests() >= stats.getNumberOfBatches());
+            assertEquals(stats.getNumberOfBatches(), Arrays.stream(stats.getBatchSizeHistogram()).sum());
+            assertTrue(stats.getWaitTimePercentile(50) <= stats.getWaitTimePercentile(99));
+            assertTrue(inf.getCurrentBatchLimit() >= 1 && inf.getCurrentBatchLimit() <= 8);
+            assertEquals(0, inf.getQueueDepth());
+        } finally {
+            inf.shutdown();
+        }
+    }
+
+    @Test()
+    @Timeout(30000)
+    public void testAdaptiveBatchedFailures() throws Exception {
+        //No workers: dispatched batches stay in the queue. First dispatch fails
+        LinkedBlockingQueue<InferenceObservable> queue = new LinkedBlockingQueue<InferenceObservable>() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public void put(InferenceObservable o) throws InterruptedException {
+                if (count.getAndIncrement() == 0)
+                    throw new IllegalArgumentException("Dispatch failed");
+                super.put(o);
+            }
+        };
+        ParallelInference.AdaptiveObservablesProvider provider = new ParallelInference.AdaptiveObservablesProvider(
+                TimeUnit.MILLISECONDS.toNanos(1), 0, 4, queue);
+
+        CompletableFuture<INDArray[]> failed = provider.submit(new INDArray[]{Nd4j.create(1, 10)}, null);
+        ExecutionException e = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+
+        //Dispatcher keeps running after a failed batch
+        CompletableFuture<INDArray[]> dispatched = provider.submit(new INDArray[]{Nd4j.create(1, 10)}, null);
+        assertNotNull(queue.poll(10, TimeUnit.SECONDS));
+        assertFalse(dispatched.isDone());
+
+        //Inputs that weren't dispatched are failed on shutdown, and later calls are rejected
+        ParallelInference.AdaptiveObservablesProvider slow = new ParallelInference.AdaptiveObservablesProvider(
+                TimeUnit.HOURS.toNanos(1), 0, 100, queue);
+        CompletableFuture<INDArray[]> pending = slow.submit(new INDArray[]{Nd4j.create(1, 10)}, null);
+        slow.shutdown();
+        e = assertThrows(ExecutionException.class, pending::get);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertThrows(IllegalStateException.class, () -> slow.submit(new INDArray[]{Nd4j.create(1, 10)}, null));
+        provider.shutdown();
+
+        ParallelInference inf = new ParallelInference.Builder(model).inferenceMode(InferenceMode.ADAPTIVE_BATCHED)
+                .workers(1).build();
+        inf.shutdown();
+        assertThrows(IllegalStateException.class, () -> inf.output(Nd4j.create(1, 784)));
+        assertThrows(IllegalStateException.class, () -> inf.outputAsync(Nd4j.create(1, 784)));
+    }
+
     @Test
     public void testProvider1() throws Exception {
         LinkedBlockingQueue queue = new LinkedBlockingQueue();
@@ -638,6 +716,60 @@ public class ParallelInferenceTest extends BaseDL4JTest {
         }
     }
 
+    @Test()
+    @Timeout(20000)
+    public void testParallelInferenceAsync() throws Exception {
+        int nIn = 10;
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .activation(Activation.TANH)
+                .seed(12345)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(nIn).nOut(5).build())
+                .layer(new OutputLayer.Builder().nIn(5).nOut(5).activation(Activation.SOFTMAX).build())
+                .build();
+
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        List<INDArray> in = new ArrayList<>();
+        List<INDArray> exp = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            INDArray arr = Nd4j.rand(1, nIn);
+            in.add(arr);
+            exp.add(net.output(arr));
+        }
+
+        for( InferenceMode m : InferenceMode.values()) {
+            log.info("Starting: m={}", m);
+
+            final ParallelInference inf =
+                    new ParallelInference.Builder(net)
+                            .inferenceMode(m)
+                            .batchLimit(8)
+                            .queueLimit(64)
+                            .workers(2).build();
+
+            try {
+                List<CompletableFuture<INDArray[]>> futures = new ArrayList<>();
+                for (INDArray arr : in)
+                    futures.add(inf.outputAsync(arr));
+
+                for (int i = 0; i < in.size(); i++) {
+                    INDArray[] out = futures.get(i).get();
+                    assertEquals(1, out.length);
+                    assertEquals(exp.get(i), out[0], "Failed at iteration [" + i + "] for mode " + m);
+                }
+
+                CompletableFuture<INDArray[]> wrong = inf.outputAsync(Nd4j.ones(1, 5));
+                ExecutionException e = assertThrows(ExecutionException.class, wrong::get);
+                assertTrue(e.getCause() instanceof DL4JInvalidInputException);
+            } finally {
+                inf.shutdown();
+            }
+        }
+    }
+
     @Test
     public void testInputMaskingCyclic() throws Exception {
         for (int e = 0; e < 3; e++) {
@@ -0,0 +1,71 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.JAVA_ONLY)
+public class MpmcBoundedQueueTest extends BaseDL4JTest {
+
+    @Test
+    public void testIteration() throws Exception {
+        MpmcBoundedQueue<Integer> queue = new MpmcBoundedQueue<>(4);
+        assertFalse(queue.iterator().hasNext());
+
+        //Wrap around the ring a few times
+        for (int i = 0; i < 10; i++) {
+            queue.put(i);
+            if (i >= 2)
+                assertEquals(i - 2, (int) queue.take());
+        }
+
+        assertEquals(Arrays.asList(8, 9), new ArrayList<>(queue));
+        assertTrue(queue.contains(9));
+        assertFalse(queue.contains(7));
+        assertEquals("[8, 9]", queue.toString());
+        assertArrayEquals(new Object[]{8, 9}, queue.toArray());
+
+        //Snapshot isn't affected by later changes
+        List<Integer> snapshot = new ArrayList<>();
+        for (Integer i : queue) {
+            snapshot.add(i);
+            queue.offer(i + 100);
+        }
+        assertEquals(Arrays.asList(8, 9), snapshot);
+        assertEquals(4, queue.size());
+
+        assertThrows(UnsupportedOperationException.class, () -> queue.remove(8));
+        assertThrows(UnsupportedOperationException.class, () -> {
+            java.util.Iterator<Integer> iter = queue.iterator();
+            iter.next();
+            iter.remove();
+        });
+    }
+}
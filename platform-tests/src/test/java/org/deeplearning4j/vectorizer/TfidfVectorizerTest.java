@@ -23,6 +23,8 @@ package org.deeplearning4j.vectorizer;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.bagofwords.vectorizer.CSRBatch;
+import org.deeplearning4j.bagofwords.vectorizer.SparseTextMultiDataSetIterator;
 import org.deeplearning4j.bagofwords.vectorizer.TfidfVectorizer;
 import org.deeplearning4j.models.word2vec.VocabWord;
 import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
@@ -45,8 +47,10 @@ import org.nd4j.common.io.ClassPathResource;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.common.util.SerializationUtils;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 
 import java.io.File;
@@ -185,6 +189,62 @@ public class TfidfVectorizerTest extends BaseDL4JTest {
         assertEquals("cat", labels.get(1));
     }
 
+    @Test()
+    @Timeout(20000L)
+    public void testSparseIterator() throws Exception {
+        String[] contents = {"it barks like a dog", "it meows like a cat", "a dog chases a cat"};
+        String[] labels = {"dog", "cat", "dog"};
+        List<LabelledDocument> docs = new ArrayList<>();
+        for (int i = 0; i < contents.length; i++) {
+            LabelledDocument doc = new LabelledDocument();
+            doc.addLabel(labels[i]);
+            doc.setContent(contents[i]);
+            docs.add(doc);
+        }
+
+        TokenizerFactory tokenizerFactory = new DefaultTokenizerFactory();
+        TfidfVectorizer vectorizer = new TfidfVectorizer.Builder()
+                .setMinWordFrequency(1)
+                .setStopWords(new ArrayList<String>())
+                .setTokenizerFactory(tokenizerFactory)
+                .setIterator(new SimpleLabelAwareIterator(docs))
+                .build();
+        vectorizer.fit();
+
+        List<List<String>> tokens = new ArrayList<>();
+        for (String content : contents)
+            tokens.add(tokenizerFactory.create(content).getTokens());
+        CSRBatch batch = vectorizer.transformSparse(tokens);
+        assertEquals(3, batch.getRows());
+        assertEquals(vectorizer.getVocabCache().numWords(), batch.getColumns());
+        for (int i = 0; i < contents.length; i++)
+            assertEquals(vectorizer.transform(contents[i]), batch.toDense().getRow(i, true));
+
+        SparseTextMultiDataSetIterator iterator = new SparseTextMultiDataSetIterator(vectorizer, 2);
+        assertEquals(vectorizer.getVocabCache().numWords(), iterator.vocabularySize());
+        assertEquals(2, iterator.totalOutcomes());
+
+        MultiDataSet first = iterator.next();
+        assertEquals(2, first.getFeatures(0).size(0));
+        assertEquals(DataType.INT32, first.getFeatures(0).dataType());
+        assertArrayEquals(new long[] {2, 5}, first.getFeatures(0).shape());
+        assertArrayEquals(new long[] {2, 5}, first.getFeatures(1).shape());
+        assertEquals(batch.getIndices()[1], first.getFeatures(0).getInt(0, 1));
+        assertEquals(batch.getValues()[0], first.getFeatures(1).getFloat(0, 0), 1e-6);
+        assertEquals(1.0, first.getFeaturesMaskArray(0).getDouble(0, batch.rowLength(0) - 1), 1e-6);
+        if (batch.rowLength(0) < 5)
+            assertEquals(0.0, first.getFeaturesMaskArray(0).getDouble(0, 4), 1e-6);
+        assertEquals(1.0, first.getLabels(0).getDouble(1, vectorizer.getLabelsSource().indexOf("cat")), 1e-6);
+
+        MultiDataSet second = iterator.next();
+        assertEquals(1, second.getFeatures(0).size(0));
+        assertEquals(1.0, second.getLabels(0).getDouble(0, vectorizer.getLabelsSource().indexOf("dog")), 1e-6);
+        assertFalse(iterator.hasNext());
+
+        iterator.reset();
+        assertTrue(iterator.hasNext());
+    }
+
     @Test()
     @Timeout(10000L)
     public void testParallelFlag1() throws Exception {
@@ -0,0 +1,105 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.eclipse.deeplearning4j.dl4jcore.datasets.datavec;
+
+import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.split.FileSplit;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.datavec.NumericCSVDataSetIterator;
+import org.deeplearning4j.datasets.datavec.RecordReaderDataSetIterator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.resources.Resources;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Numeric CSV Data Set Iterator Test")
+@Tag(TagNames.FILE_IO)
+@NativeTag
+class NumericCSVDataSetIteratorTest extends BaseDL4JTest {
+
+    @Override
+    public DataType getDataType() {
+        return DataType.FLOAT;
+    }
+
+    @Test
+    @DisplayName("Test Classification Matches Record Reader Iterator")
+    void testClassification() throws Exception {
+        File iris = Resources.asFile("iris.txt");
+        for (int numThreads : new int[]{1, 4}) {
+            try (NumericCSVDataSetIterator iter = new NumericCSVDataSetIterator.Builder(iris, 16)
+                    .classification(4, 3).numThreads(numThreads).build()) {
+                assertEquals(4, iter.inputColumns());
+                assertEquals(3, iter.totalOutcomes());
+                //Second epoch after reset: prefetched minibatches are discarded
+                iter.next();
+                iter.reset();
+                for (int epoch = 0; epoch < 2; epoch++) {
+                    RecordReader rr = new CSVRecordReader(0, ',');
+                    rr.initialize(new FileSplit(iris));
+                    DataSetIterator expected = new RecordReaderDataSetIterator(rr, 16, 4, 3);
+                    assertIteratorsEqual(expected, iter);
+                    iter.reset();
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test Regression Matches Record Reader Iterator")
+    void testRegression() throws Exception {
+        File iris = Resources.asFile("iris.txt");
+        for (DataType dataType : new DataType[]{DataType.FLOAT, DataType.DOUBLE}) {
+            try (NumericCSVDataSetIterator iter = new NumericCSVDataSetIterator.Builder(iris, 32)
+                    .regression(1, 2).dataType(dataType).numThreads(3).build()) {
+                RecordReader rr = new CSVRecordReader(0, ',');
+                rr.initialize(new FileSplit(iris));
+                DataSetIterator expected = new RecordReaderDataSetIterator(rr, 32, 1, 2, true);
+                assertIteratorsEqual(expected, iter);
+            }
+        }
+    }
+
+    private static void assertIteratorsEqual(DataSetIterator expected, DataSetIterator actual) {
+        int batches = 0;
+        while (expected.hasNext()) {
+            assertTrue(actual.hasNext());
+            DataSet e = expected.next();
+            DataSet a = actual.next();
+            assertEquals(a.getFeatures().dataType(), a.getLabels().dataType());
+            assertEquals(e.getFeatures().castTo(a.getFeatures().dataType()), a.getFeatures());
+            assertEquals(e.getLabels().castTo(a.getLabels().dataType()), a.getLabels());
+            batches++;
+        }
+        assertFalse(actual.hasNext());
+        assertTrue(batches > 1);
+    }
+}
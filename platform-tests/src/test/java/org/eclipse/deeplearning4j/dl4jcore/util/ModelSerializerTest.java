@@ -48,6 +48,7 @@ import org.nd4j.linalg.dataset.api.preprocessor.Normalizer;
 import org.nd4j.linalg.dataset.api.preprocessor.NormalizerMinMaxScaler;
 import org.nd4j.linalg.dataset.api.preprocessor.NormalizerStandardize;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.learning.config.Sgd;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.nd4j.common.primitives.Pair;
@@ -141,6 +142,36 @@ class ModelSerializerTest extends BaseDL4JTest {
         assertEquals(cg.getUpdater().getStateViewArray(), network.getUpdater().getStateViewArray());
     }
 
+    @Test
+    @DisplayName("Test Restore Deferred Updater State")
+    void testRestoreDeferredUpdaterState() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).updater(new Adam(0.01)).activation(Activation.TANH).weightInit(WeightInit.XAVIER).list().layer(0, new DenseLayer.Builder().nIn(4).nOut(10).build()).layer(1, new OutputLayer.Builder().lossFunction(LossFunctions.LossFunction.MCXENT).activation(Activation.SOFTMAX).nIn(10).nOut(3).build()).build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        net.fit(new IrisDataSetIterator(150, 150));
+        File tempFile = new File(tempDir.toFile(), "deferred-updater.zip");
+        ModelSerializer.writeModel(net, tempFile, true);
+
+        MultiLayerNetwork inference = ModelSerializer.restoreMultiLayerNetwork(tempFile, false);
+        assertEquals(net.params(), inference.params());
+        assertNull(inference.getUpdater(false));
+
+        assertTrue(ModelSerializer.restoreUpdaterState(tempFile, inference));
+        assertEquals(net.getUpdater().getStateViewArray(), inference.getUpdater().getStateViewArray());
+
+        ComputationGraph cg = net.toComputationGraph();
+        ModelSerializer.writeModel(cg, tempFile, true);
+        ComputationGraph restoredCg = ModelSerializer.restoreComputationGraph(tempFile, false);
+        assertEquals(cg.params(), restoredCg.params());
+        assertTrue(ModelSerializer.restoreUpdaterState(tempFile, restoredCg));
+        assertEquals(cg.getUpdater().getStateViewArray(), restoredCg.getUpdater().getStateViewArray());
+
+        ModelSerializer.writeModel(net, tempFile, false);
+        MultiLayerNetwork noUpdater = ModelSerializer.restoreMultiLayerNetwork(tempFile, true);
+        assertEquals(net.params(), noUpdater.params());
+        assertFalse(ModelSerializer.restoreUpdaterState(tempFile, noUpdater));
+    }
+
     private DataSet trivialDataSet() {
         INDArray inputs = Nd4j.create(new float[] { 1.0f, 2.0f, 3.0f }, new int[] { 1, 3 });
         INDArray labels = Nd4j.create(new float[] { 4.0f, 5.0f, 6.0f }, new int[] { 1, 3 });
@@ -29,17 +29,36 @@ import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.VariableType;
 import org.nd4j.autodiff.samediff.optimize.GraphOptimizer;
+import org.nd4j.autodiff.samediff.internal.SameDiffOp;
 import org.nd4j.autodiff.samediff.optimize.optimizations.ConstantFunctionOptimizations;
+import org.nd4j.autodiff.samediff.optimize.optimizations.FusionOptimizations;
 import org.nd4j.autodiff.samediff.optimize.optimizations.IdentityFunctionOptimizations;
+import org.nd4j.autodiff.samediff.optimize.quantization.PostTrainingQuantizer;
+import org.nd4j.autodiff.samediff.optimize.quantization.QuantizationReport;
+import org.nd4j.common.primitives.Pair;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.linalg.BaseNd4jTestWithBackends;
 import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.Conv2D;
+import org.nd4j.linalg.api.ops.impl.layers.convolution.config.Conv2DConfig;
+import org.nd4j.linalg.api.ops.impl.loss.SoftmaxCrossEntropyWithLogitsLoss;
+import org.nd4j.linalg.api.ops.impl.transforms.ReluLayer;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.FakeQuantWithMinMaxArgs;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.LayerNorm;
+import org.nd4j.linalg.api.ops.impl.transforms.custom.XwPlusB;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.ops.transforms.Transforms;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -160,4 +179,166 @@ public class TestOptimization extends BaseNd4jTestWithBackends {
         assertFalse(optimized.hasVariable(i3.name()));
         assertTrue(optimized.hasVariable("out"));
     }
-}
\ No newline at end of file
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testOpFusion(Nd4jBackend nd4jBackend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, -1, 4);
+        SDVariable labels = sd.placeHolder("labels", DataType.DOUBLE, -1, 3);
+
+        //Dense + relu: mmul -> add -> relu
+        SDVariable w1 = sd.var("w1", Nd4j.rand(DataType.DOUBLE, 4, 5));
+        SDVariable b1 = sd.var("b1", Nd4j.rand(DataType.DOUBLE, 5));
+        SDVariable mmul1 = in.mmul(w1);
+        SDVariable h1 = sd.nn.relu(mmul1.add(b1), 0.0);
+
+        //Layer norm: standardize -> mul -> add
+        SDVariable gain = sd.var("gain", Nd4j.rand(DataType.DOUBLE, 5));
+        SDVariable bias = sd.var("bias", Nd4j.rand(DataType.DOUBLE, 5));
+        SDVariable std = sd.math.standardize(h1, 1);
+        SDVariable h2 = std.mul(gain).add(bias);
+
+        //Dense (no activation), then softmax cross entropy: softmax -> log -> mul -> sum -> neg
+        SDVariable w2 = sd.var("w2", Nd4j.rand(DataType.DOUBLE, 5, 3));
+        SDVariable b2 = sd.var("b2", Nd4j.rand(DataType.DOUBLE, 3));
+        SDVariable logits = h2.mmul(w2).add(b2);
+        SDVariable softmax = sd.nn.softmax(logits, 1);
+        SDVariable loss = sd.math.neg("loss", sd.math.log(softmax).mul(labels).sum(1));
+
+        File subDir = tempDir.resolve("op-fusion").toFile();
+        assertTrue(subDir.mkdirs());
+
+        OptTestConfig conf = OptTestConfig.builder()
+                .original(sd)
+                .tempFolder(subDir)
+                .outputs(Collections.singletonList("loss"))
+                .placeholder("in", Nd4j.rand(DataType.DOUBLE, 6, 4))
+                .placeholder("labels", Nd4j.createFromArray(new double[][]{{1, 0, 0}, {0, 1, 0}, {0, 0, 1}, {1, 0, 0}, {0, 1, 0}, {0, 0, 1}}))
+                .optimizerSets(Collections.singletonList(new FusionOptimizations()))
+                .mustApply(sd.getVariables().get(mmul1.name()).getOutputOfOp(), FusionOptimizations.FuseMatMulBiasAdd.class)
+                .mustApply(sd.getVariables().get(std.name()).getOutputOfOp(), FusionOptimizations.FuseLayerNorm.class)
+                .mustApply(sd.getVariables().get(softmax.name()).getOutputOfOp(), FusionOptimizations.FuseLogSoftmax.class)
+                .mustApply(sd.getVariables().get(loss.name()).getOutputOfOp(), FusionOptimizations.FuseSoftmaxCrossEntropy.class)
+                .build();
+
+        SameDiff optimized = OptimizationTestUtil.testOptimization(conf);
+        Set<Class<?>> opClasses = new HashSet<>();
+        for(SameDiffOp op : optimized.getOps().values()){
+            opClasses.add(op.getOp().getClass());
+        }
+        assertEquals(4, optimized.getOps().size());
+        assertTrue(opClasses.contains(ReluLayer.class));
+        assertTrue(opClasses.contains(LayerNorm.class));
+        assertTrue(opClasses.contains(XwPlusB.class));
+        assertTrue(opClasses.contains(SoftmaxCrossEntropyWithLogitsLoss.class));
+        assertTrue(optimized.hasVariable("loss"));
+        assertFalse(optimized.hasVariable(std.name()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testConvBatchNormFolding(Nd4jBackend nd4jBackend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.DOUBLE, -1, 3, 8, 8);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.DOUBLE, 2, 2, 3, 4));
+        SDVariable conv = sd.cnn.conv2d(in, w, Conv2DConfig.builder().kH(2).kW(2).build());
+
+        SDVariable mean = sd.constant("mean", Nd4j.rand(DataType.DOUBLE, 4));
+        SDVariable var = sd.constant("var", Nd4j.rand(DataType.DOUBLE, 4).addi(0.5));
+        SDVariable gamma = sd.constant("gamma", Nd4j.rand(DataType.DOUBLE, 4));
+        SDVariable beta = sd.constant("beta", Nd4j.rand(DataType.DOUBLE, 4));
+        sd.nn.batchNorm("out", conv, mean, var, gamma, beta, 1e-5, 1);
+
+        File subDir = tempDir.resolve("conv-bn-folding").toFile();
+        assertTrue(subDir.mkdirs());
+
+        OptTestConfig conf = OptTestConfig.builder()
+                .original(sd)
+                .tempFolder(subDir)
+                .outputs(Collections.singletonList("out"))
+                .placeholder("in", Nd4j.rand(DataType.DOUBLE, 2, 3, 8, 8))
+                .optimizerSets(Collections.singletonList(new FusionOptimizations()))
+                .mustApply(sd.getVariables().get(conv.name()).getOutputOfOp(), FusionOptimizations.FoldBatchNormIntoConv2d.class)
+                .build();
+
+        SameDiff optimized = OptimizationTestUtil.testOptimization(conf);
+        assertEquals(1, optimized.getOps().size());
+        SameDiffOp op = optimized.getOps().values().iterator().next();
+        assertEquals(Conv2D.class, op.getOp().getClass());
+        assertEquals(3, op.getInputsToOp().size());     //Input, folded weights, folded bias
+        assertEquals(op.getName(), optimized.getVariables().get("out").getOutputOfOp());
+        //Original weights are not modified
+        assertEquals(sd.getVariable("w").getArr(), optimized.getVariable("w").getArr());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testPostTrainingQuantization(Nd4jBackend nd4jBackend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 8);
+        SDVariable w1 = sd.var("w1", Nd4j.randn(DataType.FLOAT, 8, 16).muli(0.3));
+        SDVariable b1 = sd.var("b1", Nd4j.randn(DataType.FLOAT, 16).muli(0.1));
+        SDVariable w2 = sd.var("w2", Nd4j.randn(DataType.FLOAT, 16, 4).muli(0.3));
+        SDVariable b2 = sd.var("b2", Nd4j.randn(DataType.FLOAT, 4).muli(0.1));
+        SDVariable h = sd.math.tanh(in.mmul(w1).add(b1));
+        sd.nn.softmax("out", h.mmul(w2).add(b2), 1);
+
+        List<Map<String, INDArray>> calibration = new ArrayList<>();
+        for( int i = 0; i < 5; i++) {
+            calibration.add(Collections.singletonMap("in", Nd4j.randn(DataType.FLOAT, 10, 8)));
+        }
+
+        //Default: weight-only quantization, no ops added in front of the matmuls
+        SameDiff weightOnly = PostTrainingQuantizer.builder().build().quantize(sd, calibration);
+        assertEquals(0, countOps(weightOnly, FakeQuantWithMinMaxArgs.class));
+
+        PostTrainingQuantizer quantizer = PostTrainingQuantizer.builder().quantizeActivations(true).build();
+        Map<String, PostTrainingQuantizer.ActivationRange> ranges = quantizer.calibrate(sd, calibration);
+        assertEquals(2, ranges.size());     //"in" and tanh output
+        assertTrue(ranges.get("in").getMin() < 0 && ranges.get("in").getMax() > 0);
+
+        SameDiff quantized = quantizer.quantize(sd, ranges);
+        assertEquals(2, countOps(quantized, FakeQuantWithMinMaxArgs.class));
+        assertFalse(quantized.hasVariable("w1"));
+        assertFalse(quantized.hasVariable("w2"));
+        assertTrue(sd.hasVariable("w1"));       //Original should not be modified
+        int int8Constants = 0;
+        for(SDVariable v : quantized.variables()){
+            if(v.getVariableType() == VariableType.CONSTANT && v.dataType() == DataType.INT8)
+                int8Constants++;
+        }
+        assertEquals(2, int8Constants);
+
+        QuantizationReport report = PostTrainingQuantizer.evaluate(sd, quantized, calibration, "out");
+        QuantizationReport.OutputAccuracy acc = report.getOutputs().get("out");
+        assertTrue(report.toString(), acc.getMaxAbsError() < 0.05);
+        assertTrue(report.toString(), acc.getTop1Agreement() >= 0.8);
+        assertTrue(report.toString(), report.compressionRatio() > 2.0);
+
+        File f = tempDir.resolve("quantized.sd").toFile();
+        quantized.save(f, false);
+        SameDiff loaded = SameDiff.load(f, false);
+        Map<String, INDArray> ph = calibration.get(0);
+        assertEquals(quantized.outputSingle(ph, "out"), loaded.outputSingle(ph, "out"));
+
+        //Per channel quantization round trip: error is at most half a quantization step
+        INDArray w = Nd4j.randn(DataType.FLOAT, 3, 3, 2, 5);
+        Pair<INDArray, INDArray> p = PostTrainingQuantizer.quantizeWeights(w, 3);
+        assertEquals(DataType.INT8, p.getFirst().dataType());
+        assertArrayEquals(new long[]{1, 1, 1, 5}, p.getSecond().shape());
+        INDArray deq = PostTrainingQuantizer.dequantizeWeights(p.getFirst(), p.getSecond(), DataType.FLOAT);
+        double maxScale = p.getSecond().maxNumber().doubleValue();
+        assertTrue(Transforms.abs(deq.sub(w), false).maxNumber().doubleValue() <= maxScale / 2 + 1e-6);
+    }
+
+    private static int countOps(SameDiff sd, Class<?> opClass) {
+        int count = 0;
+        for (SameDiffOp op : sd.getOps().values()) {
+            if (opClass.isInstance(op.getOp()))
+                count++;
+        }
+        return count;
+    }
+}
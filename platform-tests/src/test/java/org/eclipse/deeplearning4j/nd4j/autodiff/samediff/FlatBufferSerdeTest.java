@@ -33,6 +33,7 @@ import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.TrainingConfig;
 import org.nd4j.autodiff.samediff.VariableType;
+import org.nd4j.autodiff.samediff.serde.MappedFlatArrays;
 import org.nd4j.common.resources.Resources;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
@@ -465,4 +466,40 @@ public class FlatBufferSerdeTest extends BaseNd4jTestWithBackends {
                 sd.getVariableOutputOp("pool").getClass(),
                 deserialized.getVariableOutputOp("pool").getClass());
     }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testMemoryMappedLoad(Nd4jBackend backend) throws Exception {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b = sd.constant("b", Nd4j.rand(DataType.FLOAT, 5));
+        SDVariable idx = sd.constant("idx", Nd4j.createFromArray(0, 2, 4));
+        SDVariable out = sd.gather(sd.nn().relu(in.mmul(w).add(b), 0), idx, 1);
+        out.rename("out");
+
+        File f = new File(testDir.toFile(), "mapped.fb");
+        sd.save(f, false);
+
+        SameDiff copied = SameDiff.load(f, false);
+        SameDiff mapped = SameDiff.load(f, false, true);
+
+        for (String s : new String[]{"w", "b", "idx"}) {
+            assertEquals(sd.getArrForVarName(s), copied.getArrForVarName(s), s);
+            assertEquals(sd.getArrForVarName(s), mapped.getArrForVarName(s), s);
+            assertFalse(MappedFlatArrays.isMapped(copied.getArrForVarName(s).data()), s);
+            assertTrue(MappedFlatArrays.isMapped(mapped.getArrForVarName(s).data()), s);
+        }
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        INDArray exp = sd.outputSingle(Collections.singletonMap("in", inArr), "out");
+        assertEquals(exp, copied.outputSingle(Collections.singletonMap("in", inArr), "out"));
+        assertEquals(exp, mapped.outputSingle(Collections.singletonMap("in", inArr), "out"));
+
+        //Mapping is private (copy-on-write): modifying the arrays should not modify the file
+        mapped.getArrForVarName("w").assign(0);
+        SameDiff reloaded = SameDiff.load(f, false, true);
+        assertEquals(sd.getArrForVarName("w"), reloaded.getArrForVarName("w"));
+    }
 }
@@ -27,6 +27,7 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.nd4j.autodiff.samediff.internal.memory.ArrayCacheMemoryMgr;
+import org.nd4j.autodiff.samediff.internal.memory.StaticMemoryPlanner;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.linalg.BaseNd4jTestWithBackends;
@@ -58,13 +59,9 @@ public class MemoryMgrTest extends BaseNd4jTestWithBackends {
 
     @AfterEach
     public void after() {
-        ArrayCacheMemoryMgr.getLruCache().clear();
-        ArrayCacheMemoryMgr.getCurrentCacheSize().set(0);
+        ArrayCacheMemoryMgr.clearCaches();
+        ArrayCacheMemoryMgr.resetCacheStats();
         ArrayCacheMemoryMgr.getMaxMemFrac().set(0.0);
-        ArrayCacheMemoryMgr.getMaxMemFrac().set(0.0);
-        ArrayCacheMemoryMgr.getCurrentCacheSize().set(0);
-        ArrayCacheMemoryMgr.getMaxMemFrac().set(0.0);
-        ArrayCacheMemoryMgr.getLruCacheValues().clear();
     }
 
     @ParameterizedTest
@@ -161,4 +158,67 @@ public class MemoryMgrTest extends BaseNd4jTestWithBackends {
         assertEquals(2000, mmgr.getLruCacheValues().size());
     }
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testCacheStatsAndGlobalBudget(Nd4jBackend backend) throws Exception {
+        ArrayCacheMemoryMgr.clearCaches();
+        ArrayCacheMemoryMgr.resetCacheStats();
+        ArrayCacheMemoryMgr mmgr = new ArrayCacheMemoryMgr();
+
+        INDArray a = mmgr.allocate(false, DataType.FLOAT, 10);
+        mmgr.release(a);
+        INDArray b = mmgr.allocate(false, DataType.FLOAT, 10);
+        assertEquals(a.data(), b.data());
+        assertEquals(1, ArrayCacheMemoryMgr.getCacheHits());
+        assertEquals(1, ArrayCacheMemoryMgr.getCacheMisses());
+
+        //Fill the whole budget from another thread
+        ArrayCacheMemoryMgr.setMaxCacheBytes(new AtomicLong(1000));
+        Thread t = new Thread(() -> {
+            for (int i = 0; i < 10; i++) {
+                mmgr.release(Nd4j.create(DataType.FLOAT, 25));   //100 bytes each
+            }
+        });
+        t.start();
+        t.join();
+        assertEquals(1000, ArrayCacheMemoryMgr.getCurrentCacheSize().get());
+        assertEquals(0, ArrayCacheMemoryMgr.getLruCache().size());
+
+        //Releasing from this thread should evict from the other (terminated) thread's cache to stay within budget
+        mmgr.release(Nd4j.create(DataType.FLOAT, 25));
+        assertTrue(ArrayCacheMemoryMgr.getCurrentCacheSize().get() <= 1000);
+        assertTrue(ArrayCacheMemoryMgr.getCacheEvictions() > 0);
+        assertEquals(1, ArrayCacheMemoryMgr.getLruCache().size());
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testStaticMemoryPlanner(Nd4jBackend backend) {
+        long[] sizes = {100, 200, 64, 300, 50, 128};
+        int[] first = {0, 1, 2, 2, 3, 4};
+        int[] last = {1, 3, 4, 4, 5, 5};
+
+        StaticMemoryPlanner.MemoryPlan plan = StaticMemoryPlanner.plan(sizes, first, last, 64);
+        long[] offsets = plan.getOffsets();
+
+        //Tensors with overlapping lifetimes must not overlap in memory
+        for (int i = 0; i < sizes.length; i++) {
+            assertEquals(0, offsets[i] % 64);
+            assertTrue(offsets[i] + sizes[i] <= plan.getArenaSize());
+            for (int j = i + 1; j < sizes.length; j++) {
+                boolean timeOverlap = first[i] <= last[j] && first[j] <= last[i];
+                boolean memOverlap = offsets[i] < offsets[j] + sizes[j] && offsets[j] < offsets[i] + sizes[i];
+                assertFalse(timeOverlap && memOverlap, "Tensors " + i + " and " + j + " overlap");
+            }
+        }
+
+        assertTrue(plan.getPeakLiveSize() <= plan.getArenaSize());
+        assertTrue(plan.getArenaSize() < plan.getTotalSize());
+
+        //Tensors with disjoint lifetimes can all share the same memory
+        StaticMemoryPlanner.MemoryPlan chain = StaticMemoryPlanner.plan(new long[]{128, 128, 128}, new int[]{0, 2, 4}, new int[]{1, 3, 5}, 64);
+        assertArrayEquals(new long[]{0, 0, 0}, chain.getOffsets());
+        assertEquals(128, chain.getArenaSize());
+    }
+
 }
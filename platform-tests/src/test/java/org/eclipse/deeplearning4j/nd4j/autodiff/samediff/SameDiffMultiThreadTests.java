@@ -42,6 +42,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 @Slf4j
 @Tag(TagNames.SAMEDIFF)
@@ -109,6 +110,37 @@ public class SameDiffMultiThreadTests extends BaseND4JTest {
 
 
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testOpParallelism(Nd4jBackend backend) {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 10);
+
+        //Several independent branches, so each wave has more than one op ready
+        SDVariable[] branches = new SDVariable[4];
+        for( int i = 0; i < branches.length; i++) {
+            SDVariable w = sd.var("w" + i, Nd4j.rand(DataType.FLOAT, 10, 10));
+            SDVariable b = sd.var("b" + i, Nd4j.rand(DataType.FLOAT, 10));
+            branches[i] = sd.nn.tanh(in.mmul(w).add(b));
+        }
+        SDVariable out = sd.math.mergeAdd(branches).mul("out", 2.0);
+
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 5, 10);
+        INDArray exp = sd.outputSingle(Collections.singletonMap("in", inArr), "out").dup();
+
+        sd.setOpParallelism(4);
+        for( int i = 0; i < 10; i++) {
+            INDArray actual = sd.outputSingle(Collections.singletonMap("in", inArr), "out");
+            assertEquals(exp, actual);
+        }
+
+        sd.setOpParallelism(1);
+        assertEquals(exp, sd.outputSingle(Collections.singletonMap("in", inArr), "out"));
+
+        //Executor is shared by all instances: discarded graphs don't leave threads behind
+        assertSame(sd.getOpExecutor(), SameDiff.create().getOpExecutor());
+    }
+
     public static void doTest(SameDiff sd, int nThreads, int nRuns, INDArray[] inputArrs, INDArray[] expOut,
                               String inName, String outName,
                               AtomicBoolean[] failuresByThread, AtomicInteger[] counters, Semaphore s, CountDownLatch latch){
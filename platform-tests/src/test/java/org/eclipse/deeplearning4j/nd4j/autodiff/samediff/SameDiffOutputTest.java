@@ -26,6 +26,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.nd4j.autodiff.samediff.SDVariable;
 import org.nd4j.autodiff.samediff.SameDiff;
 import org.nd4j.autodiff.samediff.TrainingConfig;
+import org.nd4j.autodiff.samediff.internal.ExecutionPlan;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.linalg.BaseNd4jTestWithBackends;
@@ -37,11 +38,20 @@ import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 import org.nd4j.linalg.learning.config.Sgd;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
@@ -103,6 +113,65 @@ public class SameDiffOutputTest extends BaseNd4jTestWithBackends {
                 0.0001),"output != input + 2");
     }
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testCompiledExecutionPlan(Nd4jBackend backend) throws Exception {
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 5));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 5));
+        SDVariable h = sd.nn.relu(in.mmul(w).add(b), 0.0);
+        SDVariable h2 = sd.math.tanh(h).mul(2.0);
+        SDVariable id = sd.identity("id", h2);
+        SDVariable out = sd.nn.softmax("out", id.add(h), 1);
+        SDVariable sum = out.sum("sum", 1);
+
+        ExecutionPlan plan = sd.compile(Arrays.asList("out", "sum", "id"), Collections.singletonMap("in", new long[]{3, 4}));
+        assertTrue(plan.numBufferSlots() > 0);
+        assertTrue(plan.getArenaBytes() > 0);
+        assertTrue(plan.getArenaBytes() < plan.getTotalIntermediateBytes());
+        assertTrue(plan.getPeakLiveBytes() <= plan.getArenaBytes());
+        assertArrayEquals(new long[]{3, 5}, plan.getShape("out").getShape());
+        assertArrayEquals(new long[]{3}, plan.getOutputShapes().get("sum").getShape());
+        //Compiling the plan doesn't modify the graph
+        assertArrayEquals(new long[]{-1, 4}, in.placeholderShape());
+
+        for (int i = 0; i < 3; i++) {
+            INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+            Map<String, INDArray> exp = sd.output(Collections.singletonMap("in", inArr), "out", "sum", "id");
+            Map<String, INDArray> act = plan.output(Collections.singletonMap("in", inArr));
+            assertEquals(exp, act);
+        }
+
+        //Plan is shared between threads; ops with per-execution state are copies, not the graph's ops
+        for (ExecutionPlan.Step step : plan.getSchedule()) {
+            if (step.isScalarArg() || step.getDimensions() != null)
+                assertNotSame(sd.getOps().get(step.getOpName()).getOp(), step.getOp());
+        }
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+                Map<String, INDArray> exp = sd.output(Collections.singletonMap("in", inArr), "out", "sum", "id");
+                results.add(exec.submit(() -> exp.equals(plan.output(Collections.singletonMap("in", inArr)))));
+            }
+            for (Future<Boolean> f : results)
+                assertTrue(f.get());
+        } finally {
+            exec.shutdown();
+        }
+
+        //Thread state is recreated after being released
+        plan.releaseThreadState();
+        INDArray inArr = Nd4j.rand(DataType.FLOAT, 3, 4);
+        assertEquals(sd.output(Collections.singletonMap("in", inArr), "out", "sum", "id"), plan.output(Collections.singletonMap("in", inArr)));
+
+        //Different shapes require a new plan
+        assertThrows(IllegalArgumentException.class, () -> plan.output(Collections.singletonMap("in", Nd4j.rand(DataType.FLOAT, 2, 4))));
+        plan.close();
+    }
+
     @Override
     public char ordering() {
         return 'c';